@@ -0,0 +1,138 @@
+package edu.utdallas.hltri.eeg;
+
+import edu.utdallas.hltri.io.AC;
+import edu.utdallas.hltri.logging.Logger;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes an id-keyed vector file and its label files (one per label name) from any number of threads.
+ *
+ * Each thread streams its records into its own shard of every file, so nothing is buffered beyond each shard's
+ * write buffer. A record's vector and labels are always written to the same shard, so {@link #close()} keeps the
+ * files aligned by concatenating the shards of each file in the same order.
+ */
+class ShardedVectorWriter implements AC {
+  private static final Logger log = Logger.get(ShardedVectorWriter.class);
+
+  private final Path dir;
+  private final String vectorFile;
+  private final Path shardDir;
+  private final AtomicInteger numShards = new AtomicInteger();
+  private final Queue<Shard> shards = new ConcurrentLinkedQueue<>();
+  private final Set<String> labelNames = ConcurrentHashMap.newKeySet();
+  private final ThreadLocal<Shard> shard = ThreadLocal.withInitial(this::newShard);
+
+  /**
+   * @param dir directory to write to (created if necessary)
+   * @param vectorFile name of the vector file; label files are named after their label, with extension .lbl
+   */
+  ShardedVectorWriter(Path dir, String vectorFile) {
+    this.dir = dir;
+    this.vectorFile = vectorFile;
+    this.shardDir = dir.resolve(vectorFile + ".shards");
+    try {
+      Files.createDirectories(shardDir);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Writes the vector of the instance with the given id, and each of its labels (label name to value)
+   */
+  void write(String id, String vector, Map<String, String> labels) {
+    final Shard s = shard.get();
+    try {
+      s.writer(vectorFile).append(id).append(' ').append(vector).append('\n');
+      for (Map.Entry<String, String> label : labels.entrySet()) {
+        s.writer(label.getKey() + ".lbl").append(id).append(' ').append(label.getValue()).append('\n');
+        labelNames.add(label.getKey());
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private Shard newShard() {
+    final Shard s = new Shard(numShards.getAndIncrement());
+    shards.add(s);
+    return s;
+  }
+
+  /**
+   * Closes every shard and concatenates the shards of each file, in shard order. Must only be called once every
+   * thread is done writing.
+   */
+  @Override
+  public void close() {
+    final List<Shard> ordered = new ArrayList<>(shards);
+    ordered.sort(Comparator.comparingInt(s -> s.number));
+    try {
+      for (Shard s : ordered) {
+        s.close();
+      }
+      final List<String> files = new ArrayList<>();
+      files.add(vectorFile);
+      labelNames.forEach(name -> files.add(name + ".lbl"));
+      for (String file : files) {
+        try (OutputStream out = Files.newOutputStream(dir.resolve(file))) {
+          for (Shard s : ordered) {
+            final Path part = s.path(file);
+            if (Files.exists(part)) {
+              Files.copy(part, out);
+              Files.delete(part);
+            }
+          }
+        }
+      }
+      Files.deleteIfExists(shardDir);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    log.info("Wrote {} and {} label files from {} shards to {}", vectorFile, labelNames.size(), ordered.size(), dir);
+  }
+
+  private class Shard {
+    private final int number;
+    private final Map<String, BufferedWriter> writers = new HashMap<>();
+
+    Shard(int number) {
+      this.number = number;
+    }
+
+    Path path(String file) {
+      return shardDir.resolve(file + "." + number);
+    }
+
+    BufferedWriter writer(String file) throws IOException {
+      BufferedWriter writer = writers.get(file);
+      if (writer == null) {
+        writer = Files.newBufferedWriter(path(file), StandardCharsets.UTF_8);
+        writers.put(file, writer);
+      }
+      return writer;
+    }
+
+    void close() throws IOException {
+      for (BufferedWriter writer : writers.values()) {
+        writer.close();
+      }
+    }
+  }
+}
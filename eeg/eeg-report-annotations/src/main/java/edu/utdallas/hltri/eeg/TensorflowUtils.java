@@ -16,6 +16,7 @@ import edu.utdallas.hltri.ml.label.Label;
 import edu.utdallas.hltri.ml.vector.CountingSparseFeatureVectorizer;
 import edu.utdallas.hltri.ml.vector.SparseFeatureVector;
 import edu.utdallas.hltri.ml.vector.SparseFeatureVectorizer;
+import edu.utdallas.hltri.ml.vector.SparseVectorizer;
 import edu.utdallas.hltri.ml.vector.VectorUtils;
 import edu.utdallas.hltri.scribe.text.BaseDocument;
 import edu.utdallas.hltri.scribe.text.Document;
@@ -31,7 +32,9 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -45,30 +48,21 @@ public class TensorflowUtils {
     final AnnotationVectorizer<EegActivity> vectorizer = new AnnotationVectorizer<EegActivity>(
         FeatureUtils.attributeFeatureExtractors(annset),
         a -> EnumLabel.NULL, new IntIdentifier<>());
-    final List<String> vectors = Lists.newArrayList();
-    final Multimap<String, String> labelMap = HashMultimap.create();
-    documents.parallelStream().flatMap(doc -> doc.get(annset, EegActivity.TYPE).stream()).forEach(act -> {
-      vectors.add(act.getId() + " " + vectorizer.vectorizeAnnotation(act).noLabel());
-      labelMap.put("MORPHOLOGY", act.getId() + " " + EegActivity.Morphology.valueOf(act.get(EegActivity.morphology)).numericValue().intValue());
-      labelMap.put("FREQUENCY_BAND", act.getId() + " " + EegActivity.Band.valueOf(act.get(EegActivity.band)).numericValue().intValue());
-      labelMap.put("HEMISPHERE", act.getId() + " " + EegActivity.Hemisphere.valueOf(act.get(EegActivity.hemisphere)).numericValue().intValue());
-      labelMap.put("DISPERSAL", act.getId() + " " + EegActivity.Dispersal.valueOf(act.get(EegActivity.dispersal)).numericValue().intValue());
-      labelMap.put("RECURRENCE", act.getId() + " " + EegActivity.Recurrence.valueOf(act.get(EegActivity.recurrence)).numericValue().intValue());
-      labelMap.put("BACKGROUND", act.getId() + " " + EegActivity.In_Background.valueOf(act.get(EegActivity.in_background)).numericValue().intValue());
-      labelMap.put("MAGNITUDE", act.getId() + " " + EegActivity.Magnitude.valueOf(act.get(EegActivity.magnitude)).numericValue().intValue());
-      labelMap.put("LOCATION", act.getId() + " " + act.getLocations().stream().map(l -> l.numericValue().toString()).reduce("", (l1, l2) -> l1 + l2 + " "));
-      labelMap.put("MODALITY", act.getId() + " " + ModalityLabel.valueOf(act.get(EegActivity.modality)).numericValue().intValue());
-      labelMap.put("POLARITY", act.getId() + " " + PolarityLabel.fromString(act.get(EegActivity.polarity)).numericValue().intValue());
-    });
-    try {
-      final Path path = Paths.get(outDir).resolve("activity");
-      path.toFile().mkdir();
-      Files.write(path.resolve("activity_attr.svml"), vectors);
-      for (final String lbl : labelMap.keySet()) {
-        Files.write(path.resolve(lbl + ".lbl"), labelMap.get(lbl));
-      }
-    } catch (IOException e) {
-      throw new RuntimeException(e);
+    try (ShardedVectorWriter writer = new ShardedVectorWriter(Paths.get(outDir).resolve("activity"), "activity_attr.svml")) {
+      documents.parallelStream().flatMap(doc -> doc.get(annset, EegActivity.TYPE).stream()).forEach(act -> {
+        final Map<String, String> labelMap = new LinkedHashMap<>();
+        labelMap.put("MORPHOLOGY", String.valueOf(EegActivity.Morphology.valueOf(act.get(EegActivity.morphology)).numericValue().intValue()));
+        labelMap.put("FREQUENCY_BAND", String.valueOf(EegActivity.Band.valueOf(act.get(EegActivity.band)).numericValue().intValue()));
+        labelMap.put("HEMISPHERE", String.valueOf(EegActivity.Hemisphere.valueOf(act.get(EegActivity.hemisphere)).numericValue().intValue()));
+        labelMap.put("DISPERSAL", String.valueOf(EegActivity.Dispersal.valueOf(act.get(EegActivity.dispersal)).numericValue().intValue()));
+        labelMap.put("RECURRENCE", String.valueOf(EegActivity.Recurrence.valueOf(act.get(EegActivity.recurrence)).numericValue().intValue()));
+        labelMap.put("BACKGROUND", String.valueOf(EegActivity.In_Background.valueOf(act.get(EegActivity.in_background)).numericValue().intValue()));
+        labelMap.put("MAGNITUDE", String.valueOf(EegActivity.Magnitude.valueOf(act.get(EegActivity.magnitude)).numericValue().intValue()));
+        labelMap.put("LOCATION", act.getLocations().stream().map(l -> l.numericValue().toString()).reduce("", (l1, l2) -> l1 + l2 + " "));
+        labelMap.put("MODALITY", String.valueOf(ModalityLabel.valueOf(act.get(EegActivity.modality)).numericValue().intValue()));
+        labelMap.put("POLARITY", String.valueOf(PolarityLabel.fromString(act.get(EegActivity.polarity)).numericValue().intValue()));
+        writer.write(act.getId(), vectorizer.vectorizeAnnotation(act).noLabel(), labelMap);
+      });
     }
   }
 
@@ -78,30 +72,21 @@ public class TensorflowUtils {
         Arrays.asList(new GoldFeatureExtractor(), new ConceptSpanFeatureExtractor<>(),
             new ContextFeatureExtractor<>(annset), new SectionFeatureExtractor<>()),
         a -> EnumLabel.NULL, new IntIdentifier<>());
-    final List<String> vectors = Lists.newArrayList();
-    final Multimap<String, String> labelMap = HashMultimap.create();
-    documents.parallelStream().flatMap(doc -> doc.get(annset, EegActivity.TYPE).stream()).forEach(act -> {
-      vectors.add(act.getId() + " " + vectorizer.vectorizeAnnotation(act).noLabel());
-      labelMap.put("MORPHOLOGY", act.getId() + " " + EegActivity.Morphology.valueOf(act.get(EegActivity.morphology)).numericValue().intValue());
-      labelMap.put("FREQUENCY_BAND", act.getId() + " " + EegActivity.Band.valueOf(act.get(EegActivity.band)).numericValue().intValue());
-      labelMap.put("HEMISPHERE", act.getId() + " " + EegActivity.Hemisphere.valueOf(act.get(EegActivity.hemisphere)).numericValue().intValue());
-      labelMap.put("DISPERSAL", act.getId() + " " + EegActivity.Dispersal.valueOf(act.get(EegActivity.dispersal)).numericValue().intValue());
-      labelMap.put("RECURRENCE", act.getId() + " " + EegActivity.Recurrence.valueOf(act.get(EegActivity.recurrence)).numericValue().intValue());
-      labelMap.put("BACKGROUND", act.getId() + " " + EegActivity.In_Background.valueOf(act.get(EegActivity.in_background)).numericValue().intValue());
-      labelMap.put("MAGNITUDE", act.getId() + " " + EegActivity.Magnitude.valueOf(act.get(EegActivity.magnitude)).numericValue().intValue());
-      act.getLocations().forEach(loc -> labelMap.put(loc.toString(), act.getId() + " " + 1.0));
-      labelMap.put("MODALITY", act.getId() + " " + ModalityLabel.valueOf(act.get(EegActivity.modality)).numericValue().intValue());
-      labelMap.put("POLARITY", act.getId() + " " + PolarityLabel.fromString(act.get(EegActivity.polarity)).numericValue().intValue());
-    });
-    try {
-      final Path path = Paths.get(outDir).resolve("activity");
-      path.toFile().mkdir();
-      Files.write(path.resolve("activity_attr.svml"), vectors);
-      for (final String lbl : labelMap.keySet()) {
-        Files.write(path.resolve(lbl + ".lbl"), labelMap.get(lbl));
-      }
-    } catch (IOException e) {
-      throw new RuntimeException(e);
+    try (ShardedVectorWriter writer = new ShardedVectorWriter(Paths.get(outDir).resolve("activity"), "activity_attr.svml")) {
+      documents.parallelStream().flatMap(doc -> doc.get(annset, EegActivity.TYPE).stream()).forEach(act -> {
+        final Map<String, String> labelMap = new LinkedHashMap<>();
+        labelMap.put("MORPHOLOGY", String.valueOf(EegActivity.Morphology.valueOf(act.get(EegActivity.morphology)).numericValue().intValue()));
+        labelMap.put("FREQUENCY_BAND", String.valueOf(EegActivity.Band.valueOf(act.get(EegActivity.band)).numericValue().intValue()));
+        labelMap.put("HEMISPHERE", String.valueOf(EegActivity.Hemisphere.valueOf(act.get(EegActivity.hemisphere)).numericValue().intValue()));
+        labelMap.put("DISPERSAL", String.valueOf(EegActivity.Dispersal.valueOf(act.get(EegActivity.dispersal)).numericValue().intValue()));
+        labelMap.put("RECURRENCE", String.valueOf(EegActivity.Recurrence.valueOf(act.get(EegActivity.recurrence)).numericValue().intValue()));
+        labelMap.put("BACKGROUND", String.valueOf(EegActivity.In_Background.valueOf(act.get(EegActivity.in_background)).numericValue().intValue()));
+        labelMap.put("MAGNITUDE", String.valueOf(EegActivity.Magnitude.valueOf(act.get(EegActivity.magnitude)).numericValue().intValue()));
+        act.getLocations().forEach(loc -> labelMap.put(loc.toString(), "1.0"));
+        labelMap.put("MODALITY", String.valueOf(ModalityLabel.valueOf(act.get(EegActivity.modality)).numericValue().intValue()));
+        labelMap.put("POLARITY", String.valueOf(PolarityLabel.fromString(act.get(EegActivity.polarity)).numericValue().intValue()));
+        writer.write(act.getId(), vectorizer.vectorizeAnnotation(act).noLabel(), labelMap);
+      });
     }
   }
 
@@ -109,23 +94,14 @@ public class TensorflowUtils {
                                                                 final String annset) {
     final AnnotationVectorizer<Event> vectorizer = new AnnotationVectorizer<Event>(FeatureUtils.attributeFeatureExtractors(annset),
         a -> EnumLabel.NULL, new IntIdentifier<>());
-    final List<String> vectors = Lists.newArrayList();
-    final Multimap<String, String> labelMap = HashMultimap.create();
-    documents.parallelStream().flatMap(doc -> doc.get(annset, Event.TYPE).stream()).forEach(act -> {
-      vectors.add(act.getId() + " " + vectorizer.vectorizeAnnotation(act).noLabel());
-      labelMap.put("TYPE", act.getId() + " " + EventTypeLabel.valueOf(act.get(Event.type)).numericValue().intValue());
-      labelMap.put("MODALITY", act.getId() + " " + ModalityLabel.valueOf(act.get(Event.modality)).numericValue().intValue());
-      labelMap.put("POLARITY", act.getId() + " " + PolarityLabel.fromString(act.get(Event.polarity)).numericValue().intValue());
-    });
-    try {
-      final Path path = Paths.get(outDir).resolve("event");
-      path.toFile().mkdir();
-      Files.write(path.resolve("activity_attr.svml"), vectors);
-      for (final String lbl : labelMap.keySet()) {
-        Files.write(path.resolve(lbl + ".lbl"), labelMap.get(lbl));
-      }
-    } catch (IOException e) {
-      throw new RuntimeException(e);
+    try (ShardedVectorWriter writer = new ShardedVectorWriter(Paths.get(outDir).resolve("event"), "activity_attr.svml")) {
+      documents.parallelStream().flatMap(doc -> doc.get(annset, Event.TYPE).stream()).forEach(act -> {
+        final Map<String, String> labelMap = new LinkedHashMap<>();
+        labelMap.put("TYPE", String.valueOf(EventTypeLabel.valueOf(act.get(Event.type)).numericValue().intValue()));
+        labelMap.put("MODALITY", String.valueOf(ModalityLabel.valueOf(act.get(Event.modality)).numericValue().intValue()));
+        labelMap.put("POLARITY", String.valueOf(PolarityLabel.fromString(act.get(Event.polarity)).numericValue().intValue()));
+        writer.write(act.getId(), vectorizer.vectorizeAnnotation(act).noLabel(), labelMap);
+      });
     }
   }
 
@@ -199,9 +175,7 @@ public class TensorflowUtils {
       for (Sentence sentence : doc.get(sas, Sentence.TYPE)) {
         final List<String> sequence = new ArrayList<>();
         for (Token token : sentence.getContained(tas, Token.TYPE)) {
-          final SparseFeatureVector<Number> fv = vectorizer.vectorize(FeatureUtils.boundaryDetectionFeatureExtractors().stream()
-              .flatMap(fe -> fe.apply(token))
-              .map(Feature::toNumericFeature));
+          final SparseFeatureVector<Number> fv = boundaryVector(vectorizer, token);
           sequence.add(IoLabel.O + " " + VectorUtils.toZeroIndexedSvmlWithId(fv,
               doc.getId() + "|" + sentence.getId() + "|" + token.getId()));
         }
@@ -212,6 +186,16 @@ public class TensorflowUtils {
     return vectorStrings;
   }
 
+  /**
+   * @return the unlabeled boundary detection feature vector of the given token
+   */
+  public static SparseFeatureVector<Number> boundaryVector(final SparseVectorizer<Number> vectorizer,
+                                                          final Token token) {
+    return vectorizer.vectorize(FeatureUtils.boundaryDetectionFeatureExtractors().stream()
+        .flatMap(fe -> fe.apply(token))
+        .map(Feature::toNumericFeature));
+  }
+
   public static <D extends BaseDocument> void writeUnlabeledBoundaryVectors(final List<Document<D>> documents,
                                                                             final String outDir,
                                                                             final String iidFile,
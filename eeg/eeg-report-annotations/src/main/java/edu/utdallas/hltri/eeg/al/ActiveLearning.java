@@ -16,6 +16,7 @@ import edu.utdallas.hltri.eeg.annotators.CrfsEventBoundaryAnnotator;
 import edu.utdallas.hltri.eeg.annotators.SvmActiveLearner;
 import edu.utdallas.hltri.eeg.classifier.Crf;
 import edu.utdallas.hltri.eeg.classifier.Svm;
+import edu.utdallas.hltri.eeg.feature.BaseAttributeFeatures;
 import edu.utdallas.hltri.eeg.io.EegEventBratCorpus;
 import edu.utdallas.hltri.eeg.io.EegJsonCorpus;
 import edu.utdallas.hltri.framework.ProgressLogger;
@@ -175,23 +176,24 @@ public class ActiveLearning {
   private static void loadModels(String annset, Path modelIn) {
     eventBoundaryAnnotator = Crf.loadEventBoundaryAnnotator(annset, modelIn);
     activityBoundaryAnnotator = Crf.loadActivityBoundaryAnnotator(annset, modelIn);
-    type = Svm.loadEventTypeSvm(modelIn, annset);
-    evModality = Svm.loadEventModalitySvm(modelIn, annset);
-    evPolarity = Svm.loadEventPolaritySvm(modelIn, annset);
+    final BaseAttributeFeatures base = new BaseAttributeFeatures(annset);
+    type = Svm.loadEventTypeSvm(modelIn, annset, base);
+    evModality = Svm.loadEventModalitySvm(modelIn, annset, base);
+    evPolarity = Svm.loadEventPolaritySvm(modelIn, annset, base);
 
     activityClassifiers = new EnumMap<>(ClassifierType.class);
-    activityClassifiers.put(MORPHOLOGY, Svm.loadActivityAttributeSvm(modelIn, "morphology", annset));
-    activityClassifiers.put(FREQUENCY_BAND, Svm.loadActivityAttributeSvm(modelIn, "band", annset));
-    activityClassifiers.put(HEMISPHERE, Svm.loadActivityAttributeSvm(modelIn, "hemisphere", annset));
-    activityClassifiers.put(DISPERSAL, Svm.loadActivityAttributeSvm(modelIn, "dispersal", annset));
-    activityClassifiers.put(RECURRENCE, Svm.loadActivityAttributeSvm(modelIn, "recurrence", annset));
-    activityClassifiers.put(MAGNITUDE, Svm.loadActivityAttributeSvm(modelIn, "magnitude", annset));
-    activityClassifiers.put(BACKGROUND, Svm.loadActivityAttributeSvm(modelIn, "in_background", annset));
-    activityClassifiers.put(ACTIVITY_MODALITY, Svm.loadActivityAttributeSvm(modelIn, "activity_modality", annset));
-    activityClassifiers.put(ACTIVITY_POLARITY, Svm.loadActivityAttributeSvm(modelIn, "activity_polarity", annset));
+    activityClassifiers.put(MORPHOLOGY, Svm.loadActivityAttributeSvm(modelIn, "morphology", annset, base));
+    activityClassifiers.put(FREQUENCY_BAND, Svm.loadActivityAttributeSvm(modelIn, "band", annset, base));
+    activityClassifiers.put(HEMISPHERE, Svm.loadActivityAttributeSvm(modelIn, "hemisphere", annset, base));
+    activityClassifiers.put(DISPERSAL, Svm.loadActivityAttributeSvm(modelIn, "dispersal", annset, base));
+    activityClassifiers.put(RECURRENCE, Svm.loadActivityAttributeSvm(modelIn, "recurrence", annset, base));
+    activityClassifiers.put(MAGNITUDE, Svm.loadActivityAttributeSvm(modelIn, "magnitude", annset, base));
+    activityClassifiers.put(BACKGROUND, Svm.loadActivityAttributeSvm(modelIn, "in_background", annset, base));
+    activityClassifiers.put(ACTIVITY_MODALITY, Svm.loadActivityAttributeSvm(modelIn, "activity_modality", annset, base));
+    activityClassifiers.put(ACTIVITY_POLARITY, Svm.loadActivityAttributeSvm(modelIn, "activity_polarity", annset, base));
     for (Location location : Location.values()) {
       activityClassifiers.put(ClassifierType.valueOf(location.toString()),
-          Svm.loadLocationSvm(modelIn, location.toString(), annset));
+          Svm.loadLocationSvm(modelIn, location.toString(), annset, base));
     }
   }
 
@@ -7,6 +7,7 @@ import edu.utdallas.hltri.eeg.annotation.EegActivity;
 import edu.utdallas.hltri.eeg.annotation.EegActivity.*;
 import edu.utdallas.hltri.eeg.classifier.Crf;
 import edu.utdallas.hltri.eeg.classifier.Svm;
+import edu.utdallas.hltri.eeg.feature.BaseAttributeFeatures;
 import edu.utdallas.hltri.logging.Logger;
 import edu.utdallas.hltri.scribe.annotators.Annotator;
 import edu.utdallas.hltri.scribe.text.BaseDocument;
@@ -67,22 +68,24 @@ public class EegConceptAnnotator<T extends BaseDocument> implements Annotator<T>
     activityBoundaryAnnotator = null;
     tfBoundaryAnnotator = new TfBoundaryAnnotator<>(tfServerUrl, tfFeatureMapFile, annset);
 
-    typeAnnotator = Svm.loadEventTypeSvm(modelDir, annset);
-    evModAnnotator = Svm.loadEventModalitySvm(modelDir, annset);
-    evPolAnnotator = Svm.loadEventPolaritySvm(modelDir, annset);
+    // the classifiers share their base features, which are cached only as long as this annotator
+    final BaseAttributeFeatures base = new BaseAttributeFeatures(annset);
+    typeAnnotator = Svm.loadEventTypeSvm(modelDir, annset, base);
+    evModAnnotator = Svm.loadEventModalitySvm(modelDir, annset, base);
+    evPolAnnotator = Svm.loadEventPolaritySvm(modelDir, annset, base);
 
     attrAnnotators = Lists.newArrayList();
-    attrAnnotators.add(Svm.loadActivityAttributeSvm(modelDir, "morphology", annset));
-    attrAnnotators.add(Svm.loadActivityAttributeSvm(modelDir, "band", annset));
-    attrAnnotators.add(Svm.loadActivityAttributeSvm(modelDir, "hemisphere", annset));
-    attrAnnotators.add(Svm.loadActivityAttributeSvm(modelDir, "dispersal", annset));
-    attrAnnotators.add(Svm.loadActivityAttributeSvm(modelDir, "recurrence", annset));
-    attrAnnotators.add(Svm.loadActivityAttributeSvm(modelDir, "magnitude", annset));
-    attrAnnotators.add(Svm.loadActivityAttributeSvm(modelDir, "in_background", annset));
-    attrAnnotators.add(Svm.loadActivityAttributeSvm(modelDir, "activity_modality", annset));
-    attrAnnotators.add(Svm.loadActivityAttributeSvm(modelDir, "activity_polarity", annset));
+    attrAnnotators.add(Svm.loadActivityAttributeSvm(modelDir, "morphology", annset, base));
+    attrAnnotators.add(Svm.loadActivityAttributeSvm(modelDir, "band", annset, base));
+    attrAnnotators.add(Svm.loadActivityAttributeSvm(modelDir, "hemisphere", annset, base));
+    attrAnnotators.add(Svm.loadActivityAttributeSvm(modelDir, "dispersal", annset, base));
+    attrAnnotators.add(Svm.loadActivityAttributeSvm(modelDir, "recurrence", annset, base));
+    attrAnnotators.add(Svm.loadActivityAttributeSvm(modelDir, "magnitude", annset, base));
+    attrAnnotators.add(Svm.loadActivityAttributeSvm(modelDir, "in_background", annset, base));
+    attrAnnotators.add(Svm.loadActivityAttributeSvm(modelDir, "activity_modality", annset, base));
+    attrAnnotators.add(Svm.loadActivityAttributeSvm(modelDir, "activity_polarity", annset, base));
     for (Location location : Location.values()) {
-      attrAnnotators.add(Svm.loadLocationSvm(modelDir, location.toString(), annset));
+      attrAnnotators.add(Svm.loadLocationSvm(modelDir, location.toString(), annset, base));
     }
   }
 
@@ -94,22 +97,24 @@ public class EegConceptAnnotator<T extends BaseDocument> implements Annotator<T>
     activityBoundaryAnnotator = Crf.loadActivityBoundaryAnnotator(annset, modelDir);
     tfBoundaryAnnotator = null;
 
-    typeAnnotator = Svm.loadEventTypeSvm(modelDir, annset);
-    evModAnnotator = Svm.loadEventModalitySvm(modelDir, annset);
-    evPolAnnotator = Svm.loadEventPolaritySvm(modelDir, annset);
+    // the classifiers share their base features, which are cached only as long as this annotator
+    final BaseAttributeFeatures base = new BaseAttributeFeatures(annset);
+    typeAnnotator = Svm.loadEventTypeSvm(modelDir, annset, base);
+    evModAnnotator = Svm.loadEventModalitySvm(modelDir, annset, base);
+    evPolAnnotator = Svm.loadEventPolaritySvm(modelDir, annset, base);
 
     attrAnnotators = Lists.newArrayList();
-    attrAnnotators.add(Svm.loadActivityAttributeSvm(modelDir, "morphology", annset));
-    attrAnnotators.add(Svm.loadActivityAttributeSvm(modelDir, "band", annset));
-    attrAnnotators.add(Svm.loadActivityAttributeSvm(modelDir, "hemisphere", annset));
-    attrAnnotators.add(Svm.loadActivityAttributeSvm(modelDir, "dispersal", annset));
-    attrAnnotators.add(Svm.loadActivityAttributeSvm(modelDir, "recurrence", annset));
-    attrAnnotators.add(Svm.loadActivityAttributeSvm(modelDir, "magnitude", annset));
-    attrAnnotators.add(Svm.loadActivityAttributeSvm(modelDir, "in_background", annset));
-    attrAnnotators.add(Svm.loadActivityAttributeSvm(modelDir, "activity_modality", annset));
-    attrAnnotators.add(Svm.loadActivityAttributeSvm(modelDir, "activity_polarity", annset));
+    attrAnnotators.add(Svm.loadActivityAttributeSvm(modelDir, "morphology", annset, base));
+    attrAnnotators.add(Svm.loadActivityAttributeSvm(modelDir, "band", annset, base));
+    attrAnnotators.add(Svm.loadActivityAttributeSvm(modelDir, "hemisphere", annset, base));
+    attrAnnotators.add(Svm.loadActivityAttributeSvm(modelDir, "dispersal", annset, base));
+    attrAnnotators.add(Svm.loadActivityAttributeSvm(modelDir, "recurrence", annset, base));
+    attrAnnotators.add(Svm.loadActivityAttributeSvm(modelDir, "magnitude", annset, base));
+    attrAnnotators.add(Svm.loadActivityAttributeSvm(modelDir, "in_background", annset, base));
+    attrAnnotators.add(Svm.loadActivityAttributeSvm(modelDir, "activity_modality", annset, base));
+    attrAnnotators.add(Svm.loadActivityAttributeSvm(modelDir, "activity_polarity", annset, base));
     for (Location location : Location.values()) {
-      attrAnnotators.add(Svm.loadLocationSvm(modelDir, location.toString(), annset));
+      attrAnnotators.add(Svm.loadLocationSvm(modelDir, location.toString(), annset, base));
     }
   }
 
@@ -4,10 +4,9 @@ import com.google.common.collect.Lists;
 
 import edu.utdallas.hltri.eeg.al.ActiveLearner;
 import edu.utdallas.hltri.logging.Logger;
-import edu.utdallas.hltri.ml.Feature;
 import edu.utdallas.hltri.ml.FeatureExtractor;
 import edu.utdallas.hltri.ml.classify.LibLinearSvm;
-import edu.utdallas.hltri.ml.vector.SparseFeatureVector;
+import edu.utdallas.hltri.ml.vector.DoubleSparseFeatureVector;
 import edu.utdallas.hltri.scribe.text.BaseDocument;
 import edu.utdallas.hltri.scribe.text.Document;
 import edu.utdallas.hltri.struct.Pair;
@@ -39,11 +38,7 @@ public class SvmActiveLearner<A, D extends BaseDocument> extends SvmAnnotator<A,
   public <B extends D> List<Pair<A,double[]>> annotateWithConfidence(final Document<B> document) {
     final List<Pair<A,double[]>> confidences = Lists.newArrayList();
     for (final A ann : annotationSupplier.apply(document)) {
-      SparseFeatureVector<Number> fv = vectorizer.vectorize(
-          extractors.stream().flatMap(fe -> fe.apply(ann)).map(Feature::toNumericFeature));
-      if (fv.ids().length < 1) {
-        fv = vectorizer.emptyVector(0, 0);
-      }
+      final DoubleSparseFeatureVector fv = vectorize(ann);
       labeler.accept(ann, svm.classify(fv));
       confidences.add(new Pair<>(ann, svm.labelProbabilities(fv, numLabels)));
     }
@@ -4,7 +4,7 @@ import edu.utdallas.hltri.logging.Logger;
 import edu.utdallas.hltri.ml.Feature;
 import edu.utdallas.hltri.ml.FeatureExtractor;
 import edu.utdallas.hltri.ml.classify.LibLinearSvm;
-import edu.utdallas.hltri.ml.vector.SparseFeatureVector;
+import edu.utdallas.hltri.ml.vector.DoubleSparseFeatureVector;
 import edu.utdallas.hltri.ml.vector.SparseFeatureVectorizer;
 import edu.utdallas.hltri.scribe.annotators.Annotator;
 import edu.utdallas.hltri.scribe.text.BaseDocument;
@@ -43,13 +43,21 @@ public class SvmAnnotator<A, D extends BaseDocument> implements Annotator<D> {
   @Override
   public <B extends D> void annotate(final Document<B> document) {
     for (final A ann : annotationSupplier.apply(document)) {
-      SparseFeatureVector<Number> fv = vectorizer.vectorize(
-          extractors.stream().flatMap(fe -> fe.apply(ann)).map(Feature::toNumericFeature));
-      if (fv.ids().length < 1) {
-        fv = vectorizer.emptyVector(0, 0);
-      }
+      final DoubleSparseFeatureVector fv = vectorize(ann);
       log.trace("|{}| has feature vector: {}", ann.toString(), fv);
       labeler.accept(ann, svm.classify(fv));
     }
   }
+
+  /**
+   * @return the feature vector of the given annotation, with a zero-valued feature 0 if it would otherwise be empty
+   */
+  protected DoubleSparseFeatureVector vectorize(final A ann) {
+    final DoubleSparseFeatureVector fv = vectorizer.vectorizeDoubles(
+        extractors.stream().flatMap(fe -> fe.apply(ann)).map(Feature::toNumericFeature));
+    if (fv.nnz() < 1) {
+      fv.addById(0, 0);
+    }
+    return fv;
+  }
 }
@@ -1,61 +1,113 @@
 package edu.utdallas.hltri.eeg.annotators;
 
-import com.google.common.collect.Lists;
-import com.google.common.collect.Sets;
 import edu.utdallas.hltri.conf.Config;
 import edu.utdallas.hltri.eeg.TensorflowUtils;
 import edu.utdallas.hltri.eeg.annotation.EegActivity;
-import edu.utdallas.hltri.ml.label.IoLabel;
+import edu.utdallas.hltri.ml.vector.HashingFeatureVectorizer;
+import edu.utdallas.hltri.ml.vector.SparseFeatureVector;
+import edu.utdallas.hltri.ml.vector.SparseFeatureVectorizer;
+import edu.utdallas.hltri.ml.vector.SparseVectorizer;
 import edu.utdallas.hltri.scribe.annotators.Annotator;
 import edu.utdallas.hltri.scribe.text.BaseDocument;
 import edu.utdallas.hltri.scribe.text.Document;
+import edu.utdallas.hltri.scribe.text.annotation.AnnotationType;
 import edu.utdallas.hltri.scribe.text.annotation.Event;
 import edu.utdallas.hltri.scribe.text.annotation.Sentence;
 import edu.utdallas.hltri.scribe.text.annotation.Token;
 import edu.utdallas.hltri.ml.classify.IoSequenceChunker;
 import edu.utdallas.hltri.util.IntIdentifier;
-import org.apache.http.HttpEntity;
-import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.HttpClients;
-
-import java.io.*;
+
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 /**
+ * Annotates activity and event boundaries with the LSTM models behind the boundary detection server.
+ * Documents are sent to the server batchSize at a time, with up to maxInFlight batches awaiting labels at once;
+ * annotations are still created on the calling thread, in document order.
  * Created by rmm120030 on 4/24/17.
  */
 public class TfBoundaryAnnotator<D extends BaseDocument> implements Annotator<D> {
+  public static final int DEFAULT_BATCH_SIZE = 32;
+  public static final int DEFAULT_MAX_IN_FLIGHT = 4;
 
   private final String annset;
-  private final HttpClient client;
-  private final HttpPost post;
-  private final IntIdentifier<String> featureMap;
+  private final TfBoundaryClient client;
+  private final SparseVectorizer<Number> vectorizer;
+  private final int batchSize;
 
   public static <D extends BaseDocument> TfBoundaryAnnotator<D> loadFromConfig(String annset) {
     final Config conf = Config.load("eeg");
     return new TfBoundaryAnnotator<>( conf.getString("nn.boundary.url"),
-        conf.getString("nn.boundary.featuremap"), annset);
+        conf.getString("nn.boundary.featuremap"), annset,
+        conf.getInt("nn.boundary.batch-size"), conf.getInt("nn.boundary.max-in-flight"));
   }
 
   public TfBoundaryAnnotator(String url, String featureMapFile, String annset) {
-    this.client = HttpClients.createDefault();
-    this.post = new HttpPost(url);
-    this.featureMap = IntIdentifier.fromFile(featureMapFile).lock();
+    this(url, featureMapFile, annset, DEFAULT_BATCH_SIZE, DEFAULT_MAX_IN_FLIGHT);
+  }
+
+  public TfBoundaryAnnotator(String url, String featureMapFile, String annset, int batchSize, int maxInFlight) {
+    this(url, new SparseFeatureVectorizer<>(IntIdentifier.fromFile(featureMapFile).lock()), annset, batchSize,
+        maxInFlight);
+  }
+
+  /**
+   * @param vectorizer vectorizer producing the feature ids the server's models were trained on, e.g. a
+   *                   {@link HashingFeatureVectorizer} for models trained on hashed features
+   */
+  public TfBoundaryAnnotator(String url, SparseVectorizer<Number> vectorizer, String annset, int batchSize,
+                             int maxInFlight) {
+    this.client = new TfBoundaryClient(url, maxInFlight);
+    this.vectorizer = vectorizer;
     this.annset = annset;
+    this.batchSize = batchSize;
   }
 
   private TfBoundaryAnnotator(TfBoundaryAnnotator.Builder<D> builder) {
-    this.client = HttpClients.createDefault();
-    this.post = new HttpPost(builder.url);
-    this.featureMap = IntIdentifier.fromFile(builder.featureMapFile).lock();
-    this.annset = builder.annset;
+    this(builder.url,
+        (builder.hashingDimension > 0)
+            ? new HashingFeatureVectorizer(builder.hashingDimension)
+            : new SparseFeatureVectorizer<>(IntIdentifier.fromFile(builder.featureMapFile).lock()),
+        builder.annset, builder.batchSize, builder.maxInFlight);
   }
 
   public static class Builder<D extends BaseDocument> extends Annotator.Builder<D,TfBoundaryAnnotator.Builder<D>> {
     private String url, featureMapFile, annset;
+    private int batchSize = DEFAULT_BATCH_SIZE, maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+    private int hashingDimension = 0;
+
+    public TfBoundaryAnnotator.Builder<D> withUrl(String url) {
+      this.url = url;
+      return self();
+    }
+
+    public TfBoundaryAnnotator.Builder<D> withFeatureMap(String featureMapFile) {
+      this.featureMapFile = featureMapFile;
+      return self();
+    }
+
+    /**
+     * Hash features into the given number of dimensions instead of looking them up in a feature map
+     */
+    public TfBoundaryAnnotator.Builder<D> withHashedFeatures(int dimension) {
+      this.hashingDimension = dimension;
+      return self();
+    }
+
+    public TfBoundaryAnnotator.Builder<D> withAnnotationSet(String annset) {
+      this.annset = annset;
+      return self();
+    }
+
+    public TfBoundaryAnnotator.Builder<D> withBatchSize(int batchSize) {
+      this.batchSize = batchSize;
+      return self();
+    }
+
+    public TfBoundaryAnnotator.Builder<D> withMaxInFlight(int maxInFlight) {
+      this.maxInFlight = maxInFlight;
+      return self();
+    }
 
     @Override
     protected TfBoundaryAnnotator.Builder<D> self() {
@@ -70,101 +122,100 @@ public class TfBoundaryAnnotator<D extends BaseDocument> implements Annotator<D>
 
   @Override
   public <B extends D> void annotate(Document<B> document) {
-    final List<List<String>> vectors = TensorflowUtils.generateUnlabeledBoundaryVectors(
-        Collections.singletonList(document), featureMap);
-    final Map<String, Token> id2Token = new HashMap<>();
-    final List<String> ids = new ArrayList<>();
-    for (Sentence sentence : document.get("opennlp", Sentence.TYPE)) {
-      for (Token token : sentence.getContained("genia", Token.TYPE)) {
-        final String tid = "#" + document.getId() + "|" + sentence.getId() + "|" + token.getId();
-        id2Token.put(tid, token);
-        ids.add(tid);
-//        System.out.println("Token " + tid);
+    annotateAll(Collections.singletonList(document));
+  }
+
+  @Override
+  public <B extends D> void annotateAll(Iterable<Document<B>> documents) {
+    final Deque<Batch<B>> pending = new ArrayDeque<>();
+    Batch<B> batch = new Batch<>();
+    for (Document<B> document : documents) {
+      batch.add(document);
+      if (batch.documents.size() == batchSize) {
+        pending.add(batch.submit());
+        batch = new Batch<>();
+        // annotate the batches which have already come back while later ones are in flight
+        while (!pending.isEmpty() && pending.peek().labels.isDone()) {
+          pending.poll().annotate();
+        }
       }
-//      System.out.println("-");
     }
-    assert vectors.stream().mapToInt(List::size).sum() == ids.size();
-    // ᕙ༼ຈل͜ຈ༽ᕗ
-    final StringBuilder bodyBuilder = new StringBuilder();
-    for (List<String> sequence : vectors) {
-      for (String vec : sequence) {
-        bodyBuilder.append(vec).append("\n");
-      }
-      bodyBuilder.append("\n");
+    if (!batch.documents.isEmpty()) {
+      pending.add(batch.submit());
     }
-    // Request parameters and other properties.
-    try {
-      post.setEntity(new StringEntity(bodyBuilder.toString()));
-
-      //Execute and get the response.
-      HttpResponse response = client.execute(post);
-      HttpEntity entity = response.getEntity();
-
-      final Map<String, IoLabel> activityLabels = new HashMap<>(), eventLabels = new HashMap<>();
-      if (entity != null) {
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(entity.getContent(), "UTF-8"))) {
-          String line;
-          while((line = reader.readLine())!=null) {
-            if (line.length() > 0) {
-              final String[] arr = line.split(" ");
-//              System.out.println("Found id: " + arr[0]);
-              activityLabels.put(arr[0], IoLabel.valueOf(arr[1]));
-              eventLabels.put(arr[0], IoLabel.valueOf(arr[2]));
-            }
-          }
-        }
-      }
-
-      final IoSequenceChunker<Token> activityCombiner = new IoSequenceChunker<Token>() {
-        @Override
-        public void combine(int start, int end, String label) {
-          EegActivity.TYPE.create(document, annset, start, end);
-        }
+    while (!pending.isEmpty()) {
+      pending.poll().annotate();
+    }
+  }
 
-        @Override
-        public int getStart(Token token) {
-          return token.get(Token.StartOffset).intValue();
-        }
+  @Override
+  public void close() {
+    client.close();
+  }
 
-        @Override
-        public int getEnd(Token token) {
-          return token.get(Token.EndOffset).intValue();
-        }
-      };
-      final IoSequenceChunker<Token> eventCombiner = new IoSequenceChunker<Token>() {
-        @Override
-        public void combine(int start, int end, String label) {
-          Event.TYPE.create(document, annset, start, end);
+  /**
+   * Documents sent in a single request, with their tokens in the order their vectors were sent
+   */
+  private class Batch<B extends D> {
+    private final List<Document<B>> documents = new ArrayList<>();
+    private final List<List<Token>> tokens = new ArrayList<>();
+    private final List<List<SparseFeatureVector<Number>>> sequences = new ArrayList<>();
+    private CompletableFuture<TfBoundaryClient.Labels> labels;
+
+    void add(Document<B> document) {
+      final List<Token> documentTokens = new ArrayList<>();
+      for (Sentence sentence : document.get("opennlp", Sentence.TYPE)) {
+        final List<SparseFeatureVector<Number>> sequence = new ArrayList<>();
+        for (Token token : sentence.getContained("genia", Token.TYPE)) {
+          documentTokens.add(token);
+          sequence.add(TensorflowUtils.boundaryVector(vectorizer, token));
         }
+        sequences.add(sequence);
+      }
+      documents.add(document);
+      tokens.add(documentTokens);
+    }
 
-        @Override
-        public int getStart(Token token) {
-          return token.get(Token.StartOffset).intValue();
-        }
+    Batch<B> submit() {
+      labels = client.submit(sequences);
+      return this;
+    }
 
-        @Override
-        public int getEnd(Token token) {
-          return token.get(Token.EndOffset).intValue();
+    void annotate() {
+      final TfBoundaryClient.Labels received = labels.join();
+      final int sent = tokens.stream().mapToInt(List::size).sum();
+      assert received.size() == sent : "sent: " + sent + ", received: " + received.size();
+      int t = 0;
+      for (int d = 0; d < documents.size(); d++) {
+        final IoSequenceChunker<Token> activityCombiner = chunker(documents.get(d), EegActivity.TYPE);
+        final IoSequenceChunker<Token> eventCombiner = chunker(documents.get(d), Event.TYPE);
+        for (Token token : tokens.get(d)) {
+          activityCombiner.processToken(token, received.activity(t));
+          eventCombiner.processToken(token, received.event(t));
+          t++;
         }
-      };
-
-      assert activityLabels.size() == ids.size() : "sent: " + ids.size() + ", received: " + activityLabels.size() +
-          ". Sent - received: " + setDif(Sets.newHashSet(ids), activityLabels.keySet());
-      for (String id : ids) {
-        final Token token = id2Token.get(id);
-//        System.out.println("Processing id: " + id);
-        activityCombiner.processToken(token, activityLabels.get(id));
-        eventCombiner.processToken(token, eventLabels.get(id));
+        activityCombiner.close();
+        eventCombiner.close();
       }
-      activityCombiner.close();
-      eventCombiner.close();
-    } catch (IOException e) {
-      throw new RuntimeException(e);
     }
   }
 
-  private static Set<String> setDif(Set<String> s1, Set<String> s2) {
-    s1.removeAll(s2);
-    return s1;
+  private IoSequenceChunker<Token> chunker(final Document<?> document, final AnnotationType<?> type) {
+    return new IoSequenceChunker<Token>() {
+      @Override
+      public void combine(int start, int end, String label) {
+        type.create(document, annset, start, end);
+      }
+
+      @Override
+      public int getStart(Token token) {
+        return token.get(Token.StartOffset).intValue();
+      }
+
+      @Override
+      public int getEnd(Token token) {
+        return token.get(Token.EndOffset).intValue();
+      }
+    };
   }
 }
@@ -0,0 +1,157 @@
+package edu.utdallas.hltri.eeg.annotators;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import edu.utdallas.hltri.io.AC;
+import edu.utdallas.hltri.logging.Logger;
+import edu.utdallas.hltri.ml.label.IoLabel;
+import edu.utdallas.hltri.ml.vector.SparseFeatureVector;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Client for the boundary detection server (concept/ConceptServer.py).
+ *
+ * Many sequences are sent per request as a compact binary payload of feature ids, and up to maxInFlight requests run
+ * at once over a pool of persistent connections.
+ *
+ * Request (big-endian): int #sequences; for each sequence int #tokens; for each token int #features followed by
+ * (int feature id, float value) pairs.
+ * Response: int #tokens, then the activity and event {@link IoLabel} ordinals (one byte each) of every token, in the
+ * order the tokens were sent.
+ */
+public class TfBoundaryClient implements AC {
+  private static final Logger log = Logger.get(TfBoundaryClient.class);
+
+  public static final ContentType CONTENT_TYPE = ContentType.create("application/x-hltri-boundary");
+
+  private static final IoLabel[] LABELS = IoLabel.values();
+
+  private final String url;
+  private final CloseableHttpClient client;
+  private final ExecutorService executor;
+  private final Semaphore inFlight;
+
+  public TfBoundaryClient(String url, int maxInFlight) {
+    final PoolingHttpClientConnectionManager connections = new PoolingHttpClientConnectionManager();
+    connections.setMaxTotal(maxInFlight);
+    connections.setDefaultMaxPerRoute(maxInFlight);
+    this.client = HttpClients.custom().setConnectionManager(connections).build();
+    this.executor = Executors.newFixedThreadPool(maxInFlight,
+        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("tf-boundary-%d").build());
+    this.inFlight = new Semaphore(maxInFlight);
+    this.url = url;
+  }
+
+  /**
+   * Sends the given sequences of token vectors, blocking while maxInFlight requests are already running
+   * @param sequences token vectors of each sequence
+   * @return the labels of every token of every sequence, once received
+   */
+  public CompletableFuture<Labels> submit(List<List<SparseFeatureVector<Number>>> sequences) {
+    final byte[] payload = encode(sequences);
+    inFlight.acquireUninterruptibly();
+    try {
+      return CompletableFuture.supplyAsync(() -> post(payload), executor)
+          .whenComplete((labels, e) -> inFlight.release());
+    } catch (RejectedExecutionException e) {
+      inFlight.release();
+      throw e;
+    }
+  }
+
+  static byte[] encode(List<List<SparseFeatureVector<Number>>> sequences) {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeInt(sequences.size());
+      for (List<SparseFeatureVector<Number>> sequence : sequences) {
+        out.writeInt(sequence.size());
+        for (SparseFeatureVector<Number> vector : sequence) {
+          final int[] ids = vector.ids();
+          Arrays.sort(ids);
+          out.writeInt(ids.length);
+          for (int id : ids) {
+            out.writeInt(id);
+            out.writeFloat(vector.getById(id).floatValue());
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  private Labels post(byte[] payload) {
+    final HttpPost post = new HttpPost(url);
+    post.setEntity(new ByteArrayEntity(payload, CONTENT_TYPE));
+    try (CloseableHttpResponse response = client.execute(post)) {
+      final HttpEntity entity = response.getEntity();
+      final byte[] body = (entity == null) ? new byte[0] : EntityUtils.toByteArray(entity);
+      if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+        throw new IOException("Boundary server at " + url + " returned " + response.getStatusLine());
+      }
+      log.trace("Sent {} bytes, received {} bytes", payload.length, body.length);
+      return new Labels(body);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public void close() {
+    executor.shutdown();
+    try {
+      client.close();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Activity and event labels of each token of a request, in the order the tokens were sent
+   */
+  public static class Labels {
+    private final byte[] labels;
+
+    Labels(byte[] body) {
+      final ByteBuffer buffer = ByteBuffer.wrap(body);
+      final int size = (body.length < 4) ? -1 : buffer.getInt();
+      if (size < 0 || body.length != 4 + 2 * size) {
+        throw new IllegalStateException("Malformed boundary server response of " + body.length + " bytes");
+      }
+      this.labels = Arrays.copyOfRange(body, 4, body.length);
+    }
+
+    public int size() {
+      return labels.length / 2;
+    }
+
+    public IoLabel activity(int token) {
+      return LABELS[labels[2 * token]];
+    }
+
+    public IoLabel event(int token) {
+      return LABELS[labels[2 * token + 1]];
+    }
+  }
+}
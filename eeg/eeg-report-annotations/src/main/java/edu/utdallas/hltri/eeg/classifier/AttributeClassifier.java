@@ -9,6 +9,7 @@ import edu.utdallas.hltri.eeg.annotation.label.ModalityLabel;
 import edu.utdallas.hltri.eeg.annotation.label.PolarityLabel;
 import edu.utdallas.hltri.eeg.annotators.SvmActiveLearner;
 import edu.utdallas.hltri.eeg.annotators.SvmAnnotator;
+import edu.utdallas.hltri.eeg.feature.BaseAttributeFeatures;
 import edu.utdallas.hltri.eeg.feature.FeatureUtils;
 import edu.utdallas.hltri.logging.Logger;
 import edu.utdallas.hltri.ml.Feature;
@@ -64,9 +65,13 @@ public class AttributeClassifier<A extends Annotation<A>> {
   }
 
   public static AttributeClassifier<Event> eventType(String annset) {
+    return eventType(new BaseAttributeFeatures(annset));
+  }
+
+  public static AttributeClassifier<Event> eventType(BaseAttributeFeatures base) {
     return new AttributeClassifier<>(
         ev -> EventTypeLabel.valueOf(wrapNull(ev, Event.type)),
-        FeatureUtils.attributeFeatureExtractors(annset),
+        FeatureUtils.attributeFeatureExtractors(base),
         attributeSetter(EventTypeLabel.values(), (a, s) -> a.set(Event.type, s)),
         Event.TYPE
     );
@@ -84,48 +89,80 @@ public class AttributeClassifier<A extends Annotation<A>> {
   }
 
   public static AttributeClassifier<EegActivity> morphology(String actAnnset) {
+    return morphology(new BaseAttributeFeatures(actAnnset));
+  }
+
+  public static AttributeClassifier<EegActivity> morphology(BaseAttributeFeatures base) {
     return activityAttributeSvm(EegActivity.Morphology::valueOf, EegActivity.Morphology.values(),
         EegActivity.morphology,
-        FeatureUtils.attributeFeatureExtractors(actAnnset));
+        FeatureUtils.attributeFeatureExtractors(base));
   }
 
   public static AttributeClassifier<EegActivity> band(String actAnnset) {
+    return band(new BaseAttributeFeatures(actAnnset));
+  }
+
+  public static AttributeClassifier<EegActivity> band(BaseAttributeFeatures base) {
     return activityAttributeSvm(EegActivity.Band::valueOf, EegActivity.Band.values(), EegActivity.band,
-        FeatureUtils.attributeFeatureExtractors(actAnnset, EegActivity.morphology));
+        FeatureUtils.attributeFeatureExtractors(base, EegActivity.morphology));
   }
 
   public static AttributeClassifier<EegActivity> hemisphere(String actAnnset) {
+    return hemisphere(new BaseAttributeFeatures(actAnnset));
+  }
+
+  public static AttributeClassifier<EegActivity> hemisphere(BaseAttributeFeatures base) {
     return activityAttributeSvm(EegActivity.Hemisphere::valueOf, EegActivity.Hemisphere.values(),
         EegActivity.hemisphere,
-        FeatureUtils.attributeFeatureExtractors(actAnnset, EegActivity.morphology, EegActivity.band));
+        FeatureUtils.attributeFeatureExtractors(base, EegActivity.morphology, EegActivity.band));
   }
 
   public static AttributeClassifier<EegActivity> dispersal(String actAnnset) {
+    return dispersal(new BaseAttributeFeatures(actAnnset));
+  }
+
+  public static AttributeClassifier<EegActivity> dispersal(BaseAttributeFeatures base) {
     return activityAttributeSvm(EegActivity.Dispersal::valueOf, EegActivity.Dispersal.values(),
         EegActivity.dispersal,
-        FeatureUtils.attributeFeatureExtractors(actAnnset, EegActivity.morphology, EegActivity.band, EegActivity.hemisphere));
+        FeatureUtils.attributeFeatureExtractors(base, EegActivity.morphology, EegActivity.band, EegActivity.hemisphere));
   }
 
   public static AttributeClassifier<EegActivity> recurrence(String actAnnset) {
+    return recurrence(new BaseAttributeFeatures(actAnnset));
+  }
+
+  public static AttributeClassifier<EegActivity> recurrence(BaseAttributeFeatures base) {
     return activityAttributeSvm(EegActivity.Recurrence::valueOf, EegActivity.Recurrence.values(),
         EegActivity.recurrence,
-        FeatureUtils.attributeFeatureExtractors(actAnnset, EegActivity.morphology, EegActivity.band));
+        FeatureUtils.attributeFeatureExtractors(base, EegActivity.morphology, EegActivity.band));
   }
 
   public static AttributeClassifier<EegActivity> magnitude(String actAnnset) {
+    return magnitude(new BaseAttributeFeatures(actAnnset));
+  }
+
+  public static AttributeClassifier<EegActivity> magnitude(BaseAttributeFeatures base) {
     return activityAttributeSvm(EegActivity.Magnitude::valueOf, EegActivity.Magnitude.values(),
         EegActivity.magnitude,
-        FeatureUtils.attributeFeatureExtractors(actAnnset, EegActivity.morphology, EegActivity.band));
+        FeatureUtils.attributeFeatureExtractors(base, EegActivity.morphology, EegActivity.band));
   }
 
   public static AttributeClassifier<EegActivity> background(String actAnnset) {
+    return background(new BaseAttributeFeatures(actAnnset));
+  }
+
+  public static AttributeClassifier<EegActivity> background(BaseAttributeFeatures base) {
     return activityAttributeSvm(EegActivity.In_Background::valueOf, EegActivity.In_Background.values(),
         EegActivity.in_background,
-        FeatureUtils.attributeFeatureExtractors(actAnnset, EegActivity.morphology, EegActivity.band,
+        FeatureUtils.attributeFeatureExtractors(base, EegActivity.morphology, EegActivity.band,
             EegActivity.hemisphere, EegActivity.dispersal, EegActivity.recurrence, EegActivity.magnitude));
   }
 
   public static AttributeClassifier<EegActivity> location(String location, String actAnnset) {
+    return location(location, new BaseAttributeFeatures(actAnnset));
+  }
+
+  public static AttributeClassifier<EegActivity> location(String location, BaseAttributeFeatures base) {
     return new AttributeClassifier<>(
         act -> {
           String loc = location;
@@ -137,7 +174,7 @@ public class AttributeClassifier<A extends Annotation<A>> {
           }
           return BinaryLabel.FALSE;
         },
-        FeatureUtils.attributeFeatureExtractors(actAnnset, EegActivity.morphology, EegActivity.hemisphere, EegActivity.dispersal),
+        FeatureUtils.attributeFeatureExtractors(base, EegActivity.morphology, EegActivity.hemisphere, EegActivity.dispersal),
         (activity, prediction) -> {
           if (prediction.intValue() == BinaryLabel.TRUE.asInt()) {
             activity.addLocation(location);
@@ -149,9 +186,14 @@ public class AttributeClassifier<A extends Annotation<A>> {
 
   public static <A extends Annotation<A>> AttributeClassifier<A> modality(
       String actAnnset, Attribute<? super A, String> scribeAttr, AnnotationType<A> annotationType) {
+    return modality(new BaseAttributeFeatures(actAnnset), scribeAttr, annotationType);
+  }
+
+  public static <A extends Annotation<A>> AttributeClassifier<A> modality(
+      BaseAttributeFeatures base, Attribute<? super A, String> scribeAttr, AnnotationType<A> annotationType) {
     return new AttributeClassifier<A>(
         (A act) -> ModalityLabel.valueOf(modalityString(act.get(scribeAttr)).toUpperCase()),
-        FeatureUtils.attributeFeatureExtractors(actAnnset),
+        FeatureUtils.attributeFeatureExtractors(base),
         attributeSetter(ModalityLabel.values(), (a, s) -> a.set(scribeAttr, s)),
         annotationType
     );
@@ -159,9 +201,14 @@ public class AttributeClassifier<A extends Annotation<A>> {
 
   public static <A extends Annotation<A>> AttributeClassifier<A> polarity(
       String actAnnset, Attribute<? super A, String> scribeAttr, AnnotationType<A> annotationType) {
+    return polarity(new BaseAttributeFeatures(actAnnset), scribeAttr, annotationType);
+  }
+
+  public static <A extends Annotation<A>> AttributeClassifier<A> polarity(
+      BaseAttributeFeatures base, Attribute<? super A, String> scribeAttr, AnnotationType<A> annotationType) {
     return new AttributeClassifier<A>(
         (A act) -> PolarityLabel.valueOf(polarityString(act.get(scribeAttr)).toUpperCase()),
-        FeatureUtils.attributeFeatureExtractors(actAnnset),
+        FeatureUtils.attributeFeatureExtractors(base),
         attributeSetter(PolarityLabel.values(), (a, s) -> a.set(scribeAttr, s)),
         annotationType
     );
@@ -175,7 +222,7 @@ public class AttributeClassifier<A extends Annotation<A>> {
     documents.forEach(doc -> {
       for (A ann : doc.get(annset, annotationType)) {
         fvs.add(new Pair<>(value2label.apply(ann),
-            vectorizer.vectorize(featureExtractors.stream().flatMap(fe -> fe.apply(ann)).map(Feature::toNumericFeature))));
+            vectorizer.vectorizeDoubles(featureExtractors.stream().flatMap(fe -> fe.apply(ann)).map(Feature::toNumericFeature))));
       }
     });
     iid.lock();
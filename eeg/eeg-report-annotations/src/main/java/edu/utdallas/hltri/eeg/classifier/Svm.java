@@ -8,6 +8,7 @@ import edu.utdallas.hltri.eeg.annotation.label.ModalityLabel;
 import edu.utdallas.hltri.eeg.annotation.label.PolarityLabel;
 import edu.utdallas.hltri.eeg.annotators.SvmActiveLearner;
 import edu.utdallas.hltri.eeg.annotators.SvmAnnotator;
+import edu.utdallas.hltri.eeg.feature.BaseAttributeFeatures;
 import edu.utdallas.hltri.logging.Logger;
 import edu.utdallas.hltri.ml.classify.LibLinearSvm;
 import edu.utdallas.hltri.ml.label.BinaryLabel;
@@ -37,7 +38,12 @@ public class Svm {
 //  private static final Parameter defaultBinaryParameters = new Parameter(SolverType.L2R_L2LOSS_SVC_DUAL, 1, 0.1);
 
   public static <T extends BaseDocument> SvmActiveLearner<Event, T> loadEventPolaritySvm(Path modelDir, String annset) {
-    return AttributeClassifier.modality(annset, Event.polarity, Event.TYPE).loadActiveLearner(
+    return loadEventPolaritySvm(modelDir, annset, new BaseAttributeFeatures(annset));
+  }
+
+  public static <T extends BaseDocument> SvmActiveLearner<Event, T> loadEventPolaritySvm(Path modelDir, String annset,
+                                                                                         BaseAttributeFeatures base) {
+    return AttributeClassifier.modality(base, Event.polarity, Event.TYPE).loadActiveLearner(
         modelDir.resolve("polarity.model"),
         annset,
         PolarityLabel.POSITIVE.numLabels(),
@@ -46,7 +52,12 @@ public class Svm {
   }
 
   public static <T extends BaseDocument> SvmActiveLearner<Event, T> loadEventModalitySvm(Path modelDir, String annset) {
-    return AttributeClassifier.modality(annset, Event.modality, Event.TYPE).loadActiveLearner(
+    return loadEventModalitySvm(modelDir, annset, new BaseAttributeFeatures(annset));
+  }
+
+  public static <T extends BaseDocument> SvmActiveLearner<Event, T> loadEventModalitySvm(Path modelDir, String annset,
+                                                                                         BaseAttributeFeatures base) {
+    return AttributeClassifier.modality(base, Event.modality, Event.TYPE).loadActiveLearner(
         modelDir.resolve("modality.model"),
         annset,
         ModalityLabel.FACTUAL.numLabels(),
@@ -65,55 +76,71 @@ public class Svm {
 //  }
 
   public static <T extends BaseDocument> SvmActiveLearner<Event, T> loadEventTypeSvm(Path modelPath, String conceptAnnset) {
+    return loadEventTypeSvm(modelPath, conceptAnnset, new BaseAttributeFeatures(conceptAnnset));
+  }
+
+  public static <T extends BaseDocument> SvmActiveLearner<Event, T> loadEventTypeSvm(Path modelPath, String conceptAnnset,
+                                                                                     BaseAttributeFeatures base) {
     final ImmutibleIntIdenitifer<String> iid = IntIdentifier.fromFile(modelPath.resolve("type.tsv").toString()).lock();
     System.out.println("id(in_span=and): " + iid.getID("in_span=and"));
     System.out.println("id(in_span='and'): " + iid.getID("in_span='and'"));
     System.out.println(iid.getItems());
-    return AttributeClassifier.eventType(conceptAnnset).loadActiveLearner(modelPath.resolve("type.model"), conceptAnnset,
+    return AttributeClassifier.eventType(base).loadActiveLearner(modelPath.resolve("type.model"), conceptAnnset,
         EventTypeLabel.TEST.numLabels(), IntIdentifier.fromFile(modelPath.resolve("type.tsv").toString()).lock());
   }
 
   public static <T extends BaseDocument> SvmActiveLearner<EegActivity, T> loadActivityAttributeSvm(Path modelDir,
                                                                                                    String attr,
                                                                                                    String annset) {
+    return loadActivityAttributeSvm(modelDir, attr, annset, new BaseAttributeFeatures(annset));
+  }
+
+  /**
+   * Loads the classifier of the given activity attribute, extracting base features through the given extractors
+   * shared by the other classifiers of its chain
+   */
+  public static <T extends BaseDocument> SvmActiveLearner<EegActivity, T> loadActivityAttributeSvm(Path modelDir,
+                                                                                                   String attr,
+                                                                                                   String annset,
+                                                                                                   BaseAttributeFeatures base) {
     switch (attr) {
-      case "morphology": return AttributeClassifier.morphology(annset).loadActiveLearner(
+      case "morphology": return AttributeClassifier.morphology(base).loadActiveLearner(
           modelDir.resolve("attr").resolve("morphology.model"),
           annset,
           EegActivity.Morphology.ABNORMAL.numLabels(),
           IntIdentifier.fromFile(modelDir.resolve("attr").resolve("morphology.tsv").toString()).lock()
       );
-      case "band": return AttributeClassifier.band(annset).loadActiveLearner(
+      case "band": return AttributeClassifier.band(base).loadActiveLearner(
           modelDir.resolve("attr").resolve("band.model"),
           annset,
           EegActivity.Band.NA.numLabels(),
           IntIdentifier.fromFile(modelDir.resolve("attr").resolve("band.tsv").toString()).lock()
       );
-      case "hemisphere": return AttributeClassifier.hemisphere(annset).loadActiveLearner(
+      case "hemisphere": return AttributeClassifier.hemisphere(base).loadActiveLearner(
           modelDir.resolve("attr").resolve("hemisphere.model"),
           annset,
           EegActivity.Hemisphere.NA.numLabels(),
           IntIdentifier.fromFile(modelDir.resolve("attr").resolve("hemisphere.tsv").toString()).lock()
       );
-      case "dispersal": return AttributeClassifier.dispersal(annset).loadActiveLearner(
+      case "dispersal": return AttributeClassifier.dispersal(base).loadActiveLearner(
           modelDir.resolve("attr").resolve("dispersal.model"),
           annset,
           EegActivity.Dispersal.NA.numLabels(),
           IntIdentifier.fromFile(modelDir.resolve("attr").resolve("dispersal.tsv").toString()).lock()
       );
-      case "recurrence": return AttributeClassifier.recurrence(annset).loadActiveLearner(
+      case "recurrence": return AttributeClassifier.recurrence(base).loadActiveLearner(
           modelDir.resolve("attr").resolve("recurrence.model"),
           annset,
           EegActivity.Recurrence.NONE.numLabels(),
           IntIdentifier.fromFile(modelDir.resolve("attr").resolve("recurrence.tsv").toString()).lock()
       );
-      case "magnitude": return AttributeClassifier.magnitude(annset).loadActiveLearner(
+      case "magnitude": return AttributeClassifier.magnitude(base).loadActiveLearner(
           modelDir.resolve("attr").resolve("magnitude.model"),
           annset,
           EegActivity.Magnitude.NORMAL.numLabels(),
           IntIdentifier.fromFile(modelDir.resolve("attr").resolve("magnitude.tsv").toString()).lock()
       );
-      case "in_background": return AttributeClassifier.background(annset).loadActiveLearner(
+      case "in_background": return AttributeClassifier.background(base).loadActiveLearner(
           modelDir.resolve("attr").resolve("in_background.model"),
           annset,
           EegActivity.In_Background.NO.numLabels(),
@@ -132,7 +159,14 @@ public class Svm {
   public static <T extends BaseDocument> SvmActiveLearner<EegActivity, T> loadLocationSvm(Path modelDir,
                                                                                           String location,
                                                                                           String annset) {
-    return AttributeClassifier.location(location, annset).loadActiveLearner(
+    return loadLocationSvm(modelDir, location, annset, new BaseAttributeFeatures(annset));
+  }
+
+  public static <T extends BaseDocument> SvmActiveLearner<EegActivity, T> loadLocationSvm(Path modelDir,
+                                                                                          String location,
+                                                                                          String annset,
+                                                                                          BaseAttributeFeatures base) {
+    return AttributeClassifier.location(location, base).loadActiveLearner(
         modelDir.resolve("attr").resolve("loc").resolve(location + ".model"),
         annset,
         2,
@@ -191,28 +225,30 @@ public class Svm {
     final List<SvmAnnotator<EegActivity, EegNote>> svmAnnotators = Lists.newArrayList();
     final List<String> names = new ArrayList<>();
     final List<AttributeClassifier<EegActivity>> asvms = new ArrayList<>();
+    // every classifier is trained on the same activities, so they share their base features
+    final BaseAttributeFeatures base = new BaseAttributeFeatures(annset);
     names.add("morphology");
-    asvms.add(AttributeClassifier.morphology(annset));
+    asvms.add(AttributeClassifier.morphology(base));
     names.add("band");
-    asvms.add(AttributeClassifier.band(annset));
+    asvms.add(AttributeClassifier.band(base));
     names.add("hemisphere");
-    asvms.add(AttributeClassifier.hemisphere(annset));
+    asvms.add(AttributeClassifier.hemisphere(base));
     names.add("dispersal");
-    asvms.add(AttributeClassifier.dispersal(annset));
+    asvms.add(AttributeClassifier.dispersal(base));
     names.add("recurrence");
-    asvms.add(AttributeClassifier.recurrence(annset));
+    asvms.add(AttributeClassifier.recurrence(base));
     names.add("magnitude");
-    asvms.add(AttributeClassifier.magnitude(annset));
+    asvms.add(AttributeClassifier.magnitude(base));
     names.add("in_background");
-    asvms.add(AttributeClassifier.background(annset));
+    asvms.add(AttributeClassifier.background(base));
     names.add("activity_modality");
-    asvms.add(AttributeClassifier.modality(annset, EegActivity.modality, EegActivity.TYPE));
+    asvms.add(AttributeClassifier.modality(base, EegActivity.modality, EegActivity.TYPE));
     names.add("activity_polarity");
-    asvms.add(AttributeClassifier.polarity(annset, EegActivity.polarity, EegActivity.TYPE));
+    asvms.add(AttributeClassifier.polarity(base, EegActivity.polarity, EegActivity.TYPE));
 
     for (EegActivity.Location location : EegActivity.Location.values()) {
       names.add(location.name());
-      AttributeClassifier.location(location.name(), annset);
+      AttributeClassifier.location(location.name(), base);
     }
 
     for (int i = 0; i < names.size(); i++) {
@@ -0,0 +1,50 @@
+package edu.utdallas.hltri.eeg.feature;
+
+import edu.utdallas.hltri.eeg.annotation.EegActivity;
+import edu.utdallas.hltri.ml.FeatureExtractor;
+import edu.utdallas.hltri.scribe.text.Document;
+import edu.utdallas.hltri.scribe.text.annotation.Annotation;
+import edu.utdallas.hltri.util.Unsafe;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Caching concept span, context and section feature extractors shared by one chain of attribute classifiers (e.g.,
+ * those of an EegConceptAnnotator), so that each annotation's base features are extracted once for the whole chain.
+ * The cached features live only as long as the chain holding this object.
+ */
+public class BaseAttributeFeatures {
+  private final List<CachingFeatureExtractor<EegActivity, ?>> extractors;
+
+  /**
+   * @param actAnnset annotation set of the context features
+   */
+  public BaseAttributeFeatures(String actAnnset) {
+    this.extractors = Collections.unmodifiableList(Arrays.asList(
+        new CachingFeatureExtractor<EegActivity, String>(new ConceptSpanFeatureExtractor<>()),
+        new CachingFeatureExtractor<EegActivity, Number>(new ContextFeatureExtractor<>(actAnnset)),
+        new CachingFeatureExtractor<EegActivity, String>(new SectionFeatureExtractor<>())
+    ));
+  }
+
+  /**
+   * @return the shared extractors, for annotations of any type
+   */
+  public <A extends Annotation<A>> List<FeatureExtractor<A, ?>> extractors() {
+    // the extractors only depend on the annotation, so may be shared by annotations of any type
+    return Unsafe.cast(extractors);
+  }
+
+  /**
+   * Discards the cached features of every annotation in the given document
+   */
+  public void invalidate(Document<?> document) {
+    extractors.forEach(extractor -> extractor.invalidate(document));
+  }
+
+  public void invalidateAll() {
+    extractors.forEach(CachingFeatureExtractor::invalidateAll);
+  }
+}
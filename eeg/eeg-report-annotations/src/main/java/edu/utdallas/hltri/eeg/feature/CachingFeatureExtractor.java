@@ -0,0 +1,72 @@
+package edu.utdallas.hltri.eeg.feature;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import edu.utdallas.hltri.ml.Feature;
+import edu.utdallas.hltri.ml.FeatureExtractor;
+import edu.utdallas.hltri.scribe.text.Document;
+import edu.utdallas.hltri.scribe.text.annotation.Annotation;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Memoizes the features another extractor extracts for each annotation, so that classifiers sharing an extractor
+ * (e.g. the chain of attribute classifiers, which all use the same context, section and concept span features)
+ * only extract them once per annotation.
+ *
+ * Features are cached per document, and within a document per GATE annotation (both by identity, since GATE ids
+ * are only unique within an annotation set). Only the most recently used documents are kept, and features are
+ * dropped once their document or annotation is garbage collected (e.g., when a deferred annotation set is evicted).
+ * Safe for concurrent use: two threads may occasionally extract the same annotation's features, but both see the
+ * same cached result afterwards.
+ *
+ * The delegate must only depend on the annotation and its document, which must not change while cached (features
+ * of predicted attributes, for instance, must not be cached).
+ */
+public class CachingFeatureExtractor<A extends Annotation<A>, O> implements FeatureExtractor<A, O> {
+  private static final int MAX_DOCUMENTS = 64;
+
+  private final FeatureExtractor<A, O> delegate;
+  private final Cache<Document<?>, ConcurrentMap<gate.Annotation, List<Feature<O>>>> cache =
+      CacheBuilder.newBuilder().weakKeys().maximumSize(MAX_DOCUMENTS).build();
+
+  public CachingFeatureExtractor(FeatureExtractor<A, O> delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public Stream<? extends Feature<O>> apply(A ann) {
+    final ConcurrentMap<gate.Annotation, List<Feature<O>>> features;
+    try {
+      features = cache.get(ann.getDocument(),
+          () -> CacheBuilder.newBuilder().weakKeys().<gate.Annotation, List<Feature<O>>>build().asMap());
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e);
+    }
+    List<Feature<O>> extracted = features.get(ann.asGate());
+    if (extracted == null) {
+      // extract outside of the map so concurrent extractions of other annotations are not blocked
+      extracted = delegate.apply(ann).collect(Collectors.<Feature<O>>toList());
+      final List<Feature<O>> previous = features.putIfAbsent(ann.asGate(), extracted);
+      if (previous != null) {
+        extracted = previous;
+      }
+    }
+    return extracted.stream();
+  }
+
+  /**
+   * Discards the cached features of every annotation in the given document
+   */
+  public void invalidate(Document<?> document) {
+    cache.invalidate(document);
+  }
+
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+}
@@ -56,23 +56,39 @@ public class FeatureUtils {
     };
   }
 
+  /**
+   * Attribute feature extractors: the concept span, context and section features, followed by the features of the
+   * given previously predicted attributes
+   */
   @SafeVarargs
   public static <A extends Annotation<A>> Collection<FeatureExtractor<A,?>> attributeFeatureExtractors(
       String actAnnset, Attribute<A, String>... otherAttributes) {
+    return attributeFeatureExtractors(Arrays.<FeatureExtractor<A,?>>asList(
+        new ConceptSpanFeatureExtractor<>(),
+        new ContextFeatureExtractor<>(actAnnset),
+        new SectionFeatureExtractor<>()
+    ), otherAttributes);
+  }
+
+  /**
+   * Attribute feature extractors: the concept span, context and section features shared by (and extracted once for)
+   * every attribute classifier of a chain, followed by the (uncached) features of the given previously predicted
+   * attributes
+   */
+  @SafeVarargs
+  public static <A extends Annotation<A>> Collection<FeatureExtractor<A,?>> attributeFeatureExtractors(
+      BaseAttributeFeatures base, Attribute<A, String>... otherAttributes) {
+    return attributeFeatureExtractors(base.<A>extractors(), otherAttributes);
+  }
+
+  @SafeVarargs
+  private static <A extends Annotation<A>> Collection<FeatureExtractor<A,?>> attributeFeatureExtractors(
+      List<FeatureExtractor<A,?>> base, Attribute<A, String>... otherAttributes) {
+    final List<FeatureExtractor<A,?>> extractors = new ArrayList<>(base);
     if (otherAttributes.length > 0) {
-      return Arrays.asList(
-          new ConceptSpanFeatureExtractor<>(),
-          new ContextFeatureExtractor<>(actAnnset),
-          new SectionFeatureExtractor<>(),
-          new OtherAttributeFeatureExtractor<>(otherAttributes)
-      );
-    } else {
-      return Arrays.asList(
-          new ConceptSpanFeatureExtractor<>(),
-          new ContextFeatureExtractor<>(actAnnset),
-          new SectionFeatureExtractor<>()
-      );
+      extractors.add(new OtherAttributeFeatureExtractor<>(otherAttributes));
     }
+    return extractors;
   }
 
   public static Collection<FeatureExtractor<EegActivity,?>> attributeFeatureExtractors(String actAnnset,
@@ -262,9 +262,10 @@ public class CrossValidation {
       final List<Document<EegNote>> test = split.getTest(i);
       log.trace("Training split {}...", i);
 //      Crf.trainActivityBoundaries(train, modelDir, goldAnnset);
-      final TfBoundaryAnnotator<BaseDocument> model = TfBoundaryAnnotator.loadFromConfig(predAnnset);
+      try (TfBoundaryAnnotator<BaseDocument> model = TfBoundaryAnnotator.loadFromConfig(predAnnset)) {
 //      final CrfsEventBoundaryAnnotator<EegNote> model = Crf.loadActivityBoundaryAnnotator(predAnnset, Paths.get(modelDir));
-      model.annotateAll(test);
+        model.annotateAll(test);
+      }
       final Map<String, F1EvaluationResult<EegActivity>> docResults =
           doBoundaryEval(test.stream(), goldAnnset, predAnnset, EegActivity.TYPE, Optional.empty(), partial);
       docResults.values().forEach(totalResult::incorporate);
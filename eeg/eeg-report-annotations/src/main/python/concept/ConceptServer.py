@@ -1,5 +1,6 @@
 # Let's get this party started!
 import sys
+import struct
 import falcon
 import numpy as np
 import os
@@ -13,6 +14,8 @@ from wsgiref import simple_server
 # transitions, which map to HTTP verbs.
 class Resource(object):
   def on_post(self, req, resp):
+    if req.content_type == BINARY_CONTENT_TYPE:
+      return self.on_post_binary(req, resp)
     lines = req.bounded_stream.read()
     # print('Post request: %s' % lines)
     data, _ = data_utils.read_raw_data(config, lines.split('\n'))
@@ -26,6 +29,22 @@ class Resource(object):
     resp.body = pstring
     resp.status = falcon.HTTP_200
 
+  def on_post_binary(self, req, resp):
+    """Handles batched requests from TfBoundaryClient, answering with the label indices of each token in order"""
+    lines, num_tokens = decode_binary(req.bounded_stream.read())
+    data, _ = data_utils.read_raw_data(config, lines)
+    print('Received %d sequences with %d tokens for prediction' % (len(data), num_tokens))
+    apredictions = self.predict(data, activityModel)
+    epredictions = self.predict(data, eventModel)
+    labels = bytearray(2 * num_tokens)
+    for token in xrange(num_tokens):
+      name = '#%d' % token
+      labels[2 * token] = data_utils.seq_label_idxs[apredictions.get(name, 'O')]
+      labels[2 * token + 1] = data_utils.seq_label_idxs[epredictions.get(name, 'O')]
+    resp.content_type = BINARY_CONTENT_TYPE
+    resp.data = struct.pack('>i', num_tokens) + bytes(labels)
+    resp.status = falcon.HTTP_200
+
   def predict(self, data, model):
     state = model.initial_state.eval()
     predictions = {}
@@ -53,6 +72,31 @@ class Resource(object):
     resp.body = ('\nTest Success!\n')
 
 
+BINARY_CONTENT_TYPE = 'application/x-hltri-boundary'
+
+
+def decode_binary(body):
+  """Decodes a TfBoundaryClient request into unlabeled vector strings named by token position:
+  int #sequences; per sequence int #tokens; per token int #features and (int id, float value) pairs (big-endian)"""
+  lines = []
+  token = 0
+  (num_sequences,) = struct.unpack_from('>i', body, 0)
+  pos = 4
+  for _ in xrange(num_sequences):
+    (num_tokens,) = struct.unpack_from('>i', body, pos)
+    pos += 4
+    for _ in xrange(num_tokens):
+      (num_features,) = struct.unpack_from('>i', body, pos)
+      pos += 4
+      features = struct.unpack_from('>' + 'if' * num_features, body, pos)
+      pos += 8 * num_features
+      entries = ['O'] + ['%d:%r' % (features[i], features[i + 1]) for i in xrange(0, len(features), 2)]
+      lines.append(' '.join(entries + ['#%d' % token]))
+      token += 1
+    lines.append('')
+  return lines, token
+
+
 # falcon.API instances are callable WSGI apps
 app = falcon.API()
 
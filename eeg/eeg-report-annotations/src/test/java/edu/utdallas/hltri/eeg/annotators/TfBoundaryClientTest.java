@@ -0,0 +1,179 @@
+package edu.utdallas.hltri.eeg.annotators;
+
+import com.sun.net.httpserver.HttpServer;
+import edu.utdallas.hltri.ml.label.IoLabel;
+import edu.utdallas.hltri.ml.vector.SparseFeatureVector;
+import edu.utdallas.hltri.ml.vector.SparseFeatureVectorizer;
+import edu.utdallas.hltri.util.IntIdentifier;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs TfBoundaryClient against an in-process stand-in for the boundary server, which labels each token by the
+ * parity of its first feature id (activity I if odd, event I if even)
+ */
+public class TfBoundaryClientTest {
+  private static final SparseFeatureVectorizer<Number> vectorizer = new SparseFeatureVectorizer<>(new IntIdentifier<>());
+
+  private HttpServer server;
+  private ExecutorService serverThreads;
+  private String url;
+
+  // every request the server received, decoded as sequences of tokens of (feature id, value) pairs
+  private final List<List<List<float[]>>> requests = Collections.synchronizedList(new ArrayList<>());
+  private final AtomicInteger running = new AtomicInteger();
+  private final AtomicInteger maxRunning = new AtomicInteger();
+  private volatile int maxDelayMillis = 0;
+
+  @Before
+  public void startServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/boundary", exchange -> {
+      maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+      try {
+        final List<List<float[]>> request = new ArrayList<>();
+        final ByteArrayOutputStream labels = new ByteArrayOutputStream();
+        int tokens = 0;
+        try (DataInputStream in = new DataInputStream(exchange.getRequestBody())) {
+          for (int s = in.readInt(); s > 0; s--) {
+            final List<float[]> sequence = new ArrayList<>();
+            for (int t = in.readInt(); t > 0; t--) {
+              final float[] features = new float[2 * in.readInt()];
+              for (int f = 0; f < features.length; f += 2) {
+                features[f] = in.readInt();
+                features[f + 1] = in.readFloat();
+              }
+              sequence.add(features);
+              final boolean odd = features.length > 0 && ((int) features[0]) % 2 == 1;
+              labels.write((odd ? IoLabel.I : IoLabel.O).ordinal());
+              labels.write((odd ? IoLabel.O : IoLabel.I).ordinal());
+              tokens++;
+            }
+            request.add(sequence);
+          }
+        }
+        requests.add(request);
+        if (maxDelayMillis > 0) {
+          Thread.sleep(ThreadLocalRandom.current().nextInt(maxDelayMillis));
+        }
+
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(body)) {
+          out.writeInt(tokens);
+          out.write(labels.toByteArray());
+        }
+        exchange.sendResponseHeaders(200, body.size());
+        try (OutputStream out = exchange.getResponseBody()) {
+          body.writeTo(out);
+        }
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      } finally {
+        running.decrementAndGet();
+      }
+    });
+    serverThreads = Executors.newFixedThreadPool(16);
+    server.setExecutor(serverThreads);
+    server.start();
+    url = "http://localhost:" + server.getAddress().getPort() + "/boundary";
+  }
+
+  @After
+  public void stopServer() {
+    server.stop(0);
+    serverThreads.shutdownNow();
+  }
+
+  private static SparseFeatureVector<Number> token(Number... idValuePairs) {
+    final SparseFeatureVector<Number> vector = vectorizer.emptyVector((Integer) idValuePairs[0], idValuePairs[1]);
+    for (int i = 2; i < idValuePairs.length; i += 2) {
+      vector.addById((Integer) idValuePairs[i], idValuePairs[i + 1]);
+    }
+    return vector;
+  }
+
+  @Test
+  public void testEncodingAndLabels() {
+    final List<List<SparseFeatureVector<Number>>> sequences = Arrays.asList(
+        Arrays.asList(token(8, 1.5, 3, 2.0), token(5, 0.25)),
+        Collections.singletonList(token(2, 1)));
+    final TfBoundaryClient.Labels labels;
+    try (TfBoundaryClient client = new TfBoundaryClient(url, 1)) {
+      labels = client.submit(sequences).join();
+    }
+
+    assertEquals(1, requests.size());
+    final List<List<float[]>> request = requests.get(0);
+    assertEquals(2, request.size());
+    assertEquals(2, request.get(0).size());
+    assertEquals(1, request.get(1).size());
+    // feature ids are sent in increasing order
+    assertTrue(Arrays.equals(new float[]{3, 2.0f, 8, 1.5f}, request.get(0).get(0)));
+    assertTrue(Arrays.equals(new float[]{5, 0.25f}, request.get(0).get(1)));
+    assertTrue(Arrays.equals(new float[]{2, 1f}, request.get(1).get(0)));
+
+    assertEquals(3, labels.size());
+    assertEquals(IoLabel.I, labels.activity(0));
+    assertEquals(IoLabel.O, labels.event(0));
+    assertEquals(IoLabel.I, labels.activity(1));
+    assertEquals(IoLabel.O, labels.event(1));
+    assertEquals(IoLabel.O, labels.activity(2));
+    assertEquals(IoLabel.I, labels.event(2));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testMalformedLabels() {
+    new TfBoundaryClient.Labels(new byte[]{0, 0, 0, 2, 1, 0});
+  }
+
+  @Test
+  public void testBatchOrderAndMaxInFlight() {
+    final int maxInFlight = 3;
+    final int batches = 40;
+    maxDelayMillis = 30;
+    final List<CompletableFuture<TfBoundaryClient.Labels>> futures = new ArrayList<>();
+    try (TfBoundaryClient client = new TfBoundaryClient(url, maxInFlight)) {
+      for (int b = 0; b < batches; b++) {
+        // batch b holds b + 1 tokens; token t has feature id b + t
+        final List<SparseFeatureVector<Number>> sequence = new ArrayList<>();
+        for (int t = 0; t <= b; t++) {
+          sequence.add(token(b + t, 1));
+        }
+        futures.add(client.submit(Collections.singletonList(sequence)));
+      }
+      for (int b = 0; b < batches; b++) {
+        final TfBoundaryClient.Labels labels = futures.get(b).join();
+        assertEquals(b + 1, labels.size());
+        for (int t = 0; t <= b; t++) {
+          final IoLabel expected = ((b + t) % 2 == 1) ? IoLabel.I : IoLabel.O;
+          assertEquals(expected, labels.activity(t));
+          assertTrue(labels.event(t) != expected);
+        }
+      }
+    }
+
+    assertEquals(batches, requests.size());
+    assertTrue("At most " + maxInFlight + " requests should run at once, but " + maxRunning.get() + " did",
+        maxRunning.get() <= maxInFlight);
+  }
+}
@@ -24,6 +24,16 @@ public class DenseFeatureVectorImpl<K> implements DenseFeatureVector<K> {
     this.featureIdentifier = featureIdentifier;
   }
 
+  /**
+   * For vectors without a feature identifier, which must override name lookups
+   */
+  DenseFeatureVectorImpl(String[] names, K[] values, int size) {
+    this.size = size;
+    this.names = names;
+    this.values = values;
+    this.featureIdentifier = null;
+  }
+
   @Override
   public void setById(int id, K value) {
     values[id] = value;
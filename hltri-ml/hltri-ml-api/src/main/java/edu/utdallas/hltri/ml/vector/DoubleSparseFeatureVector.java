@@ -0,0 +1,255 @@
+package edu.utdallas.hltri.ml.vector;
+
+import edu.utdallas.hltri.util.IntIdentifier;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+import java.util.function.ObjIntConsumer;
+import java.util.stream.Collectors;
+
+/**
+ * SparseFeatureVector of primitive doubles, held in parallel arrays of ids (sorted and distinct) and values, so
+ * numeric values are never boxed and ids never need sorting by consumers.
+ *
+ * Vectors are built with a {@link Builder}. A conversion of the vector for a particular library (e.g. LibLinear's
+ * Feature[]) may be cached on the vector through {@link #export(Class, Function)}, and is discarded if the vector is
+ * later modified.
+ */
+public class DoubleSparseFeatureVector implements SparseFeatureVector<Number> {
+  private final IntIdentifier<String> featureIdentifier;
+  private int[] ids;
+  private double[] values;
+  private volatile Object export;
+
+  private DoubleSparseFeatureVector(IntIdentifier<String> featureIdentifier, int[] ids, double[] values) {
+    this.featureIdentifier = featureIdentifier;
+    this.ids = ids;
+    this.values = values;
+  }
+
+  public static Builder builder(IntIdentifier<String> featureIdentifier) {
+    return new Builder(featureIdentifier);
+  }
+
+  /**
+   * @return number of set features
+   */
+  public int nnz() {
+    return ids.length;
+  }
+
+  /**
+   * @return id of the i-th set feature, in increasing order of id
+   */
+  public int idAt(int i) {
+    return ids[i];
+  }
+
+  /**
+   * @return value of the i-th set feature, in increasing order of id
+   */
+  public double valueAt(int i) {
+    return values[i];
+  }
+
+  /**
+   * @return the value of the feature with the given id, or 0 if not set
+   */
+  public double get(int id) {
+    final int i = Arrays.binarySearch(ids, id);
+    return (i < 0) ? 0 : values[i];
+  }
+
+  @Override
+  public Number getById(int id) {
+    final int i = Arrays.binarySearch(ids, id);
+    return (i < 0) ? null : values[i];
+  }
+
+  @Override
+  public Number getByName(String name) {
+    assert featureIdentifier.getID(name) > -1;
+    return getById(featureIdentifier.getID(name));
+  }
+
+  /**
+   * @return a copy of the ids of the set features, in increasing order
+   */
+  @Override
+  public int[] ids() {
+    return ids.clone();
+  }
+
+  @Override
+  public String[] names() {
+    return Arrays.stream(ids).mapToObj(featureIdentifier::get).toArray(String[]::new);
+  }
+
+  @Override
+  public int size() {
+    assert featureIdentifier.isLocked() : "Call to FeatureVector.size but this FeatureVector's featureIdentifier is not locked.";
+    return featureIdentifier.size();
+  }
+
+  @Override
+  public void addById(int id, Number value) {
+    final int i = Arrays.binarySearch(ids, id);
+    if (i >= 0) {
+      values[i] = value.doubleValue();
+    } else {
+      final int at = -(i + 1);
+      final int[] newIds = new int[ids.length + 1];
+      final double[] newValues = new double[values.length + 1];
+      System.arraycopy(ids, 0, newIds, 0, at);
+      System.arraycopy(values, 0, newValues, 0, at);
+      newIds[at] = id;
+      newValues[at] = value.doubleValue();
+      System.arraycopy(ids, at, newIds, at + 1, ids.length - at);
+      System.arraycopy(values, at, newValues, at + 1, values.length - at);
+      ids = newIds;
+      values = newValues;
+    }
+    export = null;
+  }
+
+  @Override
+  public void addByName(String name, Number value) {
+    addById(featureIdentifier.getIDOrAdd(name), value);
+  }
+
+  /**
+   * Returns this vector converted by the given function, converting it only if the last conversion cached on this
+   * vector was not of the given type
+   * @param type type of the conversion
+   * @param converter converts this vector
+   * @param <T> type of the conversion
+   * @return the (possibly cached) conversion of this vector
+   */
+  public <T> T export(Class<T> type, Function<? super DoubleSparseFeatureVector, ? extends T> converter) {
+    final Object cached = export;
+    if (type.isInstance(cached)) {
+      return type.cast(cached);
+    }
+    final T converted = converter.apply(this);
+    export = converted;
+    return converted;
+  }
+
+  @Override
+  public Iterator<Number> iterator() {
+    return new Iterator<Number>() {
+      private int i = 0;
+
+      @Override
+      public boolean hasNext() {
+        return i < values.length;
+      }
+
+      @Override
+      public Number next() {
+        if (i >= values.length) {
+          throw new NoSuchElementException();
+        }
+        return values[i++];
+      }
+    };
+  }
+
+  @Override
+  public void forEachWithId(ObjIntConsumer<? super Number> action) {
+    for (int i = 0; i < ids.length; i++) {
+      action.accept(values[i], ids[i]);
+    }
+  }
+
+  @Override
+  public DenseFeatureVector<Number> toDense(Number emptyValue) {
+    final int size = featureIdentifier.size();
+    final String[] names = new String[ size ];
+    final Number[] dense = new Number[ size ];
+    Arrays.fill(dense, emptyValue);
+    for (int i = 0; i < size; i++) {
+      names[i] = featureIdentifier.get(i);
+    }
+    for (int i = 0; i < ids.length; i++) {
+      dense[ids[i]] = values[i];
+    }
+    return new DenseFeatureVectorImpl<>(names, dense, featureIdentifier);
+  }
+
+  @Override
+  public String toString() {
+    return "Dimension: " + featureIdentifier.size() + ". Set features: [" +
+        Arrays.stream(ids).mapToObj(i -> i + "").collect(Collectors.joining(", ")) +
+        "]";
+  }
+
+  /**
+   * Collects (id, value) pairs in any order; when an id is added more than once, its last value is kept
+   */
+  public static class Builder {
+    private final IntIdentifier<String> featureIdentifier;
+    private int[] ids = new int[16];
+    private double[] values = new double[16];
+    private int size = 0;
+
+    private Builder(IntIdentifier<String> featureIdentifier) {
+      this.featureIdentifier = featureIdentifier;
+    }
+
+    public Builder add(int id, double value) {
+      if (size == ids.length) {
+        ids = Arrays.copyOf(ids, size * 2);
+        values = Arrays.copyOf(values, size * 2);
+      }
+      ids[size] = id;
+      values[size] = value;
+      size++;
+      return this;
+    }
+
+    /**
+     * Adds the feature with the given name, interning it unless the feature identifier is locked (in which case
+     * unknown features are ignored)
+     */
+    public Builder add(String name, double value) {
+      final int id = featureIdentifier.isLocked() ? featureIdentifier.getID(name) : featureIdentifier.getIDOrAdd(name);
+      if (id > -1) {
+        add(id, value);
+      }
+      return this;
+    }
+
+    public int size() {
+      return size;
+    }
+
+    public DoubleSparseFeatureVector build() {
+      // Sort by id, then by insertion order, by packing both into a long
+      final long[] order = new long[size];
+      for (int i = 0; i < size; i++) {
+        order[i] = ((long) ids[i] << 32) | i;
+      }
+      Arrays.sort(order);
+      int n = 0;
+      final int[] sortedIds = new int[size];
+      final double[] sortedValues = new double[size];
+      for (int i = 0; i < size; i++) {
+        final int id = (int) (order[i] >>> 32);
+        final double value = values[(int) order[i]];
+        if (n > 0 && sortedIds[n - 1] == id) {
+          sortedValues[n - 1] = value;
+        } else {
+          sortedIds[n] = id;
+          sortedValues[n] = value;
+          n++;
+        }
+      }
+      return new DoubleSparseFeatureVector(featureIdentifier,
+          (n == size) ? sortedIds : Arrays.copyOf(sortedIds, n),
+          (n == size) ? sortedValues : Arrays.copyOf(sortedValues, n));
+    }
+  }
+}
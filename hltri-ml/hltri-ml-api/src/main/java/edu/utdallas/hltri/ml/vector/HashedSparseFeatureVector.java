@@ -0,0 +1,148 @@
+package edu.utdallas.hltri.ml.vector;
+
+import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
+import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.function.ObjIntConsumer;
+import java.util.stream.Collectors;
+
+/**
+ * SparseFeatureVector produced by a {@link HashingFeatureVectorizer}: ids are hashed dimensions rather than
+ * interned feature ids, so names can only be recovered through the vectorizer's debug dictionary; other dimensions
+ * are named by placeholders (see {@link HashingFeatureVectorizer#dimensionName(int)}).
+ */
+class HashedSparseFeatureVector implements SparseFeatureVector<Number> {
+  private final HashingFeatureVectorizer vectorizer;
+  private final Int2DoubleOpenHashMap map = new Int2DoubleOpenHashMap();
+
+  HashedSparseFeatureVector(final HashingFeatureVectorizer vectorizer) {
+    this.vectorizer = vectorizer;
+  }
+
+  void add(String name, double value) {
+    vectorizer.add(this, name, value);
+  }
+
+  void addToId(int id, double value) {
+    map.addTo(id, value);
+  }
+
+  @Override
+  public Number getById(int id) {
+    return map.containsKey(id) ? map.get(id) : null;
+  }
+
+  @Override
+  public Number getByName(String name) {
+    final int placeholder = vectorizer.placeholderIndex(name);
+    if (placeholder >= 0) {
+      return getById(placeholder);
+    }
+    final int id = vectorizer.index(name);
+    return map.containsKey(id) ? vectorizer.sign(name) * map.get(id) : null;
+  }
+
+  @Override
+  public int[] ids() {
+    return map.keySet().toIntArray();
+  }
+
+  /**
+   * @return the name of each set dimension (see {@link HashingFeatureVectorizer#dimensionName(int)}), in the order
+   * of {@link #ids()}; {@link #getByName(String)} resolves each of them
+   */
+  @Override
+  public String[] names() {
+    return Arrays.stream(ids()).mapToObj(vectorizer::dimensionName).toArray(String[]::new);
+  }
+
+  @Override
+  public int size() {
+    return vectorizer.dimension();
+  }
+
+  @Override
+  public void addById(int id, Number value) {
+    map.put(id, value.doubleValue());
+  }
+
+  @Override
+  public void addByName(String name, Number value) {
+    add(name, value.doubleValue());
+  }
+
+  @Override
+  public Iterator<Number> iterator() {
+    return map.values().stream().map(Number.class::cast).iterator();
+  }
+
+  @Override
+  public void forEachWithId(ObjIntConsumer<? super Number> action) {
+    for (Int2DoubleMap.Entry entry : map.int2DoubleEntrySet()) {
+      action.accept(entry.getDoubleValue(), entry.getIntKey());
+    }
+  }
+
+  /**
+   * @return a dense vector with one value for every hashed dimension
+   */
+  @Override
+  public DenseFeatureVector<Number> toDense(Number emptyValue) {
+    final int size = vectorizer.dimension();
+    final Number[] values = new Number[ size ];
+    Arrays.fill(values, emptyValue);
+    for (Int2DoubleMap.Entry entry : map.int2DoubleEntrySet()) {
+      values[entry.getIntKey()] = entry.getDoubleValue();
+    }
+    return new Dense(vectorizer, values);
+  }
+
+  /**
+   * Dense vector over the hashed dimensions, resolving names the same way as its sparse counterpart
+   */
+  private static class Dense extends DenseFeatureVectorImpl<Number> {
+    private final HashingFeatureVectorizer vectorizer;
+
+    Dense(HashingFeatureVectorizer vectorizer, Number[] values) {
+      super(null, values, vectorizer.dimension());
+      this.vectorizer = vectorizer;
+    }
+
+    @Override
+    public Number getByName(String name) {
+      final int placeholder = vectorizer.placeholderIndex(name);
+      if (placeholder >= 0) {
+        return values[placeholder];
+      }
+      return vectorizer.sign(name) * values[vectorizer.index(name)].doubleValue();
+    }
+
+    @Override
+    public void setByName(String name, Number value) {
+      final int placeholder = vectorizer.placeholderIndex(name);
+      if (placeholder >= 0) {
+        values[placeholder] = value;
+      } else {
+        values[vectorizer.index(name)] = vectorizer.sign(name) * value.doubleValue();
+      }
+    }
+
+    @Override
+    public String[] names() {
+      final String[] names = new String[ size ];
+      for (int i = 0; i < size; i++) {
+        names[i] = vectorizer.dimensionName(i);
+      }
+      return names;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "Dimension: " + vectorizer.dimension() + " (hashed). Set features: [" +
+        Arrays.stream(ids()).mapToObj(i -> i + "").collect(Collectors.joining(", ")) +
+        "]";
+  }
+}
@@ -0,0 +1,224 @@
+package edu.utdallas.hltri.ml.vector;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import edu.utdallas.hltri.logging.Logger;
+import edu.utdallas.hltri.ml.Feature;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Feature vectorizer which hashes feature names into a fixed number of dimensions (the "hashing trick") rather than
+ * interning them in an {@link edu.utdallas.hltri.util.IntIdentifier}, so it keeps no shared state, takes no locks,
+ * and may be used by any number of threads at once.
+ *
+ * Each name is hashed with murmur3 to select the feature's dimension, and with an independently seeded murmur3 to
+ * select its sign, so that the values of colliding features tend to cancel out rather than accumulate. Values of
+ * features hashed to the same dimension are summed.
+ *
+ * Collision statistics and a debug dictionary (from each dimension back to the names hashed into it) are only
+ * kept when requested, as they cost memory and (for the dictionary) contention.
+ */
+public class HashingFeatureVectorizer implements SparseVectorizer<Number> {
+  private static final Logger log = Logger.get(HashingFeatureVectorizer.class);
+
+  private static final HashFunction INDEX_HASH = Hashing.murmur3_32(0x4c54_5249);
+  private static final HashFunction SIGN_HASH = Hashing.murmur3_32(0x5349_474e);
+  private static final HashFunction FINGERPRINT_HASH = Hashing.murmur3_32(0x4e4c_5021);
+
+  // Names given to dimensions whose feature name is unknown
+  private static final String PLACEHOLDER_PREFIX = "hashed#";
+
+  private final int dimension;
+
+  // Fingerprint of the first feature hashed into each dimension, if keeping collision statistics
+  private final AtomicLongArray owners;
+  private final LongAdder lookups = new LongAdder();
+  private final LongAdder collisions = new LongAdder();
+
+  // Names hashed into each dimension, if keeping a debug dictionary
+  private final Map<Integer, Set<String>> dictionary;
+
+  public HashingFeatureVectorizer(int dimension) {
+    this(dimension, false, false);
+  }
+
+  /**
+   * @param dimension number of dimensions to hash feature names into
+   * @param collisionStats whether to count how often features collide (8 bytes of memory per dimension)
+   * @param debugDictionary whether to remember the names hashed into each dimension
+   */
+  public HashingFeatureVectorizer(int dimension, boolean collisionStats, boolean debugDictionary) {
+    if (dimension <= 0) {
+      throw new IllegalArgumentException("Invalid dimension: " + dimension);
+    }
+    this.dimension = dimension;
+    this.owners = collisionStats ? new AtomicLongArray(dimension) : null;
+    this.dictionary = debugDictionary ? new ConcurrentHashMap<>() : null;
+    log.debug("Hashing features into {} dimensions", dimension);
+  }
+
+  public int dimension() {
+    return dimension;
+  }
+
+  /**
+   * @return the dimension the given feature name is hashed to
+   */
+  public int index(String name) {
+    return (INDEX_HASH.hashUnencodedChars(name).asInt() & 0x7fffffff) % dimension;
+  }
+
+  /**
+   * @return the sign (+1 or -1) applied to the values of the given feature name
+   */
+  public double sign(String name) {
+    return (SIGN_HASH.hashUnencodedChars(name).asInt() < 0) ? -1.0 : 1.0;
+  }
+
+  @Override
+  public SparseFeatureVector<Number> vectorize(Stream<Feature<Number>> features) {
+    final HashedSparseFeatureVector sfv = new HashedSparseFeatureVector(this);
+    features.flatMap(Feature::stream).forEach(f -> sfv.add(f.name(), ((Number) f.value()).doubleValue()));
+    return sfv;
+  }
+
+  /**
+   * Adds the given value of the given feature to the given vector, recording it for collision statistics and the
+   * debug dictionary if kept
+   */
+  void add(HashedSparseFeatureVector sfv, String name, double value) {
+    final int hash = INDEX_HASH.hashUnencodedChars(name).asInt();
+    final int index = (hash & 0x7fffffff) % dimension;
+    sfv.addToId(index, sign(name) * value);
+    if (owners != null) {
+      record(index, ((long) FINGERPRINT_HASH.hashUnencodedChars(name).asInt() << 32) | (hash & 0xffffffffL));
+    }
+    if (dictionary != null) {
+      dictionary.computeIfAbsent(index, i -> ConcurrentHashMap.newKeySet()).add(name);
+    }
+  }
+
+  private void record(int index, long fingerprint) {
+    lookups.increment();
+    final long owner = owners.get(index);
+    if (owner == 0) {
+      if (owners.compareAndSet(index, 0, fingerprint) || owners.get(index) == fingerprint) {
+        return;
+      }
+      collisions.increment();
+    } else if (owner != fingerprint) {
+      collisions.increment();
+    }
+  }
+
+  /**
+   * @return number of features hashed since creation (or the last reset), if keeping collision statistics
+   */
+  public long getLookupCount() {
+    checkCollisionStats();
+    return lookups.sum();
+  }
+
+  /**
+   * @return number of features hashed into a dimension already claimed by a different feature name
+   */
+  public long getCollisionCount() {
+    checkCollisionStats();
+    return collisions.sum();
+  }
+
+  /**
+   * @return number of dimensions any feature has been hashed into
+   */
+  public int getOccupiedDimensions() {
+    checkCollisionStats();
+    int occupied = 0;
+    for (int i = 0; i < dimension; i++) {
+      if (owners.get(i) != 0) {
+        occupied++;
+      }
+    }
+    return occupied;
+  }
+
+  /**
+   * @return fraction of hashed features which collided with a different feature name
+   */
+  public double getCollisionRate() {
+    final long n = getLookupCount();
+    return (n == 0) ? 0 : (double) getCollisionCount() / n;
+  }
+
+  public void resetCollisionStats() {
+    checkCollisionStats();
+    for (int i = 0; i < dimension; i++) {
+      owners.set(i, 0);
+    }
+    lookups.reset();
+    collisions.reset();
+  }
+
+  private void checkCollisionStats() {
+    if (owners == null) {
+      throw new IllegalStateException("HashingFeatureVectorizer was created without collision statistics");
+    }
+  }
+
+  public boolean hasDebugDictionary() {
+    return dictionary != null;
+  }
+
+  /**
+   * @return the names of every feature hashed into the given dimension, if keeping a debug dictionary
+   */
+  public Set<String> names(int index) {
+    if (dictionary == null) {
+      throw new IllegalStateException("HashingFeatureVectorizer was created without a debug dictionary");
+    }
+    final Set<String> names = dictionary.get(index);
+    return (names == null) ? Collections.emptySet() : Collections.unmodifiableSet(names);
+  }
+
+  /**
+   * @return a name for the given dimension which hashed vectors resolve back to it: the name of the only feature
+   * hashed into it if keeping a debug dictionary, or a placeholder ("hashed#" followed by the dimension) if there is
+   * no dictionary or the dimension holds a collision
+   */
+  public String dimensionName(int index) {
+    if (dictionary != null) {
+      final Set<String> names = dictionary.get(index);
+      if (names != null && names.size() == 1) {
+        return names.iterator().next();
+      }
+    }
+    return PLACEHOLDER_PREFIX + index;
+  }
+
+  /**
+   * @return the dimension named by the given placeholder (see {@link #dimensionName(int)}), or -1 if the name is not
+   * a placeholder
+   */
+  int placeholderIndex(String name) {
+    if (!name.startsWith(PLACEHOLDER_PREFIX)) {
+      return -1;
+    }
+    try {
+      final int index = Integer.parseInt(name.substring(PLACEHOLDER_PREFIX.length()));
+      return (index >= 0 && index < dimension) ? index : -1;
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  public void logCollisionStats() {
+    log.info("Hashed {} features into {} of {} dimensions with {} collisions ({})", getLookupCount(),
+        getOccupiedDimensions(), dimension, getCollisionCount(), String.format("%.2f%%", 100 * getCollisionRate()));
+  }
+}
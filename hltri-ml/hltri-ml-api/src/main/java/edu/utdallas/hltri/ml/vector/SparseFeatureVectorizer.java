@@ -9,7 +9,7 @@ import edu.utdallas.hltri.util.IntIdentifier;
 /**
  * Created by ramon on 10/20/2016.
  */
-public class SparseFeatureVectorizer<K> implements FeatureVectorizer<K> {
+public class SparseFeatureVectorizer<K> implements SparseVectorizer<K> {
   private static final Logger log = Logger.get(SparseFeatureVectorizer.class);
   private final IntIdentifier<String> featureIndentifier;
 
@@ -29,6 +29,18 @@ public class SparseFeatureVectorizer<K> implements FeatureVectorizer<K> {
     return sfv;
   }
 
+  /**
+   * Vectorizes the given numeric features without boxing their values
+   * @param features numeric features
+   * @return a DoubleSparseFeatureVector over this vectorizer's feature identifier
+   */
+  public DoubleSparseFeatureVector vectorizeDoubles(Stream<? extends Feature<? extends Number>> features) {
+    final DoubleSparseFeatureVector.Builder builder = DoubleSparseFeatureVector.builder(featureIndentifier);
+    features.flatMap(Feature::stream)
+        .forEach(f -> builder.add(f.name(), ((Number) f.value()).doubleValue()));
+    return builder.build();
+  }
+
   public SparseFeatureVector<K> emptyVector(int id, K value) {
     final SparseFeatureVector<K> sfv = new SparseFeatureVectorImpl<>(featureIndentifier);
     sfv.addById(id, value);
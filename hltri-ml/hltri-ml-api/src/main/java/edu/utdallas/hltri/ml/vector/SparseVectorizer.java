@@ -0,0 +1,14 @@
+package edu.utdallas.hltri.ml.vector;
+
+import edu.utdallas.hltri.ml.Feature;
+
+import java.util.stream.Stream;
+
+/**
+ * Feature vectorizer producing sparse vectors, whether their ids are interned
+ * ({@link SparseFeatureVectorizer}) or hashed ({@link HashingFeatureVectorizer})
+ */
+public interface SparseVectorizer<K> extends FeatureVectorizer<K> {
+  @Override
+  SparseFeatureVector<K> vectorize(Stream<Feature<K>> features);
+}
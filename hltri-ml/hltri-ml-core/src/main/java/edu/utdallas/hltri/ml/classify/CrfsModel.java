@@ -0,0 +1,302 @@
+package edu.utdallas.hltri.ml.classify;
+
+import edu.utdallas.hltri.logging.Logger;
+import edu.utdallas.hltri.struct.Pair;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Linear-chain CRF read from a model file trained by CRF Suite (crf1d, "lCRF"/"FOMC"), which tags sequences in
+ * process with Viterbi decoding and forward-backward marginals, as "crfsuite tag -i" does.
+ *
+ * Models are immutable once loaded; each thread tags with its own reusable buffers, so one model may be shared by
+ * any number of threads.
+ */
+public class CrfsModel {
+  private static final Logger log = Logger.get(CrfsModel.class);
+
+  private static final int FT_STATE = 0;
+  private static final int FT_TRANS = 1;
+
+  private final String[] labels;
+  private final Map<String, Integer> attributes;
+  private final double[] transitions;    // [previous label * L + label]
+  private final double[] expTransitions;
+  private final int[] attributeOffsets;  // state features of attribute a are in [offsets[a], offsets[a + 1])
+  private final int[] stateLabels;
+  private final double[] stateWeights;
+
+  private final ThreadLocal<Buffers> buffers = ThreadLocal.withInitial(Buffers::new);
+
+  private CrfsModel(ByteBuffer model) {
+    model.order(ByteOrder.LITTLE_ENDIAN);
+    if (!"lCRF".equals(chunkId(model, 0)) || !"FOMC".equals(chunkId(model, 8))) {
+      throw new IllegalArgumentException("Not a CRF Suite linear-chain model");
+    }
+    final int numFeatures = model.getInt(16);
+    final int numLabels = model.getInt(20);
+    final int numAttributes = model.getInt(24);
+    final int featuresOffset = model.getInt(28);
+    final int labelsOffset = model.getInt(32);
+    final int attributesOffset = model.getInt(36);
+
+    this.labels = readQuarks(model, labelsOffset, numLabels);
+    final String[] attributeNames = readQuarks(model, attributesOffset, numAttributes);
+    this.attributes = new HashMap<>(numAttributes * 2);
+    for (int i = 0; i < numAttributes; i++) {
+      attributes.put(attributeNames[i], i);
+    }
+
+    // Features chunk: "FEAT", size, count, then (type, source, destination, weight) for each feature
+    if (!"FEAT".equals(chunkId(model, featuresOffset))) {
+      throw new IllegalArgumentException("Missing feature chunk in CRF Suite model");
+    }
+    this.transitions = new double[numLabels * numLabels];
+    this.attributeOffsets = new int[numAttributes + 1];
+    final int first = featuresOffset + 12;
+    for (int i = 0, p = first; i < numFeatures; i++, p += 20) {
+      if (model.getInt(p) == FT_STATE) {
+        attributeOffsets[model.getInt(p + 4) + 1]++;
+      }
+    }
+    for (int a = 0; a < numAttributes; a++) {
+      attributeOffsets[a + 1] += attributeOffsets[a];
+    }
+    this.stateLabels = new int[attributeOffsets[numAttributes]];
+    this.stateWeights = new double[attributeOffsets[numAttributes]];
+    final int[] next = Arrays.copyOf(attributeOffsets, numAttributes);
+    for (int i = 0, p = first; i < numFeatures; i++, p += 20) {
+      final int type = model.getInt(p);
+      final int src = model.getInt(p + 4);
+      final int dst = model.getInt(p + 8);
+      final double weight = model.getDouble(p + 12);
+      if (type == FT_STATE) {
+        stateLabels[next[src]] = dst;
+        stateWeights[next[src]++] = weight;
+      } else if (type == FT_TRANS) {
+        transitions[src * numLabels + dst] = weight;
+      }
+    }
+    this.expTransitions = new double[transitions.length];
+    for (int i = 0; i < transitions.length; i++) {
+      expTransitions[i] = Math.exp(transitions[i]);
+    }
+  }
+
+  public static CrfsModel load(String modelPath) {
+    try {
+      final CrfsModel model = new CrfsModel(ByteBuffer.wrap(Files.readAllBytes(Paths.get(modelPath))));
+      log.info("Loaded CRF with {} labels, {} attributes and {} state features from {}", model.labels.length,
+          model.attributes.size(), model.stateLabels.length, modelPath);
+      return model;
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static String chunkId(ByteBuffer buffer, int offset) {
+    final byte[] id = new byte[4];
+    for (int i = 0; i < 4; i++) {
+      id[i] = buffer.get(offset + i);
+    }
+    return new String(id, StandardCharsets.US_ASCII);
+  }
+
+  /**
+   * Reads the strings of a constant quark database (CQDB) through its backward array of record offsets
+   */
+  private static String[] readQuarks(ByteBuffer model, int offset, int count) {
+    if (!"CQDB".equals(chunkId(model, offset))) {
+      throw new IllegalArgumentException("Missing string database in CRF Suite model");
+    }
+    final int backwardSize = model.getInt(offset + 16);
+    final int backwardOffset = model.getInt(offset + 20);
+    final String[] strings = new String[count];
+    for (int id = 0; id < Math.min(count, backwardSize); id++) {
+      final int record = model.getInt(offset + backwardOffset + 4 * id);
+      if (record == 0) {
+        continue;
+      }
+      // Record: id, key size (including the terminating null), key
+      final int size = model.getInt(offset + record + 4) - 1;
+      final byte[] key = new byte[size];
+      for (int i = 0; i < size; i++) {
+        key[i] = model.get(offset + record + 8 + i);
+      }
+      strings[id] = new String(key, StandardCharsets.UTF_8);
+    }
+    return strings;
+  }
+
+  public int numLabels() {
+    return labels.length;
+  }
+
+  /**
+   * Tags the given sequence
+   * @return the most likely label of each item, with its marginal probability
+   */
+  public List<Pair<String, Double>> tag(List<CrfsFeatureVector> sequence) {
+    final int T = sequence.size();
+    final int L = labels.length;
+    final List<Pair<String, Double>> tagged = new ArrayList<>(T);
+    if (T == 0) {
+      return tagged;
+    }
+    final Buffers b = buffers.get();
+    b.ensure(T, L);
+
+    // State scores
+    final double[] state = b.state;
+    Arrays.fill(state, 0, T * L, 0);
+    for (int t = 0; t < T; t++) {
+      final CrfsFeatureVector item = sequence.get(t);
+      for (String name : item.names()) {
+        final Integer a = attributes.get(name.replace(':', '-'));
+        if (a == null) {
+          continue;
+        }
+        final double value = item.getByName(name);
+        for (int k = attributeOffsets[a]; k < attributeOffsets[a + 1]; k++) {
+          state[t * L + stateLabels[k]] += stateWeights[k] * value;
+        }
+      }
+    }
+
+    final int[] path = viterbi(b, T, L);
+    forwardBackward(b, T, L);
+    for (int t = 0; t < T; t++) {
+      final int y = path[t];
+      tagged.add(Pair.of(labels[y], b.alpha[t * L + y] * b.beta[t * L + y] / b.scale[t]));
+    }
+    return tagged;
+  }
+
+  private int[] viterbi(Buffers b, int T, int L) {
+    final double[] state = b.state;
+    final double[] score = b.score;
+    final int[] back = b.back;
+    System.arraycopy(state, 0, score, 0, L);
+    for (int t = 1; t < T; t++) {
+      for (int j = 0; j < L; j++) {
+        double best = Double.NEGATIVE_INFINITY;
+        int argBest = 0;
+        for (int i = 0; i < L; i++) {
+          final double s = score[(t - 1) * L + i] + transitions[i * L + j];
+          if (s > best) {
+            best = s;
+            argBest = i;
+          }
+        }
+        score[t * L + j] = best + state[t * L + j];
+        back[t * L + j] = argBest;
+      }
+    }
+    int y = 0;
+    for (int j = 1; j < L; j++) {
+      if (score[(T - 1) * L + j] > score[(T - 1) * L + y]) {
+        y = j;
+      }
+    }
+    final int[] path = new int[T];
+    for (int t = T - 1; t >= 0; t--) {
+      path[t] = y;
+      y = back[t * L + y];
+    }
+    return path;
+  }
+
+  /**
+   * Scaled forward-backward: marginal(t, y) = alpha[t][y] * beta[t][y] / scale[t]
+   */
+  private void forwardBackward(Buffers b, int T, int L) {
+    final double[] exp = b.expState;
+    final double[] alpha = b.alpha;
+    final double[] beta = b.beta;
+    final double[] scale = b.scale;
+
+    // Shift each position's scores by their maximum (which cancels out when normalizing) so exp cannot overflow
+    for (int t = 0; t < T; t++) {
+      double max = Double.NEGATIVE_INFINITY;
+      for (int j = 0; j < L; j++) {
+        max = Math.max(max, b.state[t * L + j]);
+      }
+      for (int j = 0; j < L; j++) {
+        exp[t * L + j] = Math.exp(b.state[t * L + j] - max);
+      }
+    }
+
+    for (int t = 0; t < T; t++) {
+      double sum = 0;
+      for (int j = 0; j < L; j++) {
+        double a;
+        if (t == 0) {
+          a = 1;
+        } else {
+          a = 0;
+          for (int i = 0; i < L; i++) {
+            a += alpha[(t - 1) * L + i] * expTransitions[i * L + j];
+          }
+        }
+        a *= exp[t * L + j];
+        alpha[t * L + j] = a;
+        sum += a;
+      }
+      scale[t] = 1 / sum;
+      for (int j = 0; j < L; j++) {
+        alpha[t * L + j] *= scale[t];
+      }
+    }
+
+    for (int i = 0; i < L; i++) {
+      beta[(T - 1) * L + i] = scale[T - 1];
+    }
+    for (int t = T - 2; t >= 0; t--) {
+      for (int i = 0; i < L; i++) {
+        double s = 0;
+        for (int j = 0; j < L; j++) {
+          s += expTransitions[i * L + j] * exp[(t + 1) * L + j] * beta[(t + 1) * L + j];
+        }
+        beta[t * L + i] = s * scale[t];
+      }
+    }
+  }
+
+  /**
+   * Per-thread work arrays, grown to fit the longest sequence tagged so far
+   */
+  private static class Buffers {
+    double[] state = new double[0];
+    double[] score = new double[0];
+    int[] back = new int[0];
+    double[] expState = new double[0];
+    double[] alpha = new double[0];
+    double[] beta = new double[0];
+    double[] scale = new double[0];
+
+    void ensure(int T, int L) {
+      if (state.length < T * L) {
+        final int size = Math.max(T * L, state.length * 2);
+        state = new double[size];
+        score = new double[size];
+        back = new int[size];
+        expState = new double[size];
+        alpha = new double[size];
+        beta = new double[size];
+      }
+      if (scale.length < T) {
+        scale = new double[Math.max(T, scale.length * 2)];
+      }
+    }
+  }
+}
@@ -9,7 +9,9 @@ import edu.utdallas.hltri.util.IntIdentifier;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Wrapper for CRF Suite.
@@ -19,8 +21,36 @@ public class CrfsWrapper {
   private static final Logger log = Logger.get(CrfsWrapper.class);
   private static final Config config = Config.load("ml.crfs");
 
+  // Loaded models by absolute path, so each is only read once per JVM (until it is re-trained)
+  private static final Map<String, CrfsModel> models = new ConcurrentHashMap<>();
+
+  private static String key(String modelPath) {
+    return Paths.get(modelPath).toAbsolutePath().normalize().toString();
+  }
+
+  /**
+   * Tags the given sequences in process with the CRF Suite model at modelPath.
+   * The model is loaded on first use and shared by all subsequent (and concurrent) calls, until it is re-trained by
+   * {@link #train(String, String, IntIdentifier, List, boolean...)}.
+   * @param outDir unused; kept for compatibility with {@link #predictWithCrfsuite(List, String, Path, String)}
+   * @param name unused; kept for compatibility with {@link #predictWithCrfsuite(List, String, Path, String)}
+   * @return the most likely label of each item with its marginal probability, for each sequence
+   */
   public static List<List<Pair<String, Double>>> predict(final List<List<CrfsFeatureVector>> sequences,
                                                          final String modelPath, final Path outDir, final String name) {
+    final CrfsModel model = models.computeIfAbsent(key(modelPath), CrfsModel::load);
+    final List<List<Pair<String, Double>>> predictions = Lists.newArrayListWithCapacity(sequences.size());
+    for (List<CrfsFeatureVector> sequence : sequences) {
+      predictions.add(model.tag(sequence));
+    }
+    return predictions;
+  }
+
+  /**
+   * Tags the given sequences by writing them to outDir and running "crfsuite tag" on them
+   */
+  public static List<List<Pair<String, Double>>> predictWithCrfsuite(final List<List<CrfsFeatureVector>> sequences,
+                                                         final String modelPath, final Path outDir, final String name) {
     final String outFile = outDir.resolve(name + ".vec").toString();
     final String[] command = new String[]{"./crfsuite", "tag", "-i", "-m", modelPath, outFile};
     log.trace("Writing to {}", outFile);
@@ -77,6 +107,8 @@ public class CrfsWrapper {
       log.info("Begin training CRF...");
       final Process process = pb.start();
       process.waitFor();
+      // a model previously loaded from this path is now stale
+      models.remove(key(modelFile));
       final long end = System.currentTimeMillis();
       log.info("Done. Took {}.", String.format("%2.2f seconds", (end-start)/(float)1000));
     } catch (IOException | InterruptedException e) {
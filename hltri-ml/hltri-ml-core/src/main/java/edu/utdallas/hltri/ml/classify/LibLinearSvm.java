@@ -6,6 +6,7 @@ import com.google.common.collect.Ordering;
 import de.bwaldvogel.liblinear.*;
 import edu.utdallas.hltri.logging.Logger;
 import edu.utdallas.hltri.ml.label.Label;
+import edu.utdallas.hltri.ml.vector.DoubleSparseFeatureVector;
 import edu.utdallas.hltri.ml.vector.FeatureVector;
 import edu.utdallas.hltri.struct.Pair;
 
@@ -92,6 +93,10 @@ public class LibLinearSvm {
   }
 
   private static Feature[] convertFeatureVector(final FeatureVector<Number> fv) {
+    if (fv instanceof DoubleSparseFeatureVector) {
+      // already sorted and unboxed; converted once and cached on the vector
+      return ((DoubleSparseFeatureVector) fv).export(Feature[].class, LibLinearSvm::convertSortedVector);
+    }
     int[] ids = fv.ids();
     assert (ids.length > 0) : "Feature vector of size 0.";
     final FeatureNode[] vector = new FeatureNode[ids.length];
@@ -104,6 +109,15 @@ public class LibLinearSvm {
     return vector;
   }
 
+  private static Feature[] convertSortedVector(final DoubleSparseFeatureVector fv) {
+    assert (fv.nnz() > 0) : "Feature vector of size 0.";
+    final FeatureNode[] vector = new FeatureNode[fv.nnz()];
+    for (int i = 0; i < vector.length; i++) {
+      vector[i] = new FeatureNode(fv.idAt(i) + 1, fv.valueAt(i));
+    }
+    return vector;
+  }
+
   public LibLinearSvm save(final Path modelFile) {
     try {
       log.info("Saving mode to {}", modelFile);
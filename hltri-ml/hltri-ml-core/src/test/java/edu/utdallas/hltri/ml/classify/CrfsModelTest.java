@@ -0,0 +1,114 @@
+package edu.utdallas.hltri.ml.classify;
+
+import edu.utdallas.hltri.conf.Config;
+import edu.utdallas.hltri.ml.Feature;
+import edu.utdallas.hltri.ml.label.IobLabel;
+import edu.utdallas.hltri.ml.vector.SparseFeatureVectorizer;
+import edu.utdallas.hltri.struct.Pair;
+import edu.utdallas.hltri.util.IntIdentifier;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the in-process {@link CrfsModel} with "crfsuite tag" on small models trained by crfsuite; skipped unless
+ * crfsuite is installed at ml.crfs.bin-path
+ */
+public class CrfsModelTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static final List<String> training = Arrays.asList(
+      "the Big Apple is in New York",
+      "we flew from Dallas to San Antonio on Monday",
+      "Alice met Bob at the Golden Gate Bridge",
+      "a cat sat on the mat",
+      "John Smith works for Acme Corporation in Chicago",
+      "she visited Paris and Rome last year");
+
+  private static final List<String> testing = Arrays.asList(
+      "the cat met Alice in San Francisco",
+      "Bob flew to New Orleans",
+      "nothing to see here",
+      "Golden Apple");
+
+  private final IntIdentifier<String> features = new IntIdentifier<>();
+  private final SparseFeatureVectorizer<Number> vectorizer = new SparseFeatureVectorizer<>(features);
+
+  // capitalized words are entities
+  private static IobLabel entities(String word, boolean previousInside) {
+    return Character.isUpperCase(word.charAt(0)) ? (previousInside ? IobLabel.I : IobLabel.B) : IobLabel.O;
+  }
+
+  // lower-case words are entities
+  private static IobLabel nonEntities(String word, boolean previousInside) {
+    return Character.isUpperCase(word.charAt(0)) ? IobLabel.O : (previousInside ? IobLabel.I : IobLabel.B);
+  }
+
+  private List<List<CrfsFeatureVector>> sequences(List<String> sentences,
+                                                  BiFunction<String, Boolean, IobLabel> labeler) {
+    final List<List<CrfsFeatureVector>> sequences = new ArrayList<>();
+    for (String sentence : sentences) {
+      final List<CrfsFeatureVector> sequence = new ArrayList<>();
+      String previous = "<s>";
+      IobLabel label = IobLabel.O;
+      for (String word : sentence.split(" ")) {
+        label = labeler.apply(word, label != IobLabel.O);
+        final Stream<Feature<Number>> wordFeatures = Stream.of(
+            Feature.<Number>simple("w=" + word.toLowerCase(), 1),
+            Feature.<Number>simple("prev=" + previous.toLowerCase(), 1),
+            Feature.<Number>simple("cap=" + Character.isUpperCase(word.charAt(0)), 1),
+            Feature.<Number>simple("length", word.length() / 10d));
+        sequence.add(new CrfsFeatureVector(label, vectorizer.vectorize(wordFeatures)));
+        previous = word;
+      }
+      sequences.add(sequence);
+    }
+    return sequences;
+  }
+
+  private void assertTagsLikeCrfsuite(String model, Path dir) {
+    final List<List<CrfsFeatureVector>> sequences = sequences(testing, CrfsModelTest::entities);
+    final List<List<Pair<String, Double>>> expected = CrfsWrapper.predictWithCrfsuite(sequences, model, dir, "test");
+    final List<List<Pair<String, Double>>> actual = CrfsWrapper.predict(sequences, model, dir, "test");
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(testing.get(i),
+          expected.get(i).stream().map(Pair::first).collect(Collectors.toList()),
+          actual.get(i).stream().map(Pair::first).collect(Collectors.toList()));
+      for (int t = 0; t < expected.get(i).size(); t++) {
+        // crfsuite prints marginals to six decimal places
+        assertEquals(testing.get(i), expected.get(i).get(t).second(), actual.get(i).get(t).second(), 1e-5);
+      }
+    }
+  }
+
+  @Test
+  public void testTagsLikeCrfsuite() throws IOException {
+    final File bin = Config.load("ml.crfs").getFile("bin-path");
+    Assume.assumeTrue("crfsuite is not installed in " + bin, new File(bin, "crfsuite").canExecute());
+
+    final Path dir = folder.newFolder().toPath();
+    final String model = dir.resolve("iob.model").toString();
+    final String mapping = dir.resolve("iob.map").toString();
+    CrfsWrapper.train(model, mapping, features, sequences(training, CrfsModelTest::entities));
+    assertTagsLikeCrfsuite(model, dir);
+
+    // re-training to the same path must replace the model already loaded from it
+    CrfsWrapper.train(model, mapping, features, sequences(training, CrfsModelTest::nonEntities));
+    assertTagsLikeCrfsuite(model, dir);
+  }
+}
@@ -0,0 +1,450 @@
+package edu.utdallas.hltri.io;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnel;
+import com.google.common.hash.PrimitiveSink;
+import com.google.common.primitives.UnsignedBytes;
+
+import edu.utdallas.hltri.logging.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Sorted, block-indexed binary file of (key, count) pairs, written by {@link ExternalCountWriter} and read by
+ * {@link ExternalCountReader}.
+ *
+ * Layout:
+ * <pre>
+ *   magic
+ *   block*      entries sorted by the unsigned UTF-8 bytes of their key; each entry is
+ *               (varint shared prefix length, varint suffix length, suffix, varlong count), and the first entry of
+ *               each block shares nothing with its predecessor
+ *   index       int block count, then (long offset, int length, int key length, first key) per block
+ *   bloom       bloom filter over every key
+ *   footer      long entries, long index offset, long bloom offset, int version, magic
+ * </pre>
+ *
+ * The sparse index (one key per block) and the bloom filter are held in memory, and blocks are read from mapped
+ * buffers, so a lookup for a missing key usually touches no block and a lookup for a present key touches one.
+ * Lookups hold no mutable state and may be made from any number of threads.
+ */
+public class CountFile implements AutoCloseable {
+  private static final Logger log = Logger.get(CountFile.class);
+
+  private static final long   MAGIC          = 0x48_4C_54_52_49_43_4E_54L; // "HLTRICNT"
+  private static final int    VERSION        = 1;
+  private static final int    FOOTER_SIZE    = 8 + 8 + 8 + 4 + 8;
+  private static final long   MAX_CHUNK_SIZE = Integer.MAX_VALUE;
+
+  public static final int     DEFAULT_BLOCK_SIZE      = 4096;
+  public static final double  DEFAULT_FALSE_POSITIVES = 0.01;
+
+  private static final Comparator<byte[]> BYTE_ORDER = UnsignedBytes.lexicographicalComparator();
+
+  private static final Funnel<byte[]> KEY_FUNNEL = (byte[] key, PrimitiveSink into) -> into.putBytes(key);
+
+  private final FileChannel channel;
+  private final long entries;
+  private final byte[][] firstKeys;
+  private final int[] blockChunks;
+  private final int[] blockOffsets;
+  private final int[] blockLengths;
+  private final MappedByteBuffer[] chunks;
+  private final BloomFilter<byte[]> bloom;
+
+  /**
+   * @return true if the given file was written as a CountFile (rather than, e.g., a TSV of counts)
+   */
+  public static boolean isCountFile(File file) {
+    if (file.length() < 8 + FOOTER_SIZE) {
+      return false;
+    }
+    try (DataInputStream in = new DataInputStream(Files.newInputStream(file.toPath()))) {
+      return in.readLong() == MAGIC;
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  public CountFile(File file) throws IOException {
+    this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    final long size = channel.size();
+
+    final ByteBuffer footer = ByteBuffer.allocate(FOOTER_SIZE);
+    readFully(channel, footer, size - FOOTER_SIZE);
+    footer.flip();
+    this.entries = footer.getLong();
+    final long indexOffset = footer.getLong();
+    final long bloomOffset = footer.getLong();
+    final int version = footer.getInt();
+    if (footer.getLong() != MAGIC) {
+      throw new IOException(file + " is not a count file");
+    }
+    if (version != VERSION) {
+      throw new IOException("Unsupported count file version " + version + " in " + file);
+    }
+
+    // Read the sparse index
+    final long[] offsets;
+    try (DataInputStream in = new DataInputStream(openAt(file, indexOffset))) {
+      final int blocks = in.readInt();
+      offsets = new long[blocks];
+      this.firstKeys = new byte[blocks][];
+      this.blockLengths = new int[blocks];
+      for (int i = 0; i < blocks; i++) {
+        offsets[i] = in.readLong();
+        blockLengths[i] = in.readInt();
+        firstKeys[i] = new byte[in.readInt()];
+        in.readFully(firstKeys[i]);
+      }
+    }
+
+    // Map the blocks in as few chunks as possible, never splitting a block between chunks
+    this.blockChunks = new int[offsets.length];
+    this.blockOffsets = new int[offsets.length];
+    final List<MappedByteBuffer> mapped = new ArrayList<>();
+    int first = 0;
+    while (first < offsets.length) {
+      final long start = offsets[first];
+      int last = first;
+      while (last + 1 < offsets.length && offsets[last + 1] + blockLengths[last + 1] - start <= MAX_CHUNK_SIZE) {
+        last++;
+      }
+      final long end = offsets[last] + blockLengths[last];
+      for (int i = first; i <= last; i++) {
+        blockChunks[i] = mapped.size();
+        blockOffsets[i] = (int) (offsets[i] - start);
+      }
+      mapped.add(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start));
+      first = last + 1;
+    }
+    this.chunks = mapped.toArray(new MappedByteBuffer[mapped.size()]);
+
+    // Read the bloom filter
+    try (InputStream in = openAt(file, bloomOffset)) {
+      this.bloom = BloomFilter.readFrom(in, KEY_FUNNEL);
+    }
+
+    log.debug("Opened {} with {} entries in {} blocks", file, entries, offsets.length);
+  }
+
+  private static InputStream openAt(File file, long position) throws IOException {
+    return new BufferedInputStream(Channels.newInputStream(
+        FileChannel.open(file.toPath(), StandardOpenOption.READ).position(position)), 1 << 16);
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new IOException("Unexpected end of file");
+      }
+    }
+  }
+
+  /**
+   * @return number of keys in this file
+   */
+  public long size() {
+    return entries;
+  }
+
+  /**
+   * @return the count stored for the given key, or 0 if there is none
+   */
+  public long getCount(String key) {
+    final byte[] target = key.getBytes(StandardCharsets.UTF_8);
+    if (!bloom.mightContain(target)) {
+      return 0;
+    }
+    final int block = findBlock(target);
+    if (block < 0) {
+      return 0;
+    }
+    final BlockCursor cursor = new BlockCursor();
+    cursor.seek(block);
+    while (cursor.next()) {
+      final int cmp = cursor.compareKey(target);
+      if (cmp == 0) {
+        return cursor.count;
+      } else if (cmp > 0) {
+        break;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Visits every (key, count) whose key starts with the given prefix, in key order
+   */
+  public void visitPrefix(String prefix, ExternalCountReader.CountVisitor visitor) {
+    final byte[] target = prefix.getBytes(StandardCharsets.UTF_8);
+    final BlockCursor cursor = new BlockCursor();
+    for (int block = Math.max(0, findBlock(target)); block < firstKeys.length; block++) {
+      cursor.seek(block);
+      while (cursor.next()) {
+        if (cursor.startsWith(target)) {
+          visitor.visit(cursor.key(), cursor.count);
+        } else if (cursor.compareKey(target) > 0) {
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the last block whose first key is not after the given key, or -1 if the key precedes every block
+   */
+  private int findBlock(byte[] key) {
+    int low = 0, high = firstKeys.length - 1, found = -1;
+    while (low <= high) {
+      final int mid = (low + high) >>> 1;
+      if (BYTE_ORDER.compare(firstKeys[mid], key) <= 0) {
+        found = mid;
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return found;
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  /**
+   * Decodes the entries of one block at a time using absolute reads, so that cursors over the same mapped buffer do
+   * not interfere with each other. The key buffer is reused across the blocks a cursor is moved to.
+   */
+  private class BlockCursor {
+    private ByteBuffer buffer;
+    private int end;
+    private int position;
+    private byte[] key = new byte[64];
+    private int keyLength = 0;
+    long count;
+
+    /**
+     * Moves this cursor before the first entry of the given block
+     */
+    void seek(int block) {
+      this.buffer = chunks[blockChunks[block]];
+      this.position = blockOffsets[block];
+      this.end = position + blockLengths[block];
+      this.keyLength = 0;
+    }
+
+    boolean next() {
+      if (position >= end) {
+        return false;
+      }
+      final int shared = (int) readVarLong();
+      final int suffix = (int) readVarLong();
+      if (shared + suffix > key.length) {
+        key = Arrays.copyOf(key, Math.max(shared + suffix, key.length * 2));
+      }
+      for (int i = 0; i < suffix; i++) {
+        key[shared + i] = buffer.get(position++);
+      }
+      keyLength = shared + suffix;
+      count = readVarLong();
+      return true;
+    }
+
+    private long readVarLong() {
+      long value = 0;
+      for (int shift = 0; ; shift += 7) {
+        final byte b = buffer.get(position++);
+        value |= (long) (b & 0x7F) << shift;
+        if (b >= 0) {
+          return value;
+        }
+      }
+    }
+
+    int compareKey(byte[] other) {
+      final int length = Math.min(keyLength, other.length);
+      for (int i = 0; i < length; i++) {
+        final int cmp = (key[i] & 0xFF) - (other[i] & 0xFF);
+        if (cmp != 0) {
+          return cmp;
+        }
+      }
+      return keyLength - other.length;
+    }
+
+    boolean startsWith(byte[] prefix) {
+      if (keyLength < prefix.length) {
+        return false;
+      }
+      for (int i = 0; i < prefix.length; i++) {
+        if (key[i] != prefix[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    String key() {
+      return new String(key, 0, keyLength, StandardCharsets.UTF_8);
+    }
+  }
+
+  /**
+   * Converts a TSV of counts (sorted by key, one "key&lt;separator&gt;count" per line, as previously written by
+   * {@link ExternalCountWriter}) to a CountFile
+   */
+  public static void importTsv(File tsv, File out, char separator) throws IOException {
+    long lines = 0;
+    try (BufferedReader reader = Files.newBufferedReader(tsv.toPath(), StandardCharsets.UTF_8)) {
+      while (reader.readLine() != null) {
+        lines++;
+      }
+    }
+    try (BufferedReader reader = Files.newBufferedReader(tsv.toPath(), StandardCharsets.UTF_8);
+         Writer writer = new Writer(out, lines)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        final int sep = line.lastIndexOf(separator);
+        writer.add(line.substring(0, sep), Long.parseLong(line.substring(sep + 1)));
+      }
+    }
+  }
+
+  /**
+   * Writes a CountFile from (key, count) pairs given in ascending key order
+   */
+  public static class Writer implements AutoCloseable {
+    private final DataOutputStream out;
+    private final int blockSize;
+    private final BloomFilter<byte[]> bloom;
+
+    private final List<byte[]> firstKeys = new ArrayList<>();
+    private final List<long[]> blocks = new ArrayList<>(); // (offset, length)
+
+    private long position = 0;
+    private long entries = 0;
+    private long blockStart = -1;
+    private byte[] previous = null;
+
+    /**
+     * @param file            file to write
+     * @param expectedEntries estimate of the number of keys to be written, used to size the bloom filter
+     */
+    public Writer(File file, long expectedEntries) throws IOException {
+      this(file.toPath(), expectedEntries, DEFAULT_BLOCK_SIZE, DEFAULT_FALSE_POSITIVES);
+    }
+
+    /**
+     * @param file            file to write
+     * @param expectedEntries estimate of the number of keys to be written, used to size the bloom filter
+     * @param blockSize       approximate number of bytes per block
+     * @param falsePositives  desired false positive rate of the bloom filter
+     */
+    public Writer(Path file, long expectedEntries, int blockSize, double falsePositives) throws IOException {
+      this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+      this.blockSize = blockSize;
+      this.bloom = BloomFilter.create(KEY_FUNNEL, Math.max(1, expectedEntries), falsePositives);
+      out.writeLong(MAGIC);
+      position = 8;
+    }
+
+    public void add(String key, long count) throws IOException {
+      add(key.getBytes(StandardCharsets.UTF_8), count);
+    }
+
+    public void add(byte[] key, long count) throws IOException {
+      int shared = 0;
+      if (previous != null) {
+        final int cmp = BYTE_ORDER.compare(previous, key);
+        if (cmp >= 0) {
+          throw new IllegalStateException("Keys must be added in ascending order, but got \"" +
+              new String(key, StandardCharsets.UTF_8) + "\" after \"" +
+              new String(previous, StandardCharsets.UTF_8) + "\"");
+        }
+      }
+      if (blockStart < 0 || position - blockStart >= blockSize) {
+        finishBlock();
+        blockStart = position;
+        firstKeys.add(key);
+      } else {
+        final int length = Math.min(previous.length, key.length);
+        while (shared < length && previous[shared] == key[shared]) {
+          shared++;
+        }
+      }
+      writeVarLong(shared);
+      writeVarLong(key.length - shared);
+      out.write(key, shared, key.length - shared);
+      position += key.length - shared;
+      writeVarLong(count);
+
+      bloom.put(key);
+      previous = key;
+      entries++;
+    }
+
+    private void writeVarLong(long value) throws IOException {
+      while ((value & ~0x7FL) != 0) {
+        out.writeByte((int) ((value & 0x7F) | 0x80));
+        value >>>= 7;
+        position++;
+      }
+      out.writeByte((int) value);
+      position++;
+    }
+
+    private void finishBlock() {
+      if (blockStart >= 0) {
+        blocks.add(new long[]{blockStart, position - blockStart});
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      finishBlock();
+
+      final long indexOffset = position;
+      out.writeInt(blocks.size());
+      position += 4;
+      for (int i = 0; i < blocks.size(); i++) {
+        out.writeLong(blocks.get(i)[0]);
+        out.writeInt((int) blocks.get(i)[1]);
+        out.writeInt(firstKeys.get(i).length);
+        out.write(firstKeys.get(i));
+        position += 8 + 4 + 4 + firstKeys.get(i).length;
+      }
+
+      final long bloomOffset = position;
+      bloom.writeTo(out);
+
+      out.writeLong(entries);
+      out.writeLong(indexOffset);
+      out.writeLong(bloomOffset);
+      out.writeInt(VERSION);
+      out.writeLong(MAGIC);
+      out.close();
+      log.debug("Wrote {} entries in {} blocks", entries, blocks.size());
+    }
+  }
+}
@@ -2,8 +2,10 @@ package edu.utdallas.hltri.io;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Predicate;
 
 /**
  * Taken from: http://stackoverflow.com/questions/736556/binary-search-in-a-sorted-memory-mapped-file-in-java
@@ -12,6 +14,10 @@ import java.util.List;
  * If you're using this as a quick read-only tsv-backed Key-Value store, make sure you
  * binary search for key + "\t" otherwise you'll get all the entries for everything
  * that starts with key.
+ *
+ * Lines are compared by their UTF-8 bytes, so the file should be sorted in that order (e.g., with LC_ALL=C sort).
+ * Apart from {@link #seekTo(StusMagicLargeFileReader, String)}, searches do not use the reader's position and may
+ * run concurrently against the same reader.
  */
 public class ExternalBinarySearch {
 
@@ -32,67 +38,137 @@ public class ExternalBinarySearch {
    * @param string
    * @return
    */
-  synchronized public static List<String> binarySearch(StusMagicLargeFileReader raf, String string) {
+  public static List<String> binarySearch(StusMagicLargeFileReader raf, String string) {
+    final List<String> result = new ArrayList<>();
+    visitMatches(raf, string, result::add);
+    return result;
+  }
+
+  /**
+   * Moves the position of <var>raf</var> to the start of the first line which is not before <var>string</var>.
+   * This changes the state of the reader, so readers used with it must not be shared between threads; prefer
+   * {@link #lowerBound(StusMagicLargeFileReader, String)} or
+   * {@link #visitMatches(StusMagicLargeFileReader, String, Predicate)}, which may be called concurrently.
+   */
+  public static void seekTo(StusMagicLargeFileReader raf, String string) {
+    raf.seek(lowerBound(raf, string));
+  }
 
-    seekTo(raf, string);
+  /**
+   * Finds the first line which is not before <var>string</var> without changing the state of <var>raf</var>, so
+   * any number of threads may search the same reader at once
+   * @return byte offset of the start of that line (or the length of the file if there is none)
+   */
+  public static long lowerBound(StusMagicLargeFileReader raf, String string) {
+    final Probe probe = new Probe(raf);
+    final long start = probe.lowerBound(string.getBytes(StandardCharsets.UTF_8));
+    probe.record();
+    return start;
+  }
 
-    List<String> result = new ArrayList<>();
-    while (true) {
-      String line = raf.readLine();
-      if (line == null || !line.startsWith(string)) {
+  /**
+   * Passes each line starting with <var>string</var> (in file order) to <var>visitor</var> until it returns false,
+   * without changing the state of <var>raf</var>
+   */
+  public static void visitMatches(StusMagicLargeFileReader raf, String string, Predicate<String> visitor) {
+    final Probe probe = new Probe(raf);
+    final byte[] target = string.getBytes(StandardCharsets.UTF_8);
+    long start = probe.lowerBound(target);
+    while (start < raf.getLength() && probe.startsWith(start, target)) {
+      final long end = probe.lineEnd(start);
+      if (!visitor.test(raf.getString(start, end))) {
         break;
       }
-      result.add(line);
+      start = end + 1;
     }
-
-    return result;
+    probe.record();
   }
 
-  synchronized public static void seekTo(StusMagicLargeFileReader raf, String string) {
-
+  /**
+   * State of a single lookup: lines are compared as UTF-8 bytes directly from the mapped pages, and the probes and
+   * bytes touched are tallied locally and added to the reader's counters once the lookup is done
+   */
+  private static final class Probe {
+    private final StusMagicLargeFileReader raf;
+    private int probes = 0;
+    private long bytes = 0;
 
-    long low = 0;
-    long high = raf.getLength();
+    Probe(StusMagicLargeFileReader raf) {
+      this.raf = raf;
+    }
 
-    long p = -1;
-    while (low < high) {
-      long mid = (low + high) / 2;
-      p = mid;
-      while (p >= 0) {
-        raf.seek(p);
+    private byte get(long position) {
+      bytes++;
+      return raf.getByte(position);
+    }
 
-        char c = (char) raf.readByte();
-        //System.out.println(p + "\t" + c);
-        if (c == '\n') {
-          break;
+    long lowerBound(byte[] target) {
+      long low = 0;
+      long high = raf.getLength();
+      while (low < high) {
+        final long mid = (low + high) >>> 1;
+        probes++;
+        if (compareLine(lineStart(mid), target) < 0) {
+          low = mid + 1;
+        } else {
+          high = mid;
         }
-        p--;
       }
-      if (p < 0) {
-        raf.seek(0);
+      return lineStart(low);
+    }
+
+    /**
+     * @return the offset of the start of the line containing <var>position</var> (the line following it, if
+     * <var>position</var> is a newline)
+     */
+    long lineStart(long position) {
+      if (position >= raf.getLength()) {
+        return raf.getLength();
       }
-      String line = raf.readLine();
-      //System.out.println("-- " + mid + " " + line);
-      if (line.compareTo(string) < 0) {
-        low = mid + 1;
-      } else {
-        high = mid;
+      long p = position;
+      while (p >= 0 && get(p) != '\n') {
+        p--;
       }
+      return p + 1;
     }
 
-    p = low;
-    while (p >= 0) {
-      raf.seek(p);
-      if (((char) raf.readByte()) == '\n') {
-        break;
+    long lineEnd(long start) {
+      long p = start;
+      while (p < raf.getLength() && get(p) != '\n') {
+        p++;
       }
-      p--;
+      return p;
     }
 
-    if (p < 0) {
-      raf.seek(0);
+    int compareLine(long start, byte[] target) {
+      final long length = raf.getLength();
+      for (int i = 0; i < target.length; i++) {
+        final long p = start + i;
+        final byte b = (p < length) ? get(p) : (byte) '\n';
+        if (b == '\n') {
+          return -1;
+        }
+        final int cmp = (b & 0xFF) - (target[i] & 0xFF);
+        if (cmp != 0) {
+          return cmp;
+        }
+      }
+      return (start + target.length < length && get(start + target.length) != '\n') ? 1 : 0;
+    }
+
+    boolean startsWith(long start, byte[] prefix) {
+      final long length = raf.getLength();
+      for (int i = 0; i < prefix.length; i++) {
+        if (start + i >= length || get(start + i) != prefix[i]) {
+          return false;
+        }
+      }
+      return true;
     }
 
+    void record() {
+      raf.recordLookup(probes, bytes);
+    }
   }
 
   public static void main(String... args) {
@@ -5,7 +5,8 @@ import java.io.File;
 import java.io.IOException;
 
 /**
- * Class for reading in counts from a sorted file
+ * Class for reading in counts from a sorted file, either a sorted TSV of counts or a {@link CountFile}.
+ * Lookups do not change the state of the reader, so it may be shared between threads.
  * Usage:
  * // first create a count file using ExternalCountWriter
  * ExternalCountReader reader = new ExternalCountReader(myFile);
@@ -17,46 +18,52 @@ import java.io.IOException;
  */
 public class ExternalCountReader {
 
-  private final StusMagicLargeFileReader contextReader;
+  private final CountFile counts;                       // null for TSV count files
+  private final StusMagicLargeFileReader contextReader; // null for block count files
   private final char SEPARATOR;
 
   public ExternalCountReader(File file, char separator) throws IOException {
-    contextReader = new StusMagicLargeFileReader(file);
+    if (CountFile.isCountFile(file)) {
+      counts = new CountFile(file);
+      contextReader = null;
+    } else {
+      counts = null;
+      contextReader = new StusMagicLargeFileReader(file);
+    }
     this.SEPARATOR = separator;
   }
 
   public long getCount(String key) {
-    long prevPos = contextReader.getPosition();
-    ExternalBinarySearch.seekTo(contextReader, key);
-    String line;
-
-    while((line = contextReader.readLine()) != null && line.startsWith(key)) {
-      int lastSep = line.lastIndexOf(SEPARATOR);
-      long count = Long.parseLong(line.substring(lastSep+1));
-      contextReader.seek(prevPos);
-      return count;
+    if (counts != null) {
+      return counts.getCount(key);
     }
-    contextReader.seek(prevPos);
-    return 0;
+    final long[] count = new long[1];
+    ExternalBinarySearch.visitMatches(contextReader, key, line -> {
+      count[0] = Long.parseLong(line.substring(line.lastIndexOf(SEPARATOR) + 1));
+      return false;
+    });
+    return count[0];
   }
 
   public void close() throws IOException {
-    contextReader.close();
+    if (counts != null) {
+      counts.close();
+    } else {
+      contextReader.close();
+    }
   }
 
   public void visitDoubleKeyCounts(String firstKey, CountVisitor visitor) {
     String keyAndSep = firstKey + SEPARATOR;
-    long prevPos = contextReader.getPosition();
-    ExternalBinarySearch.seekTo(contextReader, keyAndSep);
-    String line;
-
-    while((line = contextReader.readLine()) != null && line.startsWith(keyAndSep)) {
-      int lastSep = line.lastIndexOf(SEPARATOR);
-      long count = Long.parseLong(line.substring(lastSep+1));
-      visitor.visit(line.substring(0, lastSep), count);
+    if (counts != null) {
+      counts.visitPrefix(keyAndSep, visitor);
+      return;
     }
-    contextReader.seek(prevPos);
-
+    ExternalBinarySearch.visitMatches(contextReader, keyAndSep, line -> {
+      int lastSep = line.lastIndexOf(SEPARATOR);
+      visitor.visit(line.substring(0, lastSep), Long.parseLong(line.substring(lastSep + 1)));
+      return true;
+    });
   }
 
   /**
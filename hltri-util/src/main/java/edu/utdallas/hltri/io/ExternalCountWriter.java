@@ -1,12 +1,22 @@
 package edu.utdallas.hltri.io;
 
-import com.google.code.externalsorting.ExternalSort;
 import edu.utdallas.hltri.logging.Logger;
-import gnu.trove.map.hash.TObjectIntHashMap;
-import gnu.trove.procedure.TObjectIntProcedure;
+import it.unimi.dsi.fastutil.ints.AbstractIntComparator;
+import it.unimi.dsi.fastutil.ints.IntArrays;
 
 import java.io.*;
-import java.util.Comparator;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * A class to count string occurences, spilling over to disk if necessary
@@ -20,200 +30,593 @@ import java.util.Comparator;
  * ...
  * counter.close(); // IMPORTANT!
  *
+ * addCount may be called from any number of threads. Keys are hashed to one of several partitions, each holding
+ * an open-addressed table from keys (encoded once as UTF-8 into a byte arena, and referenced by their offset) to
+ * counts, guarded by its own lock. When a partition outgrows its share of the memory budget it is spilled to a
+ * sorted binary run. On close, the runs of each partition are merged and reduced in parallel (partitions never
+ * share keys), and the per-partition results are merged into the output file.
+ *
+ * By default the counts are saved as a sorted TSV of counts; use {@link Format#BLOCKS} for a {@link CountFile}.
+ * Either way, keys are sorted by their UTF-8 bytes.
+ *
  * @author Bryan Rink bryan@hlt.utdallas.edu
  */
 @SuppressWarnings("unused")
 public class ExternalCountWriter implements AutoCloseable {
 
-  // Count by Int's because Long's would half the number of things we can keep
-  // in memory
-  private TObjectIntHashMap<String> memoryCountCache             = new TObjectIntHashMap<>();
-  private char                      SEPARATOR                    = '\t';
-  private long                      MAX_MEMORY_USAGE             = 8_000_000_000l; // 8 GB
-  private double                    MINIMUM_FREE_MEMORY_FRACTION = 0.25;
-  private int                       sizeToFlush                  = -1;
-  private File unsortedFile;
-  private File sortedFile;
-  private File outputFile;
-
-  private boolean flushNeeded = false;
+  public enum Format {
+    /** Sorted lines of key, separator, count */
+    TSV,
+    /** Block-indexed binary {@link CountFile} */
+    BLOCKS
+  }
 
   private static final Logger log = Logger.get(ExternalCountWriter.class);
 
-  Comparator<String> comparator = new KeyComparator(SEPARATOR);
+  public static final long DEFAULT_MEMORY_BUDGET = Runtime.getRuntime().maxMemory() / 2;
+  public static final int  DEFAULT_PARTITIONS    = Integer.highestOneBit(Runtime.getRuntime().availableProcessors()) * 4;
 
-  protected static class KeyComparator implements Comparator<String> {
-    private char SEPARATOR = '\t';
+  private final char   SEPARATOR = '\t';
+  private final File   outputFile;
+  private final File   runDirectory;
+  private final Format format;
+  private final long   partitionBudget;
 
-    public KeyComparator(char SEPARATOR) {
-      this.SEPARATOR = SEPARATOR;
-    }
+  // Largest array the JVM can reliably allocate, which caps the key arena of each partition
+  private static final int MAX_ARENA = Integer.MAX_VALUE - 8;
 
-    @Override
-    public int compare(String r1, String r2) {
-      int i = 0;
+  // Runs are named <partition>-<run number>.run. A run merged on close is written to a temporary file, and renamed
+  // into place only once the names of the runs it replaces are recorded in <run>.sources
+  private static final Pattern RUN_NAME = Pattern.compile("(\\d+)-(\\d+)\\.run");
+  private static final String SOURCES_SUFFIX = ".sources";
+  private static final String TEMP_SUFFIX = ".tmp";
 
-      char v1;
-      char v2;
-      while (true) {
+  private final Partition[] partitions;
+  // Runs left over from a previous (unfinished) writer for the same file; they may share keys with any partition
+  private final List<File> previousRuns = new ArrayList<>();
+  private final AtomicInteger runCount = new AtomicInteger();
+
+  // Reusable buffers for encoding keys
+  private static final ThreadLocal<byte[]> keyBuffer = ThreadLocal.withInitial(() -> new byte[256]);
+
+  public ExternalCountWriter(File outputFile) {
+    this(outputFile, false);
+  }
 
-        v1 = r1.charAt(i);
-        v2 = r2.charAt(i);
+  public ExternalCountWriter(File outputFile, boolean delete) {
+    this(outputFile, delete, Format.TSV);
+  }
+
+  public ExternalCountWriter(File outputFile, boolean delete, Format format) {
+    this(outputFile, delete, format, DEFAULT_MEMORY_BUDGET, DEFAULT_PARTITIONS);
+  }
+
+  /**
+   * @param outputFile   file to save the counts to
+   * @param delete       whether to delete any existing output and spilled runs (otherwise runs left by a previous
+   *                     writer are merged into the output)
+   * @param format       format of the output file
+   * @param memoryBudget approximate number of bytes to use for counts held in memory
+   * @param partitions   number of independently locked partitions (a power of two, at least the number of
+   *                     threads which will add counts)
+   */
+  @SuppressWarnings("ResultOfMethodCallIgnored")
+  public ExternalCountWriter(File outputFile, boolean delete, Format format, long memoryBudget, int partitions) {
+    if (Integer.bitCount(partitions) != 1) {
+      throw new IllegalArgumentException("Number of partitions must be a power of two, but got " + partitions);
+    }
+    this.outputFile = outputFile;
+    this.runDirectory = new File(outputFile.getParent(), outputFile.getName() + ".runs");
+    this.format = format;
+    // A partition must spill before its arena would need to grow past the largest possible array
+    this.partitionBudget = Math.min(memoryBudget / partitions, MAX_ARENA);
+    this.partitions = new Partition[partitions];
+    for (int i = 0; i < partitions; i++) {
+      this.partitions[i] = new Partition(i);
+    }
 
-        if (v1 != v2) {
-          return v1 - v2;
+    try {
+      if (delete && outputFile.exists()) {
+        log.info("Deleting existing output file at {}", outputFile);
+        outputFile.delete();
+      }
+      if (runDirectory.exists()) {
+        if (delete) {
+          final File[] runs = runDirectory.listFiles();
+          log.info("Deleting {} existing runs in {}", runs.length, runDirectory);
+          for (File run : runs) {
+            run.delete();
+          }
+        } else {
+          recoverRuns();
         }
+      }
+      Files.createDirectories(runDirectory.toPath());
+    } catch (IOException ex) {
+      log.error("Unable to create run directory", ex);
+      throw new RuntimeException(ex);
+    }
+  }
 
-        if (v1 == SEPARATOR)
-          break;
+  /**
+   * Collects the runs left by a previous writer, completing (or discarding) any merge it was interrupted in, and
+   * numbers new runs after them
+   */
+  @SuppressWarnings("ResultOfMethodCallIgnored")
+  private void recoverRuns() throws IOException {
+    for (File sources : runDirectory.listFiles((dir, name) -> name.endsWith(SOURCES_SUFFIX))) {
+      final String merged = sources.getName().substring(0, sources.getName().length() - SOURCES_SUFFIX.length());
+      if (new File(runDirectory, merged).exists()) {
+        // The merged run replaced its sources, but not all of them were deleted
+        for (String source : Files.readAllLines(sources.toPath(), StandardCharsets.UTF_8)) {
+          new File(runDirectory, source).delete();
+        }
+      }
+      sources.delete();
+    }
+    int lastRun = -1;
+    for (File run : runDirectory.listFiles()) {
+      if (run.getName().endsWith(TEMP_SUFFIX)) {
+        // A merged run which was never renamed into place; its sources are intact
+        run.delete();
+        continue;
+      }
+      previousRuns.add(run);
+      final Matcher matcher = RUN_NAME.matcher(run.getName());
+      if (matcher.matches()) {
+        lastRun = Math.max(lastRun, Integer.parseInt(matcher.group(2)));
+      }
+    }
+    log.info("Merging {} existing runs in {}", previousRuns.size(), runDirectory);
+    runCount.set(lastRun + 1);
+  }
 
-        i++;
+  private File newRun(final int partition) {
+    return new File(runDirectory, String.format("%04d-%06d.run", partition, runCount.getAndIncrement()));
+  }
+
+  public void addCount(final String key, final int count) {
+    addCount((CharSequence) key, count);
+  }
+
+  public void addCount(final StringBuilder key, final int count) {
+    addCount((CharSequence) key, count);
+  }
+
+  private void addCount(final CharSequence key, final long count) {
+    byte[] bytes = keyBuffer.get();
+    if (bytes.length < key.length() * 3) {
+      bytes = new byte[key.length() * 3];
+      keyBuffer.set(bytes);
+    }
+    final int length = encode(key, bytes);
+    final int hash = hash(bytes, length);
+    // Partitions are chosen by the high bits of the hash, and table slots by the low bits
+    partitions[hash >>> (32 - Integer.numberOfTrailingZeros(partitions.length)) & (partitions.length - 1)]
+        .add(bytes, length, hash, count);
+  }
+
+  /**
+   * Encodes the given characters as UTF-8, returning the number of bytes written (at most 3 per char)
+   */
+  private static int encode(final CharSequence chars, final byte[] out) {
+    int n = 0;
+    for (int i = 0; i < chars.length(); i++) {
+      final char c = chars.charAt(i);
+      if (c < 0x80) {
+        out[n++] = (byte) c;
+      } else if (c < 0x800) {
+        out[n++] = (byte) (0xC0 | (c >> 6));
+        out[n++] = (byte) (0x80 | (c & 0x3F));
+      } else if (Character.isHighSurrogate(c) && i + 1 < chars.length() && Character.isLowSurrogate(chars.charAt(i + 1))) {
+        final int cp = Character.toCodePoint(c, chars.charAt(++i));
+        out[n++] = (byte) (0xF0 | (cp >> 18));
+        out[n++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+        out[n++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+        out[n++] = (byte) (0x80 | (cp & 0x3F));
+      } else if (Character.isSurrogate(c)) {
+        out[n++] = '?'; // Unpaired surrogate, as String.getBytes would encode it
+      } else {
+        out[n++] = (byte) (0xE0 | (c >> 12));
+        out[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+        out[n++] = (byte) (0x80 | (c & 0x3F));
       }
+    }
+    return n;
+  }
 
-      return r1.substring(i, r1.lastIndexOf(SEPARATOR))
-               .compareTo(r2.substring(i, r2.lastIndexOf(SEPARATOR)));
+  private static int hash(final byte[] bytes, final int length) {
+    int h = 0x9747b28c;
+    for (int i = 0; i < length; i++) {
+      h = 31 * h + bytes[i];
     }
+    // Murmur3 finalizer
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return h;
   }
 
-  public ExternalCountWriter(File outputFile) {
-    this.unsortedFile = new File(outputFile.getParent(), outputFile.getName() + ".unsorted");
-    this.sortedFile = new File(outputFile.getParent(), outputFile.getName() + ".sorted");
-    this.outputFile = outputFile;
+  private static int compare(final byte[] a, final int aOffset, final int aLength,
+                             final byte[] b, final int bOffset, final int bLength) {
+    final int length = Math.min(aLength, bLength);
+    for (int i = 0; i < length; i++) {
+      final int cmp = (a[aOffset + i] & 0xFF) - (b[bOffset + i] & 0xFF);
+      if (cmp != 0) {
+        return cmp;
+      }
+    }
+    return aLength - bLength;
   }
 
-  @SuppressWarnings("ResultOfMethodCallIgnored")
-  public ExternalCountWriter(File outputFile, boolean delete) {
-    this(outputFile);
+  /**
+   * Spills every partition's in-memory counts to disk
+   */
+  public void flushCounts() {
+    for (Partition partition : partitions) {
+      partition.spill();
+    }
+  }
 
-    if (delete) {
-      try {
-        if (unsortedFile.exists()) {
-          log.info("Deleting existing unsorted file at {}", unsortedFile);
-          unsortedFile.delete();
-          unsortedFile.createNewFile();
+  /**
+   * A lock-guarded count table and the runs it has spilled
+   */
+  private class Partition {
+    private final int id;
+    private final CountTable table = new CountTable();
+    private final List<File> runs = new ArrayList<>();
+    private long spilledEntries = 0;
+
+    Partition(int id) {
+      this.id = id;
+    }
+
+    synchronized void add(final byte[] key, final int length, final int hash, final long count) {
+      if (table.increment(key, length, hash, count)) {
+        return;
+      }
+      // Spill before the table grows past its budget, rather than after
+      if (table.size() > 0 && table.bytesAfterInsert(length) > partitionBudget) {
+        log.info("Partition {} would exceed {} bytes with {} keys; spilling", id, partitionBudget, table.size());
+        spill();
+      }
+      table.insert(key, length, hash, count);
+    }
+
+    synchronized void spill() {
+      if (table.size() == 0) {
+        return;
+      }
+      final File run = newRun(id);
+      try (RunWriter writer = new RunWriter(run)) {
+        for (int entry : table.sortedEntries()) {
+          writer.write(table.arena, table.offsets[entry], table.lengths[entry], table.counts[entry]);
         }
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+      runs.add(run);
+      spilledEntries += table.size();
+      table.clear();
+    }
+  }
+
+  /**
+   * Open-addressed hash table from UTF-8 keys (stored back to back in a byte arena) to long counts
+   */
+  private static class CountTable {
+    private byte[] arena;
+    private int    arenaSize;
+    private int[]  offsets;
+    private int[]  lengths;
+    private int[]  hashes;
+    private long[] counts;
+    private int    size;
+    private int[]  slots; // entry + 1, or 0 if empty
+
+    CountTable() {
+      clear();
+    }
 
-        if (sortedFile.exists()) {
-          log.info("Deleting existing sorted file at {}", sortedFile);
-          sortedFile.delete();
-          sortedFile.createNewFile();
+    /**
+     * @return the slot holding the given key, or the empty slot it would be inserted at
+     */
+    private int slot(final byte[] key, final int length, final int hash) {
+      final int mask = slots.length - 1;
+      int slot = hash & mask;
+      for (int entry; (entry = slots[slot] - 1) >= 0; slot = (slot + 1) & mask) {
+        if (hashes[entry] == hash && compare(arena, offsets[entry], lengths[entry], key, 0, length) == 0) {
+          break;
         }
+      }
+      return slot;
+    }
 
-        if (outputFile.exists()) {
-          log.info("Deleting existing output file at {}", outputFile);
-          outputFile.delete();
-          outputFile.createNewFile();
+    /**
+     * Adds count to the given key if it is in the table
+     * @return false if the key is not in the table
+     */
+    boolean increment(final byte[] key, final int length, final int hash, final long count) {
+      final int entry = slots[slot(key, length, hash)] - 1;
+      if (entry < 0) {
+        return false;
+      }
+      counts[entry] += count;
+      return true;
+    }
+
+    /**
+     * Inserts a key which is not in the table
+     */
+    void insert(final byte[] key, final int length, final int hash, final long count) {
+      final int slot = slot(key, length, hash);
+      if (arenaSize + length > arena.length) {
+        arena = Arrays.copyOf(arena, (int) Math.min(MAX_ARENA, Math.max(arenaSize + length, 2L * arena.length)));
+      }
+      if (size == offsets.length) {
+        offsets = Arrays.copyOf(offsets, size * 2);
+        lengths = Arrays.copyOf(lengths, size * 2);
+        hashes = Arrays.copyOf(hashes, size * 2);
+        counts = Arrays.copyOf(counts, size * 2);
+      }
+      System.arraycopy(key, 0, arena, arenaSize, length);
+      offsets[size] = arenaSize;
+      lengths[size] = length;
+      hashes[size] = hash;
+      counts[size] = count;
+      arenaSize += length;
+      slots[slot] = ++size;
+
+      if (size * 4L >= slots.length * 3L) {
+        rehash(slots.length * 2);
+      }
+    }
+
+    /**
+     * @return the (approximate) number of bytes this table would allocate after inserting a key of the given length
+     */
+    long bytesAfterInsert(final int length) {
+      final long arenaBytes = (arenaSize + length > arena.length)
+          ? Math.min(MAX_ARENA, Math.max(arenaSize + length, 2L * arena.length))
+          : arena.length;
+      final long entryCapacity = (size == offsets.length) ? 2L * offsets.length : offsets.length;
+      final long slotCapacity = ((size + 1) * 4L >= slots.length * 3L) ? 2L * slots.length : slots.length;
+      return arenaBytes + 4L * slotCapacity + (4L + 4L + 4L + 8L) * entryCapacity;
+    }
+
+    private void rehash(final int capacity) {
+      slots = new int[capacity];
+      final int mask = capacity - 1;
+      for (int entry = 0; entry < size; entry++) {
+        int slot = hashes[entry] & mask;
+        while (slots[slot] != 0) {
+          slot = (slot + 1) & mask;
         }
+        slots[slot] = entry + 1;
       }
-      catch (IOException ex) {
-        log.error("Unable to create new file", ex);
-        throw new RuntimeException(ex);
+    }
+
+    int size() {
+      return size;
+    }
+
+    /**
+     * @return the entries of this table, ordered by the UTF-8 bytes of their keys
+     */
+    int[] sortedEntries() {
+      final int[] entries = new int[size];
+      for (int i = 0; i < size; i++) {
+        entries[i] = i;
       }
+      IntArrays.quickSort(entries, new AbstractIntComparator() {
+        @Override public int compare(int a, int b) {
+          return ExternalCountWriter.compare(arena, offsets[a], lengths[a], arena, offsets[b], lengths[b]);
+        }
+      });
+      return entries;
+    }
+
+    /**
+     * Empties this table, releasing its memory
+     */
+    void clear() {
+      arena = new byte[1 << 16];
+      arenaSize = 0;
+      offsets = new int[1 << 10];
+      lengths = new int[1 << 10];
+      hashes = new int[1 << 10];
+      counts = new long[1 << 10];
+      size = 0;
+      slots = new int[1 << 11];
     }
   }
 
-  private StringBuilder countBuilder = new StringBuilder();
+  /**
+   * Writes (key, count) records in key order: varint key length, key bytes, varlong count
+   */
+  private static class RunWriter implements Closeable {
+    private final DataOutputStream out;
+    private long entries = 0;
 
-  public void addCount(final String key, final int count) {
-    countBuilder.setLength(0); // Reuse the builder to reduce memory churn
-    countBuilder.append(key);
-    addCount(countBuilder, count);
-  }
+    RunWriter(File file) throws IOException {
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+    }
+
+    void write(final byte[] key, final int offset, final int length, final long count) throws IOException {
+      writeVarLong(length);
+      out.write(key, offset, length);
+      writeVarLong(count);
+      entries++;
+    }
 
-  // Convenience method for calculating the free memory
-  private static final Runtime runtime = Runtime.getRuntime();
-  private static double freeMemoryRatio() {
-    double ratio = (runtime.maxMemory() - runtime.totalMemory() + runtime.freeMemory()) / (double) runtime.maxMemory();
-    log.debug("Free memory ratio is {}", ratio);
-    return ratio;
+    private void writeVarLong(long value) throws IOException {
+      while ((value & ~0x7FL) != 0) {
+        out.writeByte((int) ((value & 0x7F) | 0x80));
+        value >>>= 7;
+      }
+      out.writeByte((int) value);
+    }
+
+    @Override public void close() throws IOException {
+      out.close();
+    }
   }
 
-  public void addCount(final StringBuilder key, final int count) {
-    final String pair = key.toString();
-    final int oldCount =  memoryCountCache.get(pair);
-    final int newCount = oldCount + count;
-    memoryCountCache.put(pair, newCount);
-    flushNeeded = true;
+  private static class RunReader implements Closeable {
+    private final DataInputStream in;
+    byte[] key = new byte[64];
+    int length;
+    long count;
 
-    // If we haven't flushed yet, calculate free memory ratio every 100 entries and remember the size of the map
-    // We are abusing short-circuiting here to only calculate the freeMemory every 100 entries IF we haven't calculated sizeToFlush
-    if (sizeToFlush < 0 && memoryCountCache.size() % 100 == 0 && freeMemoryRatio() < MINIMUM_FREE_MEMORY_FRACTION) {
-      sizeToFlush = (int) (memoryCountCache.size() * 0.9);
-      log.info("Setting flush threshold to {} entries", sizeToFlush);
+    RunReader(File file) throws IOException {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
     }
 
-    // For future flushes, just compare the map size (as the memory is still allocated)
-    // We don't want to flush until sizeToFlush has been calculated
-    if (sizeToFlush >= 0 && memoryCountCache.size() >= sizeToFlush) {
-      log.info("Flushing current counts...");
-      flushCounts();
+    boolean next() throws IOException {
+      final int first = in.read();
+      if (first < 0) {
+        return false;
+      }
+      length = (int) readVarLong(first);
+      if (length > key.length) {
+        key = new byte[Math.max(length, key.length * 2)];
+      }
+      in.readFully(key, 0, length);
+      count = readVarLong(in.readUnsignedByte());
+      return true;
     }
-  }
 
-  public void flushCounts() {
-    if (flushNeeded) {
-      writeCountMap(memoryCountCache, unsortedFile, SEPARATOR);
-      flushNeeded = false;
+    private long readVarLong(int b) throws IOException {
+      long value = b & 0x7F;
+      for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+        b = in.readUnsignedByte();
+        value |= (long) (b & 0x7F) << shift;
+      }
+      return value;
+    }
+
+    @Override public void close() throws IOException {
+      in.close();
     }
   }
 
-  protected static void writeCountMap(final TObjectIntHashMap<String> counts, final File outFile, final char separator) {
+  private interface CountSink {
+    void accept(byte[] key, int length, long count) throws IOException;
+  }
+
+  /**
+   * k-way merges the given sorted runs, summing the counts of equal keys
+   */
+  private static void mergeRuns(final List<File> runs, final CountSink sink) throws IOException {
+    final PriorityQueue<RunReader> queue = new PriorityQueue<>(Math.max(1, runs.size()),
+        (a, b) -> compare(a.key, 0, a.length, b.key, 0, b.length));
     try {
-      try (final BufferedWriter writer = new BufferedWriter(new FileWriter(outFile, true))) {
-        counts.forEachEntry(new TObjectIntProcedure<String>() {
-          @Override
-          public boolean execute(final String o, final int i) {
-            try {
-              writer.append(o);
-              writer.append(separator);
-              writer.append(Integer.toString(i));
-              writer.newLine();
-              return true;
-            } catch (Exception e) {
-              throw new RuntimeException(e);
-            }
-          }
-        });
-      counts.clear();
-      System.gc();
+      for (File run : runs) {
+        final RunReader reader = new RunReader(run);
+        if (reader.next()) {
+          queue.add(reader);
+        } else {
+          reader.close();
+        }
       }
-    } catch (Exception e) {
-      throw new RuntimeException(e);
+      byte[] key = new byte[64];
+      while (!queue.isEmpty()) {
+        final RunReader head = queue.poll();
+        final int length = head.length;
+        if (key.length < length) {
+          key = new byte[Math.max(length, key.length * 2)];
+        }
+        System.arraycopy(head.key, 0, key, 0, length);
+        long sum = head.count;
+        advance(head, queue);
+        while (!queue.isEmpty() && compare(queue.peek().key, 0, queue.peek().length, key, 0, length) == 0) {
+          final RunReader same = queue.poll();
+          sum += same.count;
+          advance(same, queue);
+        }
+        sink.accept(key, length, sum);
+      }
+    } finally {
+      for (RunReader reader : queue) {
+        reader.close();
+      }
+    }
+  }
+
+  private static void advance(final RunReader reader, final PriorityQueue<RunReader> queue) throws IOException {
+    if (reader.next()) {
+      queue.add(reader);
+    } else {
+      reader.close();
     }
   }
 
+  @SuppressWarnings("ResultOfMethodCallIgnored")
   @Override public void close() throws IOException {
     flushCounts();
-    memoryCountCache = null;
-    log.info("Sorting file and saving intermediary output to {}", sortedFile);
-    ExternalSort.mergeSortedFiles(ExternalSort.sortInBatch(unsortedFile, comparator), sortedFile, comparator);
-    log.info("Reducing sorted file to {}", outputFile);
-    reduceSortedFile(sortedFile, outputFile, SEPARATOR);
-  }
-
-  public static void reduceSortedFile(File sortedFile, File outFile, char separator) throws IOException {
-    log.info("Reducing sorted file and saving to {}", outFile);
-    String lastKey = null;
-    long sum = 0;
-    try (Writer writer = new BufferedWriter(new FileWriter(outFile))) {
-      BufferedReader reader = new BufferedReader(new FileReader(sortedFile));
-      String line;
-      while ((line = reader.readLine()) != null) {
-        int sep = line.lastIndexOf(separator);
-        String key = line.substring(0, sep);
-        long value = Long.parseLong(line.substring(sep+1));
-        if (lastKey != null &&  ! key.equals(lastKey)) {
-          writeEntry(writer, lastKey, sum, separator);
-          lastKey = key;
-          sum = value;
-        } else {
-          sum += value;
-          lastKey = key;
+
+    // Partitions share no keys, so each can be reduced to a single run independently
+    log.info("Merging runs of {} partitions", partitions.length);
+    final File[] merged = new File[partitions.length];
+    final long[] entries = new long[partitions.length];
+    IntStream.range(0, partitions.length).parallel().forEach(i -> {
+      final List<File> runs = partitions[i].runs;
+      if (runs.size() <= 1) {
+        merged[i] = runs.isEmpty() ? null : runs.get(0);
+        entries[i] = partitions[i].spilledEntries;
+        return;
+      }
+      // Until the merged run is renamed into place, a crash leaves its sources intact; afterwards, the recorded
+      // sources are deleted when the writer is resumed
+      try {
+        final File temp = File.createTempFile(String.format("%04d-", i), TEMP_SUFFIX, runDirectory);
+        try (RunWriter writer = new RunWriter(temp)) {
+          mergeRuns(runs, (key, length, count) -> writer.write(key, 0, length, count));
+          entries[i] = writer.entries;
         }
+        merged[i] = newRun(i);
+        final File sources = new File(runDirectory, merged[i].getName() + SOURCES_SUFFIX);
+        Files.write(sources.toPath(), runs.stream().map(File::getName).collect(Collectors.toList()),
+            StandardCharsets.UTF_8);
+        Files.move(temp.toPath(), merged[i].toPath(), StandardCopyOption.ATOMIC_MOVE);
+        for (File run : runs) {
+          Files.delete(run.toPath());
+        }
+        Files.delete(sources.toPath());
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+
+    final List<File> finalRuns = new ArrayList<>(previousRuns);
+    // Runs take at least a few bytes per entry, so this overestimates their entries for the bloom filter
+    long expectedEntries = previousRuns.stream().mapToLong(File::length).sum() / 4;
+    for (int i = 0; i < merged.length; i++) {
+      if (merged[i] != null) {
+        finalRuns.add(merged[i]);
+        expectedEntries += entries[i];
       }
-      writeEntry(writer, lastKey, sum, separator);
-      reader.close();
     }
+
+    log.info("Merging {} runs to {}", finalRuns.size(), outputFile);
+    if (format == Format.BLOCKS) {
+      try (CountFile.Writer writer = new CountFile.Writer(outputFile, expectedEntries)) {
+        mergeRuns(finalRuns, (key, length, count) -> writer.add(Arrays.copyOf(key, length), count));
+      }
+    } else {
+      try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outputFile),
+          StandardCharsets.UTF_8))) {
+        mergeRuns(finalRuns, (key, length, count) ->
+            writeEntry(writer, new String(key, 0, length, StandardCharsets.UTF_8), count, SEPARATOR));
+      }
+    }
+
+    for (File run : finalRuns) {
+      run.delete();
+    }
+    runDirectory.delete();
   }
 
   public static void writeEntry(final Writer writer, final String key, final long sum, final char sep) throws IOException {
@@ -225,19 +628,11 @@ public class ExternalCountWriter implements AutoCloseable {
 
   public static void main(String... args) throws Exception {
     switch (args[0]) {
-      case "sort":
-        {
-          File unsortedFile = new File(args[1]);
-          File sortedFile = new File(args[2]);
-          Comparator<String> comparator = new KeyComparator('\t');
-          ExternalSort.mergeSortedFiles(ExternalSort.sortInBatch(unsortedFile, comparator), sortedFile, comparator);
-          break;
-        }
-      case "merge":
+      case "import":
         {
-          File sortedFile = new File(args[1]);
+          File tsvFile = new File(args[1]);
           File outFile = new File(args[2]);
-          ExternalCountWriter.reduceSortedFile(sortedFile, outFile, '\t');
+          CountFile.importTsv(tsvFile, outFile, '\t');
           break;
         }
       default:
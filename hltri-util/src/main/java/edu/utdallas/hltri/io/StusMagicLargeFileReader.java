@@ -10,18 +10,25 @@ import java.io.RandomAccessFile;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * When operating on >2GB files this must be run in a 64bit jvm
+ *
+ * The position-based methods (seek, readByte, readLine) are not thread-safe; getByte and getString(long, long)
+ * read the mapped pages directly and may be called from any number of threads.
  * @author bryan
  */
 public class StusMagicLargeFileReader implements AutoCloseable {
   private static final Logger                 log       = Logger.get();
   private static final long                   PAGE_SIZE = Integer.MAX_VALUE;
   private              List<MappedByteBuffer> buffers   = new ArrayList<>();
-  private final        byte                   raw[]     = new byte[1];
+  private final        LongAdder              lookups   = new LongAdder();
+  private final        LongAdder              probes    = new LongAdder();
+  private final        LongAdder              bytesRead = new LongAdder();
   long position = 0;
   long        fileLength;
   FileChannel channel;
@@ -56,8 +63,18 @@ public class StusMagicLargeFileReader implements AutoCloseable {
         this.channel = channel;
     }
     public String getString(long bytePosition) {
-        raw[0] = getByte(bytePosition);
-        return new String(raw);
+        return new String(new byte[]{getByte(bytePosition)});
+    }
+
+    /**
+     * @return the UTF-8 string stored in [start, end)
+     */
+    public String getString(long start, long end) {
+      final byte[] data = new byte[(int) (end - start)];
+      for (int i = 0; i < data.length; i++) {
+        data[i] = getByte(start + i);
+      }
+      return new String(data, StandardCharsets.UTF_8);
     }
 
      public byte getByte(long bytePosition) {
@@ -106,4 +123,42 @@ public class StusMagicLargeFileReader implements AutoCloseable {
     public long getPosition() {
       return position;
     }
+
+    void recordLookup(int probes, long bytes) {
+      this.lookups.increment();
+      this.probes.add(probes);
+      this.bytesRead.add(bytes);
+    }
+
+    /**
+     * @return number of binary searches made against this reader by {@link ExternalBinarySearch}
+     */
+    public long getLookupCount() {
+      return lookups.sum();
+    }
+
+    /**
+     * @return number of lines compared by binary searches against this reader
+     */
+    public long getProbeCount() {
+      return probes.sum();
+    }
+
+    /**
+     * @return number of bytes touched by binary searches against this reader
+     */
+    public long getBytesRead() {
+      return bytesRead.sum();
+    }
+
+    public double getProbesPerLookup() {
+      final long n = lookups.sum();
+      return n == 0 ? 0 : probes.sum() / (double) n;
+    }
+
+    public void resetCounters() {
+      lookups.reset();
+      probes.reset();
+      bytesRead.reset();
+    }
 }
@@ -0,0 +1,687 @@
+package edu.utdallas.hltri.util;
+
+import com.google.common.base.CharMatcher;
+import edu.utdallas.hltri.logging.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Immutable, thread-safe dictionary matcher compiled from a {@link PatternMatcher} or
+ * {@link HierarchicalPatternMatcher} (see their compile methods).
+ *
+ * Patterns are compiled into an Aho-Corasick automaton whose goto function is stored as a double array (base and
+ * check), so text is matched in a single pass over its characters, whatever the number of patterns. Labels are
+ * interned to int ids. Matches are reported exactly as by the source matcher: every occurrence of every pattern,
+ * ordered by start then by end.
+ *
+ * A compiled matcher can be saved to a file and memory-mapped back with {@link #load(Path)}, which only reads the
+ * file's header, so even large dictionaries (e.g. UMLS atoms) are available immediately.
+ */
+public class CompiledPatternMatcher {
+  private static final Logger log = Logger.get(CompiledPatternMatcher.class);
+
+  private static final int MAGIC = 0x41434d32;  // "ACM2"
+  private static final int HEADER_INTS = 9;
+  private static final char BOUNDARY = '|';
+
+  // Double-array automaton: state t is the child of state s on code c iff t = base[s] + c and check[t] = s
+  private final IntBuffer base;
+  private final IntBuffer check;
+  private final IntBuffer fail;
+  // Pattern ending at each state (or -1), and the nearest state on its failure path ending a pattern (or -1)
+  private final IntBuffer output;
+  private final IntBuffer dictionary;
+  // Code of each char in the patterns' alphabet; any other char has code 0 and no transition
+  private final CharBuffer codes;
+
+  private final IntBuffer patternLengths;
+  private final IntBuffer labelOffsets;
+  private final IntBuffer labelIds;
+  private final Strings patterns;
+  private final Strings labels;
+
+  private final CharMatcher formatter;
+
+  private CompiledPatternMatcher(CharMatcher formatter, IntBuffer base, IntBuffer check, IntBuffer fail,
+                                 IntBuffer output, IntBuffer dictionary, CharBuffer codes, IntBuffer patternLengths,
+                                 IntBuffer labelOffsets, IntBuffer labelIds, Strings patterns, Strings labels) {
+    this.formatter = formatter;
+    this.base = base;
+    this.check = check;
+    this.fail = fail;
+    this.output = output;
+    this.dictionary = dictionary;
+    this.codes = codes;
+    this.patternLengths = patternLengths;
+    this.labelOffsets = labelOffsets;
+    this.labelIds = labelIds;
+    this.patterns = patterns;
+    this.labels = labels;
+  }
+
+  public static Builder builder() {
+    return new Builder(PatternMatcher.formatter);
+  }
+
+  /**
+   * @param formatter matches the characters separating the tokens of patterns and text
+   */
+  public static Builder builder(CharMatcher formatter) {
+    return new Builder(formatter);
+  }
+
+  /**
+   * Receives each match of a scan
+   */
+  @FunctionalInterface
+  public interface MatchConsumer {
+    /**
+     * @param pattern id of the matched pattern
+     * @param end offset (in the formatted text) of the last character of the match
+     * @return false to stop the scan
+     */
+    boolean accept(int pattern, int end);
+  }
+
+  /**
+   * Runs the automaton over the given text, formatted on the fly as by {@link PatternMatcher} (tokens separated by
+   * single '|'s, with a leading and trailing '|'), reporting matches in order of their end
+   */
+  public void scan(CharSequence context, MatchConsumer consumer) {
+    int state = step(0, BOUNDARY);
+    int offset = 0;
+    if (!report(state, offset, consumer)) {
+      return;
+    }
+    boolean separated = false;
+    for (int i = 0; i < context.length(); i++) {
+      final char c = context.charAt(i);
+      if (formatter.matches(c)) {
+        separated = true;
+        continue;
+      }
+      if (separated && offset > 0) {
+        state = step(state, BOUNDARY);
+        if (!report(state, ++offset, consumer)) {
+          return;
+        }
+      }
+      separated = false;
+      state = step(state, c);
+      if (!report(state, ++offset, consumer)) {
+        return;
+      }
+    }
+    state = step(state, BOUNDARY);
+    report(state, ++offset, consumer);
+  }
+
+  private int step(int state, char c) {
+    final int code = codes.get(c);
+    while (true) {
+      if (code != 0) {
+        final int next = base.get(state) + code;
+        if (next < check.limit() && check.get(next) == state) {
+          return next;
+        }
+      }
+      if (state == 0) {
+        return 0;
+      }
+      state = fail.get(state);
+    }
+  }
+
+  private boolean report(int state, int end, MatchConsumer consumer) {
+    for (int s = (output.get(state) >= 0) ? state : dictionary.get(state); s >= 0; s = dictionary.get(s)) {
+      if (!consumer.accept(output.get(s), end)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return ids of the patterns matched in the given text, ordered by start, then by end
+   */
+  public int[] getPatternIdsWithin(CharSequence context) {
+    final int[][] found = {new int[16], new int[16]};
+    final int[] n = {0};
+    scan(context, (pattern, end) -> {
+      if (n[0] == found[0].length) {
+        found[0] = Arrays.copyOf(found[0], n[0] * 2);
+        found[1] = Arrays.copyOf(found[1], n[0] * 2);
+      }
+      found[0][n[0]] = pattern;
+      found[1][n[0]] = end;
+      n[0]++;
+      return true;
+    });
+    // Matches are found by end (and, within an end, from longest to shortest); sort them by start, then by the
+    // order found, by packing both into a long
+    final long[] order = new long[n[0]];
+    for (int i = 0; i < n[0]; i++) {
+      order[i] = ((long) (found[1][i] - patternLengths.get(found[0][i])) << 32) | i;
+    }
+    Arrays.sort(order);
+    final int[] ids = new int[n[0]];
+    for (int i = 0; i < n[0]; i++) {
+      ids[i] = found[0][(int) order[i]];
+    }
+    return ids;
+  }
+
+  /**
+   * @return ids of the labels of the patterns matched in the given text, in the order of the matched patterns
+   */
+  public IntStream getLabelIdsWithin(CharSequence context) {
+    return Arrays.stream(getPatternIdsWithin(context))
+        .flatMap(p -> IntStream.range(labelOffsets.get(p), labelOffsets.get(p + 1)).map(labelIds::get));
+  }
+
+  public boolean hasMatchWithin(CharSequence context) {
+    final boolean[] found = {false};
+    scan(context, (pattern, end) -> {
+      found[0] = true;
+      return false;
+    });
+    return found[0];
+  }
+
+  public List<String> getMatchesWithin(CharSequence context) {
+    final int[] ids = getPatternIdsWithin(context);
+    final List<String> matches = new ArrayList<>(ids.length);
+    for (int id : ids) {
+      matches.add(patterns.get(id));
+    }
+    return matches;
+  }
+
+  public int getNumMatchesWithin(CharSequence context) {
+    final int[] n = {0};
+    scan(context, (pattern, end) -> {
+      n[0]++;
+      return true;
+    });
+    return n[0];
+  }
+
+  public List<String> getLabelsWithin(CharSequence context) {
+    final List<String> matches = new ArrayList<>();
+    getLabelIdsWithin(context).forEach(id -> matches.add(labels.get(id)));
+    return matches;
+  }
+
+  public int getNumLabelsWithin(CharSequence context) {
+    return (int) getLabelIdsWithin(context).count();
+  }
+
+  public int getNumPatterns() {
+    return patternLengths.limit();
+  }
+
+  public int getNumLabels() {
+    return labels.size();
+  }
+
+  public int getNumStates() {
+    return base.limit();
+  }
+
+  /**
+   * @return the pattern with the given id, with tokens separated by spaces
+   */
+  public String getPattern(int id) {
+    return patterns.get(id);
+  }
+
+  public String getLabel(int id) {
+    return labels.get(id);
+  }
+
+  public List<String> getLabels() {
+    return labels;
+  }
+
+  /**
+   * Saves this matcher in a form which {@link #load(Path)} memory-maps. Only a fingerprint of the formatter is saved,
+   * so it must be given again when loading if not the default.
+   * The matcher is written to a temporary file which is then renamed, so the file is never seen half-written.
+   */
+  public void save(Path file) {
+    final Path temp;
+    try {
+      temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName() + ".", ".tmp");
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    try {
+      write(temp);
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    } finally {
+      try {
+        Files.deleteIfExists(temp);
+      } catch (IOException e) {
+        log.warn("Failed to delete {}", temp, e);
+      }
+    }
+    log.debug("Saved {} to {}", this, file);
+  }
+
+  private void write(Path file) throws IOException {
+    final IntBuffer[] ints = {base, check, fail, output, dictionary, patternLengths, labelOffsets, labelIds,
+        patterns.offsets, labels.offsets};
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(base.limit());
+      out.writeInt(patternLengths.limit());
+      out.writeInt(labels.size());
+      out.writeInt(labelIds.limit());
+      out.writeInt(patterns.bytes.limit());
+      out.writeInt(labels.bytes.limit());
+      out.writeInt(codes.limit());
+      out.writeInt(fingerprint(formatter));
+      for (IntBuffer buffer : ints) {
+        for (int i = 0; i < buffer.limit(); i++) {
+          out.writeInt(buffer.get(i));
+        }
+      }
+      for (int i = 0; i < codes.limit(); i++) {
+        out.writeChar(codes.get(i));
+      }
+      for (ByteBuffer buffer : Arrays.asList(patterns.bytes, labels.bytes)) {
+        for (int i = 0; i < buffer.limit(); i++) {
+          out.writeByte(buffer.get(i));
+        }
+      }
+    }
+  }
+
+  /**
+   * @return hash of the set of chars matched by the given formatter
+   */
+  private static int fingerprint(CharMatcher formatter) {
+    final BitSet matched = new BitSet(Character.MAX_VALUE + 1);
+    for (int c = Character.MIN_VALUE; c <= Character.MAX_VALUE; c++) {
+      if (formatter.matches((char) c)) {
+        matched.set(c);
+      }
+    }
+    return matched.hashCode();
+  }
+
+  public static CompiledPatternMatcher load(Path file) {
+    return load(file, PatternMatcher.formatter);
+  }
+
+  /**
+   * Memory-maps a matcher saved by {@link #save(Path)}
+   * @param formatter the formatter the matcher was built with
+   * @throws IllegalArgumentException if the file is not a compiled matcher, or was built with a different formatter
+   */
+  public static CompiledPatternMatcher load(Path file, CharMatcher formatter) {
+    final ByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    if (buffer.getInt(0) != MAGIC) {
+      throw new IllegalArgumentException("Not a compiled pattern matcher: " + file);
+    }
+    final int numStates = buffer.getInt(4);
+    final int numPatterns = buffer.getInt(8);
+    final int numLabels = buffer.getInt(12);
+    final int numLabelIds = buffer.getInt(16);
+    final int patternBytes = buffer.getInt(20);
+    final int labelBytes = buffer.getInt(24);
+    final int numCodes = buffer.getInt(28);
+    if (buffer.getInt(32) != fingerprint(formatter)) {
+      throw new IllegalArgumentException("Compiled pattern matcher " + file + " was built with a different formatter");
+    }
+    final int[] position = {HEADER_INTS * 4};
+    final IntBuffer[] ints = new IntBuffer[10];
+    final int[] lengths = {numStates, numStates, numStates, numStates, numStates, numPatterns, numPatterns + 1,
+        numLabelIds, numPatterns + 1, numLabels + 1};
+    for (int i = 0; i < ints.length; i++) {
+      ints[i] = slice(buffer, position[0], lengths[i] * 4).asIntBuffer();
+      position[0] += lengths[i] * 4;
+    }
+    final CharBuffer codes = slice(buffer, position[0], numCodes * 2).asCharBuffer();
+    position[0] += numCodes * 2;
+    final ByteBuffer patternBlob = slice(buffer, position[0], patternBytes);
+    final ByteBuffer labelBlob = slice(buffer, position[0] + patternBytes, labelBytes);
+    final CompiledPatternMatcher matcher = new CompiledPatternMatcher(formatter, ints[0], ints[1], ints[2], ints[3],
+        ints[4], codes, ints[5], ints[6], ints[7], new Strings(ints[8], patternBlob), new Strings(ints[9], labelBlob));
+    log.debug("Mapped {} from {}", matcher, file);
+    return matcher;
+  }
+
+  private static ByteBuffer slice(ByteBuffer buffer, int position, int length) {
+    final ByteBuffer duplicate = buffer.duplicate();
+    duplicate.position(position);
+    duplicate.limit(position + length);
+    return duplicate.slice();
+  }
+
+  @Override
+  public String toString() {
+    return "CompiledPatternMatcher(" + getNumPatterns() + " patterns, " + getNumLabels() + " labels, " +
+        getNumStates() + " states)";
+  }
+
+  /**
+   * UTF-8 strings stored back to back, decoded (and kept) on first use
+   */
+  private static class Strings extends AbstractList<String> {
+    private final IntBuffer offsets;
+    private final ByteBuffer bytes;
+    private final String[] decoded;
+
+    Strings(IntBuffer offsets, ByteBuffer bytes) {
+      this.offsets = offsets;
+      this.bytes = bytes;
+      this.decoded = new String[offsets.limit() - 1];
+    }
+
+    static Strings of(List<String> strings) {
+      final int[] offsets = new int[strings.size() + 1];
+      final List<byte[]> encoded = new ArrayList<>(strings.size());
+      for (int i = 0; i < strings.size(); i++) {
+        encoded.add(strings.get(i).getBytes(StandardCharsets.UTF_8));
+        offsets[i + 1] = offsets[i] + encoded.get(i).length;
+      }
+      final ByteBuffer bytes = ByteBuffer.allocate(offsets[strings.size()]);
+      encoded.forEach(bytes::put);
+      bytes.flip();
+      return new Strings(IntBuffer.wrap(offsets), bytes);
+    }
+
+    @Override
+    public String get(int i) {
+      String string = decoded[i];
+      if (string == null) {
+        final int start = offsets.get(i);
+        final byte[] utf8 = new byte[offsets.get(i + 1) - start];
+        for (int j = 0; j < utf8.length; j++) {
+          utf8[j] = bytes.get(start + j);
+        }
+        string = new String(utf8, StandardCharsets.UTF_8);
+        decoded[i] = string;
+      }
+      return string;
+    }
+
+    @Override
+    public int size() {
+      return decoded.length;
+    }
+  }
+
+  /**
+   * Collects patterns and their labels. Patterns must already be formatted (as by {@link PatternMatcher}); adding a
+   * pattern again replaces its labels.
+   */
+  public static class Builder {
+    private final CharMatcher formatter;
+    private final Map<String, Collection<String>> patterns = new LinkedHashMap<>();
+
+    private Builder(CharMatcher formatter) {
+      this.formatter = formatter;
+    }
+
+    public Builder add(String formattedPattern, Collection<String> labels) {
+      if (formattedPattern.isEmpty()) {
+        throw new IllegalArgumentException("Empty pattern");
+      }
+      patterns.put(formattedPattern, labels);
+      return this;
+    }
+
+    public CompiledPatternMatcher build() {
+      final String[] keys = patterns.keySet().toArray(new String[patterns.size()]);
+      Arrays.sort(keys);
+
+      // Intern labels, and encode each char of the patterns' alphabet by decreasing frequency so frequent chars
+      // get small codes and pack densely
+      final Map<String, Integer> labelIndex = new LinkedHashMap<>();
+      final int[] labelOffsets = new int[keys.length + 1];
+      final List<Integer> labelIds = new ArrayList<>();
+      final int[] frequencies = new int[Character.MAX_VALUE + 1];
+      for (int p = 0; p < keys.length; p++) {
+        for (String label : patterns.get(keys[p])) {
+          Integer id = labelIndex.get(label);
+          if (id == null) {
+            id = labelIndex.size();
+            labelIndex.put(label, id);
+          }
+          labelIds.add(id);
+        }
+        labelOffsets[p + 1] = labelIds.size();
+        for (int i = 0; i < keys[p].length(); i++) {
+          frequencies[keys[p].charAt(i)]++;
+        }
+      }
+      final char[] codes = new char[Character.MAX_VALUE + 1];
+      final Integer[] alphabet = IntStream.range(0, frequencies.length).filter(c -> frequencies[c] > 0).boxed()
+          .sorted((a, b) -> Integer.compare(frequencies[b], frequencies[a])).toArray(Integer[]::new);
+      for (int i = 0; i < alphabet.length; i++) {
+        codes[alphabet[i]] = (char) (i + 1);
+      }
+
+      final DoubleArray da = new DoubleArray(keys, codes, alphabet.length);
+      final int[] patternLengths = Arrays.stream(keys).mapToInt(String::length).toArray();
+      final List<String> display = new ArrayList<>(keys.length);
+      for (String key : keys) {
+        display.add(PatternMatcher.unformatter.trimAndCollapseFrom(key, ' '));
+      }
+      final CompiledPatternMatcher matcher = new CompiledPatternMatcher(formatter,
+          IntBuffer.wrap(da.base), IntBuffer.wrap(da.check), IntBuffer.wrap(da.fail), IntBuffer.wrap(da.output),
+          IntBuffer.wrap(da.dictionary), CharBuffer.wrap(codes), IntBuffer.wrap(patternLengths),
+          IntBuffer.wrap(labelOffsets), IntBuffer.wrap(labelIds.stream().mapToInt(Integer::intValue).toArray()),
+          Strings.of(display), Strings.of(new ArrayList<>(labelIndex.keySet())));
+      log.debug("Compiled {}", matcher);
+      return matcher;
+    }
+  }
+
+  /**
+   * Builds the double-array automaton of sorted, distinct keys breadth first, computing each state's failure and
+   * dictionary links as it is created (its failure state is shallower, so already complete)
+   */
+  private static class DoubleArray {
+    private final int maxCode;
+    private int[] base = new int[1024];
+    private int[] check = new int[1024];
+    private int[] fail = new int[1024];
+    private int[] output = new int[1024];
+    private int[] dictionary = new int[1024];
+    private int size = 1;
+    // Free slots, as a circular doubly linked list in increasing order, with slot 0 (the root) as its sentinel
+    private int[] nextFree = new int[0];
+    private int[] prevFree = new int[0];
+
+    DoubleArray(String[] keys, char[] codes, int maxCode) {
+      this.maxCode = maxCode;
+      free(1, check.length);
+      check[0] = 0;
+      output[0] = -1;
+      dictionary[0] = -1;
+
+      // Each queued node is a state with the range of keys below it and its depth
+      final IntArrayQueue queue = new IntArrayQueue();
+      queue.add(0, 0, keys.length, 0);
+      final int[] childCodes = new int[Character.MAX_VALUE + 1];
+      final int[] childStarts = new int[Character.MAX_VALUE + 2];
+      while (!queue.isEmpty()) {
+        final int state = queue.poll();
+        int lo = queue.poll();
+        final int hi = queue.poll();
+        final int depth = queue.poll();
+        if (lo < hi && keys[lo].length() == depth) {
+          output[state] = lo++;
+        }
+        int numChildren = 0;
+        for (int i = lo; i < hi; i++) {
+          final int code = codes[keys[i].charAt(depth)];
+          if (numChildren == 0 || childCodes[numChildren - 1] != code) {
+            childCodes[numChildren] = code;
+            childStarts[numChildren] = i;
+            numChildren++;
+          }
+        }
+        childStarts[numChildren] = hi;
+        if (numChildren == 0) {
+          continue;
+        }
+        final int b = findBase(childCodes, numChildren);
+        base[state] = b;
+        for (int i = 0; i < numChildren; i++) {
+          final int child = b + childCodes[i];
+          check[child] = state;
+          nextFree[prevFree[child]] = nextFree[child];
+          prevFree[nextFree[child]] = prevFree[child];
+        }
+        for (int i = 0; i < numChildren; i++) {
+          final int child = b + childCodes[i];
+          size = Math.max(size, child + 1);
+          if (state == 0) {
+            fail[child] = 0;
+          } else {
+            int f = fail[state];
+            while (f != 0 && transition(f, childCodes[i]) < 0) {
+              f = fail[f];
+            }
+            final int t = transition(f, childCodes[i]);
+            fail[child] = (t < 0) ? 0 : t;
+          }
+          dictionary[child] = (output[fail[child]] >= 0) ? fail[child] : dictionary[fail[child]];
+          queue.add(child, childStarts[i], childStarts[i + 1], depth + 1);
+        }
+      }
+      base = Arrays.copyOf(base, size);
+      check = Arrays.copyOf(check, size);
+      fail = Arrays.copyOf(fail, size);
+      output = Arrays.copyOf(output, size);
+      dictionary = Arrays.copyOf(dictionary, size);
+    }
+
+    private int transition(int state, int code) {
+      final int t = base[state] + code;
+      return (state != t && t < size && check[t] == state) ? t : -1;
+    }
+
+    /**
+     * Finds the smallest base at which every child's slot is free, only trying bases which put the first child in a
+     * free slot
+     */
+    private int findBase(int[] childCodes, int numChildren) {
+      int slot = nextFree[0];
+      while (true) {
+        if (slot == 0) {
+          slot = check.length;
+          ensureCapacity(check.length + 1);
+        }
+        final int b = slot - childCodes[0];
+        if (b >= 1) {
+          ensureCapacity(b + maxCode + 1);
+          boolean free = true;
+          for (int i = 1; i < numChildren && free; i++) {
+            free = check[b + childCodes[i]] == -1;
+          }
+          if (free) {
+            return b;
+          }
+        }
+        slot = nextFree[slot];
+      }
+    }
+
+    private void ensureCapacity(int capacity) {
+      if (capacity > check.length) {
+        final int old = check.length;
+        final int length = Math.max(capacity, old * 2);
+        base = Arrays.copyOf(base, length);
+        check = Arrays.copyOf(check, length);
+        fail = Arrays.copyOf(fail, length);
+        output = Arrays.copyOf(output, length);
+        dictionary = Arrays.copyOf(dictionary, length);
+        free(old, length);
+      }
+    }
+
+    /**
+     * Marks the slots from (inclusive) to (exclusive), which must be the last slots, as free
+     */
+    private void free(int from, int to) {
+      Arrays.fill(check, from, to, -1);
+      Arrays.fill(output, from, to, -1);
+      Arrays.fill(dictionary, from, to, -1);
+      nextFree = Arrays.copyOf(nextFree, to);
+      prevFree = Arrays.copyOf(prevFree, to);
+      final int last = prevFree[0];
+      for (int i = from; i < to; i++) {
+        prevFree[i] = (i == from) ? last : i - 1;
+        nextFree[i] = i + 1;
+      }
+      nextFree[last] = from;
+      nextFree[to - 1] = 0;
+      prevFree[0] = to - 1;
+    }
+  }
+
+  /**
+   * Growable FIFO queue of ints
+   */
+  private static class IntArrayQueue {
+    private int[] elements = new int[64];
+    private int head = 0;
+    private int tail = 0;
+
+    void add(int... values) {
+      for (int value : values) {
+        if (tail == elements.length) {
+          if (head > 0) {
+            System.arraycopy(elements, head, elements, 0, tail - head);
+            tail -= head;
+            head = 0;
+          }
+          if (tail == elements.length) {
+            elements = Arrays.copyOf(elements, elements.length * 2);
+          }
+        }
+        elements[tail++] = value;
+      }
+    }
+
+    int poll() {
+      return elements[head++];
+    }
+
+    boolean isEmpty() {
+      return head == tail;
+    }
+  }
+}
@@ -4,6 +4,7 @@ import com.google.common.base.Throwables;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Sets;
 
+import com.googlecode.concurrenttrees.common.KeyValuePair;
 import com.googlecode.concurrenttrees.radix.node.concrete.DefaultCharArrayNodeFactory;
 import com.googlecode.concurrenttrees.radixinverted.ConcurrentInvertedRadixTree;
 import com.googlecode.concurrenttrees.radixinverted.InvertedRadixTree;
@@ -61,6 +62,17 @@ public abstract class HierarchicalPatternMatcher {
     return Iterables.concat(patterns.getValuesForKeysContainedIn(formatContext(context)));
   }
 
+  /**
+   * Freezes the current patterns into a {@link CompiledPatternMatcher}, labelling each pattern with its path
+   */
+  public CompiledPatternMatcher compile() {
+    final CompiledPatternMatcher.Builder builder = CompiledPatternMatcher.builder(PatternMatcher.formatter);
+    for (KeyValuePair<Collection<String>> pair : patterns.getKeyValuePairsForKeysStartingWith("|")) {
+      builder.add(pair.getKey().toString(), pair.getValue());
+    }
+    return builder.build();
+  }
+
   public final void toTSV(Path file) {
     final List<String> lines = StreamSupport.stream(patterns.getKeyValuePairsForKeysStartingWith("|").spliterator(), false)
                                             .map(p -> PatternMatcher.unformatter.trimAndCollapseFrom(p.getKey(), ' ')
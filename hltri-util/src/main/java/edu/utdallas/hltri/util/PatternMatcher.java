@@ -6,6 +6,7 @@ import com.google.common.base.Throwables;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Sets;
 
+import com.googlecode.concurrenttrees.common.KeyValuePair;
 import com.googlecode.concurrenttrees.radix.node.concrete.DefaultCharArrayNodeFactory;
 import com.googlecode.concurrenttrees.radixinverted.ConcurrentInvertedRadixTree;
 import com.googlecode.concurrenttrees.radixinverted.InvertedRadixTree;
@@ -18,6 +19,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -124,6 +126,17 @@ public class PatternMatcher {
     return patterns.getValuesForKeysContainedIn(formatContext(context));
   }
 
+  /**
+   * Freezes the current patterns into a {@link CompiledPatternMatcher}, which matches text in a single pass
+   */
+  public CompiledPatternMatcher compile() {
+    final CompiledPatternMatcher.Builder builder = CompiledPatternMatcher.builder(formatter);
+    for (KeyValuePair<String> pair : patterns.getKeyValuePairsForKeysStartingWith("|")) {
+      builder.add(pair.getKey().toString(), Collections.singletonList(pair.getValue()));
+    }
+    return builder.build();
+  }
+
   public final void toTSV(Path file) {
     final List<String> lines = StreamSupport.stream(patterns.getKeyValuePairsForKeysStartingWith("|").spliterator(), false)
                                             .map(p -> unformatter.trimAndCollapseFrom(p.getKey(), ' ') + '\t' + p.getValue())
@@ -0,0 +1,121 @@
+package edu.utdallas.hltri.util;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.collect.Lists;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CompiledPatternMatcherTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static final List<String> texts = Arrays.asList(
+      "chest pain, then a heart-attack (myocardial infarction); no pain-killers.",
+      "  Heart attacks  were ruled out by the attack team",
+      "pain",
+      "no matches here",
+      "");
+
+  private static PatternMatcher patternMatcher() {
+    final PatternMatcher matcher = PatternMatcher.empty();
+    matcher.addPattern("heart attack", "MI");
+    matcher.addPattern("myocardial infarction", "MI");
+    matcher.addPattern("heart", "organ");
+    matcher.addPattern("attack", "event");
+    matcher.addPattern("chest  pain", "symptom");
+    matcher.addPattern("pain", "finding");
+    return matcher;
+  }
+
+  private static HierarchicalPatternMatcher hierarchicalMatcher() {
+    final HierarchicalPatternMatcher matcher = new HierarchicalPatternMatcher() {};
+    matcher.addPattern("heart attack", Arrays.asList("disease", "cardiac", "MI"));
+    matcher.addPattern("myocardial infarction", Arrays.asList("disease", "cardiac", "MI"));
+    matcher.addPattern("heart", Arrays.asList("anatomy", "organ"));
+    matcher.addPattern("chest pain", Arrays.asList("finding", "symptom"));
+    matcher.addPattern("pain", Arrays.asList("finding"));
+    return matcher;
+  }
+
+  private static void assertSameMatches(PatternMatcher expected, CompiledPatternMatcher actual) {
+    for (String text : texts) {
+      assertEquals(text, Lists.newArrayList(expected.getMatchesWithin(text)), actual.getMatchesWithin(text));
+      assertEquals(text, Lists.newArrayList(expected.getLabelsWithin(text)), actual.getLabelsWithin(text));
+      assertEquals(text, expected.getNumMatchesWithin(text), actual.getNumMatchesWithin(text));
+      assertEquals(text, expected.getNumLabelsWithin(text), actual.getNumLabelsWithin(text));
+      assertEquals(text, expected.hasMatchWithin(text), actual.hasMatchWithin(text));
+    }
+  }
+
+  private static void assertSameMatches(HierarchicalPatternMatcher expected, CompiledPatternMatcher actual) {
+    for (String text : texts) {
+      assertEquals(text, Lists.newArrayList(expected.getMatchesWithin(text)), actual.getMatchesWithin(text));
+      assertEquals(text, Lists.newArrayList(expected.getLabelsWithin(text)), actual.getLabelsWithin(text));
+      assertEquals(text, expected.getNumMatchesWithin(text), actual.getNumMatchesWithin(text));
+      assertEquals(text, expected.getNumLabelsWithin(text), actual.getNumLabelsWithin(text));
+      assertEquals(text, expected.hasMatchWithin(text), actual.hasMatchWithin(text));
+    }
+  }
+
+  @Test
+  public void testMatchesPatternMatcher() {
+    final PatternMatcher matcher = patternMatcher();
+    final CompiledPatternMatcher compiled = matcher.compile();
+    assertEquals(Arrays.asList("chest pain", "pain", "heart", "heart attack", "attack", "myocardial infarction", "pain"),
+        compiled.getMatchesWithin(texts.get(0)));
+    assertSameMatches(matcher, compiled);
+  }
+
+  @Test
+  public void testMatchesHierarchicalPatternMatcher() {
+    final HierarchicalPatternMatcher matcher = hierarchicalMatcher();
+    final CompiledPatternMatcher compiled = matcher.compile();
+    assertEquals(Arrays.asList("finding", "symptom", "finding", "anatomy", "organ", "disease", "cardiac", "MI",
+        "disease", "cardiac", "MI", "finding"), compiled.getLabelsWithin(texts.get(0)));
+    assertSameMatches(matcher, compiled);
+  }
+
+  @Test
+  public void testSaveAndLoad() throws IOException {
+    final PatternMatcher matcher = patternMatcher();
+    final CompiledPatternMatcher compiled = matcher.compile();
+    final Path file = folder.newFolder().toPath().resolve("patterns.acm");
+    compiled.save(file);
+
+    final CompiledPatternMatcher loaded = CompiledPatternMatcher.load(file);
+    assertEquals(compiled.getNumPatterns(), loaded.getNumPatterns());
+    assertEquals(compiled.getNumStates(), loaded.getNumStates());
+    assertEquals(compiled.getLabels(), loaded.getLabels());
+    assertSameMatches(matcher, loaded);
+
+    final HierarchicalPatternMatcher hierarchical = hierarchicalMatcher();
+    hierarchical.compile().save(file);
+    assertSameMatches(hierarchical, CompiledPatternMatcher.load(file));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testLoadWithOtherFormatter() throws IOException {
+    final Path file = folder.newFolder().toPath().resolve("patterns.acm");
+    patternMatcher().compile().save(file);
+    CompiledPatternMatcher.load(file, CharMatcher.whitespace());
+  }
+
+  @Test
+  public void testBoundaries() {
+    final CompiledPatternMatcher compiled = patternMatcher().compile();
+    // patterns only match whole tokens, and matching is case-sensitive
+    assertFalse(compiled.hasMatchWithin("painkillers"));
+    assertFalse(compiled.hasMatchWithin("Heart Attack"));
+    assertTrue(compiled.hasMatchWithin("(pain)"));
+  }
+}
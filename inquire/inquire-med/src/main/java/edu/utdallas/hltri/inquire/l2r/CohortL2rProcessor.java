@@ -1,5 +1,6 @@
 package edu.utdallas.hltri.inquire.l2r;
 
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
@@ -18,6 +19,8 @@ import edu.utdallas.hlt.medbase.umls.UMLSManager;
 import edu.utdallas.hltri.inquire.eval.QRels;
 import edu.utdallas.hltri.inquire.lucene.HasLuceneId;
 import edu.utdallas.hltri.inquire.lucene.LuceneSearchEngine;
+import edu.utdallas.hltri.inquire.lucene.QueryStatistics;
+import edu.utdallas.hltri.inquire.lucene.ScoreMatrix;
 import edu.utdallas.hltri.inquire.lucene.similarity.Similarities;
 import edu.utdallas.hltri.inquire.text.Keyword;
 import edu.utdallas.hltri.knowledge.WikiRedirectManager;
@@ -34,11 +37,11 @@ import edu.utdallas.hltri.scribe.text.Identifiable;
 import edu.utdallas.hltri.scribe.text.annotation.MedicalConcept;
 import edu.utdallas.hltri.scribe.text.annotation.NegationSpan;
 import edu.utdallas.hltri.scribe.text.annotation.Token;
+import edu.utdallas.hltri.struct.Pair;
 import edu.utdallas.hltri.struct.Triple;
 import edu.utdallas.hltri.struct.Weighted;
 import edu.utdallas.hltri.util.Expander;
 import edu.utdallas.hltri.util.IntIdentifier;
-import gnu.trove.map.TIntFloatMap;
 import java.io.Closeable;
 import java.io.IOException;
 import java.nio.file.Path;
@@ -54,7 +57,9 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 import java.util.function.BiFunction;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.function.ToIntBiFunction;
@@ -231,9 +236,22 @@ public class CohortL2rProcessor<
   private final LuceneSearchEngine<?> searcher;
   private final String[] streams;
 
+  private final QueryStatistics statistics;
+
   public CohortL2rProcessor(LuceneSearchEngine<?> searcher, String[] streams) {
     this.searcher = searcher;
     this.streams = streams;
+    this.statistics = new QueryStatistics(searcher);
+  }
+
+  /**
+   * @param statisticsCache file used to persist query statistics (e.g., IDFs) across runs
+   */
+  public CohortL2rProcessor(LuceneSearchEngine<?> searcher, String[] streams,
+                            Path statisticsCache) {
+    this.searcher = searcher;
+    this.streams = streams;
+    this.statistics = new QueryStatistics(searcher, statisticsCache);
   }
 
   private void expand(List<String> expanders,
@@ -265,11 +283,95 @@ public class CohortL2rProcessor<
     }
   }
 
+  /**
+   * Identifies the (QC, QE, stream, similarity) combination scored by one column of the
+   * {@link ScoreMatrix}
+   */
+  private static class RelevanceColumn {
+    final String qc;
+    final String qe;
+    final String stream;
+    final Similarity similarity;
+
+    RelevanceColumn(String qc, String qe, String stream, Similarity similarity) {
+      this.qc = qc;
+      this.qe = qe;
+      this.stream = stream;
+      this.similarity = similarity;
+    }
+  }
+
+  // Relevance scores of the reports retrieved for each topic, for every column
+  private final Cache<String, ScoreMatrix> topicScores = CacheBuilder.newBuilder().build();
+
+  /**
+   * Returns the score matrix for the given topic, scoring all of the topic's query variants
+   * in one batch the first time the topic is seen
+   *
+   * @param retrievedReports lucene IDs of the reports of every patient retrieved for the topic
+   */
+  private ScoreMatrix getTopicScores(Document<Topic> topic,
+                                     List<RelevanceColumn> columns,
+                                     Map<Triple<String, String, String>, BasicQuery> queries,
+                                     Function<Document<Topic>, int[]> retrievedReports) {
+    try {
+      return topicScores.get(topic.getId(), () -> {
+        final List<Pair<Similarity, Query>> batch = new ArrayList<>(columns.size());
+        for (RelevanceColumn column : columns) {
+          batch.add(Pair.of(column.similarity,
+              queries.get(Triple.of(topic.getId(), column.qc, column.qe)).toQuery(column.stream)));
+        }
+        return searcher.getSimilarities(batch,
+            new ScoreMatrix(columns.size(), retrievedReports.apply(topic)));
+      });
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  // IDF of each (QC, QE, stream) query for each topic
+  private final Cache<String, double[]> topicIdfs = CacheBuilder.newBuilder().build();
+
+  /**
+   * Returns the IDF of each (QC, QE, stream) query for the given topic, computing all of them in
+   * one batch the first time the topic is seen
+   */
+  private double[] getTopicIdfs(Document<Topic> topic,
+                                List<Triple<String, String, String>> columns,
+                                Map<Triple<String, String, String>, BasicQuery> queries) {
+    try {
+      return topicIdfs.get(topic.getId(), () -> {
+        final List<Query> batch = new ArrayList<>(columns.size());
+        for (Triple<String, String, String> column : columns) {
+          batch.add(queries.get(Triple.of(topic.getId(), column.first(), column.second()))
+              .toQuery(column.third()));
+        }
+        return statistics.getInverseDocumentFrequencies(batch);
+      });
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
   public void process(List<Document<Topic>> topics,
                       Function<String, Collection<Patient>> queryHits,
                       QRels qrels,
                       Function<Patient, Collection<Report>> reportMapper,
                       Path targetPath) {
+    process(topics, queryHits, qrels, reportMapper, targetPath, 1);
+  }
+
+  /**
+   * @param numThreads number of topics to vectorize concurrently; with more than one, topics are
+   *                   vectorized in a pipeline (see {@link RankingFeatureExtractor}), so later
+   *                   topics may be vectorized before the caches of earlier ones are cleared
+   */
+  public void process(List<Document<Topic>> topics,
+                      Function<String, Collection<Patient>> queryHits,
+                      QRels qrels,
+                      Function<Patient, Collection<Report>> reportMapper,
+                      Path targetPath,
+                      int numThreads) {
     log.info("Processing {} topics", topics.size());
 
     // Enumerate the query representations we are using
@@ -311,7 +413,7 @@ public class CohortL2rProcessor<
 
     final List<String> expanders = new ArrayList<>();
     // Topic -> QC -> QE
-    final Map<Triple<String, String, String>, BasicQuery> queries = new HashMap<>();
+    final Map<Triple<String, String, String>, BasicQuery> queries = new ConcurrentHashMap<>();
 
 
     // Open all the resources we will be using
@@ -348,6 +450,7 @@ public class CohortL2rProcessor<
     final Collection<BiFunction<Document<Topic>, Patient, Collection<? extends Feature<Number>>>> relevanceFeatures = Lists.newArrayList();
 
     // Topic Features
+    final List<Triple<String, String, String>> idfColumns = new ArrayList<>();
     for (Entry<String, Function<Document<Topic>, BasicQuery>> qc :
         queryRepresentations.entrySet()) {
       // TF1[#Components]
@@ -363,8 +466,10 @@ public class CohortL2rProcessor<
 
         // TF3[n-idf]
         for (String stream : streams) {
+          final int column = idfColumns.size();
+          idfColumns.add(Triple.of(qc.getKey(), qe, stream));
           topicFeatures.add(Extractors.singleDouble("nIDF." + qc.getKey() + "." + qe + "." + stream,
-              topic -> searcher.getInverseDocumentFrequency(queries.get(Triple.of(topic.getId(), qc.getKey(), qe)).toQuery(stream))));
+              topic -> getTopicIdfs(topic, idfColumns, queries)[column]));
         }
       }
     }
@@ -381,10 +486,12 @@ public class CohortL2rProcessor<
     for (String stream : streams) {
       // PF3[StreamLength]
       patientFeatures.add(patient -> {
+        final int[] luceneIds = reportMapper.apply(patient).stream()
+            .mapToInt(Report::getLuceneId)
+            .toArray();
         final List<Feature<Number>> lengths = Lists.newArrayList();
-        for (final Report report : reportMapper.apply(patient)) {
-          lengths.add(Feature.numericFeature("length." + stream,
-              searcher.getFieldLength(report.getLuceneId(), stream)));
+        for (final long length : searcher.getFieldLengths(luceneIds, stream)) {
+          lengths.add(Feature.numericFeature("length." + stream, length));
         }
         return getStatistics(MultiFeature.flatten(lengths));
       });
@@ -401,28 +508,31 @@ public class CohortL2rProcessor<
     // Status score
     relevanceFeatures.add(Extractors.singleDouble("filter.status*", (t, p) -> 0d));
 
-    ConcurrentMap<String, TIntFloatMap> cachedScores = new ConcurrentHashMap<>();
+    // Only the reports of retrieved patients are ever scored
+    final Function<Document<Topic>, int[]> retrievedReports = topic ->
+        queryHits.apply(topic.getId()).stream()
+            .flatMap(patient -> reportMapper.apply(patient).stream())
+            .mapToInt(Report::getLuceneId)
+            .toArray();
 
+    // Assign one score matrix column to each (QC, QE, stream, similarity) combination
+    final List<RelevanceColumn> columns = new ArrayList<>();
     for (Entry<String, Function<Document<Topic>, BasicQuery>> qc :
         queryRepresentations.entrySet()) {
       for (String qe : expanders) {
         for (String stream : streams) {
           for (Entry<String, Similarity> sim : similarities.entrySet()) {
+            final int column = columns.size();
+            columns.add(new RelevanceColumn(qc.getKey(), qe, stream, sim.getValue()));
+
             // (Topic - Patient) similarity score
+            final String name = "relevance." + sim.getKey() + "." + qc.getKey() + '.' +
+                qe + '.' + stream;
             relevanceFeatures.add((topic, patient) -> {
               final List<Feature<Number>> scores = Lists.newArrayList();
-
-              final String name = "relevance." + sim.getKey() + "." + qc.getKey() + '.' +
-                  qe + '.' + stream;
-
-              final String key = topic.getId() + '.' + qc.getKey() + '.' + qe + '.' + stream + '.' + sim.getKey();
-
-              cachedScores.computeIfAbsent(key,
-                  x -> searcher.getSimilarities(sim.getValue(), queries.get(Triple.of(topic.getId(), qc.getKey(), qe))
-                        .toQuery(stream)));
-
+              final ScoreMatrix matrix = getTopicScores(topic, columns, queries, retrievedReports);
               for (final Report report : reportMapper.apply(patient)) {
-                final double score = cachedScores.get(key).get(report.getLuceneId());
+                final double score = matrix.get(column, report.getLuceneId());
                 assert !Double.isNaN(score) && Double.isFinite(score) && Double.compare(score, 0d) > 0 :
                     "Got score of {} for " + name;
                 scores.add(Feature.numericFeature(name, score));
@@ -463,19 +573,34 @@ public class CohortL2rProcessor<
         relevanceFeatures,
         judgementFunction);
 
-    extractor.vectorize(
-        new IntIdentifier<>(),
-        topics,
-        topic -> queryHits.apply(topic.getId()),
-        topic -> {
-          topicQueryKeys.get(topic.getId()).forEach(queries::remove);
-          caches.forEach(LoadingCache::invalidateAll);
-          cachedScores.clear();
-        },
-        targetPath.resolve("vectors.svmr"),
-        targetPath.resolve("feature_mapping.tsv"),
-        targetPath.resolve("query_mapping.tsv"));
+    final Consumer<Document<Topic>> topicCleanup = topic -> {
+      topicQueryKeys.get(topic.getId()).forEach(queries::remove);
+      caches.forEach(LoadingCache::invalidateAll);
+      topicScores.invalidate(topic.getId());
+      topicIdfs.invalidate(topic.getId());
+    };
+    if (numThreads == 1) {
+      extractor.vectorize(
+          new IntIdentifier<>(),
+          topics,
+          topic -> queryHits.apply(topic.getId()),
+          topicCleanup,
+          targetPath.resolve("vectors.svmr"),
+          targetPath.resolve("feature_mapping.tsv"),
+          targetPath.resolve("query_mapping.tsv"));
+    } else {
+      extractor.vectorize(
+          new IntIdentifier<>(),
+          topics,
+          topic -> queryHits.apply(topic.getId()),
+          topicCleanup,
+          targetPath.resolve("vectors.svmr"),
+          targetPath.resolve("feature_mapping.tsv"),
+          targetPath.resolve("query_mapping.tsv"),
+          numThreads);
+    }
 
+    statistics.close();
     log.info("Processed {} topics to {}", topics.size(), targetPath);
   }
 }
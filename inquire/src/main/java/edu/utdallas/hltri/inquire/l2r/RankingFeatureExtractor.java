@@ -1,24 +1,34 @@
 package edu.utdallas.hltri.inquire.l2r;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
+import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.Closeable;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -89,54 +99,18 @@ public class RankingFeatureExtractor<Topic extends Identifiable, RetrievedDocume
     final SparseFeatureVectorizer<Number> sparseVectorizer =
         new SparseFeatureVectorizer<>(featureIdentifier);
 
-    final LoadingCache<RetrievedDocument, List<Feature<Number>>> visitFeatureCache =
-        CacheBuilder.newBuilder()
-        .maximumSize(1000)
-        .build(CacheLoader.from(retrievedDocument -> documentFunction.stream().flatMap(fe ->
-            fe.apply(retrievedDocument).stream()).collect(Collectors.toList())));
+    final Cache<String, List<Feature<Number>>> visitFeatureCache = newVisitFeatureCache();
 
     final List<L2rFeatureVector> vectors = new ArrayList<>();
-    final List<L2rFeatureVector> topicVectors = new ArrayList<>();
     try (final ProgressLogger qlog = ProgressLogger.fixedSize("Processing Topics", topics.size(),
         1, TimeUnit.SECONDS)) {
       // Iterate across topics
       for (Topic topic : topics) {
-        // Enumerate topic features
-        final List<Feature<Number>> topicFeatures = Lists.newArrayList();
-        topicFunctions.forEach(extractor -> topicFeatures.addAll(extractor.apply(topic)));
-
-        final Collection<RetrievedDocument> retrievedDocuments = documentSupplier.apply(topic);
-        final AtomicInteger i = new AtomicInteger();
-        for (RetrievedDocument retrievedDocument : retrievedDocuments) {
-          i.incrementAndGet();
-
-          // Get and cache retrievedDocument features if needed
-          final Stream<Feature<Number>> documentFeatures =
-              visitFeatureCache.getUnchecked(retrievedDocument).stream();
-
-          // Enumerate dynamic features
-          final Stream<Feature<Number>> dynamicFeatures = dynamicFunctions.stream().parallel()
-              .flatMap(fe -> fe.apply(topic, retrievedDocument).stream());
-
-          final SparseFeatureVector<Number> sparseVector = sparseVectorizer.vectorize(
-              Stream.of(topicFeatures.stream(),
-                  dynamicFeatures,
-                  documentFeatures)
-                  .flatMap(Function.identity()));
-
-          final int topicId = topicIdentifier.getIDOrAdd(topic.getId());
-          final int judgment = judgementFunction.applyAsInt(topic, retrievedDocument);
-
-          topicVectors.add(new L2rFeatureVector(topicId, judgment, sparseVector, topic.getId() + "::" + retrievedDocument.getId()));
-          if (retrievedDocument instanceof Closeable) {
-            ((Closeable) retrievedDocument).close();
-          }
-        }
-
-        Collections.shuffle(topicVectors, ThreadLocalRandom.current());
+        final int topicId = topicIdentifier.getIDOrAdd(topic.getId());
+        final List<L2rFeatureVector> topicVectors =
+            vectorizeTopic(topic, topicId, sparseVectorizer, visitFeatureCache, documentSupplier);
         vectors.addAll(topicVectors);
-        topicVectors.clear();
-        qlog.update("Generated {} feature vectors for topic {}", i.get(), topic.getId());
+        qlog.update("Generated {} feature vectors for topic {}", topicVectors.size(), topic.getId());
         topicCleanup.accept(topic);
       }
 
@@ -154,6 +128,218 @@ public class RankingFeatureExtractor<Topic extends Identifiable, RetrievedDocume
     }
   }
 
+  /**
+   * Pipelined variant of {@link #vectorize(IntIdentifier, Collection, Function, Consumer, Path,
+   * Path, Path)}. Topics are vectorized on a pool of {@code numThreads} workers, with at most
+   * {@code 2 * numThreads} topics in flight at once. Each topic's vectors are written to
+   * {@code vectorPath} as soon as all preceding topics have been written, so the output is in
+   * the same topic order as {@code topics} and only the in-flight topics are held in memory.
+   * {@code topicCleanup} is called on the calling thread, in topic order, after the topic's
+   * vectors have been written.
+   *
+   * Vectors are written densely, exactly as in the sequential mode. If {@code featureIdentifier}
+   * is not locked the final dimensionality is not known until the last topic is finished, so
+   * vectors are first streamed sparsely to a temporary file next to {@code vectorPath} and
+   * expanded once every topic is done.
+   */
+  public void vectorize(
+      final IntIdentifier<String> featureIdentifier,
+      final Collection<Topic> topics,
+      final Function<Topic, Collection<RetrievedDocument>> documentSupplier,
+      final Consumer<Topic> topicCleanup,
+      final Path vectorPath,
+      final Path featureMappingPath,
+      final Path topicMappingPath,
+      final int numThreads) {
+    Preconditions.checkArgument(numThreads > 0, "numThreads must be positive");
+
+    log.info("Starting pipelined vectorization of {} topics on {} threads...", topics.size(),
+        numThreads);
+    topicIdentifier = new IntIdentifier<>();
+    final SparseFeatureVectorizer<Number> sparseVectorizer =
+        new SparseFeatureVectorizer<>(featureIdentifier);
+
+    final Cache<String, List<Feature<Number>>> visitFeatureCache = newVisitFeatureCache();
+
+    // Assign topic ids up front so they follow the topic order rather than completion order
+    for (Topic topic : topics) {
+      topicIdentifier.getIDOrAdd(topic.getId());
+    }
+
+    final int maxInFlight = 2 * numThreads;
+    final ExecutorService executor = Executors.newFixedThreadPool(numThreads,
+        new ThreadFactoryBuilder().setNameFormat("l2r-vectorizer-%d").setDaemon(true).build());
+    final Deque<Entry<Topic, Future<List<L2rFeatureVector>>>> inFlight = new ArrayDeque<>();
+    final Iterator<Topic> it = topics.iterator();
+    final boolean dense = featureIdentifier.isLocked();
+    final Path streamPath;
+    try {
+      streamPath = dense ? vectorPath : Files.createTempFile(
+          vectorPath.toAbsolutePath().getParent(), vectorPath.getFileName().toString(), ".sparse");
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    try (final ProgressLogger qlog = ProgressLogger.fixedSize("Processing Topics", topics.size(),
+        1, TimeUnit.SECONDS);
+         final BufferedWriter writer = Files.newBufferedWriter(streamPath)) {
+      while (it.hasNext() || !inFlight.isEmpty()) {
+        // Keep the pool saturated, but never hold more than maxInFlight topics in memory
+        while (it.hasNext() && inFlight.size() < maxInFlight) {
+          final Topic topic = it.next();
+          final int topicId = topicIdentifier.getID(topic.getId());
+          inFlight.addLast(new SimpleImmutableEntry<>(topic, executor.submit(() ->
+              vectorizeTopic(topic, topicId, sparseVectorizer, visitFeatureCache,
+                  documentSupplier))));
+        }
+
+        // Write the oldest topic; later topics keep running in the background
+        final Entry<Topic, Future<List<L2rFeatureVector>>> head = inFlight.removeFirst();
+        final Topic topic = head.getKey();
+        final List<L2rFeatureVector> topicVectors = head.getValue().get();
+        for (L2rFeatureVector vector : topicVectors) {
+          writer.append(dense ? vector.makeDense().toSvmRankFormat() : toSortedSvmRankFormat(vector));
+          writer.newLine();
+        }
+        qlog.update("Generated {} feature vectors for topic {}", topicVectors.size(), topic.getId());
+        topicCleanup.accept(topic);
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException("Failed to vectorize topic", e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+
+    if (!dense) {
+      try {
+        densify(streamPath, vectorPath, featureIdentifier.size());
+        Files.delete(streamPath);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    featureIdentifier.toFile(featureMappingPath, true);
+    topicIdentifier.toFile(topicMappingPath);
+  }
+
+  /**
+   * Caches document features by document id, so the cache never holds on to (or closes) the
+   * documents themselves
+   */
+  private Cache<String, List<Feature<Number>>> newVisitFeatureCache() {
+    return CacheBuilder.newBuilder()
+        .maximumSize(1000)
+        .build();
+  }
+
+  /**
+   * Vectorizes every retrieved document for a single topic. Each retrieved document which is
+   * {@link Closeable} is closed once it has been vectorized, so documentSupplier must return
+   * documents which are not shared with other topics.
+   * @return shuffled list of feature vectors for the given topic
+   */
+  private List<L2rFeatureVector> vectorizeTopic(
+      final Topic topic,
+      final int topicId,
+      final SparseFeatureVectorizer<Number> sparseVectorizer,
+      final Cache<String, List<Feature<Number>>> visitFeatureCache,
+      final Function<Topic, Collection<RetrievedDocument>> documentSupplier) throws IOException {
+    // Enumerate topic features
+    final List<Feature<Number>> topicFeatures = Lists.newArrayList();
+    topicFunctions.forEach(extractor -> topicFeatures.addAll(extractor.apply(topic)));
+
+    final Collection<RetrievedDocument> retrievedDocuments = documentSupplier.apply(topic);
+    final List<L2rFeatureVector> topicVectors = new ArrayList<>(retrievedDocuments.size());
+    for (RetrievedDocument retrievedDocument : retrievedDocuments) {
+      // Get and cache retrievedDocument features if needed
+      final Stream<Feature<Number>> documentFeatures;
+      try {
+        documentFeatures = visitFeatureCache.get(retrievedDocument.getId(), () ->
+            documentFunction.stream().flatMap(fe ->
+                fe.apply(retrievedDocument).stream()).collect(Collectors.toList())).stream();
+      } catch (ExecutionException e) {
+        throw new RuntimeException(e.getCause());
+      }
+
+      // Enumerate dynamic features
+      final Stream<Feature<Number>> dynamicFeatures = dynamicFunctions.stream().parallel()
+          .flatMap(fe -> fe.apply(topic, retrievedDocument).stream());
+
+      final SparseFeatureVector<Number> sparseVector = sparseVectorizer.vectorize(
+          Stream.of(topicFeatures.stream(),
+              dynamicFeatures,
+              documentFeatures)
+              .flatMap(Function.identity()));
+
+      final int judgment = judgementFunction.applyAsInt(topic, retrievedDocument);
+
+      topicVectors.add(new L2rFeatureVector(topicId, judgment, sparseVector, topic.getId() + "::" + retrievedDocument.getId()));
+      if (retrievedDocument instanceof Closeable) {
+        ((Closeable) retrievedDocument).close();
+      }
+    }
+
+    Collections.shuffle(topicVectors, ThreadLocalRandom.current());
+    return topicVectors;
+  }
+
+  /**
+   * SVMrank/RankLib require feature ids to be increasing, but sparse vectors iterate in hash order
+   */
+  private static String toSortedSvmRankFormat(L2rFeatureVector vector) {
+    final int[] ids = vector.ids();
+    Arrays.sort(ids);
+    final StringBuilder sb = new StringBuilder()
+        .append(vector.label)
+        .append(" qid:")
+        .append(vector.topicId);
+    for (int id : ids) {
+      sb.append(' ').append(id + 1).append(':').append(vector.getById(id));
+    }
+    if (!Strings.isNullOrEmpty(vector.comment)) {
+      sb.append(" # ").append(vector.comment);
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Rewrites vectors written by {@link #toSortedSvmRankFormat(L2rFeatureVector)} with every
+   * feature id from 1 to dimension, exactly as {@link L2rFeatureVector#makeDense()} would
+   */
+  private static void densify(Path sparsePath, Path densePath, int dimension) throws IOException {
+    try (BufferedReader reader = Files.newBufferedReader(sparsePath);
+         BufferedWriter writer = Files.newBufferedWriter(densePath)) {
+      for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+        final int commentStart = line.indexOf(" # ");
+        final String[] fields =
+            (commentStart < 0 ? line : line.substring(0, commentStart)).split(" ");
+        // label and qid
+        writer.append(fields[0]).append(' ').append(fields[1]);
+        int next = 1;
+        for (int f = 2; f < fields.length; f++) {
+          final int id = Integer.parseInt(fields[f].substring(0, fields[f].indexOf(':')));
+          for (; next < id; next++) {
+            writer.append(' ').append(Integer.toString(next)).append(":0");
+          }
+          writer.append(' ').append(fields[f]);
+          next = id + 1;
+        }
+        for (; next <= dimension; next++) {
+          writer.append(' ').append(Integer.toString(next)).append(":0");
+        }
+        if (commentStart >= 0) {
+          writer.append(line, commentStart, line.length());
+        }
+        writer.newLine();
+      }
+    }
+  }
+
   public void saveMappedQrels(QRels original, Path outputQrels) {
     Preconditions.checkState(topicIdentifier != null, "must call vectorize() first!");
 
@@ -1,11 +1,13 @@
 package edu.utdallas.hltri.inquire.lucene;
 
+import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 
 import com.google.common.collect.Streams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import gnu.trove.map.TIntFloatMap;
 
 import it.unimi.dsi.fastutil.ints.Int2FloatMap;
@@ -16,13 +18,16 @@ import java.util.Comparator;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.NumericDocValuesField;
 import org.apache.lucene.document.TextField;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexOptions;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
 import org.apache.lucene.index.ReaderManager;
+import org.apache.lucene.index.ReaderUtil;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum;
@@ -35,6 +40,7 @@ import org.apache.lucene.search.CollectorManager;
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.LeafCollector;
+import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.PhraseQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
@@ -49,6 +55,7 @@ import org.apache.lucene.search.spans.SpanQuery;
 import org.apache.lucene.search.spans.SpanWeight;
 import org.apache.lucene.search.spans.Spans;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MMapDirectory;
 import org.apache.lucene.store.NIOFSDirectory;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.Version;
@@ -58,8 +65,14 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Function;
@@ -93,6 +106,11 @@ public class LuceneSearchEngine<D> implements SearchEngine<Query, D, LuceneResul
   public static final String TITLE_FIELD = "title"; // The document's title
   public static final String PATH_FIELD = "path";   // The (file) path to the document
 
+  /**
+   * Suffix of the numeric doc values field holding the length of each text field
+   */
+  public static final String FIELD_LENGTH_SUFFIX = ".length";
+
   public static final FieldType TEXT_FIELD_TYPE = new FieldType(TextField.TYPE_STORED);
   static {
     TEXT_FIELD_TYPE.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
@@ -117,6 +135,14 @@ public class LuceneSearchEngine<D> implements SearchEngine<Query, D, LuceneResul
   protected final DocumentFactory<? extends D> factory;           // Converts a Lucene document to D
   protected final String             defaultFieldName;  // Default search field in the index
 
+  /**
+   * Pre-warmed searchers dedicated to a single Similarity (empty unless opened with
+   * {@link #LuceneSearchEngine(String, Analyzer, String, DocumentFactory, Collection, int)})
+   */
+  private final Map<Similarity, SearcherManager> similaritySearcherManagers;
+  private final ExecutorService searchExecutor;      // Searches index segments in parallel (or null)
+  private final StartupMetrics startupMetrics;
+
   /**
    * Concurrent loading cache to save relevance scores (similarities) for all results for a given
    * Lucene {@link org.apache.lucene.search.Query Query} and
@@ -164,6 +190,9 @@ public class LuceneSearchEngine<D> implements SearchEngine<Query, D, LuceneResul
       this.defaultFieldName = defaultField;
       this.analyzer = analyzer;
       this.parser = new QueryParser(defaultField, analyzer);
+      this.similaritySearcherManagers = Collections.emptyMap();
+      this.searchExecutor = null;
+      this.startupMetrics = null;
       final Directory dir = NIOFSDirectory.open(Paths.get(index));
       this.readerManager = new ReaderManager(dir);
       this.searcherManager = new SearcherManager(dir, new SearcherFactory());
@@ -196,6 +225,9 @@ public class LuceneSearchEngine<D> implements SearchEngine<Query, D, LuceneResul
       this.defaultFieldName = defaultField;
       this.analyzer = analyzer;
       this.parser = new QueryParser(defaultField, analyzer);
+      this.similaritySearcherManagers = Collections.emptyMap();
+      this.searchExecutor = null;
+      this.startupMetrics = null;
       final Directory dir = NIOFSDirectory.open(Paths.get(index));
       this.readerManager = new ReaderManager(dir);
       this.searcherManager = new SearcherManager(this.readerManager.acquire(), new SearcherFactory() {
@@ -236,6 +268,9 @@ public class LuceneSearchEngine<D> implements SearchEngine<Query, D, LuceneResul
       this.defaultFieldName = defaultField;
       this.analyzer = analyzer;
       this.parser = new QueryParser(defaultField, analyzer);
+      this.similaritySearcherManagers = Collections.emptyMap();
+      this.searchExecutor = null;
+      this.startupMetrics = null;
       this.readerManager = new ReaderManager(dir);
       this.searcherManager = new SearcherManager(this.readerManager.acquire(), new SearcherFactory() {
         @Override
@@ -251,6 +286,136 @@ public class LuceneSearchEngine<D> implements SearchEngine<Query, D, LuceneResul
     }
   }
 
+  /**
+   * Create a new LuceneSearchEngine backed by a memory-mapped index, with a dedicated,
+   * pre-warmed searcher for each of the given similarities. Searches using one of these
+   * similarities never change the similarity of a searcher shared with other threads, and each
+   * searcher uses a pool of searchThreads threads to search index segments in parallel.
+   * Searches using any other similarity fall back to the default (shared) searcher.
+   *
+   * @param index         (file) path to Lucene index
+   * @param analyzer      analyzer used to analyze text (e.g. EnglishAnalyzer)
+   * @param defaultField  default search field (e.g. TEXT)
+   * @param factory       document factory used to convert a LuceneDocument to type <D>
+   * @param similarities  similarities which will receive a dedicated searcher
+   * @param searchThreads number of threads used to search segments in parallel
+   */
+  public LuceneSearchEngine(final String index,
+                            final Analyzer analyzer,
+                            final String defaultField,
+                            final DocumentFactory<? extends D> factory,
+                            final Collection<Similarity> similarities,
+                            final int searchThreads) {
+    assert !Strings.isNullOrEmpty(index) : "Index was null or empty!";
+    assert Objects.nonNull(analyzer) : "Analyzer was null!";
+    assert !Strings.isNullOrEmpty(defaultField) : "Default field was null or empty!";
+    Preconditions.checkArgument(searchThreads > 0, "searchThreads must be positive");
+
+    try {
+      this.factory = factory;
+      this.defaultFieldName = defaultField;
+      this.analyzer = analyzer;
+      this.parser = new QueryParser(defaultField, analyzer);
+      this.searchExecutor = Executors.newFixedThreadPool(searchThreads,
+          new ThreadFactoryBuilder().setNameFormat("lucene-search-%d").setDaemon(true).build());
+
+      // Cold start: map the index and open the first reader
+      final long coldStart = System.nanoTime();
+      final Directory dir = MMapDirectory.open(Paths.get(index));
+      this.readerManager = new ReaderManager(dir);
+      final long coldNanos = System.nanoTime() - coldStart;
+
+      // Warm start: the default searcher faults in the pages shared by every similarity
+      final long warmStart = System.nanoTime();
+      this.searcherManager = new SearcherManager(this.readerManager.acquire(),
+          new WarmingSearcherFactory(Similarities.BM25.similarity, true));
+      final long warmNanos = System.nanoTime() - warmStart;
+
+      // Searchers over the same (already warm) reader only differ by their similarity
+      final Map<Similarity, SearcherManager> managers = new IdentityHashMap<>();
+      for (Similarity similarity : similarities) {
+        managers.put(similarity, new SearcherManager(this.readerManager.acquire(),
+            new WarmingSearcherFactory(similarity, false)));
+      }
+      this.similaritySearcherManagers = Collections.unmodifiableMap(managers);
+      this.startupMetrics = new StartupMetrics(TimeUnit.NANOSECONDS.toMillis(coldNanos),
+          TimeUnit.NANOSECONDS.toMillis(warmNanos));
+      log.info("Opened new memory-mapped {} from index at {} with {} similarity searchers: {}",
+          this.getClass().getSimpleName(), index, managers.size(), startupMetrics);
+    } catch (IOException ex) {
+      throw new RuntimeException("Failed to create Lucene search engine", ex);
+    }
+  }
+
+  /**
+   * Creates searchers with a fixed similarity which search segments on the engine's executor,
+   * optionally warming each new reader before its searcher is published. The pages of a reader
+   * are shared by every searcher over it, so only one factory needs to warm them.
+   */
+  private class WarmingSearcherFactory extends SearcherFactory {
+    private final Similarity similarity;
+    private final boolean warm;
+
+    WarmingSearcherFactory(Similarity similarity, boolean warm) {
+      this.similarity = similarity;
+      this.warm = warm;
+    }
+
+    @Override
+    public IndexSearcher newSearcher(IndexReader reader, IndexReader previousReader)
+        throws IOException {
+      final IndexSearcher searcher = new IndexSearcher(reader, searchExecutor);
+      searcher.setSimilarity(similarity);
+      if (!warm) {
+        return searcher;
+      }
+      // Fault in the pages needed to score the default field: norms and the term dictionary
+      for (LeafReaderContext leaf : reader.leaves()) {
+        final NumericDocValues norms = leaf.reader().getNormValues(defaultFieldName);
+        if (norms != null) {
+          for (int doc = 0; doc < leaf.reader().maxDoc(); doc++) {
+            norms.get(doc);
+          }
+        }
+        final Terms terms = leaf.reader().terms(defaultFieldName);
+        if (terms != null) {
+          final TermsEnum termsEnum = terms.iterator();
+          while (termsEnum.next() != null) {
+            termsEnum.docFreq();
+          }
+        }
+      }
+      searcher.search(new MatchAllDocsQuery(), 1);
+      return searcher;
+    }
+  }
+
+  /**
+   * Time taken to open the index (cold) and to warm it for searching
+   */
+  public static final class StartupMetrics {
+    public final long coldMillis;
+    public final long warmMillis;
+
+    StartupMetrics(long coldMillis, long warmMillis) {
+      this.coldMillis = coldMillis;
+      this.warmMillis = warmMillis;
+    }
+
+    @Override
+    public String toString() {
+      return "[cold: " + coldMillis + "ms][warm: " + warmMillis + "ms]";
+    }
+  }
+
+  /**
+   * @return startup metrics, or null if this engine was not opened with dedicated similarity
+   * searchers
+   */
+  public StartupMetrics getStartupMetrics() {
+    return startupMetrics;
+  }
+
   public QueryParser getParser() {
     return parser;
   }
@@ -434,13 +599,31 @@ public class LuceneSearchEngine<D> implements SearchEngine<Query, D, LuceneResul
    * @return result of func(indexSearcher)
    */
   protected <X> X withSearcher(Similarity sim, Function<? super IndexSearcher, X> func) {
+    final SearcherManager dedicated = similaritySearcherManagers.get(sim);
+    if (dedicated != null) {
+      try {
+        final IndexSearcher searcher = dedicated.acquire();
+        try {
+          return func.apply(searcher);
+        } finally {
+          dedicated.release(searcher);
+        }
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
     try {
-      final IndexSearcher searcher = searcherManager.acquire();
-      searcher.setSimilarity(sim);
+      final IndexSearcher shared = searcherManager.acquire();
       try {
+        // Search through a private searcher over the shared reader, so the similarity of the
+        // shared searcher (which other threads may be using) is never changed
+        final IndexSearcher searcher = (searchExecutor == null)
+            ? new IndexSearcher(shared.getIndexReader())
+            : new IndexSearcher(shared.getIndexReader(), searchExecutor);
+        searcher.setSimilarity(sim);
         return func.apply(searcher);
       } finally {
-        searcherManager.release(searcher);
+        searcherManager.release(shared);
       }
     } catch (IOException e) {
       throw new RuntimeException(e);
@@ -572,11 +755,17 @@ public class LuceneSearchEngine<D> implements SearchEngine<Query, D, LuceneResul
   @Override
   public void close() {
     try {
+      for (SearcherManager manager : similaritySearcherManagers.values()) {
+        manager.close();
+      }
       searcherManager.close();
       readerManager.close();
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
+    if (searchExecutor != null) {
+      searchExecutor.shutdown();
+    }
     analyzer.close();
   }
 
@@ -588,21 +777,75 @@ public class LuceneSearchEngine<D> implements SearchEngine<Query, D, LuceneResul
    * @return number of terms in the given field for the specified document
    */
   public long getFieldLength(final int luceneId, String field) {
-    return withSearcher(searcher -> {
+    return withReader(reader -> {
+      final List<LeafReaderContext> leaves = reader.leaves();
+      final LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(luceneId, leaves));
       try {
-        final Terms termVector = searcher.getIndexReader().getTermVector(luceneId, field);
-        try {
-          return termVector.size();
-        } catch (NullPointerException e) {
-          log.debug("No term vector for {} in document {}", field, luceneId);
-          return 0L;
+        return getFieldLength(leaf, luceneId - leaf.docBase, field);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+  }
+
+  /**
+   * Get the length of a given field for each of the given Lucene documents
+   *
+   * @param luceneIds the IDs of documents as assigned by Lucene
+   * @param field     the desired field
+   * @return number of terms in the given field for each specified document
+   */
+  public long[] getFieldLengths(final int[] luceneIds, String field) {
+    return withReader(reader -> {
+      final List<LeafReaderContext> leaves = reader.leaves();
+      final long[] lengths = new long[luceneIds.length];
+      try {
+        for (int i = 0; i < luceneIds.length; i++) {
+          final LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(luceneIds[i], leaves));
+          lengths[i] = getFieldLength(leaf, luceneIds[i] - leaf.docBase, field);
         }
       } catch (IOException e) {
         throw new RuntimeException(e);
       }
+      return lengths;
     });
   }
 
+  /**
+   * Reads the field length from the field's length doc values (see
+   * {@link #newFieldLengthField(String, long)}) if they were indexed, falling back to decoding
+   * the document's term vector otherwise
+   */
+  private static long getFieldLength(LeafReaderContext leaf, int doc, String field)
+      throws IOException {
+    final NumericDocValues lengths =
+        leaf.reader().getNumericDocValues(field + FIELD_LENGTH_SUFFIX);
+    if (lengths != null) {
+      return lengths.get(doc);
+    }
+    final Terms termVector = leaf.reader().getTermVector(doc, field);
+    if (termVector == null) {
+      log.debug("No term vector for {} in document {}", field, leaf.docBase + doc);
+      return 0L;
+    }
+    return termVector.size();
+  }
+
+  /**
+   * Creates a numeric doc values field storing the length of the given text field, i.e., the
+   * number of unique terms in the field's term vector, so that
+   * {@link #getFieldLength(int, String)} need not decode term vectors. Should be added to a
+   * document (once) alongside the text field it describes.
+   *
+   * @param field  name of the text field
+   * @param length number of unique terms in the text field (e.g., from
+   *               {@link LuceneUtils#countUniqueTokens(CharSequence, String, Analyzer)})
+   * @return doc values field to add to the document
+   */
+  public static NumericDocValuesField newFieldLengthField(String field, long length) {
+    return new NumericDocValuesField(field + FIELD_LENGTH_SUFFIX, length);
+  }
+
   /**
    * Get the IDF, or inverse document frequency
    *
@@ -804,6 +1047,68 @@ public class LuceneSearchEngine<D> implements SearchEngine<Query, D, LuceneResul
     });
   }
 
+  /**
+   * Produces a block of similarity scores for every document in the index for each of the
+   * given similarities, walking the query's postings only once (see
+   * {@link MultiSimilarityScorer})
+   *
+   * @param sims  Similarity measures
+   * @param query Query to search
+   * @return one array per similarity, indexed by lucene ID (unmatched documents score 0)
+   */
+  public float[][] getSimilarities(final List<Similarity> sims, final Query query) {
+    return withReader(reader -> {
+      try {
+        return new MultiSimilarityScorer(reader).score(query, sims);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+  }
+
+  /**
+   * Scores the documents of the given matrix against a batch of (similarity, query) columns,
+   * writing the scores for columns.get(i) into column i of the matrix (which is cleared first).
+   * All columns are evaluated against a single acquired reader, and columns sharing the same
+   * query are scored for all of their similarities in a single pass (see
+   * {@link MultiSimilarityScorer}), so the shared searchers are never modified.
+   *
+   * @param columns (similarity, query) pair for each column
+   * @param matrix  matrix to (re-)fill; must have at least columns.size() columns
+   * @return the given matrix
+   */
+  public ScoreMatrix getSimilarities(final List<Pair<Similarity, Query>> columns,
+                                     final ScoreMatrix matrix) {
+    Preconditions.checkArgument(columns.size() <= matrix.numColumns(),
+        "matrix has %s columns but %s were requested", matrix.numColumns(), columns.size());
+
+    // Group columns by query so each query's postings are only walked once
+    final Map<Query, List<Integer>> columnsByQuery = new LinkedHashMap<>();
+    for (int c = 0; c < columns.size(); c++) {
+      columnsByQuery.computeIfAbsent(columns.get(c).second(), q -> new ArrayList<>()).add(c);
+    }
+
+    matrix.clear();
+    return withReader(reader -> {
+      final MultiSimilarityScorer scorer = new MultiSimilarityScorer(reader);
+      try {
+        for (Map.Entry<Query, List<Integer>> entry : columnsByQuery.entrySet()) {
+          final List<Integer> group = entry.getValue();
+          final List<Similarity> sims = new ArrayList<>(group.size());
+          final int[] groupColumns = new int[group.size()];
+          for (int i = 0; i < group.size(); i++) {
+            sims.add(columns.get(group.get(i)).first());
+            groupColumns[i] = group.get(i);
+          }
+          scorer.score(entry.getKey(), sims, matrix, groupColumns);
+        }
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+      return matrix;
+    });
+  }
+
   /**
    * Get the number of unique terms in the index across all fields
    *
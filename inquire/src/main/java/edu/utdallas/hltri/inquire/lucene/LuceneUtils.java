@@ -88,6 +88,16 @@ public final class LuceneUtils {
     return tokens;
   }
 
+  /**
+   * Counts the unique tokens produced by the analyzer for the given string and field, i.e., the
+   * size of the term vector Lucene would store for it
+   */
+  public static int countUniqueTokens(final CharSequence string,
+                                      final String field,
+                                      final Analyzer analyzer) {
+    return Sets.newHashSet(tokenize(string, field, analyzer)).size();
+  }
+
   public static LoadingCache<Pair<LeafReader, String>, BinaryDocValues> cache =
       CacheBuilder.<Pair<LeafReader, String>, BinaryDocValues>newBuilder()
       .maximumSize(2048)
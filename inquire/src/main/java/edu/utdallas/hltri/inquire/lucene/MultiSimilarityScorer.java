@@ -0,0 +1,478 @@
+package edu.utdallas.hltri.inquire.lucene;
+
+import com.google.common.base.Preconditions;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.search.similarities.Similarity;
+import org.apache.lucene.search.similarities.Similarity.SimScorer;
+import org.apache.lucene.search.spans.SpanQuery;
+import org.apache.lucene.search.spans.SpanTermQuery;
+import org.apache.lucene.search.spans.SpanWeight;
+import org.apache.lucene.search.spans.Spans;
+import org.apache.lucene.util.Bits;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import edu.utdallas.hltri.logging.Logger;
+
+/**
+ * Scores every document matching a query under several Similarities at once.
+ *
+ * Queries built from (possibly nested and boosted) {@link BooleanQuery BooleanQueries} of
+ * MUST/SHOULD clauses over {@link SpanQuery SpanQueries} or {@link TermQuery TermQueries} -- i.e.,
+ * everything produced by {@link LuceneUtils#getBooleanQuery} -- are evaluated in a single pass:
+ * the positions of each span clause are walked once per index leaf, and the resulting sloppy
+ * frequencies are scored by every similarity using term statistics gathered for that similarity
+ * (weights, query normalization and coord are computed exactly as Lucene's own BooleanWeight
+ * and SpanWeight would). Any other query is scored once per similarity instead.
+ *
+ * Each similarity gets a private {@link IndexSearcher} over the given reader, so scoring never
+ * modifies the similarity of a shared searcher. Instances must not outlive the reader they were
+ * created with, and are not thread-safe.
+ */
+public final class MultiSimilarityScorer {
+  private static final Logger log = Logger.get(MultiSimilarityScorer.class);
+
+  private final IndexReader reader;
+  private final Map<Similarity, IndexSearcher> searchers = new IdentityHashMap<>();
+
+  public MultiSimilarityScorer(IndexReader reader) {
+    this.reader = reader;
+  }
+
+  private IndexSearcher getSearcher(Similarity similarity) {
+    return searchers.computeIfAbsent(similarity, sim -> {
+      final IndexSearcher searcher = new IndexSearcher(reader);
+      searcher.setSimilarity(sim);
+      return searcher;
+    });
+  }
+
+  /**
+   * Scores every document in the index for the given query under each of the given similarities
+   *
+   * @param query        query to score
+   * @param similarities similarities (relevance models) to score with
+   * @return one block of scores per similarity, indexed by lucene ID; unmatched documents score 0
+   * @throws IOException if the index cannot be read
+   */
+  public float[][] score(Query query, List<Similarity> similarities) throws IOException {
+    final float[][] scores = new float[similarities.size()][reader.maxDoc()];
+    score(query, similarities, scores);
+    return scores;
+  }
+
+  /**
+   * Scores every document in the index for the given query under each of the given similarities,
+   * writing the scores for similarities.get(k) into scores[k]. Only matching documents are
+   * written, so each block should be zeroed beforehand.
+   *
+   * @param query        query to score
+   * @param similarities similarities (relevance models) to score with
+   * @param scores       one block of at least maxDoc scores per similarity
+   * @throws IOException if the index cannot be read
+   */
+  public void score(Query query, List<Similarity> similarities, float[][] scores)
+      throws IOException {
+    Preconditions.checkArgument(scores.length == similarities.size(),
+        "expected %s score blocks but got %s", similarities.size(), scores.length);
+    score(query, similarities, (model, luceneId, score) -> scores[model][luceneId] = score);
+  }
+
+  /**
+   * Scores the documents of the given matrix for the given query under each of the given
+   * similarities, writing the scores for similarities.get(k) into column columns[k] of the
+   * matrix. Only matching documents are written, so the matrix should be cleared beforehand.
+   *
+   * @param query        query to score
+   * @param similarities similarities (relevance models) to score with
+   * @param matrix       matrix holding the documents to score
+   * @param columns      matrix column of each similarity
+   * @throws IOException if the index cannot be read
+   */
+  public void score(Query query, List<Similarity> similarities, ScoreMatrix matrix,
+                    int[] columns) throws IOException {
+    Preconditions.checkArgument(columns.length == similarities.size(),
+        "expected %s columns but got %s", similarities.size(), columns.length);
+    score(query, similarities, (model, luceneId, score) -> {
+      final int row = matrix.row(luceneId);
+      if (row >= 0) {
+        matrix.setRow(columns[model], row, score);
+      }
+    });
+  }
+
+  /**
+   * Receives the score of a matching document under one similarity
+   */
+  private interface ScoreConsumer {
+    void accept(int model, int luceneId, float score);
+  }
+
+  private void score(Query query, List<Similarity> similarities, ScoreConsumer consumer)
+      throws IOException {
+    if (similarities.isEmpty()) {
+      return;
+    }
+    final Similarity[] sims = similarities.toArray(new Similarity[similarities.size()]);
+    final IndexSearcher[] modelSearchers = new IndexSearcher[sims.length];
+    for (int k = 0; k < sims.length; k++) {
+      modelSearchers[k] = getSearcher(sims[k]);
+    }
+
+    final Query rewritten = modelSearchers[0].rewrite(query);
+    final Node root = compile(rewritten, modelSearchers);
+    if (root == null) {
+      log.debug("Unable to score {} in a single pass; scoring once per similarity", query);
+      for (int k = 0; k < sims.length; k++) {
+        scoreSeparately(modelSearchers[k], rewritten, k, consumer);
+      }
+      return;
+    }
+
+    // Normalize each model's weights just like IndexSearcher.createNormalizedWeight
+    for (int k = 0; k < sims.length; k++) {
+      float norm = sims[k].queryNorm(root.getValueForNormalization(k));
+      if (Float.isInfinite(norm) || Float.isNaN(norm)) {
+        norm = 1.0f;
+      }
+      root.normalize(k, norm, 1.0f);
+    }
+
+    for (LeafReaderContext leaf : reader.leaves()) {
+      final Matches matches = root.score(leaf, sims);
+      final Bits liveDocs = leaf.reader().getLiveDocs();
+      for (int i = 0; i < matches.size; i++) {
+        final int doc = matches.docs[i];
+        if (liveDocs == null || liveDocs.get(doc)) {
+          for (int k = 0; k < sims.length; k++) {
+            consumer.accept(k, leaf.docBase + doc, matches.scores[k][i]);
+          }
+        }
+      }
+    }
+  }
+
+  private static void scoreSeparately(IndexSearcher searcher, Query query, int model,
+                                      ScoreConsumer consumer) throws IOException {
+    final Weight weight = searcher.createNormalizedWeight(query, true);
+    for (LeafReaderContext leaf : searcher.getIndexReader().leaves()) {
+      final Scorer scorer = weight.scorer(leaf);
+      if (scorer == null) {
+        continue;
+      }
+      final Bits liveDocs = leaf.reader().getLiveDocs();
+      final DocIdSetIterator it = scorer.iterator();
+      for (int doc = it.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = it.nextDoc()) {
+        if (liveDocs == null || liveDocs.get(doc)) {
+          consumer.accept(model, leaf.docBase + doc, scorer.score());
+        }
+      }
+    }
+  }
+
+  /**
+   * Documents matching a node in one leaf, in increasing order, with their score under each
+   * similarity (scores[model][i] is the score of docs[i])
+   */
+  private static final class Matches {
+    private static final Matches EMPTY = new Matches(0);
+
+    private int[] docs;
+    private final float[][] scores;
+    private int size = 0;
+
+    Matches(int numModels) {
+      this.docs = new int[16];
+      this.scores = new float[numModels][16];
+    }
+
+    /**
+     * Appends a document, which must follow every document added so far
+     */
+    void add(int doc, float[] docScores) {
+      if (size == docs.length) {
+        final int capacity = 2 * size;
+        docs = Arrays.copyOf(docs, capacity);
+        for (int k = 0; k < scores.length; k++) {
+          scores[k] = Arrays.copyOf(scores[k], capacity);
+        }
+      }
+      docs[size] = doc;
+      for (int k = 0; k < scores.length; k++) {
+        scores[k][size] = docScores[k];
+      }
+      size++;
+    }
+  }
+
+  /**
+   * Builds a node tree mirroring the weight tree Lucene would build for the given query
+   *
+   * @return root node, or null if the query cannot be scored in a single pass
+   */
+  private static Node compile(Query query, IndexSearcher[] searchers) throws IOException {
+    if (query instanceof BoostQuery) {
+      final BoostQuery boostQuery = (BoostQuery) query;
+      final Node child = compile(boostQuery.getQuery(), searchers);
+      if (child == null) {
+        return null;
+      }
+      // BoostQuery's weight applies its boost before reporting its value for normalization
+      for (int k = 0; k < searchers.length; k++) {
+        child.normalize(k, 1f, boostQuery.getBoost());
+      }
+      return new BoostNode(child, boostQuery.getBoost());
+    } else if (query instanceof BooleanQuery) {
+      final BooleanQuery booleanQuery = (BooleanQuery) query;
+      if (booleanQuery.getMinimumNumberShouldMatch() > 0) {
+        return null;
+      }
+      final List<BooleanClause> clauses = booleanQuery.clauses();
+      final Node[] children = new Node[clauses.size()];
+      final boolean[] required = new boolean[clauses.size()];
+      for (int i = 0; i < children.length; i++) {
+        final BooleanClause clause = clauses.get(i);
+        if (clause.getOccur() != BooleanClause.Occur.SHOULD
+            && clause.getOccur() != BooleanClause.Occur.MUST) {
+          return null;
+        }
+        required[i] = clause.isRequired();
+        children[i] = compile(clause.getQuery(), searchers);
+        if (children[i] == null) {
+          return null;
+        }
+      }
+      return new BooleanNode(children, required, booleanQuery.isCoordDisabled());
+    } else if (query instanceof MatchNoDocsQuery) {
+      return new BooleanNode(new Node[0], new boolean[0], true);
+    } else if (query instanceof TermQuery) {
+      // A SpanTermQuery's sloppy frequency is its term frequency, so scores are identical
+      return compile(new SpanTermQuery(((TermQuery) query).getTerm()), searchers);
+    } else if (query instanceof SpanQuery) {
+      final SpanWeight[] weights = new SpanWeight[searchers.length];
+      for (int k = 0; k < searchers.length; k++) {
+        weights[k] = (SpanWeight) searchers[k].createWeight(query, true);
+      }
+      return new SpanNode(weights);
+    } else {
+      return null;
+    }
+  }
+
+  private abstract static class Node {
+    abstract float getValueForNormalization(int model) throws IOException;
+
+    abstract void normalize(int model, float norm, float boost);
+
+    /**
+     * Scores each document of the given leaf matching this node under every similarity
+     */
+    abstract Matches score(LeafReaderContext leaf, Similarity[] sims) throws IOException;
+  }
+
+  private static final class SpanNode extends Node {
+    private final SpanWeight[] weights;
+
+    SpanNode(SpanWeight[] weights) {
+      this.weights = weights;
+    }
+
+    @Override
+    float getValueForNormalization(int model) throws IOException {
+      return weights[model].getValueForNormalization();
+    }
+
+    @Override
+    void normalize(int model, float norm, float boost) {
+      weights[model].normalize(norm, boost);
+    }
+
+    @Override
+    Matches score(LeafReaderContext leaf, Similarity[] sims) throws IOException {
+      // Positions do not depend on the similarity, so walk them once for every model
+      final Spans spans = weights[0].getSpans(leaf, SpanWeight.Postings.POSITIONS);
+      if (spans == null) {
+        return Matches.EMPTY;
+      }
+      final SimScorer[] docScorers = new SimScorer[sims.length];
+      for (int k = 0; k < sims.length; k++) {
+        docScorers[k] = weights[k].getSimScorer(leaf);
+      }
+
+      final Matches matches = new Matches(sims.length);
+      final float[] freqs = new float[sims.length];
+      final float[] docScores = new float[sims.length];
+      for (int doc = spans.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = spans.nextDoc()) {
+        for (int k = 0; k < freqs.length; k++) {
+          freqs[k] = 0f;
+        }
+        for (int start = spans.nextStartPosition(); start != Spans.NO_MORE_POSITIONS;
+             start = spans.nextStartPosition()) {
+          final int width = spans.width();
+          for (int k = 0; k < freqs.length; k++) {
+            freqs[k] += docScorers[k].computeSlopFactor(width);
+          }
+        }
+        for (int k = 0; k < freqs.length; k++) {
+          docScores[k] = docScorers[k].score(doc, freqs[k]);
+        }
+        matches.add(doc, docScores);
+      }
+      return matches;
+    }
+  }
+
+  private static final class BoostNode extends Node {
+    private final Node child;
+    private final float boost;
+
+    BoostNode(Node child, float boost) {
+      this.child = child;
+      this.boost = boost;
+    }
+
+    @Override
+    float getValueForNormalization(int model) throws IOException {
+      return child.getValueForNormalization(model);
+    }
+
+    @Override
+    void normalize(int model, float norm, float boost) {
+      child.normalize(model, norm, this.boost * boost);
+    }
+
+    @Override
+    Matches score(LeafReaderContext leaf, Similarity[] sims) throws IOException {
+      return child.score(leaf, sims);
+    }
+  }
+
+  private static final class BooleanNode extends Node {
+    private final Node[] children;
+    private final boolean[] required;
+    private final int numRequired;
+    private final boolean disableCoord;
+
+    BooleanNode(Node[] children, boolean[] required, boolean disableCoord) {
+      this.children = children;
+      this.required = required;
+      this.disableCoord = disableCoord;
+      int numRequired = 0;
+      for (boolean r : required) {
+        if (r) {
+          numRequired++;
+        }
+      }
+      this.numRequired = numRequired;
+    }
+
+    @Override
+    float getValueForNormalization(int model) throws IOException {
+      float sum = 0f;
+      for (Node child : children) {
+        sum += child.getValueForNormalization(model);
+      }
+      return sum;
+    }
+
+    @Override
+    void normalize(int model, float norm, float boost) {
+      for (Node child : children) {
+        child.normalize(model, norm, boost);
+      }
+    }
+
+    @Override
+    Matches score(LeafReaderContext leaf, Similarity[] sims) throws IOException {
+      if (children.length == 0) {
+        return Matches.EMPTY;
+      }
+
+      // Coord factors, as in BooleanWeight.coord
+      final float[][] coords = new float[sims.length][children.length + 1];
+      for (int k = 0; k < sims.length; k++) {
+        for (int o = 0; o <= children.length; o++) {
+          coords[k][o] = disableCoord || children.length == 1 ? 1f : sims[k].coord(o, children.length);
+        }
+      }
+
+      // Merge the children's matches in document order; ties are visited in clause order so
+      // scores are summed in the same order for every document
+      final PriorityQueue<Cursor> queue = new PriorityQueue<>(children.length,
+          Comparator.<Cursor>comparingInt(Cursor::doc).thenComparingInt(c -> c.child));
+      for (int i = 0; i < children.length; i++) {
+        final Matches childMatches = children[i].score(leaf, sims);
+        if (childMatches.size > 0) {
+          queue.add(new Cursor(i, childMatches));
+        } else if (required[i]) {
+          return Matches.EMPTY;
+        }
+      }
+
+      final Matches matches = new Matches(sims.length);
+      final float[] sums = new float[sims.length];
+      while (!queue.isEmpty()) {
+        final int doc = queue.peek().doc();
+        Arrays.fill(sums, 0f);
+        int overlap = 0;
+        int requiredMatches = 0;
+        while (!queue.isEmpty() && queue.peek().doc() == doc) {
+          final Cursor cursor = queue.poll();
+          for (int k = 0; k < sums.length; k++) {
+            sums[k] += cursor.matches.scores[k][cursor.position];
+          }
+          overlap++;
+          if (required[cursor.child]) {
+            requiredMatches++;
+          }
+          if (++cursor.position < cursor.matches.size) {
+            queue.add(cursor);
+          }
+        }
+        if (requiredMatches == numRequired) {
+          for (int k = 0; k < sums.length; k++) {
+            sums[k] *= coords[k][overlap];
+          }
+          matches.add(doc, sums);
+        }
+      }
+      return matches;
+    }
+
+    /**
+     * Position within the matches of one child clause
+     */
+    private static final class Cursor {
+      final int child;
+      final Matches matches;
+      int position = 0;
+
+      Cursor(int child, Matches matches) {
+        this.child = child;
+        this.matches = matches;
+      }
+
+      int doc() {
+        return matches.docs[position];
+      }
+    }
+  }
+}
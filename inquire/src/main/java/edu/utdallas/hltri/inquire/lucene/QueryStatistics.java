@@ -0,0 +1,427 @@
+package edu.utdallas.hltri.inquire.lucene;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.FilterDirectory;
+import org.apache.lucene.util.Bits;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import edu.utdallas.hltri.io.AC;
+import edu.utdallas.hltri.logging.Logger;
+
+/**
+ * Document frequency (DF) and inverse document frequency (IDF) statistics for queries against a
+ * {@link LuceneSearchEngine}.
+ *
+ * Each call is answered from a single reader, and queries whose frequencies are not memoized are
+ * counted together in one pass over each index leaf. Frequencies are memoized by a hash of the
+ * query's canonical form (see {@link #canonicalize(Query)}) for the latest index version only;
+ * frequencies of older versions are discarded once a newer version is seen. If opened with a store
+ * path, memoized frequencies are appended to that file and re-loaded when the statistics are next
+ * opened against the same version of the index, so re-running an experiment over the same topics
+ * skips every query it has already seen. The store begins with the identity of the index it was
+ * computed from (its directory, segments file and version); a store written for any other index is
+ * ignored and overwritten.
+ *
+ * Statistics are thread-safe.
+ */
+public class QueryStatistics implements AC {
+  private static final Logger log = Logger.get(QueryStatistics.class);
+  private static final HashFunction HASH = Hashing.murmur3_128();
+  private static final int MAGIC = 0x51535432; // "QST2"
+
+  private final LuceneSearchEngine<?> engine;
+  private final Path store;
+
+  /**
+   * Document frequencies memoized for one version of the index
+   */
+  private static final class Snapshot {
+    final long version;
+    final String identity;
+    final Map<HashCode, Integer> documentFrequencies = new ConcurrentHashMap<>();
+
+    Snapshot(DirectoryReader reader) {
+      this.version = reader.getVersion();
+      this.identity = identify(reader);
+    }
+  }
+
+  private volatile Snapshot snapshot;
+  private DataOutputStream storeWriter = null;
+  // identity of the index whose frequencies are being appended to the store, if any
+  private String storeIdentity = null;
+
+  /**
+   * Create in-memory query statistics
+   *
+   * @param engine search engine to compute statistics with
+   */
+  public QueryStatistics(LuceneSearchEngine<?> engine) {
+    this(engine, null);
+  }
+
+  /**
+   * Create query statistics which are persisted to the given file
+   *
+   * @param engine search engine to compute statistics with
+   * @param store  file to load statistics from and save statistics to
+   */
+  public QueryStatistics(LuceneSearchEngine<?> engine, Path store) {
+    this.engine = engine;
+    this.store = store;
+    this.snapshot = engine.withReader(Snapshot::new);
+    if (store != null && Files.exists(store)) {
+      load();
+    }
+  }
+
+  /**
+   * Identifies the index a reader was opened on by its directory, the segments file of its commit
+   * and its version
+   */
+  private static String identify(DirectoryReader reader) {
+    try {
+      final Directory directory = FilterDirectory.unwrap(reader.directory());
+      final String location = (directory instanceof FSDirectory)
+          ? ((FSDirectory) directory).getDirectory().toAbsolutePath().toString()
+          : directory.toString();
+      return location + File.separator + reader.getIndexCommit().getSegmentsFileName() + '@' +
+          reader.getVersion();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static String readIdentity(DataInputStream in) throws IOException {
+    if (in.readInt() != MAGIC) {
+      return null;
+    }
+    final byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void writeIdentity(DataOutputStream out, String identity) throws IOException {
+    final byte[] bytes = identity.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(MAGIC);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private void load() {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+        Files.newInputStream(store)))) {
+      final String identity;
+      try {
+        identity = readIdentity(in);
+      } catch (EOFException e) {
+        log.warn("Ignoring query statistics in {}: missing header", store);
+        return;
+      }
+      if (!snapshot.identity.equals(identity)) {
+        log.warn("Ignoring query statistics in {}: computed for index {} rather than {}",
+            store, identity, snapshot.identity);
+        return;
+      }
+      while (true) {
+        final byte[] hash = new byte[16];
+        try {
+          in.readFully(hash);
+        } catch (EOFException e) {
+          break;
+        }
+        final int df = in.readInt();
+        snapshot.documentFrequencies.put(HashCode.fromBytes(hash), df);
+      }
+    } catch (EOFException e) {
+      log.warn("Ignoring truncated record at end of {}", store);
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to load query statistics from " + store, e);
+    }
+    // new frequencies of this index can be appended to the existing store
+    storeIdentity = snapshot.identity;
+    log.info("Loaded {} document frequencies from {}", snapshot.documentFrequencies.size(), store);
+  }
+
+  private synchronized void persist(Snapshot source, List<HashCode> keys, int[] dfs) {
+    // frequencies of a version superseded while they were counted are not worth keeping
+    if (store == null || source != snapshot) {
+      return;
+    }
+    try {
+      if (storeWriter == null || !source.identity.equals(storeIdentity)) {
+        if (storeWriter != null) {
+          storeWriter.close();
+        }
+        if (source.identity.equals(storeIdentity)) {
+          storeWriter = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(store,
+              StandardOpenOption.APPEND)));
+        } else {
+          // the store holds the frequencies of a single index; start over for this one
+          storeWriter = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(store,
+              StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+              StandardOpenOption.WRITE)));
+          writeIdentity(storeWriter, source.identity);
+          storeIdentity = source.identity;
+        }
+      }
+      for (int i = 0; i < keys.size(); i++) {
+        storeWriter.write(keys.get(i).asBytes());
+        storeWriter.writeInt(dfs[i]);
+      }
+      storeWriter.flush();
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to save query statistics to " + store, e);
+    }
+  }
+
+  /**
+   * Produces a canonical string form of a query: clauses of boolean queries are sorted so that
+   * queries which differ only in clause order share statistics
+   *
+   * @param query query to canonicalize
+   * @return canonical form
+   */
+  public static String canonicalize(Query query) {
+    if (query instanceof BooleanQuery) {
+      final BooleanQuery bq = (BooleanQuery) query;
+      final List<String> clauses = new ArrayList<>(bq.clauses().size());
+      for (BooleanClause clause : bq.clauses()) {
+        clauses.add(clause.getOccur().toString() + canonicalize(clause.getQuery()));
+      }
+      Collections.sort(clauses);
+      return "(" + String.join(" ", clauses) + ")~" + bq.getMinimumNumberShouldMatch() +
+          (bq.isCoordDisabled() ? "/nocoord" : "");
+    } else if (query instanceof BoostQuery) {
+      final BoostQuery boosted = (BoostQuery) query;
+      return canonicalize(boosted.getQuery()) + '^' + boosted.getBoost();
+    } else {
+      return query.toString();
+    }
+  }
+
+  private static HashCode key(Query query) {
+    return HASH.hashString(canonicalize(query), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Get the DF, or number of documents that match a query
+   *
+   * @param query Query to search
+   * @return total number of hits for given query
+   */
+  public int getDocumentFrequency(Query query) {
+    return getDocumentFrequencies(Collections.singletonList(query))[0];
+  }
+
+  /**
+   * Get the DF, or number of documents that match a query, for each of the given queries.
+   * Queries whose frequency has not already been memoized are evaluated together under a
+   * single reader.
+   *
+   * @param queries Queries to search
+   * @return total number of hits for each given query
+   */
+  public int[] getDocumentFrequencies(List<Query> queries) {
+    return engine.withReader(reader -> getDocumentFrequencies(reader, queries));
+  }
+
+  /**
+   * Returns the memoized frequencies of the reader's index version, discarding those of older
+   * versions when a newer version is first seen, or null if the reader is older than the latest
+   * version seen
+   */
+  private Snapshot frequencies(DirectoryReader reader) {
+    final long version = reader.getVersion();
+    Snapshot current = snapshot;
+    if (current.version != version) {
+      synchronized (this) {
+        current = snapshot;
+        if (version > current.version) {
+          log.info("Index version changed from {} to {}; discarding memoized statistics",
+              current.version, version);
+          current = snapshot = new Snapshot(reader);
+        } else if (version < current.version) {
+          return null;
+        }
+      }
+    }
+    return current;
+  }
+
+  private int[] getDocumentFrequencies(DirectoryReader reader, List<Query> queries) {
+    final Snapshot current = frequencies(reader);
+    // a reader acquired before the index changed; its frequencies are not worth keeping
+    final Map<HashCode, Integer> documentFrequencies =
+        (current == null) ? new ConcurrentHashMap<>() : current.documentFrequencies;
+    final List<HashCode> keys = queries.stream().map(QueryStatistics::key).collect(Collectors.toList());
+    final int[] dfs = new int[queries.size()];
+
+    final List<Integer> misses = new ArrayList<>();
+    for (int i = 0; i < dfs.length; i++) {
+      final Integer df = documentFrequencies.get(keys.get(i));
+      if (df == null) {
+        misses.add(i);
+      } else {
+        dfs[i] = df;
+      }
+    }
+    if (misses.isEmpty()) {
+      return dfs;
+    }
+
+    final int[] missedDfs = countHits(reader, misses.stream().map(queries::get).collect(Collectors.toList()));
+    final List<HashCode> newKeys = new ArrayList<>(misses.size());
+    final int[] newDfs = new int[misses.size()];
+    for (int j = 0; j < missedDfs.length; j++) {
+      final int i = misses.get(j);
+      dfs[i] = missedDfs[j];
+      // another thread may have counted the same query in the meantime; only persist it once
+      if (documentFrequencies.putIfAbsent(keys.get(i), missedDfs[j]) == null) {
+        newDfs[newKeys.size()] = missedDfs[j];
+        newKeys.add(keys.get(i));
+      }
+    }
+    if (current != null) {
+      persist(current, newKeys, newDfs);
+    }
+    return dfs;
+  }
+
+  /**
+   * Iterator over the matches of one query in the current leaf
+   */
+  private static final class Cursor {
+    final int query;
+    final DocIdSetIterator iterator;
+    int doc;
+
+    Cursor(int query, DocIdSetIterator iterator) throws IOException {
+      this.query = query;
+      this.iterator = iterator;
+      this.doc = iterator.nextDoc();
+    }
+  }
+
+  /**
+   * Counts the live documents matching each query, visiting the documents of each index leaf once,
+   * in order, for all queries
+   */
+  private static int[] countHits(DirectoryReader reader, List<Query> queries) {
+    final IndexSearcher searcher = new IndexSearcher(reader);
+    final int[] counts = new int[queries.size()];
+    try {
+      final Weight[] weights = new Weight[queries.size()];
+      for (int i = 0; i < weights.length; i++) {
+        weights[i] = searcher.createNormalizedWeight(queries.get(i), false);
+      }
+      final PriorityQueue<Cursor> cursors = new PriorityQueue<>(Math.max(1, weights.length),
+          Comparator.comparingInt(c -> c.doc));
+      for (LeafReaderContext leaf : reader.leaves()) {
+        for (int i = 0; i < weights.length; i++) {
+          final Scorer scorer = weights[i].scorer(leaf);
+          if (scorer != null) {
+            final Cursor cursor = new Cursor(i, scorer.iterator());
+            if (cursor.doc != DocIdSetIterator.NO_MORE_DOCS) {
+              cursors.add(cursor);
+            }
+          }
+        }
+        final Bits liveDocs = leaf.reader().getLiveDocs();
+        while (!cursors.isEmpty()) {
+          final int doc = cursors.peek().doc;
+          final boolean live = liveDocs == null || liveDocs.get(doc);
+          // count every query matching this document before moving on to the next
+          while (!cursors.isEmpty() && cursors.peek().doc == doc) {
+            final Cursor cursor = cursors.poll();
+            if (live) {
+              counts[cursor.query]++;
+            }
+            cursor.doc = cursor.iterator.nextDoc();
+            if (cursor.doc != DocIdSetIterator.NO_MORE_DOCS) {
+              cursors.add(cursor);
+            }
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return counts;
+  }
+
+  /**
+   * Get the IDF, or inverse document frequency
+   *
+   * @param query Query to search
+   * @return "log(totalDocuments / (DF + 1))"
+   */
+  public double getInverseDocumentFrequency(Query query) {
+    return getInverseDocumentFrequencies(Collections.singletonList(query))[0];
+  }
+
+  /**
+   * Get the IDF, or inverse document frequency, of each of the given queries
+   *
+   * @param queries Queries to search
+   * @return "log(totalDocuments / (DF + 1))" for each query
+   */
+  public double[] getInverseDocumentFrequencies(List<Query> queries) {
+    // the frequencies and the number of documents must come from the same version of the index
+    return engine.withReader(reader -> {
+      final int[] dfs = getDocumentFrequencies(reader, queries);
+      final double total = reader.numDocs();
+      final double[] idfs = new double[dfs.length];
+      for (int i = 0; i < dfs.length; i++) {
+        idfs[i] = Math.log(total / (dfs[i] + 1d));
+      }
+      return idfs;
+    });
+  }
+
+  @Override
+  public synchronized void close() {
+    if (storeWriter != null) {
+      try {
+        storeWriter.close();
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+      storeWriter = null;
+    }
+  }
+}
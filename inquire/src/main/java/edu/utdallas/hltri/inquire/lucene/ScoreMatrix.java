@@ -0,0 +1,79 @@
+package edu.utdallas.hltri.inquire.lucene;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Arrays;
+
+/**
+ * Column-major matrix of relevance scores indexed by (column, lucene ID), holding rows only for a
+ * fixed set of documents (e.g., the documents retrieved for one topic).
+ * Each column holds the scores of those documents for one feature (e.g., one query/similarity
+ * combination); documents which did not match the column's query score 0, matching the default
+ * value of the {@link gnu.trove.map.TIntFloatMap} returned by
+ * {@link LuceneSearchEngine#getSimilarities(org.apache.lucene.search.similarities.Similarity,
+ * org.apache.lucene.search.Query)}.
+ */
+public final class ScoreMatrix {
+  private final int[] luceneIds;
+  private final float[][] columns;
+
+  /**
+   * @param numColumns number of features (columns)
+   * @param luceneIds  lucene IDs of the documents (rows) to hold scores for; duplicates are ignored
+   */
+  public ScoreMatrix(int numColumns, int[] luceneIds) {
+    Preconditions.checkArgument(numColumns >= 0, "numColumns must be non-negative");
+    this.luceneIds = Arrays.stream(luceneIds).sorted().distinct().toArray();
+    this.columns = new float[numColumns][this.luceneIds.length];
+  }
+
+  public int numColumns() {
+    return columns.length;
+  }
+
+  public int numDocs() {
+    return luceneIds.length;
+  }
+
+  /**
+   * @return row of the given document, or -1 if this matrix holds no scores for it
+   */
+  public int row(int luceneId) {
+    final int row = Arrays.binarySearch(luceneIds, luceneId);
+    return row < 0 ? -1 : row;
+  }
+
+  public boolean contains(int luceneId) {
+    return row(luceneId) >= 0;
+  }
+
+  public float get(int column, int luceneId) {
+    return columns[column][checkedRow(luceneId)];
+  }
+
+  public void set(int column, int luceneId, float score) {
+    columns[column][checkedRow(luceneId)] = score;
+  }
+
+  /**
+   * Sets the score of the document in the given row (see {@link #row(int)})
+   */
+  public void setRow(int column, int row, float score) {
+    columns[column][row] = score;
+  }
+
+  private int checkedRow(int luceneId) {
+    final int row = row(luceneId);
+    Preconditions.checkArgument(row >= 0, "no scores for document %s", luceneId);
+    return row;
+  }
+
+  /**
+   * Resets every score to 0
+   */
+  public void clear() {
+    for (float[] column : columns) {
+      Arrays.fill(column, 0f);
+    }
+  }
+}
@@ -0,0 +1,349 @@
+package edu.utdallas.hlt.medbase.umls;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableSet;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import edu.utdallas.hltri.conf.Config;
+import edu.utdallas.hltri.logging.Logger;
+
+/**
+ * Immutable, memory-mapped UMLS lexicon of the English atoms of MRCONSO: lower-cased phrases to CUIs, and CUIs to
+ * phrases.
+ *
+ * The lexicon is compiled offline by {@link #compile(Path, Path)} (or {@link #main(String...)}) into sorted string
+ * tables of phrases and CUIs, and two CSR arrays mapping each phrase to its CUIs and each CUI to its phrases.
+ * {@link #open(Path)} only maps the file, and lookups are binary searches over the mapped tables, so it is ready in
+ * milliseconds, takes no locks, and keeps nothing on the heap.
+ */
+public class CompiledUMLSLexicon {
+  private static final Logger log = Logger.get(CompiledUMLSLexicon.class);
+
+  private static final int MAGIC = 0x554d4c31;  // "UML1"
+  private static final int HEADER_INTS = 8;
+
+  private final StringTable phrases;
+  private final StringTable cuis;
+  // CUIs of phrase i are phraseCuis[phraseCuiOffsets[i] .. phraseCuiOffsets[i + 1]), and conversely
+  private final IntBuffer phraseCuiOffsets;
+  private final IntBuffer phraseCuis;
+  private final IntBuffer cuiPhraseOffsets;
+  private final IntBuffer cuiPhrases;
+
+  private CompiledUMLSLexicon(StringTable phrases, StringTable cuis, IntBuffer phraseCuiOffsets, IntBuffer phraseCuis,
+                              IntBuffer cuiPhraseOffsets, IntBuffer cuiPhrases) {
+    this.phrases = phrases;
+    this.cuis = cuis;
+    this.phraseCuiOffsets = phraseCuiOffsets;
+    this.phraseCuis = phraseCuis;
+    this.cuiPhraseOffsets = cuiPhraseOffsets;
+    this.cuiPhrases = cuiPhrases;
+  }
+
+  /**
+   * @return the CUIs of the given (lower-cased) phrase, or an empty set if not in UMLS
+   */
+  public Set<String> getIds(String phrase) {
+    return lookup(phrases, phrase, phraseCuiOffsets, phraseCuis, cuis);
+  }
+
+  /**
+   * @return the (lower-cased) phrases of the given CUI, or an empty set if not in UMLS
+   */
+  public Set<String> getPhrases(String cui) {
+    return lookup(cuis, cui, cuiPhraseOffsets, cuiPhrases, phrases);
+  }
+
+  private static Set<String> lookup(StringTable keys, String key, IntBuffer offsets, IntBuffer values,
+                                    StringTable valueStrings) {
+    final int i = keys.indexOf(key);
+    if (i < 0) {
+      return ImmutableSet.of();
+    }
+    final ImmutableSet.Builder<String> set = ImmutableSet.builder();
+    for (int j = offsets.get(i); j < offsets.get(i + 1); j++) {
+      set.add(valueStrings.get(values.get(j)));
+    }
+    return set.build();
+  }
+
+  public int getNumPhrases() {
+    return phrases.size();
+  }
+
+  public int getNumCuis() {
+    return cuis.size();
+  }
+
+  /**
+   * Memory-maps a lexicon compiled by {@link #compile(Path, Path)}
+   */
+  public static CompiledUMLSLexicon open(Path file) {
+    final ByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    if (buffer.getInt(0) != MAGIC) {
+      throw new IllegalArgumentException("Not a compiled UMLS lexicon: " + file);
+    }
+    final int numPhrases = buffer.getInt(4);
+    final int numCuis = buffer.getInt(8);
+    final int numMappings = buffer.getInt(12);
+    final int phraseBytes = buffer.getInt(16);
+    final int cuiBytes = buffer.getInt(20);
+    final int[] lengths = {numPhrases + 1, numCuis + 1, numPhrases + 1, numMappings, numCuis + 1, numMappings};
+    final IntBuffer[] ints = new IntBuffer[lengths.length];
+    int position = HEADER_INTS * 4;
+    for (int i = 0; i < ints.length; i++) {
+      ints[i] = slice(buffer, position, lengths[i] * 4).asIntBuffer();
+      position += lengths[i] * 4;
+    }
+    final ByteBuffer phraseBlob = slice(buffer, position, phraseBytes);
+    final ByteBuffer cuiBlob = slice(buffer, position + phraseBytes, cuiBytes);
+    final CompiledUMLSLexicon lexicon = new CompiledUMLSLexicon(new StringTable(ints[0], phraseBlob),
+        new StringTable(ints[1], cuiBlob), ints[2], ints[3], ints[4], ints[5]);
+    log.debug("Mapped {} phrases for {} CUIs from {}", numPhrases, numCuis, file);
+    return lexicon;
+  }
+
+  private static ByteBuffer slice(ByteBuffer buffer, int position, int length) {
+    final ByteBuffer duplicate = buffer.duplicate();
+    duplicate.position(position);
+    duplicate.limit(position + length);
+    return duplicate.slice();
+  }
+
+  /**
+   * Compiles the English atoms of the given MRCONSO.RRF into a lexicon file
+   */
+  public static void compile(Path mrconso, Path file) {
+    final Map<String, Integer> phraseIds = new HashMap<>();
+    final Map<String, Integer> cuiIds = new HashMap<>();
+    long[] mappings = new long[1 << 20];
+    int numMappings = 0;
+    log.info("Compiling UMLS lexicon from {}...", mrconso);
+    final Splitter splitter = Splitter.on('|');
+    try (BufferedReader reader = Files.newBufferedReader(mrconso, StandardCharsets.UTF_8)) {
+      for (String line; (line = reader.readLine()) != null; ) {
+        final List<String> fields = splitter.splitToList(line);
+        if ("ENG".equals(fields.get(1))) {
+          final int phrase = intern(phraseIds, fields.get(14).toLowerCase());
+          final int cui = intern(cuiIds, fields.get(0));
+          if (numMappings == mappings.length) {
+            mappings = Arrays.copyOf(mappings, numMappings * 2);
+          }
+          mappings[numMappings++] = ((long) phrase << 32) | cui;
+        }
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+
+    // Renumber phrases and CUIs in (UTF-8) sorted order, so they can be binary searched
+    final byte[][] phraseTable = sortedTable(phraseIds);
+    final byte[][] cuiTable = sortedTable(cuiIds);
+    final int[] phraseRanks = ranks(phraseIds, phraseTable);
+    final int[] cuiRanks = ranks(cuiIds, cuiTable);
+    for (int i = 0; i < numMappings; i++) {
+      mappings[i] = ((long) phraseRanks[(int) (mappings[i] >>> 32)] << 32) | cuiRanks[(int) mappings[i]];
+    }
+    final long[] byPhrase = distinctSorted(mappings, numMappings);
+    final long[] byCui = new long[byPhrase.length];
+    for (int i = 0; i < byPhrase.length; i++) {
+      byCui[i] = (byPhrase[i] << 32) | (byPhrase[i] >>> 32);
+    }
+    Arrays.sort(byCui);
+
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(phraseTable.length);
+      out.writeInt(cuiTable.length);
+      out.writeInt(byPhrase.length);
+      out.writeInt(Arrays.stream(phraseTable).mapToInt(s -> s.length).sum());
+      out.writeInt(Arrays.stream(cuiTable).mapToInt(s -> s.length).sum());
+      out.writeInt(0);
+      out.writeInt(0);
+      writeOffsets(out, phraseTable);
+      writeOffsets(out, cuiTable);
+      writeCsr(out, byPhrase, phraseTable.length);
+      writeCsr(out, byCui, cuiTable.length);
+      for (byte[] phrase : phraseTable) {
+        out.write(phrase);
+      }
+      for (byte[] cui : cuiTable) {
+        out.write(cui);
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    log.info("Compiled {} mappings between {} phrases and {} CUIs to {}", byPhrase.length, phraseTable.length,
+        cuiTable.length, file);
+  }
+
+  private static int intern(Map<String, Integer> ids, String string) {
+    Integer id = ids.get(string);
+    if (id == null) {
+      id = ids.size();
+      ids.put(string, id);
+    }
+    return id;
+  }
+
+  private static byte[][] sortedTable(Map<String, Integer> ids) {
+    final byte[][] table = new byte[ids.size()][];
+    for (Map.Entry<String, Integer> entry : ids.entrySet()) {
+      table[entry.getValue()] = entry.getKey().getBytes(StandardCharsets.UTF_8);
+    }
+    Arrays.sort(table, CompiledUMLSLexicon::compareUtf8);
+    return table;
+  }
+
+  private static int[] ranks(Map<String, Integer> ids, byte[][] table) {
+    final int[] ranks = new int[ids.size()];
+    for (Map.Entry<String, Integer> entry : ids.entrySet()) {
+      ranks[entry.getValue()] = Arrays.binarySearch(table, entry.getKey().getBytes(StandardCharsets.UTF_8),
+          CompiledUMLSLexicon::compareUtf8);
+    }
+    return ranks;
+  }
+
+  private static long[] distinctSorted(long[] values, int length) {
+    final long[] sorted = Arrays.copyOf(values, length);
+    Arrays.sort(sorted);
+    int n = 0;
+    for (int i = 0; i < sorted.length; i++) {
+      if (n == 0 || sorted[n - 1] != sorted[i]) {
+        sorted[n++] = sorted[i];
+      }
+    }
+    return Arrays.copyOf(sorted, n);
+  }
+
+  private static void writeOffsets(DataOutputStream out, byte[][] table) throws IOException {
+    int offset = 0;
+    out.writeInt(offset);
+    for (byte[] string : table) {
+      offset += string.length;
+      out.writeInt(offset);
+    }
+  }
+
+  /**
+   * Writes the given (key, value) pairs, sorted by key, as offsets of each key's values followed by the values
+   */
+  private static void writeCsr(DataOutputStream out, long[] pairs, int numKeys) throws IOException {
+    int j = 0;
+    for (int key = 0; key < numKeys; key++) {
+      out.writeInt(j);
+      while (j < pairs.length && (int) (pairs[j] >>> 32) == key) {
+        j++;
+      }
+    }
+    out.writeInt(j);
+    for (long pair : pairs) {
+      out.writeInt((int) pair);
+    }
+  }
+
+  private static int compareUtf8(byte[] a, byte[] b) {
+    final int length = Math.min(a.length, b.length);
+    for (int i = 0; i < length; i++) {
+      final int c = Integer.compare(a[i] & 0xff, b[i] & 0xff);
+      if (c != 0) {
+        return c;
+      }
+    }
+    return Integer.compare(a.length, b.length);
+  }
+
+  /**
+   * UTF-8 strings stored back to back in sorted (unsigned byte) order
+   */
+  private static class StringTable {
+    private final IntBuffer offsets;
+    private final ByteBuffer bytes;
+
+    StringTable(IntBuffer offsets, ByteBuffer bytes) {
+      this.offsets = offsets;
+      this.bytes = bytes;
+    }
+
+    int size() {
+      return offsets.limit() - 1;
+    }
+
+    String get(int i) {
+      final int start = offsets.get(i);
+      final byte[] utf8 = new byte[offsets.get(i + 1) - start];
+      for (int j = 0; j < utf8.length; j++) {
+        utf8[j] = bytes.get(start + j);
+      }
+      return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the index of the given string, or -1 if absent
+     */
+    int indexOf(String string) {
+      final byte[] key = string.getBytes(StandardCharsets.UTF_8);
+      int lo = 0;
+      int hi = size() - 1;
+      while (lo <= hi) {
+        final int mid = (lo + hi) >>> 1;
+        final int c = compare(mid, key);
+        if (c < 0) {
+          lo = mid + 1;
+        } else if (c > 0) {
+          hi = mid - 1;
+        } else {
+          return mid;
+        }
+      }
+      return -1;
+    }
+
+    private int compare(int i, byte[] key) {
+      final int start = offsets.get(i);
+      final int length = offsets.get(i + 1) - start;
+      final int common = Math.min(length, key.length);
+      for (int j = 0; j < common; j++) {
+        final int c = Integer.compare(bytes.get(start + j) & 0xff, key[j] & 0xff);
+        if (c != 0) {
+          return c;
+        }
+      }
+      return Integer.compare(length, key.length);
+    }
+  }
+
+  /**
+   * Compiles MRCONSO.RRF (by default, medbase.umls.path) to a lexicon file (by default, medbase.umls.lexicon-path)
+   */
+  public static void main(String... args) {
+    final Config conf = Config.load("medbase.umls");
+    final Path mrconso = (args.length > 0) ? Paths.get(args[0]) : conf.getPath("path");
+    final Path file = (args.length > 1) ? Paths.get(args[1]) : conf.getPath("lexicon-path");
+    compile(mrconso, file);
+    final CompiledUMLSLexicon lexicon = open(file);
+    log.info("Opened lexicon of {} phrases and {} CUIs", lexicon.getNumPhrases(), lexicon.getNumCuis());
+  }
+}
@@ -9,6 +9,8 @@ import edu.utdallas.hltri.util.Expansion;
 import edu.utdallas.hltri.logging.Logger;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -32,10 +34,24 @@ public class UMLSManager extends AbstractExpander<CharSequence, String> implemen
 
   private final String umlsPath, cachePath;
 
+  // Compiled lexicon, if one was found; when present, it answers every lookup and nothing is cached
+  private final CompiledUMLSLexicon lexicon;
+
   private final static Config conf = Config.load("medbase.umls");
 
+  /**
+   * Uses the compiled lexicon at medbase.umls.lexicon-path if it exists (see {@link CompiledUMLSLexicon}), and
+   * otherwise loads MRCONSO on the first cache miss
+   */
   public UMLSManager() {
-    this(conf.getString("path"), conf.getString("cache-path"));
+    this(conf.getString("path"), conf.getString("cache-path"), openLexicon());
+  }
+
+  /**
+   * Looks up phrases and CUIs in the given compiled lexicon
+   */
+  public UMLSManager(CompiledUMLSLexicon lexicon) {
+    this(conf.getString("path"), conf.getString("cache-path"), lexicon);
   }
 
   private final ReadWriteLock readWriteLock = new ReentrantReadWriteLock();
@@ -43,11 +59,20 @@ public class UMLSManager extends AbstractExpander<CharSequence, String> implemen
   private final Lock read  = readWriteLock.readLock();
   private final Lock write = readWriteLock.writeLock();
 
-  @SuppressWarnings({"unchecked", "WeakerAccess"})
+  @SuppressWarnings("WeakerAccess")
   public UMLSManager(String umlsPath, String cachePath) {
+    this(umlsPath, cachePath, null);
+  }
+
+  @SuppressWarnings("unchecked")
+  private UMLSManager(String umlsPath, String cachePath, CompiledUMLSLexicon lexicon) {
     super("UMLS");
     this.umlsPath = umlsPath;
     this.cachePath = cachePath;
+    this.lexicon = lexicon;
+    if (lexicon != null) {
+      return;
+    }
     try {
       LOGGER.debug("Loading UMLS cache from {}.", this.cachePath);
       try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(cachePath)))) {
@@ -61,6 +86,16 @@ public class UMLSManager extends AbstractExpander<CharSequence, String> implemen
     }
   }
 
+  private static CompiledUMLSLexicon openLexicon() {
+    final Path path = conf.getPath("lexicon-path");
+    if (Files.exists(path)) {
+      LOGGER.debug("Using compiled UMLS lexicon {}.", path);
+      return CompiledUMLSLexicon.open(path);
+    }
+    LOGGER.warn("No compiled UMLS lexicon at {}; falling back to loading {} on demand.", path, conf.getString("path"));
+    return null;
+  }
+
   private synchronized void loadUMLSData() {
     write.lock();
     try {
@@ -92,6 +127,9 @@ public class UMLSManager extends AbstractExpander<CharSequence, String> implemen
   }
 
   @Override public void close() {
+    if (lexicon != null) {
+      return;
+    }
     read.lock();
     try {
       LOGGER.info("Saving UMLS cache to {}.", cachePath);
@@ -113,6 +151,9 @@ public class UMLSManager extends AbstractExpander<CharSequence, String> implemen
 
   @SuppressWarnings("WeakerAccess")
   public Set<String> getIds(String phrase) {
+    if (lexicon != null) {
+      return lexicon.getIds(phrase);
+    }
     read.lock();
     boolean empty;
     Set<String> ids;
@@ -143,6 +184,9 @@ public class UMLSManager extends AbstractExpander<CharSequence, String> implemen
 
   @SuppressWarnings("WeakerAccess")
   public Set<String> getPhrases(String id) {
+    if (lexicon != null) {
+      return lexicon.getPhrases(id);
+    }
     read.lock();
     boolean empty;
     Set<String> phrases;
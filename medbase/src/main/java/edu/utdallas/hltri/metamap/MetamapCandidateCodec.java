@@ -0,0 +1,67 @@
+package edu.utdallas.hltri.metamap;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import edu.utdallas.hltri.scribe.io.FeatureCodec;
+import edu.utdallas.hltri.scribe.io.FeatureCodecs;
+
+/**
+ * Binary feature codec for {@link MetamapCandidate}s, so that the candidate lists of the metamap
+ * annotation set are not stored with Java serialization
+ */
+public class MetamapCandidateCodec implements FeatureCodec<MetamapCandidate> {
+  @Override
+  public String tag() {
+    return "metamap-candidate";
+  }
+
+  @Override
+  public boolean canEncode(Object value) {
+    return value instanceof MetamapCandidate;
+  }
+
+  @Override
+  public void encode(MetamapCandidate value, DataOutput out) throws IOException {
+    writeNullable(value.getCui(), out);
+    writeNullable(value.getName(), out);
+    out.writeBoolean(value.getScore() != null);
+    if (value.getScore() != null) {
+      out.writeInt(value.getScore());
+    }
+    out.writeBoolean(value.isNegated() != null && value.isNegated());
+    out.writeInt(value.getSemanticTypes().size());
+    for (String semanticType : value.getSemanticTypes()) {
+      FeatureCodecs.writeString(semanticType, out);
+    }
+  }
+
+  @Override
+  public MetamapCandidate decode(DataInput in) throws IOException {
+    final MetamapCandidate.Builder builder = new MetamapCandidate.Builder()
+        .cui(readNullable(in))
+        .name(readNullable(in));
+    if (in.readBoolean()) {
+      builder.score(in.readInt());
+    }
+    if (in.readBoolean()) {
+      builder.negated();
+    }
+    for (int i = in.readInt(); i > 0; i--) {
+      builder.addSemanticType(FeatureCodecs.readString(in));
+    }
+    return builder.build();
+  }
+
+  private static void writeNullable(String string, DataOutput out) throws IOException {
+    out.writeBoolean(string != null);
+    if (string != null) {
+      FeatureCodecs.writeString(string, out);
+    }
+  }
+
+  private static String readNullable(DataInput in) throws IOException {
+    return in.readBoolean() ? FeatureCodecs.readString(in) : null;
+  }
+}
@@ -17,7 +17,7 @@ import java.util.stream.StreamSupport;
 
 import edu.utdallas.hltri.conf.Config;
 import edu.utdallas.hltri.logging.Logger;
-import edu.utdallas.hltri.util.CharMatchers;
+import edu.utdallas.hltri.util.CompiledPatternMatcher;
 import edu.utdallas.hltri.util.PatternMatcher;
 
 /**
@@ -99,6 +99,34 @@ public class UmlsCuiMatcher extends PatternMatcher {
     }
   }
 
+  /**
+   * Returns the compiled matcher for the given CUIs (and their descendants), memory-mapping it from the cache if
+   * it was compiled since the TSV cache was last written, and otherwise compiling (and caching) it
+   */
+  public static CompiledPatternMatcher compiledForCuis(String... cuis) {
+    final String name = getName(Sets.newHashSet(cuis));
+    final Path compiled = cachePath.resolve(name + ".acm");
+    if (isUpToDate(compiled, cachePath.resolve(name + ".tsv"))) {
+      try {
+        return CompiledPatternMatcher.load(compiled, formatter);
+      } catch (IllegalArgumentException e) {
+        log.warn("Recompiling {}: {}", compiled, e.getMessage());
+      }
+    }
+    final CompiledPatternMatcher matcher = forCuis(cuis).compile();
+    matcher.save(compiled);
+    return matcher;
+  }
+
+  private static boolean isUpToDate(Path compiled, Path tsv) {
+    try {
+      return Files.exists(compiled) && Files.exists(tsv)
+          && Files.getLastModifiedTime(compiled).compareTo(Files.getLastModifiedTime(tsv)) >= 0;
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
   public int getNumAtoms() {
     return patterns.size();
   }
@@ -107,8 +135,6 @@ public class UmlsCuiMatcher extends PatternMatcher {
     return numCuis;
   }
 
-  private static CharMatcher formatter = CharMatchers.PUNCTUATION.or(CharMatcher.WHITESPACE).precomputed();
-
   public boolean hasMatchWithin(CharSequence context) {
     return !Iterables.isEmpty(getAtomsWithin(context));
   }
@@ -41,7 +41,7 @@ public class JamiaVectorizer2 {
 
     Files.createDirectories(targetPath);
 
-    try (EegSearchEngine searcher = new EegSearchEngine()) {
+    try (EegSearchEngine searcher = EegSearchEngine.open()) {
       final CohortL2rProcessor<CohortTopic, CohortPatient, IndexedEegNote> l2r = new CohortL2rProcessor<>(
           searcher,
           new String[]{
@@ -2,9 +2,13 @@ package edu.utdallas.hltri.mercury.lucene;
 
 import edu.utdallas.hltri.eeg.EegNote;
 import edu.utdallas.hltri.inquire.lucene.DocumentFactory;
+import edu.utdallas.hltri.inquire.lucene.similarity.Similarities;
 import edu.utdallas.hltri.util.Unsafe;
 import java.io.IOException;
+import java.util.Collection;
+import java.util.stream.Collectors;
 import org.apache.lucene.analysis.en.EnglishAnalyzer;
+import org.apache.lucene.search.similarities.Similarity;
 
 import edu.utdallas.hltri.conf.Config;
 import edu.utdallas.hltri.inquire.lucene.LuceneSearchEngine;
@@ -30,4 +34,41 @@ public class EegSearchEngine extends LuceneSearchEngine<IndexedEegNote> {
         }
     );
   }
+
+  /**
+   * Opens the index memory-mapped, with a dedicated pre-warmed searcher for each of the given
+   * similarities (e.g., for serving concurrent cohort queries)
+   */
+  public EegSearchEngine(Collection<Similarity> similarities, int searchThreads) {
+    super(
+        config.getString("lucene-index-path"),
+        new EnglishAnalyzer(),
+        config.getString("default-field"),
+        (reader, id) -> {
+          try {
+            return new IndexedEegNote(reader.document(id), id);
+          } catch (IOException e) {
+            throw new RuntimeException(e);
+          }
+        },
+        similarities,
+        searchThreads
+    );
+  }
+
+  /**
+   * Opens the index as configured: memory-mapped with a dedicated searcher for each of the
+   * configured similarities if index.memory-mapped is set, or with a single searcher otherwise
+   */
+  public static EegSearchEngine open() {
+    if (config.getBoolean("memory-mapped")) {
+      return new EegSearchEngine(
+          config.getStringList("similarities").stream()
+              .map(name -> Similarities.valueOf(name).similarity)
+              .collect(Collectors.toList()),
+          config.getInt("search-threads"));
+    } else {
+      return new EegSearchEngine();
+    }
+  }
 }
@@ -14,6 +14,9 @@ import edu.utdallas.hltri.util.Lazy;
 import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.impl.HttpSolrClient;
+import org.apache.solr.client.solrj.request.FieldAnalysisRequest;
+import org.apache.solr.client.solrj.response.AnalysisResponseBase;
+import org.apache.solr.client.solrj.response.FieldAnalysisResponse;
 import org.apache.solr.common.SolrInputDocument;
 
 import java.io.IOException;
@@ -33,6 +36,7 @@ import java.util.regex.Pattern;
 import edu.utdallas.hltri.eeg.EegNote;
 import edu.utdallas.hltri.framework.ProgressLogger;
 import edu.utdallas.hltri.inquire.ie.GenderExtractor;
+import edu.utdallas.hltri.inquire.lucene.LuceneSearchEngine;
 import edu.utdallas.hltri.io.IOUtils;
 import edu.utdallas.hltri.logging.Logger;
 import edu.utdallas.hltri.scribe.io.JsonCorpus;
@@ -74,6 +78,43 @@ public class SolrIndexer {
     }
   }
 
+  /**
+   * Adds a text field along with its length, i.e., its number of unique terms under the index
+   * analyzer of the field's type in the Solr schema, as a numeric doc value (see
+   * {@link LuceneSearchEngine#newFieldLengthField(String, long)}). The Solr schema must map these
+   * to single-valued long doc values; this has to be added to the schema by hand:
+   * {@code <dynamicField name="*.length" type="long" indexed="false" stored="false" docValues="true"/>}
+   */
+  private static void addTextField(SolrInputDocument solrDoc, String field, String text) {
+    solrDoc.addField(field, text);
+    solrDoc.addField(field + LuceneSearchEngine.FIELD_LENGTH_SUFFIX, countUniqueTerms(field, text));
+  }
+
+  /**
+   * Counts the unique terms of the given text as the core would index them in the given field,
+   * using the core's field analysis handler so that the schema's own index analyzer is applied
+   */
+  private static long countUniqueTerms(String field, String text) {
+    if (text.isEmpty()) {
+      return 0;
+    }
+    final FieldAnalysisRequest request = new FieldAnalysisRequest();
+    request.addFieldName(field);
+    request.setFieldValue(text);
+    try {
+      final FieldAnalysisResponse response = request.process(solr);
+      // the tokens of the last phase are the terms which are indexed
+      AnalysisResponseBase.AnalysisPhase terms = null;
+      for (AnalysisResponseBase.AnalysisPhase phase : response.getFieldNameAnalysis(field).getIndexPhases()) {
+        terms = phase;
+      }
+      return (terms == null) ? 0 :
+          terms.getTokens().stream().map(AnalysisResponseBase.TokenInfo::getText).distinct().count();
+    } catch (SolrServerException | IOException e) {
+      throw new RuntimeException("Failed to analyze " + field, e);
+    }
+  }
+
   private static boolean fileNameFilter(Path path) {
     if (!Files.isReadable(path)) return false;
     final String fileName = path.getFileName().toString();
@@ -123,7 +164,7 @@ public class SolrIndexer {
             log.error("Found empty document {}", reportId);
           } else {
             // add text
-            solrDoc.addField("text", text.trim());
+            addTextField(solrDoc, "text", text.trim());
 
             // add negated text
             negationSpanAnnotator.get().annotate(eegReport);
@@ -144,12 +185,12 @@ public class SolrIndexer {
             final int impressionStart = text.indexOf("IMPRESSION:") + "IMPRESSION:".length();
             final int correlationStart = text.indexOf("CLINICAL CORRELATION:") + "CLINICAL CORRELATION:".length();
             final int[] offsets = {clinicalHistoryStart, medicationsStart, introStart, descriptionStart, impressionStart, correlationStart};
-            solrDoc.addField("history_txt_en", getSection(text, clinicalHistoryStart, offsets));
-            solrDoc.addField("medications_txt_en", getSection(text, medicationsStart, offsets));
-            solrDoc.addField("introduction_txt_en", getSection(text, introStart, offsets));
-            solrDoc.addField("description_txt_en", getSection(text, descriptionStart, offsets));
-            solrDoc.addField("impression_txt_en", getSection(text, impressionStart, offsets));
-            solrDoc.addField("correlation_txt_en", getSection(text, correlationStart, offsets));
+            addTextField(solrDoc, "history_txt_en", getSection(text, clinicalHistoryStart, offsets));
+            addTextField(solrDoc, "medications_txt_en", getSection(text, medicationsStart, offsets));
+            addTextField(solrDoc, "introduction_txt_en", getSection(text, introStart, offsets));
+            addTextField(solrDoc, "description_txt_en", getSection(text, descriptionStart, offsets));
+            addTextField(solrDoc, "impression_txt_en", getSection(text, impressionStart, offsets));
+            addTextField(solrDoc, "correlation_txt_en", getSection(text, correlationStart, offsets));
 
             // add tier path
             solrDoc.addField("tiers", eegJsonPath.relativize(Paths.get(eegNoteJsonCorpus.getTextPath(reportId)).getParent()).toString());
@@ -223,7 +264,7 @@ public class SolrIndexer {
 
         try (final Document<EegNote> eegReport = eegNoteJsonCorpus.load(reportId)) {
           final String text = eegReport.toString();
-          solrDoc.addField("text", text.trim());
+          addTextField(solrDoc, "text", text.trim());
 
           if (text.isEmpty()) {
             log.error("Found empty document {}", reportId);
@@ -236,12 +277,12 @@ public class SolrIndexer {
             final int correlationStart = text.indexOf("CLINICAL CORRELATION:") + "CLINICAL CORRELATION:".length();
             final int[] offsets = {clinicalHistoryStart, medicationsStart, introStart, descriptionStart, impressionStart, correlationStart};
 
-            solrDoc.addField("history_txt_en", getSection(text, clinicalHistoryStart, offsets));
-            solrDoc.addField("medications_txt_en", getSection(text, medicationsStart, offsets));
-            solrDoc.addField("introduction_txt_en", getSection(text, introStart, offsets));
-            solrDoc.addField("description_txt_en", getSection(text, descriptionStart, offsets));
-            solrDoc.addField("impression_txt_en", getSection(text, impressionStart, offsets));
-            solrDoc.addField("correlation_txt_en", getSection(text, correlationStart, offsets));
+            addTextField(solrDoc, "history_txt_en", getSection(text, clinicalHistoryStart, offsets));
+            addTextField(solrDoc, "medications_txt_en", getSection(text, medicationsStart, offsets));
+            addTextField(solrDoc, "introduction_txt_en", getSection(text, introStart, offsets));
+            addTextField(solrDoc, "description_txt_en", getSection(text, descriptionStart, offsets));
+            addTextField(solrDoc, "impression_txt_en", getSection(text, impressionStart, offsets));
+            addTextField(solrDoc, "correlation_txt_en", getSection(text, correlationStart, offsets));
 
             solrDoc.addField("tiers", eegJsonPath.relativize(Paths.get(eegNoteJsonCorpus.getTextPath(reportId)).getParent()).toString());
 
@@ -1,18 +1,31 @@
 package edu.utdallas.hltri.scribe.io;
 
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 import edu.utdallas.hltri.scribe.annotators.Annotator;
 import edu.utdallas.hltri.scribe.text.BaseDocument;
 import edu.utdallas.hltri.scribe.text.Document;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import edu.utdallas.hltri.framework.ProgressLogger;
+import edu.utdallas.hltri.logging.Logger;
 import edu.utdallas.hltri.scribe.annotators.Annotator;
 import edu.utdallas.hltri.scribe.gate.GateUtils;
 import edu.utdallas.hltri.scribe.text.BaseDocument;
@@ -22,6 +35,8 @@ import edu.utdallas.hltri.scribe.text.Document;
  * Created by ramon on 8/18/15.
  */
 public abstract class Corpus<D extends BaseDocument> {
+  private static final Logger log = Logger.get(Corpus.class);
+
 //  private final Serializer<D> serializer;
 
   /**
@@ -79,6 +94,76 @@ public abstract class Corpus<D extends BaseDocument> {
     return this;
   }
 
+  /**
+   * The passed consumer accepts each document in the corpus using numThreads worker threads,
+   * without saving afterwards. At most maxInFlight documents are open at once: the id stream is
+   * only advanced when a worker has closed one of its documents.
+   * If the consumer (or loading) throws an exception on a document, the failure is logged and the
+   * remaining documents are still processed; the ids of the failed documents are returned. If it
+   * throws an {@link Error}, no further documents are started and the error is rethrown once the
+   * documents in flight have finished.
+   * The consumer must be thread-safe.
+   * @param cons        consumer to apply to each document
+   * @param numThreads  number of worker threads
+   * @param maxInFlight maximum number of documents loaded at once
+   * @return ids of the documents which could not be processed
+   */
+  public List<String> forEachDocument(Consumer<Document<D>> cons, int numThreads, int maxInFlight) {
+    Preconditions.checkArgument(numThreads > 0, "numThreads must be positive");
+    Preconditions.checkArgument(maxInFlight >= numThreads, "maxInFlight must be at least numThreads");
+    final ExecutorService executor = Executors.newFixedThreadPool(numThreads,
+        new ThreadFactoryBuilder().setNameFormat("corpus-worker-%d").setDaemon(true).build());
+    final Semaphore inFlight = new Semaphore(maxInFlight);
+    final List<String> failed = Collections.synchronizedList(new ArrayList<>());
+    final AtomicLong processed = new AtomicLong();
+    final AtomicReference<Error> error = new AtomicReference<>();
+    try (ProgressLogger plog = ProgressLogger.indeterminateSize("corpus", 1, TimeUnit.MINUTES);
+         Stream<String> ids = getIdStream()) {
+      ids.forEach(id -> {
+        inFlight.acquireUninterruptibly();
+        if (error.get() != null) {
+          inFlight.release();
+          return;
+        }
+        try {
+          executor.execute(() -> {
+            try (Document<D> doc = load(id)) {
+              cons.accept(doc);
+            } catch (Exception e) {
+              log.error("Failed to process document " + id, e);
+              failed.add(id);
+            } catch (Error e) {
+              error.compareAndSet(null, e);
+              throw e;
+            } finally {
+              try {
+                plog.update(processed.incrementAndGet(), "processed {} ({} failed)", id, failed.size());
+              } finally {
+                // Released last, so the final acquire only returns once every update is done
+                inFlight.release();
+              }
+            }
+          });
+        } catch (RuntimeException e) {
+          inFlight.release();
+          throw e;
+        }
+      });
+      executor.shutdown();
+      // Wait for every submitted document to finish
+      inFlight.acquireUninterruptibly(maxInFlight);
+    } finally {
+      executor.shutdownNow();
+    }
+    if (error.get() != null) {
+      throw error.get();
+    }
+    if (!failed.isEmpty()) {
+      log.warn("Failed to process {} documents: {}", failed.size(), failed);
+    }
+    return failed;
+  }
+
   @Deprecated
   public <O> Stream<O> mapEachDocument(Predicate<String> filter, Function<Document<D>, O> fun) {
     return getIdStream().filter(filter).map(id -> {
@@ -116,6 +201,22 @@ public abstract class Corpus<D extends BaseDocument> {
     });
   }
 
+  /**
+   * Annotates and syncs each document in the corpus using numThreads worker threads, with at
+   * most 2 * numThreads documents open at once.
+   * The annotators must be thread-safe.
+   * @see #forEachDocument(Consumer, int, int)
+   * @return ids of the documents which could not be annotated
+   */
+  public List<String> annotate(final Collection<? extends Annotator<? super D>> annotators, int numThreads) {
+    return forEachDocument(doc -> {
+      for (Annotator<? super D> annotator : annotators) {
+        annotator.annotate(doc);
+      }
+      doc.sync();
+    }, numThreads, 2 * numThreads);
+  }
+
   @Deprecated
   public Stream<Document<D>> stream() {
     return getIdStream().map(this::load);
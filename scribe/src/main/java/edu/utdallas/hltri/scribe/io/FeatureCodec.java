@@ -0,0 +1,31 @@
+package edu.utdallas.hltri.scribe.io;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Binary encoding for a type of feature value (e.g., a list of CUIs), used when serializing
+ * feature maps instead of Java serialization.
+ *
+ * Codecs are registered with {@link FeatureCodecs#register(FeatureCodec)}, or discovered through
+ * META-INF/services/edu.utdallas.hltri.scribe.io.FeatureCodec so that modules which define their
+ * own feature types (e.g., medbase) can provide codecs for them.
+ *
+ * @param <T> type of value encoded by this codec
+ */
+public interface FeatureCodec<T> {
+  /**
+   * @return unique name of this codec, stored alongside each encoded value
+   */
+  String tag();
+
+  /**
+   * @return true if this codec can encode the given value
+   */
+  boolean canEncode(Object value);
+
+  void encode(T value, DataOutput out) throws IOException;
+
+  T decode(DataInput in) throws IOException;
+}
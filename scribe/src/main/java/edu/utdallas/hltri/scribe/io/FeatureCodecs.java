@@ -0,0 +1,436 @@
+package edu.utdallas.hltri.scribe.io;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+
+import edu.utdallas.hltri.logging.Logger;
+import edu.utdallas.hltri.util.Unsafe;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.ServiceLoader;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * Registry of {@link FeatureCodec}s used to serialize non-primitive feature values.
+ *
+ * Built-in codecs cover int/long/double and String arrays, collections of strings, boxed primitives
+ * or any encodable type (e.g., lists of token ids or sets of CUIs), and enum constants. Collections
+ * are only encoded if their concrete kind (ArrayList, LinkedList, HashSet, LinkedHashSet, naturally
+ * ordered TreeSet, ImmutableList or ImmutableSet) is restored when decoding. Further codecs are
+ * registered explicitly or through {@link ServiceLoader}. Values without a codec are left to Java
+ * serialization by the caller.
+ */
+public final class FeatureCodecs {
+  private static final Logger log = Logger.get(FeatureCodecs.class);
+
+  private static final String ENUM_PREFIX = "enum:";
+
+  private static final Map<String, FeatureCodec<?>> byTag = new ConcurrentHashMap<>();
+  // Most recently registered codecs are tried first, so they can override the built-in codecs
+  private static final List<FeatureCodec<?>> codecs = new CopyOnWriteArrayList<>();
+
+  private FeatureCodecs() {}
+
+  static {
+    register(new TypedCodec<int[]>("int[]", int[].class) {
+      @Override public void encode(int[] value, DataOutput out) throws IOException {
+        out.writeInt(value.length);
+        for (int v : value) {
+          out.writeInt(v);
+        }
+      }
+      @Override public int[] decode(DataInput in) throws IOException {
+        final int[] value = new int[in.readInt()];
+        for (int i = 0; i < value.length; i++) {
+          value[i] = in.readInt();
+        }
+        return value;
+      }
+    });
+    register(new TypedCodec<long[]>("long[]", long[].class) {
+      @Override public void encode(long[] value, DataOutput out) throws IOException {
+        out.writeInt(value.length);
+        for (long v : value) {
+          out.writeLong(v);
+        }
+      }
+      @Override public long[] decode(DataInput in) throws IOException {
+        final long[] value = new long[in.readInt()];
+        for (int i = 0; i < value.length; i++) {
+          value[i] = in.readLong();
+        }
+        return value;
+      }
+    });
+    register(new TypedCodec<double[]>("double[]", double[].class) {
+      @Override public void encode(double[] value, DataOutput out) throws IOException {
+        out.writeInt(value.length);
+        for (double v : value) {
+          out.writeDouble(v);
+        }
+      }
+      @Override public double[] decode(DataInput in) throws IOException {
+        final double[] value = new double[in.readInt()];
+        for (int i = 0; i < value.length; i++) {
+          value[i] = in.readDouble();
+        }
+        return value;
+      }
+    });
+    register(new TypedCodec<String[]>("string[]", String[].class) {
+      @Override public void encode(String[] value, DataOutput out) throws IOException {
+        out.writeInt(value.length);
+        for (String v : value) {
+          writeString(v, out);
+        }
+      }
+      @Override public String[] decode(DataInput in) throws IOException {
+        final String[] value = new String[in.readInt()];
+        for (int i = 0; i < value.length; i++) {
+          value[i] = readString(in);
+        }
+        return value;
+      }
+    });
+    register(CollectionCodec.exactly("list", ArrayList.class, ArrayList::new));
+    register(CollectionCodec.exactly("linked-list", LinkedList.class, size -> new LinkedList<>()));
+    register(CollectionCodec.exactly("hash-set", HashSet.class, HashSet::new));
+    register(CollectionCodec.exactly("set", LinkedHashSet.class, LinkedHashSet::new));
+    // sorted sets are only preserved if they use the natural ordering of their elements
+    register(new CollectionCodec("tree-set",
+        value -> value.getClass() == TreeSet.class && ((TreeSet<?>) value).comparator() == null,
+        size -> new TreeSet<>(), UnaryOperator.identity()));
+    register(new CollectionCodec("immutable-list", ImmutableList.class::isInstance, ArrayList::new,
+        ImmutableList::copyOf));
+    register(new CollectionCodec("immutable-set",
+        value -> value instanceof ImmutableSet && !(value instanceof ImmutableSortedSet), ArrayList::new,
+        ImmutableSet::copyOf));
+
+    for (FeatureCodec<?> codec : ServiceLoader.load(FeatureCodec.class)) {
+      log.debug("Registering feature codec {}", codec.tag());
+      register(codec);
+    }
+  }
+
+  /**
+   * Registers the given codec, replacing any codec with the same tag
+   * @param codec codec to register
+   */
+  public static void register(FeatureCodec<?> codec) {
+    final FeatureCodec<?> previous = byTag.put(codec.tag(), codec);
+    if (previous != null) {
+      codecs.remove(previous);
+    }
+    codecs.add(0, codec);
+  }
+
+  /**
+   * @return the codec to encode the given value with, if any
+   */
+  public static Optional<FeatureCodec<Object>> forValue(Object value) {
+    if (value instanceof Enum) {
+      return Optional.of(forEnum(((Enum<?>) value).getDeclaringClass()));
+    }
+    for (FeatureCodec<?> codec : codecs) {
+      if (codec.canEncode(value)) {
+        return Optional.of(Unsafe.cast(codec));
+      }
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * @return the codec registered with the given tag
+   * @throws IllegalArgumentException if no such codec is registered
+   */
+  public static FeatureCodec<Object> forTag(String tag) {
+    FeatureCodec<?> codec = byTag.get(tag);
+    if (codec == null && tag.startsWith(ENUM_PREFIX)) {
+      // Enum codecs are registered when first written; resolve the enum class once per JVM
+      try {
+        codec = forEnum(Class.forName(tag.substring(ENUM_PREFIX.length()), true,
+            Thread.currentThread().getContextClassLoader()));
+      } catch (ClassNotFoundException e) {
+        throw new IllegalArgumentException("Unknown enum in feature codec " + tag, e);
+      }
+    }
+    if (codec == null) {
+      throw new IllegalArgumentException("No feature codec registered for " + tag);
+    }
+    return Unsafe.cast(codec);
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static FeatureCodec<Object> forEnum(Class<?> type) {
+    if (!type.isEnum()) {
+      throw new IllegalArgumentException(type.getName() + " is not an enum");
+    }
+    return Unsafe.cast(byTag.computeIfAbsent(ENUM_PREFIX + type.getName(), tag -> new EnumCodec(type)));
+  }
+
+  public static byte[] encode(FeatureCodec<Object> codec, Object value) {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      codec.encode(value, out);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  public static Object decode(String tag, byte[] bytes) {
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+      return forTag(tag).decode(in);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Writes a string as its length in UTF-8 bytes followed by those bytes; unlike
+   * {@link DataOutput#writeUTF(String)} this is not limited to 65535 bytes
+   */
+  public static void writeString(String value, DataOutput out) throws IOException {
+    final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * Reads a string written by {@link #writeString(String, DataOutput)}
+   */
+  public static String readString(DataInput in) throws IOException {
+    final byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Codec for values of exactly the given class
+   */
+  private static abstract class TypedCodec<T> implements FeatureCodec<T> {
+    private final String tag;
+    private final Class<T> type;
+
+    TypedCodec(String tag, Class<T> type) {
+      this.tag = tag;
+      this.type = type;
+    }
+
+    @Override public String tag() {
+      return tag;
+    }
+
+    @Override public boolean canEncode(Object value) {
+      return value.getClass() == type;
+    }
+  }
+
+  /**
+   * Strings and boxed primitives, which are only encoded as collection elements (as feature values
+   * they are written directly by {@link JsonCorpus})
+   */
+  private enum Scalar implements FeatureCodec<Object> {
+    STRING("string", String.class) {
+      @Override public void encode(Object value, DataOutput out) throws IOException { writeString((String) value, out); }
+      @Override public Object decode(DataInput in) throws IOException { return readString(in); }
+    },
+    INT("int", Integer.class) {
+      @Override public void encode(Object value, DataOutput out) throws IOException { out.writeInt((Integer) value); }
+      @Override public Object decode(DataInput in) throws IOException { return in.readInt(); }
+    },
+    LONG("long", Long.class) {
+      @Override public void encode(Object value, DataOutput out) throws IOException { out.writeLong((Long) value); }
+      @Override public Object decode(DataInput in) throws IOException { return in.readLong(); }
+    },
+    DOUBLE("double", Double.class) {
+      @Override public void encode(Object value, DataOutput out) throws IOException { out.writeDouble((Double) value); }
+      @Override public Object decode(DataInput in) throws IOException { return in.readDouble(); }
+    },
+    FLOAT("float", Float.class) {
+      @Override public void encode(Object value, DataOutput out) throws IOException { out.writeFloat((Float) value); }
+      @Override public Object decode(DataInput in) throws IOException { return in.readFloat(); }
+    },
+    BOOLEAN("boolean", Boolean.class) {
+      @Override public void encode(Object value, DataOutput out) throws IOException { out.writeBoolean((Boolean) value); }
+      @Override public Object decode(DataInput in) throws IOException { return in.readBoolean(); }
+    };
+
+    private final String tag;
+    private final Class<?> type;
+
+    Scalar(String tag, Class<?> type) {
+      this.tag = tag;
+      this.type = type;
+    }
+
+    @Override public String tag() {
+      return tag;
+    }
+
+    @Override public boolean canEncode(Object value) {
+      return value.getClass() == type;
+    }
+  }
+
+  private static Optional<FeatureCodec<Object>> forElement(Object element) {
+    for (Scalar scalar : Scalar.values()) {
+      if (scalar.canEncode(element)) {
+        return Optional.of(scalar);
+      }
+    }
+    return forValue(element);
+  }
+
+  private static FeatureCodec<Object> forElementTag(String tag) {
+    for (Scalar scalar : Scalar.values()) {
+      if (scalar.tag.equals(tag)) {
+        return scalar;
+      }
+    }
+    return forTag(tag);
+  }
+
+  /**
+   * Codec for collections of one kind whose (non-null) elements can all be encoded by a single
+   * codec; the element codec's tag is written once per collection
+   */
+  private static class CollectionCodec implements FeatureCodec<Collection<Object>> {
+    private final String tag;
+    private final Predicate<Object> accepts;
+    private final IntFunction<Collection<Object>> factory;
+    private final UnaryOperator<Collection<Object>> finisher;
+
+    /**
+     * @param tag      tag of this codec
+     * @param accepts  whether a collection is of the kind restored by this codec
+     * @param factory  creates a collection to decode the given number of elements into
+     * @param finisher converts the decoded collection into one of the accepted kind
+     */
+    CollectionCodec(String tag, Predicate<Object> accepts, IntFunction<Collection<Object>> factory,
+                    UnaryOperator<Collection<Object>> finisher) {
+      this.tag = tag;
+      this.accepts = accepts;
+      this.factory = factory;
+      this.finisher = finisher;
+    }
+
+    /**
+     * @return codec for collections of exactly the given class
+     */
+    static CollectionCodec exactly(String tag, Class<?> type, IntFunction<Collection<Object>> factory) {
+      return new CollectionCodec(tag, value -> value.getClass() == type, factory, UnaryOperator.identity());
+    }
+
+    @Override public String tag() {
+      return tag;
+    }
+
+    @Override public boolean canEncode(Object value) {
+      if (!accepts.test(value)) {
+        return false;
+      }
+      final Iterator<?> it = ((Collection<?>) value).iterator();
+      if (!it.hasNext()) {
+        return true;
+      }
+      final Object first = it.next();
+      if (first == null) {
+        return false;
+      }
+      final Optional<FeatureCodec<Object>> elementCodec = forElement(first);
+      if (!elementCodec.isPresent()) {
+        return false;
+      }
+      while (it.hasNext()) {
+        final Object element = it.next();
+        if (element == null || !elementCodec.get().canEncode(element)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override public void encode(Collection<Object> value, DataOutput out) throws IOException {
+      out.writeInt(value.size());
+      if (!value.isEmpty()) {
+        final FeatureCodec<Object> elementCodec = forElement(value.iterator().next()).get();
+        out.writeUTF(elementCodec.tag());
+        for (Object element : value) {
+          elementCodec.encode(element, out);
+        }
+      }
+    }
+
+    @Override public Collection<Object> decode(DataInput in) throws IOException {
+      final int size = in.readInt();
+      final Collection<Object> value = factory.apply(size);
+      if (size > 0) {
+        final FeatureCodec<Object> elementCodec = forElementTag(in.readUTF());
+        for (int i = 0; i < size; i++) {
+          value.add(elementCodec.decode(in));
+        }
+      }
+      return finisher.apply(value);
+    }
+  }
+
+  /**
+   * Codec for the constants of an enum, stored by name
+   */
+  private static class EnumCodec<E extends Enum<E>> implements FeatureCodec<E> {
+    private final Class<E> type;
+    private final Map<String, E> constants = new HashMap<>();
+
+    EnumCodec(Class<E> type) {
+      this.type = type;
+      for (E constant : type.getEnumConstants()) {
+        constants.put(constant.name(), constant);
+      }
+    }
+
+    @Override public String tag() {
+      return ENUM_PREFIX + type.getName();
+    }
+
+    @Override public boolean canEncode(Object value) {
+      return type.isInstance(value);
+    }
+
+    @Override public void encode(E value, DataOutput out) throws IOException {
+      out.writeUTF(value.name());
+    }
+
+    @Override public E decode(DataInput in) throws IOException {
+      final String name = in.readUTF();
+      final E constant = constants.get(name);
+      if (constant == null) {
+        throw new IOException("No constant " + name + " in " + type.getName());
+      }
+      return constant;
+    }
+  }
+}
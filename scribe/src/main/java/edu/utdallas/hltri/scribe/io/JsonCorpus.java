@@ -2,6 +2,8 @@ package edu.utdallas.hltri.scribe.io;
 
 import com.fasterxml.jackson.core.*;
 import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Sets;
 
 import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
@@ -43,6 +45,7 @@ public class JsonCorpus<D extends BaseDocument> extends Corpus<D> implements Ser
   private final Set<String> annSets;
   private final boolean tiered;
   private final boolean allAnnSets;
+  private final boolean lazyAnnSets;
   private final int shard;
   private final int totalShards;
   transient private final FileAttribute<Set<PosixFilePermission>> DEFAULT_FILE_ATTRS = PosixFilePermissions.asFileAttribute(
@@ -57,6 +60,13 @@ public class JsonCorpus<D extends BaseDocument> extends Corpus<D> implements Ser
 
   private final Compression compression;
 
+  // The annotation sets stored for each document loaded from this corpus (as recorded with its features, or
+  // NOT_RECORDED if its features do not record them), so that saving it does not read them back; weakly keyed by
+  // identity
+  transient private final Cache<Document<?>, Map<String, Integer>> loadedAnnotationSets =
+      CacheBuilder.newBuilder().weakKeys().build();
+  private static final Map<String, Integer> NOT_RECORDED = Collections.emptyMap();
+
 //  private final Progress
 
   public static enum Compression {
@@ -110,6 +120,7 @@ public class JsonCorpus<D extends BaseDocument> extends Corpus<D> implements Ser
 
     allAnnSets = builder.readAllAnnSets;
     annSets = (allAnnSets) ? Sets.newHashSet() : Sets.newHashSet(builder.annSets);
+    lazyAnnSets = builder.lazyAnnSets;
 
     tiered = builder.tiered;
 
@@ -130,6 +141,7 @@ public class JsonCorpus<D extends BaseDocument> extends Corpus<D> implements Ser
     private String annPath;
     private String[] annSets = new String[]{};
     private boolean readAllAnnSets = true;
+    private boolean lazyAnnSets = false;
     private boolean tiered = false;
     private int shard = -1;
     private int totalShards = -1;
@@ -174,6 +186,18 @@ public class JsonCorpus<D extends BaseDocument> extends Corpus<D> implements Ser
       return this;
     }
 
+    /**
+     * Defer reading each annotation set of a loaded document until it is first accessed. The annotation sets stored
+     * for a document (and the highest id in each) are recorded with its features, so deferring them costs no file
+     * system operations beyond reading the features.
+     * @see Document#defer(String, int, java.util.function.Consumer)
+     * @return this
+     */
+    public Builder<D> lazyAnnotationSets() {
+      lazyAnnSets = true;
+      return this;
+    }
+
     public Builder<D> readShard(int shard, int totalSections) {
       if ((shard < 0) || shard > totalSections) {
         throw new IllegalArgumentException(String.format("Invalid shard. Section: %s; Total: %s", shard, totalSections));
@@ -297,30 +321,56 @@ public class JsonCorpus<D extends BaseDocument> extends Corpus<D> implements Ser
     final Document<D> document = readText(new File(text, id + ".txt"));
     // deserialize document annotations
     log.trace("Reading document annotations...");
-    readDocFeats(document, feat + File.separator + id);
+    final Map<String, Integer> storedSets = readDocFeats(document, feat + File.separator + id);
 
     // deserialize annotations
-    if (allAnnSets) {
+    if (storedSets != null) {
+      // annotation sets which are not read must not have their ids reused by new annotations
+      storedSets.values().stream().mapToInt(Integer::intValue).max().ifPresent(document::reserveAnnotationIds);
+      loadedAnnotationSets.put(document, storedSets);
+    }
+    if (lazyAnnSets && storedSets != null) {
+      for (Map.Entry<String, Integer> stored : storedSets.entrySet()) {
+        final String annSet = stored.getKey();
+        if (allAnnSets || annSets.contains(annSet)) {
+          final String path = annotationSetPath(annSet, hashDirs);
+          document.defer(annSet, stored.getValue(), doc -> readAnnotations(doc, annSet, path));
+        }
+      }
+    }
+    else if (allAnnSets) {
       final File[] files = new File(annPath).listFiles();
       if (files != null && files.length > 0) {
         for (final File annSet : files) {
-          log.trace("Reading {} annotations...", annSet.getName());
           if (tiered) {
-            readAnnotations(document, annSet.getName(), annSet.getAbsolutePath() + hashDirs);
+            loadAnnotations(document, annSet.getName(), annSet.getAbsolutePath() + hashDirs);
           } else {
-            readAnnotations(document, annSet.getName(), annSet.getAbsolutePath());
+            loadAnnotations(document, annSet.getName(), annSet.getAbsolutePath());
           }
         }
       }
+      if (storedSets == null) {
+        // every annotation set stored for the document was just read (or deferred), so they are known as well
+        final Map<String, Integer> sets = new TreeMap<>();
+        for (final String annSet : document.getAnnotationSets()) {
+          final int maxId = document.getMaxAnnotationId(annSet);
+          if (maxId >= 0) {
+            sets.put(annSet, maxId);
+          }
+        }
+        loadedAnnotationSets.put(document, sets);
+      }
     }
     else {
+      if (storedSets == null) {
+        loadedAnnotationSets.put(document, NOT_RECORDED);
+      }
       for (String annSet : annSets) {
-        log.trace("Reading {} annotations...", annSet);
         if (tiered) {
-          readAnnotations(document, annSet, annPath + File.separator + annSet + hashDirs);
+          loadAnnotations(document, annSet, annPath + File.separator + annSet + hashDirs);
         }
         else {
-          readAnnotations(document, annSet, annPath + File.separator + annSet);
+          loadAnnotations(document, annSet, annPath + File.separator + annSet);
         }
       }
     }
@@ -328,6 +378,20 @@ public class JsonCorpus<D extends BaseDocument> extends Corpus<D> implements Ser
     return document;
   }
 
+  // read (or defer reading) from <annPath>/<annset>/<tiering>/<docId>.json
+  private void loadAnnotations(final Document<D> document, final String annSet, final String path) {
+    if (lazyAnnSets) {
+      // only for documents saved before their annotation sets were recorded with their features
+      final File file = new File(path + File.separator + document.get(BaseDocument.id) + ".json");
+      if (file.exists() && file.length() > 0) {
+        document.defer(annSet, readMaxId(file), doc -> readAnnotations(doc, annSet, path));
+      }
+    } else {
+      log.trace("Reading {} annotations...", annSet);
+      readAnnotations(document, annSet, path);
+    }
+  }
+
   /**
    * Serializes a document to json.
    * Writes the text to <textPath>/<tiering>/<id>.txt
@@ -357,22 +421,71 @@ public class JsonCorpus<D extends BaseDocument> extends Corpus<D> implements Ser
     // save text
     writeText(document, new File(text));
 
-    // save document annotations
-    writeDocumentFeatures(document, new File(feat));
+    // record the annotation sets stored for the document (annotation files are never deleted, so sets which are
+    // not written keep their previous entry). They are known if the document was loaded from this corpus;
+    // otherwise they are only looked up on disk for lazy corpora, which rely on them.
+    Map<String, Integer> previousSets = loadedAnnotationSets.getIfPresent(document);
+    if (previousSets == NOT_RECORDED && lazyAnnSets) {
+      previousSets = scanAnnotationSets(docId, hashDirs);
+    } else if (previousSets == null && lazyAnnSets) {
+      previousSets = readStoredAnnotationSets(feat + File.separator + docId);
+      if (previousSets == null) {
+        previousSets = scanAnnotationSets(docId, hashDirs);
+      }
+    }
+    final Set<String> writeAnnSets = (allAnnSets) ? document.getAnnotationSets() : annSets;
+    if (previousSets == NOT_RECORDED) {
+      // the features still do not record the annotation sets
+      writeDocumentFeatures(document, new File(feat), null, false);
+    } else if (previousSets == null) {
+      // rewrite the features without recording the annotation sets, so that no stale record is kept
+      writeDocumentFeatures(document, new File(feat), null, true);
+    } else {
+      final Map<String, Integer> storedSets = new TreeMap<>(previousSets);
+      for (final String annSet : writeAnnSets) {
+        final int maxId = document.getMaxAnnotationId(annSet);
+        if (maxId >= 0) {
+          storedSets.put(annSet, maxId);
+        }
+      }
+      writeDocumentFeatures(document, new File(feat), storedSets, !storedSets.equals(previousSets));
+      loadedAnnotationSets.put(document, storedSets);
+    }
 
     // save annotations
-    Set<String> writeAnnSets = (allAnnSets) ? document.getAnnotationSets() : annSets;
     for (final String annSet : writeAnnSets) {
-      if (tiered) {
-        writeAnnotations(document, new File(annPath + File.separator + annSet + hashDirs), annSet);
-      }
-      else {
-        writeAnnotations(document, new File(annPath, annSet), annSet);
+      // annotation sets which were never read are unchanged
+      if (document.isDeferred(annSet)) {
+        continue;
       }
+      writeAnnotations(document, new File(annotationSetPath(annSet, hashDirs)), annSet);
     }
     document.clearDirty();
   }
 
+  // <annPath>/<annset>/<tiering>
+  private String annotationSetPath(final String annSet, final String hashDirs) {
+    return (tiered) ? annPath + File.separator + annSet + hashDirs : annPath + File.separator + annSet;
+  }
+
+  /**
+   * Finds the annotation sets stored for a document whose features do not record them (i.e., saved before they
+   * were recorded), along with the highest id in each
+   */
+  private Map<String, Integer> scanAnnotationSets(final String docId, final String hashDirs) {
+    final Map<String, Integer> sets = new TreeMap<>();
+    final File[] dirs = new File(annPath).listFiles();
+    if (dirs != null) {
+      for (final File dir : dirs) {
+        final File file = new File(annotationSetPath(dir.getName(), hashDirs), docId + ".json");
+        if (file.exists() && file.length() > 0) {
+          sets.put(dir.getName(), readMaxId(file));
+        }
+      }
+    }
+    return sets;
+  }
+
   public Stream<String> getIdStream(String annotationSet) {
     if (!Files.exists(Paths.get(annPath, annotationSet))) {
       return Stream.empty();
@@ -452,26 +565,72 @@ public class JsonCorpus<D extends BaseDocument> extends Corpus<D> implements Ser
 
   // read from <featPath>/<tiering>/<docId>.json
   //TODO: compress this poor fella here
-  private void readDocFeats(final Document<D> doc, final String path) {
+  // returns the stored annotation sets recorded with the features, or null if they were not recorded
+  private Map<String, Integer> readDocFeats(final Document<D> doc, final String path) {
     final File file = new File(path + ".json");
     if (!file.exists()) {
       log.warn("Features file {} does not exist, ignoring features...", file.getAbsolutePath());
+      return null;
     }
     else {
       try (JsonParser jp = jf.createParser(compression.inputWrapper.apply(Files.newInputStream(file.toPath())))) {
-        while (jp.nextToken() != JsonToken.END_OBJECT) {
-          // until the end of this json object
-          if ("features".equals(jp.getCurrentName())) {
-            jp.nextToken();
-            readFeaturemap(jp, doc);
-          }
-        }
+        return readFeatures(jp, doc);
       } catch (IOException | ClassNotFoundException e) {
         throw new RuntimeException(e);
       }
     }
   }
 
+  // reads only the stored annotation sets recorded in <featPath>/<tiering>/<docId>.json (or null if there are none)
+  private Map<String, Integer> readStoredAnnotationSets(final String path) {
+    final File file = new File(path + ".json");
+    if (!file.exists()) {
+      return null;
+    }
+    try (JsonParser jp = jf.createParser(compression.inputWrapper.apply(Files.newInputStream(file.toPath())))) {
+      return readFeatures(jp, null);
+    } catch (IOException | ClassNotFoundException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Reads document features serialized by {@link #writeFeatures(Document, OutputStream)}
+   */
+  static void readFeatures(final InputStream in, final HasFeatureMap doc) {
+    try (JsonParser jp = jf.createParser(in)) {
+      readFeatures(jp, doc);
+    } catch (IOException | ClassNotFoundException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  // reads the features into doc (skipping them if doc is null) and returns the recorded annotation sets, if any
+  private static Map<String, Integer> readFeatures(final JsonParser jp, final HasFeatureMap doc) throws IOException, ClassNotFoundException {
+    Map<String, Integer> annotationSets = null;
+    while (jp.nextToken() != JsonToken.END_OBJECT) {
+      // until the end of this json object
+      if ("features".equals(jp.getCurrentName())) {
+        jp.nextToken();
+        if (doc == null) {
+          jp.skipChildren();
+        } else {
+          readFeaturemap(jp, doc);
+        }
+      }
+      else if ("annotation-sets".equals(jp.getCurrentName())) {
+        jp.nextToken();
+        annotationSets = new TreeMap<>();
+        while (jp.nextToken() == JsonToken.FIELD_NAME) {
+          final String name = jp.getCurrentName();
+          jp.nextToken();
+          annotationSets.put(name, jp.getIntValue());
+        }
+      }
+    }
+    return annotationSets;
+  }
+
   // read from <annPath>/<annset>/<tiering>/<docId>.json
   private void readAnnotations(final Document<D> doc, final String annSet, final String path) {
     final File file = new File(path + File.separator + doc.get(BaseDocument.id) + ".json");
@@ -488,50 +647,112 @@ public class JsonCorpus<D extends BaseDocument> extends Corpus<D> implements Ser
     }
     else {
       try (JsonParser jp = jf.createParser(compression.inputWrapper.apply(Files.newInputStream(file.toPath())))) {
-        // until the end of this json object
-        while (jp.nextToken() != JsonToken.END_OBJECT) {
-          // skip types
-          if ("types".equals(jp.getCurrentName())) {
-            while (jp.nextToken() != JsonToken.END_OBJECT) {
-              ; // do nothing: we just want to increment the parser's position
+        readAnnotations(jp, doc, annSet);
+      } catch (IOException | ClassNotFoundException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  /**
+   * Reads the annotations and relations of a single annotation set serialized by
+   * {@link #writeAnnotations(Document, String, OutputStream)} into doc
+   */
+  static void readAnnotations(final InputStream in, final Document<?> doc, final String annSet) {
+    try (JsonParser jp = jf.createParser(in)) {
+      readAnnotations(jp, doc, annSet);
+    } catch (IOException | ClassNotFoundException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  // highest id stored in <annPath>/<annset>/<tiering>/<docId>.json
+  private int readMaxId(final File file) {
+    try (InputStream in = compression.inputWrapper.apply(Files.newInputStream(file.toPath()))) {
+      return readMaxId(in);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Returns the highest annotation or relation id of an annotation set serialized by
+   * {@link #writeAnnotations(Document, String, OutputStream)}, reading only its "max-id" header (or scanning its ids
+   * if it was written without one)
+   */
+  static int readMaxId(final InputStream in) {
+    try (JsonParser jp = jf.createParser(in)) {
+      int max = -1;
+      if (jp.nextToken() != JsonToken.START_OBJECT) {
+        return max;
+      }
+      while (jp.nextToken() == JsonToken.FIELD_NAME) {
+        final String field = jp.getCurrentName();
+        jp.nextToken();
+        if ("max-id".equals(field)) {
+          return jp.getIntValue();
+        }
+        if ("annotations".equals(field) || "relations".equals(field)) {
+          // type -> id -> annotation
+          while (jp.nextToken() == JsonToken.FIELD_NAME) {
+            jp.nextToken();
+            while (jp.nextToken() == JsonToken.FIELD_NAME) {
+              max = Math.max(max, Integer.parseInt(jp.getCurrentName()));
+              jp.nextToken();
+              jp.skipChildren();
             }
           }
+        } else {
+          jp.skipChildren();
+        }
+      }
+      return max;
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
 
-          JsonToken jt;
-          // annotation map
-          if ("annotations".equals(jp.getCurrentName())) {
-            String type;
-            jp.nextToken();
-            while ((jt = jp.nextToken()) != JsonToken.END_OBJECT) {
-              if (jt == JsonToken.START_OBJECT) {
-                type = jp.getCurrentName();
-                while(jp.nextToken() != JsonToken.END_OBJECT) {
-                  readAnnotation(jp, doc, annSet, type);
-                }
-              }
+  private static void readAnnotations(final JsonParser jp, final Document<?> doc, final String annSet) throws IOException, ClassNotFoundException {
+    // until the end of this json object
+    while (jp.nextToken() != JsonToken.END_OBJECT) {
+      // skip types
+      if ("types".equals(jp.getCurrentName())) {
+        while (jp.nextToken() != JsonToken.END_OBJECT) {
+          ; // do nothing: we just want to increment the parser's position
+        }
+      }
+
+      JsonToken jt;
+      // annotation map
+      if ("annotations".equals(jp.getCurrentName())) {
+        String type;
+        jp.nextToken();
+        while ((jt = jp.nextToken()) != JsonToken.END_OBJECT) {
+          if (jt == JsonToken.START_OBJECT) {
+            type = jp.getCurrentName();
+            while(jp.nextToken() != JsonToken.END_OBJECT) {
+              readAnnotation(jp, doc, annSet, type);
             }
           }
-          //relation map
-          if ("relations".equals(jp.getCurrentName())) {
-            String type;
-            jp.nextToken();
-            while ((jt = jp.nextToken()) != JsonToken.END_OBJECT) {
-              if (jt == JsonToken.START_OBJECT) {
-                type = jp.getCurrentName();
-                while(jp.nextToken() != JsonToken.END_OBJECT) {
-                  readRelation(jp, doc, annSet, type);
-                }
-              }
+        }
+      }
+      //relation map
+      if ("relations".equals(jp.getCurrentName())) {
+        String type;
+        jp.nextToken();
+        while ((jt = jp.nextToken()) != JsonToken.END_OBJECT) {
+          if (jt == JsonToken.START_OBJECT) {
+            type = jp.getCurrentName();
+            while(jp.nextToken() != JsonToken.END_OBJECT) {
+              readRelation(jp, doc, annSet, type);
             }
           }
         }
-      } catch (IOException | ClassNotFoundException e) {
-        throw new RuntimeException(e);
       }
     }
   }
 
-  private  void readAnnotation(final JsonParser jp, final Document<D> doc, final String annSet, final String type) throws IOException, ClassNotFoundException {
+  private static void readAnnotation(final JsonParser jp, final Document<?> doc, final String annSet, final String type) throws IOException, ClassNotFoundException {
     long start = -1, end = -1;
     int id = -1;
     JsonToken jt;
@@ -562,7 +783,7 @@ public class JsonCorpus<D extends BaseDocument> extends Corpus<D> implements Ser
     }
   }
 
-  private  void readRelation(final JsonParser jp, Document<D> doc, final String annSet, final String type) throws IOException, ClassNotFoundException {
+  private static void readRelation(final JsonParser jp, Document<?> doc, final String annSet, final String type) throws IOException, ClassNotFoundException {
     int govId = 0, depId = 0, id = -1;
     boolean govInit = false, depInit = false;
     JsonToken jt;
@@ -597,21 +818,28 @@ public class JsonCorpus<D extends BaseDocument> extends Corpus<D> implements Ser
     }
   }
 
-  private void readFeaturemap(final JsonParser jp, final HasFeatureMap mapHaver) throws IOException, ClassNotFoundException {
+  private static void readFeaturemap(final JsonParser jp, final HasFeatureMap mapHaver) throws IOException, ClassNotFoundException {
     JsonToken jt;
     while ((jt = jp.nextToken()) != JsonToken.END_OBJECT) {
       if (jt == JsonToken.START_OBJECT) {
         String key = jp.getCurrentName();
         String clazz = null;
+        String codec = null;
         while ((jt = jp.nextToken()) != JsonToken.END_OBJECT) {
           if (jt != JsonToken.FIELD_NAME) {
             final String tokenName = jp.getCurrentName();
             if ("class".equals(tokenName)) {
               clazz = jp.getText();
             }
+            else if ("codec".equals(tokenName)) {
+              codec = jp.getText();
+            }
             else if ("value".equals(tokenName)){
 //              log.info("Setting {} to {}/{}.", key, clazz, jp.getText());
-              if (String.class.getSimpleName().equals(clazz)) {
+              if (codec != null) {
+                mapHaver.set(key, FeatureCodecs.decode(codec, jp.getBinaryValue()));
+              }
+              else if (String.class.getSimpleName().equals(clazz)) {
                 mapHaver.set(key, jp.getText());
               }
               else if (Integer.class.getSimpleName().equals(clazz)) {
@@ -631,7 +859,7 @@ public class JsonCorpus<D extends BaseDocument> extends Corpus<D> implements Ser
               }
               else {
                 log.trace("Object found of class: {}", clazz);
-                mapHaver.set(key, readBinaryString(jp.getText()));
+                mapHaver.set(key, deserialize(jp.getText()));
               }
             }
           }
@@ -674,8 +902,9 @@ public class JsonCorpus<D extends BaseDocument> extends Corpus<D> implements Ser
    * Writes the annotations of the document itself (title, id, etc.) to a file called document.json in the parent
    * file passed
    */
-  private void writeDocumentFeatures(final Document<D> doc, final File parent) {
-    if (!doc.cleanFeats()) {
+  private void writeDocumentFeatures(final Document<D> doc, final File parent, final Map<String, Integer> annotationSets,
+                                     final boolean annotationSetsChanged) {
+    if (!doc.cleanFeats() || annotationSetsChanged) {
       try {
         if (!parent.exists()) {
           log.debug("Directory at {} does not exist, creating...", parent);
@@ -685,15 +914,7 @@ public class JsonCorpus<D extends BaseDocument> extends Corpus<D> implements Ser
         final Path temp = tempFile(file, "feat", doc.getId());
         final OutputStream out = compression.outputWrapper.apply(Files.newOutputStream(temp));
         try (JsonGenerator jg = jf.createGenerator(out, JsonEncoding.UTF8).useDefaultPrettyPrinter()) {
-          jg.writeStartObject();
-          jg.writeObjectFieldStart("features");
-          {
-            for (Map.Entry<Object, Object> entry : doc.features.entrySet()) {
-              writeFeaturemapEntry((String) entry.getKey(), entry.getValue(), jg);
-            }
-          }
-          jg.writeEndObject();
-          jg.writeEndObject();
+          writeFeatures(doc, annotationSets, jg);
         }
         moveFile(temp, file.toPath());
       } catch (IOException e) {
@@ -704,6 +925,38 @@ public class JsonCorpus<D extends BaseDocument> extends Corpus<D> implements Ser
     }
   }
 
+  /**
+   * Writes the document features of doc to out as compact json
+   */
+  static void writeFeatures(final Document<?> doc, final OutputStream out) {
+    try (JsonGenerator jg = jf.createGenerator(out, JsonEncoding.UTF8)) {
+      writeFeatures(doc, null, jg);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  // annotationSets: the annotation sets stored for the document and the highest id in each (omitted if null)
+  private static void writeFeatures(final Document<?> doc, final Map<String, Integer> annotationSets,
+                                    final JsonGenerator jg) throws IOException {
+    jg.writeStartObject();
+    jg.writeObjectFieldStart("features");
+    {
+      for (Map.Entry<Object, Object> entry : doc.features.entrySet()) {
+        writeFeaturemapEntry((String) entry.getKey(), entry.getValue(), jg);
+      }
+    }
+    jg.writeEndObject();
+    if (annotationSets != null) {
+      jg.writeObjectFieldStart("annotation-sets");
+      for (Map.Entry<String, Integer> entry : annotationSets.entrySet()) {
+        jg.writeNumberField(entry.getKey(), entry.getValue());
+      }
+      jg.writeEndObject();
+    }
+    jg.writeEndObject();
+  }
+
   private Path tempFile(final File oldFile, final String fileType, final String docId) throws IOException {
     FileAttribute<Set<PosixFilePermission>> permissions = DEFAULT_FILE_ATTRS;
     assert oldFile.getParentFile().exists() : "No parent file of " + oldFile.getAbsolutePath();
@@ -743,64 +996,82 @@ public class JsonCorpus<D extends BaseDocument> extends Corpus<D> implements Ser
 
         final OutputStream out = compression.outputWrapper.apply(Files.newOutputStream(temp));
         try (JsonGenerator jg = jf.createGenerator(out, JsonEncoding.UTF8).useDefaultPrettyPrinter()) {
-          jg.writeStartObject();
-          {
-            // Types
-            jg.writeObjectFieldStart("types");
-            {
-              jg.writeArrayFieldStart("Annotations");
-              for (String type : doc.getAnnotationTypes(annSet)) {
-                jg.writeString(type);
-              }
-              jg.writeEndArray();
-              jg.writeArrayFieldStart("Relations");
-              for (String type : doc.getRelationTypes(annSet)) {
-                jg.writeString(type);
-              }
-              jg.writeEndArray();
-            }
-            jg.writeEndObject();
+          writeAnnotations(doc, annSet, jg);
+        }
+        moveFile(temp, file.toPath());
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
 
-            // Annotations
-            jg.writeObjectFieldStart("annotations");
-            {
-              for (final String type : doc.getAnnotationTypes(annSet)) {
-                jg.writeObjectFieldStart(type);
-                for (final UnsafeAnnotation ann : doc.getUnsafeAnnotations(annSet)) {
-                  if (ann.getType().equals(type)) {
-                    writeAnnotation(ann, jg);
-                  }
-                }
-                jg.writeEndObject();
-              }
+  /**
+   * Writes the annotations and relations of a single annotation set of doc to out as compact json
+   */
+  static void writeAnnotations(final Document<?> doc, final String annSet, final OutputStream out) {
+    try (JsonGenerator jg = jf.createGenerator(out, JsonEncoding.UTF8)) {
+      writeAnnotations(doc, annSet, jg);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static void writeAnnotations(final Document<?> doc, final String annSet, final JsonGenerator jg) throws IOException {
+    jg.writeStartObject();
+    {
+      // Highest id, so that readers can reserve the ids of the set without parsing it
+      jg.writeNumberField("max-id", doc.getMaxAnnotationId(annSet));
+
+      // Types
+      jg.writeObjectFieldStart("types");
+      {
+        jg.writeArrayFieldStart("Annotations");
+        for (String type : doc.getAnnotationTypes(annSet)) {
+          jg.writeString(type);
+        }
+        jg.writeEndArray();
+        jg.writeArrayFieldStart("Relations");
+        for (String type : doc.getRelationTypes(annSet)) {
+          jg.writeString(type);
+        }
+        jg.writeEndArray();
+      }
+      jg.writeEndObject();
+
+      // Annotations
+      jg.writeObjectFieldStart("annotations");
+      {
+        for (final String type : doc.getAnnotationTypes(annSet)) {
+          jg.writeObjectFieldStart(type);
+          for (final UnsafeAnnotation ann : doc.getUnsafeAnnotations(annSet)) {
+            if (ann.getType().equals(type)) {
+              writeAnnotation(ann, jg);
             }
-            jg.writeEndObject();
+          }
+          jg.writeEndObject();
+        }
+      }
+      jg.writeEndObject();
 
-            // Relations
-            final Set<UnsafeRelation> unsafeRelations = doc.getUnsafeRelations(annSet);
-            if (!unsafeRelations.isEmpty()) {
-              jg.writeObjectFieldStart("relations");
-              {
-                for (final String type : doc.getRelationTypes(annSet)) {
-                  jg.writeObjectFieldStart(type);
-                  for (final UnsafeRelation rel : unsafeRelations) {
-                    if (rel.getType().equals(type)) {
-                      writeRelation(rel, jg);
-                    }
-                  }
-                  jg.writeEndObject();
-                }
+      // Relations
+      final Set<UnsafeRelation> unsafeRelations = doc.getUnsafeRelations(annSet);
+      if (!unsafeRelations.isEmpty()) {
+        jg.writeObjectFieldStart("relations");
+        {
+          for (final String type : doc.getRelationTypes(annSet)) {
+            jg.writeObjectFieldStart(type);
+            for (final UnsafeRelation rel : unsafeRelations) {
+              if (rel.getType().equals(type)) {
+                writeRelation(rel, jg);
               }
-              jg.writeEndObject();
             }
+            jg.writeEndObject();
           }
-          jg.writeEndObject();
         }
-        moveFile(temp, file.toPath());
-      } catch (IOException e) {
-        throw new RuntimeException(e);
+        jg.writeEndObject();
       }
     }
+    jg.writeEndObject();
   }
 
   private synchronized void makeDirs(final Path dir) throws IOException {
@@ -816,7 +1087,7 @@ public class JsonCorpus<D extends BaseDocument> extends Corpus<D> implements Ser
     }
   }
 
-  private void writeAnnotation(final UnsafeAnnotation ua, final JsonGenerator jg) throws IOException {
+  private static void writeAnnotation(final UnsafeAnnotation ua, final JsonGenerator jg) throws IOException {
     jg.writeObjectFieldStart(Integer.toString(ua.getGateId()));
     {
       // Start offset
@@ -835,7 +1106,7 @@ public class JsonCorpus<D extends BaseDocument> extends Corpus<D> implements Ser
     jg.writeEndObject();
   }
 
-  private void writeRelation(final UnsafeRelation ur, final JsonGenerator jg) throws IOException {
+  private static void writeRelation(final UnsafeRelation ur, final JsonGenerator jg) throws IOException {
     jg.writeObjectFieldStart(Integer.toString(ur.getId()));
     {
       // Governor Id
@@ -854,10 +1125,28 @@ public class JsonCorpus<D extends BaseDocument> extends Corpus<D> implements Ser
     jg.writeEndObject();
   }
 
-  private void writeFeaturemapEntry(final String key, final Object value, final JsonGenerator jg) throws IOException {
+  /**
+   * Writes a feature as {"class": simple class name, "value": value} for boxed primitives and Strings,
+   * as {"codec": codec tag, "value": base64 binary} for values with a registered FeatureCodec, and
+   * otherwise as {"class": simple class name, "value": base64 Java serialization}
+   */
+  private static void writeFeaturemapEntry(final String key, final Object value, final JsonGenerator jg) throws IOException {
     jg.writeObjectFieldStart(key);
-    jg.writeStringField("class", value.getClass().getSimpleName());
-    switch (value.getClass().getSimpleName()) {
+    final String clazz = value.getClass().getSimpleName();
+    switch (clazz) {
+      case "String": case "Integer": case "Double": case "Long": case "Float": case "Boolean":
+        break;
+      default:
+        final Optional<FeatureCodec<Object>> codec = FeatureCodecs.forValue(value);
+        if (codec.isPresent()) {
+          jg.writeStringField("codec", codec.get().tag());
+          jg.writeBinaryField("value", FeatureCodecs.encode(codec.get(), value));
+          jg.writeEndObject();
+          return;
+        }
+    }
+    jg.writeStringField("class", clazz);
+    switch (clazz) {
       case "String": jg.writeStringField("value", (String) value);
         break;
       case "Integer": jg.writeNumberField("value", (Integer) value);
@@ -870,12 +1159,16 @@ public class JsonCorpus<D extends BaseDocument> extends Corpus<D> implements Ser
         break;
       case "Boolean": jg.writeBooleanField("value", (Boolean) value);
         break;
-      default: jg.writeStringField("value", writeBinaryString(value));
+      default: jg.writeStringField("value", serialize(value));
     }
     jg.writeEndObject();
   }
 
   public String writeBinaryString(Object o) throws IOException {
+    return serialize(o);
+  }
+
+  private static String serialize(Object o) throws IOException {
     assert o instanceof Serializable : String.format("Object %s does not implement Serializable", o);
     ByteArrayOutputStream baos = new ByteArrayOutputStream();
     ObjectOutputStream oos = new ObjectOutputStream( baos );
@@ -885,6 +1178,10 @@ public class JsonCorpus<D extends BaseDocument> extends Corpus<D> implements Ser
   }
 
   public Object readBinaryString( String s ) throws IOException, ClassNotFoundException {
+    return deserialize(s);
+  }
+
+  private static Object deserialize( String s ) throws IOException, ClassNotFoundException {
 //    log.info("Recovering binary string: {}", s);
     try {
       byte[] data = Base64.getDecoder().decode(s);
@@ -0,0 +1,721 @@
+package edu.utdallas.hltri.scribe.io;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Sets;
+
+import edu.utdallas.hltri.framework.ProgressLogger;
+import edu.utdallas.hltri.io.AC;
+import edu.utdallas.hltri.logging.Logger;
+import edu.utdallas.hltri.scribe.text.BaseDocument;
+import edu.utdallas.hltri.scribe.text.Document;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Corpus which packs documents into a handful of append-only segment files rather than one file
+ * per document per annotation set (as {@link JsonCorpus} does).
+ *
+ * Each segment is a sequence of records holding either the text, the features, or a single
+ * annotation set of a document (features and annotation sets use the same json encoding as
+ * JsonCorpus). Saving a document appends new records; the offset index maps each document to the
+ * latest record of each of its parts and is persisted to "index.bin" on {@link #close()}.
+ * Records appended after the last persisted index are recovered by scanning the segment tails when
+ * the corpus is opened. Segments are read through memory-mapped buffers, so opening a document
+ * costs no file-system metadata operations.
+ *
+ * Annotation sets are only read if requested (see {@link Builder#annotationSets(String...)}), and
+ * further sets can be read into an open document with {@link #loadAnnotationSet(Document, String)}.
+ * Superseded records are reclaimed by {@link #compact()}.
+ *
+ * Each record is laid out as: kind (1 byte), id and annotation set name (each an unsigned 2-byte
+ * length followed by UTF-8 bytes; the name is empty for text and features), payload length
+ * (4 bytes) and payload, with all numbers big-endian.
+ */
+public class SegmentedCorpus<D extends BaseDocument> extends Corpus<D> implements AC {
+  private static final Logger log = Logger.get(SegmentedCorpus.class);
+
+  private static final int INDEX_FORMAT = 1;
+  private static final String INDEX_FILE = "index.bin";
+  private static final String SEGMENT_SUFFIX = ".seg";
+
+  private static final byte TEXT = 0;
+  private static final byte FEATURES = 1;
+  private static final byte ANNOTATIONS = 2;
+
+  private static final int MAX_HEADER_SIZE = 1 + 2 + 0xFFFF + 2 + 0xFFFF + 4;
+
+  /**
+   * Location of a record's payload within a segment
+   */
+  private static final class Location {
+    final int segment;
+    final long offset;
+    final int length;
+
+    Location(int segment, long offset, int length) {
+      this.segment = segment;
+      this.offset = offset;
+      this.length = length;
+    }
+  }
+
+  /**
+   * Locations of the latest records of each part of a document; immutable so that readers never
+   * observe a partially updated entry
+   */
+  private static final class Entry {
+    final Location text;
+    final Location features;
+    final Map<String, Location> annotationSets;
+
+    Entry(Location text, Location features, Map<String, Location> annotationSets) {
+      this.text = text;
+      this.features = features;
+      this.annotationSets = annotationSets;
+    }
+
+    Entry with(byte kind, String name, Location location) {
+      switch (kind) {
+        case TEXT:
+          return new Entry(location, features, annotationSets);
+        case FEATURES:
+          return new Entry(text, location, annotationSets);
+        case ANNOTATIONS:
+          final Map<String, Location> sets = new HashMap<>(annotationSets);
+          sets.put(name, location);
+          return new Entry(text, features, ImmutableMap.copyOf(sets));
+        default:
+          throw new IllegalArgumentException("Unknown record kind " + kind);
+      }
+    }
+  }
+
+  private static final Entry EMPTY = new Entry(null, null, ImmutableMap.of());
+
+  private final Path path;
+  private final long maxSegmentSize;
+  private final boolean allAnnSets;
+  private final boolean lazyAnnSets;
+  private final Set<String> annSets;
+
+  private final ConcurrentSkipListMap<String, Entry> index = new ConcurrentSkipListMap<>();
+  private final NavigableMap<Integer, MappedByteBuffer> mappedSegments = new TreeMap<>();
+
+  private int firstSegment = 0;
+  private int activeSegment = 0;
+  private FileChannel writer;
+
+  public static <D extends BaseDocument> Builder<D> at(final String path) {
+    return at(Paths.get(path));
+  }
+
+  public static <D extends BaseDocument> Builder<D> at(final Path path) {
+    return new Builder<>(path);
+  }
+
+  public static class Builder<D extends BaseDocument> {
+    private final Path path;
+    private long maxSegmentSize = 1L << 30;
+    private String[] annSets = new String[]{};
+    private boolean readAllAnnSets = true;
+    private boolean lazyAnnSets = false;
+
+    private Builder(final Path path) {
+      this.path = path;
+    }
+
+    /**
+     * Set the annotation sets you want to read when loading a document. If never called, every annotation set will
+     * be read. Other annotation sets can still be read with SegmentedCorpus.loadAnnotationSet.
+     * @param sets varargs of annotation sets to read
+     * @return this
+     */
+    public Builder<D> annotationSets(final String... sets) {
+      readAllAnnSets = false;
+      annSets = sets;
+      return this;
+    }
+
+    /**
+     * Defer reading each annotation set of a loaded document until it is first accessed
+     * @see Document#defer(String, int, java.util.function.Consumer)
+     * @return this
+     */
+    public Builder<D> lazyAnnotationSets() {
+      lazyAnnSets = true;
+      return this;
+    }
+
+    /**
+     * Set the size (in bytes) after which a new segment is started. Must be less than 2GB so that each segment can be
+     * mapped as a single buffer; records which nonetheless end beyond 2GB (e.g., a single larger record) are mapped
+     * on their own.
+     * @param maxSegmentSize maximum segment size in bytes
+     * @return this
+     */
+    public Builder<D> maxSegmentSize(final long maxSegmentSize) {
+      Preconditions.checkArgument(maxSegmentSize > 0 && maxSegmentSize <= Integer.MAX_VALUE,
+          "maxSegmentSize must be in (0, 2GB)");
+      this.maxSegmentSize = maxSegmentSize;
+      return this;
+    }
+
+    public SegmentedCorpus<D> build() {
+      return new SegmentedCorpus<>(this);
+    }
+  }
+
+  protected SegmentedCorpus(final Builder<D> builder) {
+    this.path = builder.path;
+    this.maxSegmentSize = builder.maxSegmentSize;
+    this.allAnnSets = builder.readAllAnnSets;
+    this.lazyAnnSets = builder.lazyAnnSets;
+    this.annSets = (allAnnSets) ? Sets.newHashSet() : Sets.newHashSet(builder.annSets);
+
+    log.info("Opening segmented corpus at {}", path);
+    try {
+      Files.createDirectories(path);
+      final Map<Integer, Long> indexed = readIndex();
+
+      // Remove segments which were superseded by a compaction before the corpus was last closed
+      deleteObsoleteSegments();
+
+      // Recover records appended since the index was last written
+      int recovered = 0;
+      for (int segment : listSegments()) {
+        recovered += scan(segment, indexed.getOrDefault(segment, 0L));
+        activeSegment = Math.max(activeSegment, segment);
+      }
+      if (recovered > 0) {
+        log.info("Recovered {} records not in the index", recovered);
+      }
+      activeSegment = Math.max(activeSegment, firstSegment);
+      writer = openWriter(activeSegment);
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to open segmented corpus at " + path, e);
+    }
+    log.info("• {} documents in {} segments", index.size(), activeSegment - firstSegment + 1);
+    log.info("• annotations sets: {}", (allAnnSets) ? "all" : annSets);
+  }
+
+  private Path segmentPath(int segment) {
+    return path.resolve(String.format("%06d%s", segment, SEGMENT_SUFFIX));
+  }
+
+  private List<Integer> listSegments() throws IOException {
+    final List<Integer> segments = new ArrayList<>();
+    try (Stream<Path> files = Files.list(path)) {
+      files.map(f -> f.getFileName().toString())
+          .filter(f -> f.endsWith(SEGMENT_SUFFIX))
+          .forEach(f -> segments.add(Integer.parseInt(f.substring(0, f.length() - SEGMENT_SUFFIX.length()))));
+    }
+    segments.sort(null);
+    return segments;
+  }
+
+  private void deleteObsoleteSegments() throws IOException {
+    for (int segment : listSegments()) {
+      if (segment < firstSegment) {
+        log.info("Deleting obsolete segment {}", segment);
+        Files.delete(segmentPath(segment));
+      }
+    }
+  }
+
+  private FileChannel openWriter(int segment) throws IOException {
+    return FileChannel.open(segmentPath(segment), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.APPEND);
+  }
+
+  /**
+   * Returns a read-only view of the given record's payload, (re-)mapping its segment if the record
+   * lies beyond the currently mapped region (i.e., it was appended to the active segment after it
+   * was mapped)
+   */
+  private ByteBuffer read(Location location) {
+    final long end = location.offset + location.length;
+    if (end > Integer.MAX_VALUE) {
+      // A buffer cannot address beyond 2GB, so such records are mapped on their own
+      return map(location.segment, location.offset, location.length);
+    }
+    MappedByteBuffer mapped;
+    synchronized (mappedSegments) {
+      mapped = mappedSegments.get(location.segment);
+      if (mapped == null || mapped.capacity() < end) {
+        mapped = map(location.segment, 0, Integer.MAX_VALUE);
+        mappedSegments.put(location.segment, mapped);
+      }
+    }
+    final ByteBuffer buffer = mapped.duplicate();
+    buffer.position((int) location.offset);
+    buffer.limit((int) end);
+    return buffer.slice();
+  }
+
+  /**
+   * Maps at most maxLength bytes of the given segment, starting at the given offset
+   */
+  private MappedByteBuffer map(int segment, long offset, long maxLength) {
+    try (FileChannel channel = FileChannel.open(segmentPath(segment), StandardOpenOption.READ)) {
+      return channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(maxLength, channel.size() - offset));
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Adds every record in the segment after the given offset to the index. A truncated record at
+   * the end of the segment (e.g., from an interrupted write) is discarded.
+   * Headers are read through the channel rather than a mapping, so that the segment can be
+   * truncated afterwards.
+   * @return number of records indexed
+   */
+  private int scan(int segment, long from) throws IOException {
+    int records = 0;
+    try (FileChannel channel = FileChannel.open(segmentPath(segment), StandardOpenOption.READ,
+        StandardOpenOption.WRITE)) {
+      final long size = channel.size();
+      ByteBuffer header = ByteBuffer.allocate(512);
+      long position = from;
+      while (position < size) {
+        header.clear();
+        header.limit((int) Math.min(header.capacity(), size - position));
+        while (header.hasRemaining() && channel.read(header, position + header.position()) >= 0) {
+          // read the whole header (or whatever remains of the segment)
+        }
+        header.flip();
+        final byte kind;
+        final String id;
+        final String name;
+        final int length;
+        try {
+          kind = header.get();
+          id = readString(header);
+          name = readString(header);
+          length = header.getInt();
+        } catch (BufferUnderflowException e) {
+          if (header.limit() == header.capacity() && header.capacity() < MAX_HEADER_SIZE) {
+            // the header has long names, so read it again in full
+            header = ByteBuffer.allocate(MAX_HEADER_SIZE);
+            continue;
+          }
+          break;
+        }
+        final long payload = position + header.position();
+        if (kind < TEXT || kind > ANNOTATIONS || length < 0 || payload + length > size) {
+          break;
+        }
+        final Location location = new Location(segment, payload, length);
+        index.compute(id, (k, old) -> ((old == null) ? EMPTY : old).with(kind, name, location));
+        position = payload + length;
+        records++;
+      }
+      if (position < size) {
+        log.warn("Discarding {} bytes of truncated record at the end of segment {}", size - position, segment);
+        channel.truncate(position);
+      }
+    }
+    return records;
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    final byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void writeString(ByteBuffer buffer, byte[] bytes) {
+    buffer.putShort((short) bytes.length);
+    buffer.put(bytes);
+  }
+
+  /**
+   * Appends a record to the active segment, starting a new segment if it is full
+   * @return location of the record's payload
+   */
+  private synchronized Location append(byte kind, String id, String name, byte[] payload) throws IOException {
+    final byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+    final byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+    final ByteBuffer header = ByteBuffer.allocate(1 + 2 + idBytes.length + 2 + nameBytes.length + 4);
+    header.put(kind);
+    writeString(header, idBytes);
+    writeString(header, nameBytes);
+    header.putInt(payload.length);
+    header.flip();
+
+    if (writer.size() > 0 && writer.size() + header.remaining() + payload.length > maxSegmentSize) {
+      writer.close();
+      activeSegment++;
+      writer = openWriter(activeSegment);
+    }
+    final long offset = writer.size() + header.remaining();
+    final ByteBuffer payloadBuffer = ByteBuffer.wrap(payload);
+    while (header.hasRemaining()) {
+      writer.write(header);
+    }
+    while (payloadBuffer.hasRemaining()) {
+      writer.write(payloadBuffer);
+    }
+    return new Location(activeSegment, offset, payload.length);
+  }
+
+  private Map<Integer, Long> readIndex() throws IOException {
+    final Path file = path.resolve(INDEX_FILE);
+    final Map<Integer, Long> indexed = new HashMap<>();
+    if (!Files.exists(file)) {
+      return indexed;
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      final int format = in.readInt();
+      if (format != INDEX_FORMAT) {
+        throw new IOException("Unsupported index format " + format);
+      }
+      firstSegment = in.readInt();
+      for (int i = in.readInt(); i > 0; i--) {
+        indexed.put(in.readInt(), in.readLong());
+      }
+      for (int i = in.readInt(); i > 0; i--) {
+        final String id = in.readUTF();
+        final Location text = readLocation(in);
+        final Location features = readLocation(in);
+        final Map<String, Location> sets = new HashMap<>();
+        for (int j = in.readInt(); j > 0; j--) {
+          sets.put(in.readUTF(), readLocation(in));
+        }
+        index.put(id, new Entry(text, features, ImmutableMap.copyOf(sets)));
+      }
+    }
+    return indexed;
+  }
+
+  private static Location readLocation(DataInputStream in) throws IOException {
+    final int segment = in.readInt();
+    final long offset = in.readLong();
+    final int length = in.readInt();
+    return (segment < 0) ? null : new Location(segment, offset, length);
+  }
+
+  private static void writeLocation(DataOutputStream out, Location location) throws IOException {
+    if (location == null) {
+      out.writeInt(-1);
+      out.writeLong(-1);
+      out.writeInt(-1);
+    } else {
+      out.writeInt(location.segment);
+      out.writeLong(location.offset);
+      out.writeInt(location.length);
+    }
+  }
+
+  /**
+   * Persists the offset index (atomically replacing the previous index)
+   */
+  public synchronized void flush() {
+    final Path file = path.resolve(INDEX_FILE);
+    final Path temp = path.resolve(INDEX_FILE + ".tmp");
+    try {
+      writer.force(false);
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+        out.writeInt(INDEX_FORMAT);
+        out.writeInt(firstSegment);
+        final List<Integer> segments = listSegments();
+        out.writeInt(segments.size());
+        for (int segment : segments) {
+          out.writeInt(segment);
+          out.writeLong(Files.size(segmentPath(segment)));
+        }
+        out.writeInt(index.size());
+        for (Map.Entry<String, Entry> e : index.entrySet()) {
+          out.writeUTF(e.getKey());
+          writeLocation(out, e.getValue().text);
+          writeLocation(out, e.getValue().features);
+          out.writeInt(e.getValue().annotationSets.size());
+          for (Map.Entry<String, Location> set : e.getValue().annotationSets.entrySet()) {
+            out.writeUTF(set.getKey());
+            writeLocation(out, set.getValue());
+          }
+        }
+      }
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to write index of " + path, e);
+    }
+  }
+
+  @Override
+  protected Document<D> loadDocument(final String id) {
+    final Entry entry = index.get(id);
+    if (entry == null || entry.text == null) {
+      throw new IllegalArgumentException("No document with id " + id + " in " + path);
+    }
+    final Document<D> document = Document.fromString(StandardCharsets.UTF_8.decode(read(entry.text)).toString());
+    document.set(BaseDocument.id, id);
+    if (entry.features != null) {
+      JsonCorpus.readFeatures(new ByteBufferInputStream(read(entry.features)), document);
+    }
+    for (Map.Entry<String, Location> set : entry.annotationSets.entrySet()) {
+      // annotation sets which are not read must not have their ids reused by new annotations
+      final int maxId = JsonCorpus.readMaxId(new ByteBufferInputStream(read(set.getValue())));
+      document.reserveAnnotationIds(maxId);
+      if (allAnnSets || annSets.contains(set.getKey())) {
+        final String annSet = set.getKey();
+        if (lazyAnnSets) {
+          // look the set up again when it is read, in case the corpus was compacted in the meantime
+          document.defer(annSet, maxId, doc -> JsonCorpus.readAnnotations(
+              new ByteBufferInputStream(read(index.get(id).annotationSets.get(annSet))), doc, annSet));
+        } else {
+          log.trace("Reading {} annotations...", annSet);
+          JsonCorpus.readAnnotations(new ByteBufferInputStream(read(set.getValue())), document, annSet);
+        }
+      }
+    }
+    document.clearDirty();
+    return document;
+  }
+
+  /**
+   * Reads the given annotation set into a document loaded from this corpus, if it was not read
+   * when the document was loaded
+   * @param document document loaded from this corpus
+   * @param annotationSet name of the annotation set to read
+   * @return true if the document has the annotation set in this corpus
+   */
+  public boolean loadAnnotationSet(final Document<D> document, final String annotationSet) {
+    final Entry entry = index.get(document.getId());
+    final Location location = (entry == null) ? null : entry.annotationSets.get(annotationSet);
+    if (location == null) {
+      return false;
+    }
+    if (document.isDeferred(annotationSet)) {
+      document.materialize(annotationSet);
+    } else if (!document.getAnnotationSets().contains(annotationSet)) {
+      synchronized (document) {
+        final boolean dirty = document.isDirty();
+        JsonCorpus.readAnnotations(new ByteBufferInputStream(read(location)), document, annotationSet);
+        if (!dirty) {
+          document.clearDirty();
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Appends the text (if not already stored), features (if changed) and changed annotation sets of
+   * the document to the active segment. Annotation sets are only encoded if the document is dirty,
+   * and features and annotation sets are only appended if their encoding differs from the stored
+   * record.
+   *
+   * By default, all annotation sets attached to the passed document will be saved; if only specific annotation sets
+   * were requested with Builder.annotationSets(String... ), only those will be saved.
+   * Annotation sets stored for the document but not attached to it are kept.
+   * @param document the document to be saved
+   */
+  @Override
+  public synchronized void save(final Document<D> document) {
+    final String id = document.getId();
+    Entry entry = index.getOrDefault(id, EMPTY);
+    try {
+      if (entry.text == null) {
+        entry = entry.with(TEXT, "", append(TEXT, id, "", document.asString().getBytes(StandardCharsets.UTF_8)));
+      }
+      if (entry.features == null || !document.cleanFeats()) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        JsonCorpus.writeFeatures(document, bytes);
+        entry = appendIfChanged(entry, FEATURES, id, "", entry.features, bytes.toByteArray());
+      }
+      for (final String annSet : (allAnnSets) ? document.getAnnotationSets() : annSets) {
+        // annotation sets which were never read are unchanged
+        if (document.isDeferred(annSet)) {
+          continue;
+        }
+        final Location stored = entry.annotationSets.get(annSet);
+        if (stored != null && !document.isDirty()) {
+          continue;
+        }
+        if (stored != null || !document.getUnsafeAnnotations(annSet).isEmpty()) {
+          final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+          JsonCorpus.writeAnnotations(document, annSet, bytes);
+          entry = appendIfChanged(entry, ANNOTATIONS, id, annSet, stored, bytes.toByteArray());
+        }
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to save document " + id + " to " + path, e);
+    }
+    index.put(id, entry);
+    document.clearDirty();
+  }
+
+  /**
+   * Appends a record with the given payload unless the stored record already holds it
+   * @return entry referring to the record holding the payload
+   */
+  private Entry appendIfChanged(Entry entry, byte kind, String id, String name, Location stored, byte[] payload)
+      throws IOException {
+    if (stored != null && read(stored).equals(ByteBuffer.wrap(payload))) {
+      return entry;
+    }
+    return entry.with(kind, name, append(kind, id, name, payload));
+  }
+
+  @Override
+  public Stream<String> getIdStream() {
+    return index.keySet().stream();
+  }
+
+  /**
+   * @return a stream of the ids of every document in the corpus with the given annotation set
+   */
+  public Stream<String> getIdStream(String annotationSet) {
+    return index.entrySet().stream()
+        .filter(e -> e.getValue().annotationSets.containsKey(annotationSet))
+        .map(Map.Entry::getKey);
+  }
+
+  @Override
+  public boolean canLoad(String id) {
+    final Entry entry = index.get(id);
+    return entry != null && entry.text != null;
+  }
+
+  public boolean canLoad(String annotationSet, String id) {
+    final Entry entry = index.get(id);
+    return entry != null && entry.annotationSets.containsKey(annotationSet);
+  }
+
+  /**
+   * Copies every document of the given corpus (e.g., a {@link JsonCorpus}) into this corpus
+   * @param source corpus to import
+   * @return this
+   */
+  public SegmentedCorpus<D> importFrom(final Corpus<D> source) {
+    try (ProgressLogger plog = ProgressLogger.indeterminateSize("import", 1, TimeUnit.MINUTES)) {
+      source.forEachDocument(doc -> {
+        save(doc);
+        plog.update("imported {}", doc.getId());
+      });
+    }
+    flush();
+    return this;
+  }
+
+  /**
+   * Rewrites the latest record of every document part into new segments, reclaiming the space used
+   * by superseded records. Documents being loaded concurrently may still read the old segments, so
+   * they are only deleted by {@link #close()} (or, failing that, when the corpus is next opened).
+   */
+  public synchronized void compact() {
+    final int oldFirst = firstSegment;
+    final int oldLast = activeSegment;
+    try {
+      writer.close();
+      activeSegment++;
+      writer = openWriter(activeSegment);
+      final int newFirst = activeSegment;
+      for (Map.Entry<String, Entry> e : index.entrySet()) {
+        final String id = e.getKey();
+        final Entry old = e.getValue();
+        Entry entry = EMPTY;
+        if (old.text != null) {
+          entry = entry.with(TEXT, "", append(TEXT, id, "", bytes(read(old.text))));
+        }
+        if (old.features != null) {
+          entry = entry.with(FEATURES, "", append(FEATURES, id, "", bytes(read(old.features))));
+        }
+        for (Map.Entry<String, Location> set : old.annotationSets.entrySet()) {
+          entry = entry.with(ANNOTATIONS, set.getKey(),
+              append(ANNOTATIONS, id, set.getKey(), bytes(read(set.getValue()))));
+        }
+        index.put(id, entry);
+      }
+      firstSegment = newFirst;
+      flush();
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to compact " + path, e);
+    }
+    log.info("Compacted segments {}-{} of {} into {}-{}", oldFirst, oldLast, path, firstSegment, activeSegment);
+  }
+
+  private static byte[] bytes(ByteBuffer buffer) {
+    final byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    return bytes;
+  }
+
+  @Override
+  public synchronized void close() {
+    flush();
+    synchronized (mappedSegments) {
+      mappedSegments.clear();
+    }
+    try {
+      writer.close();
+      deleteObsoleteSegments();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "SegmentedCorpus at: " + path;
+  }
+
+  /**
+   * InputStream over the remaining bytes of a ByteBuffer
+   */
+  private static final class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int off, int len) {
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      len = Math.min(len, buffer.remaining());
+      buffer.get(bytes, off, len);
+      return len;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+  }
+}
@@ -0,0 +1,147 @@
+package edu.utdallas.hltri.scribe.text;
+
+import edu.utdallas.hltri.scribe.text.annotation.Annotation;
+import edu.utdallas.hltri.scribe.text.annotation.AnnotationType;
+import edu.utdallas.hltri.util.Interval1D;
+import edu.utdallas.hltri.util.IntervalST;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Immutable (and so freely shared between threads) index over the annotations of a single type within a single annotation set of a
+ * Document. Holds the wrapped annotations in document order (so they are only wrapped and sorted
+ * once) and an interval tree over their offsets for containment, covering and overlap queries.
+ *
+ * Built lazily by {@link Document} and discarded whenever annotations of its type are added to or removed from the
+ * underlying annotation set.
+ */
+final class AnnotationIndex<T extends Annotation<T>> {
+  private final gate.AnnotationSet set;
+  private final String type;
+  private final List<T> annotations;
+  private final long[] starts;
+  private final long[] ends;
+  private final IntervalST<List<Integer>> tree = new IntervalST<>();
+
+  AnnotationIndex(final Document<?> document, final gate.AnnotationSet set, final AnnotationType<T> type) {
+    this.set = set;
+    this.type = type.getName();
+    final List<gate.Annotation> sorted = new ArrayList<>(set.get(type.getName()));
+    sorted.sort(Comparator.<gate.Annotation>comparingLong(a -> a.getStartNode().getOffset())
+        .thenComparingLong(a -> a.getEndNode().getOffset())
+        .thenComparingInt(gate.Annotation::getId));
+
+    final int n = sorted.size();
+    final List<T> wrapped = new ArrayList<>(n);
+    starts = new long[n];
+    ends = new long[n];
+    for (int i = 0; i < n; i++) {
+      final gate.Annotation annotation = sorted.get(i);
+      wrapped.add(type.wrap(document, annotation));
+      starts[i] = annotation.getStartNode().getOffset();
+      ends[i] = annotation.getEndNode().getOffset();
+    }
+    annotations = Collections.unmodifiableList(wrapped);
+
+    // Annotations are indexed as the closed interval [start, end] (rather than [start, end)) so
+    // that interval queries also return zero-length and adjacent annotations; queries filter the
+    // candidates with the exact GATE semantics. Annotations sharing offsets share a tree node.
+    for (int i = 0; i < n; i++) {
+      final Interval1D interval = new Interval1D((int) starts[i], (int) ends[i]);
+      List<Integer> ranks = tree.get(interval);
+      if (ranks == null) {
+        ranks = new ArrayList<>(1);
+        tree.put(interval, ranks);
+      }
+      ranks.add(i);
+    }
+  }
+
+  /**
+   * @return the gate.AnnotationSet this index was built over
+   */
+  gate.AnnotationSet set() {
+    return set;
+  }
+
+  /**
+   * @return true if this index was built over the annotations of the given type in the given gate.AnnotationSet
+   */
+  boolean indexes(final gate.AnnotationSet set, final String type) {
+    return this.set == set && this.type.equals(type);
+  }
+
+  /**
+   * @return every annotation in document order
+   */
+  List<T> annotations() {
+    return annotations;
+  }
+
+  /**
+   * @return the annotations lying within [start, end], in document order
+   */
+  List<T> getContained(final long start, final long end) {
+    final int[] candidates = candidates(start, end);
+    int size = 0;
+    for (int rank : candidates) {
+      if (starts[rank] >= start && ends[rank] <= end) {
+        candidates[size++] = rank;
+      }
+    }
+    return select(candidates, size);
+  }
+
+  /**
+   * @return the annotations spanning all of [start, end], in document order
+   */
+  List<T> getCovering(final long start, final long end) {
+    final int[] candidates = candidates(start, end);
+    int size = 0;
+    for (int rank : candidates) {
+      if (starts[rank] <= start && ends[rank] >= end) {
+        candidates[size++] = rank;
+      }
+    }
+    return select(candidates, size);
+  }
+
+  /**
+   * @return the annotations which start before start and end after it, or start within [start, end), in document
+   * order (i.e., gate.AnnotationSet#get(Long, Long))
+   */
+  List<T> getOverlapping(final long start, final long end) {
+    final int[] candidates = candidates(start, end);
+    int size = 0;
+    for (int rank : candidates) {
+      if ((starts[rank] < start && ends[rank] > start) || (starts[rank] >= start && starts[rank] < end)) {
+        candidates[size++] = rank;
+      }
+    }
+    return select(candidates, size);
+  }
+
+  private int[] candidates(final long start, final long end) {
+    if (annotations.isEmpty() || end < start) {
+      return new int[0];
+    }
+    final List<Integer> candidates = new ArrayList<>();
+    for (Interval1D interval : tree.searchAll(new Interval1D((int) start, (int) end))) {
+      candidates.addAll(tree.get(interval));
+    }
+    return candidates.stream().mapToInt(Integer::intValue).toArray();
+  }
+
+  private List<T> select(final int[] ranks, final int size) {
+    Arrays.sort(ranks, 0, size);
+    final List<T> selected = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      selected.add(annotations.get(ranks[i]));
+    }
+    return selected;
+  }
+}
@@ -33,12 +33,16 @@ public class AnnotationList<T extends Annotation<T>> extends AbstractList<T> {
   }
 
   @Override public void add(int index, T element) {
-    parent.add(element.asGate());
+    synchronized (element.getDocument()) {
+      parent.add(element.asGate());
+    }
     inner.add(index, element);
   }
 
   @Override public T remove(int index) {
-    parent.remove(get(index).asGate());
+    synchronized (get(index).getDocument()) {
+      parent.remove(get(index).asGate());
+    }
     return inner.remove(index);
   }
 
@@ -1,6 +1,7 @@
 package edu.utdallas.hltri.scribe.text;
 
 import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import edu.utdallas.hltri.Describable;
@@ -14,10 +15,15 @@ import edu.utdallas.hltri.scribe.text.annotation.UnsafeAnnotation;
 import edu.utdallas.hltri.scribe.text.relation.Relation;
 import edu.utdallas.hltri.scribe.text.relation.RelationType;
 import edu.utdallas.hltri.scribe.text.relation.UnsafeRelation;
+import edu.utdallas.hltri.util.Unsafe;
 import gate.AnnotationSet;
 import gate.Factory;
 import gate.FeatureMap;
 import gate.creole.ResourceInstantiationException;
+import gate.event.AnnotationSetEvent;
+import gate.event.AnnotationSetListener;
+import gate.event.DocumentEvent;
+import gate.event.DocumentListener;
 import gate.relations.RelationSet;
 
 import java.io.File;
@@ -27,7 +33,11 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -42,6 +52,9 @@ public class Document<D extends BaseDocument> extends Text implements
 
   private static final Logger log = Logger.get(Document.class);
 
+  private static final AtomicLong deferredSetsMaterialized = new AtomicLong();
+  private static final AtomicLong deferredSetsUntouched = new AtomicLong();
+
   public final gate.FeatureMap features;
 
   protected final String string;
@@ -53,6 +66,67 @@ public class Document<D extends BaseDocument> extends Text implements
   private transient Optional<Corpus<D>> corpus = Optional.empty();
   private transient boolean cleanFeats = true;
 
+  // Loaders for annotation sets which are read from the corpus on first use, and the subset of them not yet read
+  private transient final Map<String, Consumer<Document<D>>> annotationSetLoaders = new ConcurrentHashMap<>();
+  private transient final Set<String> deferredSets = ConcurrentHashMap.newKeySet();
+  // Highest GATE id stored in each deferred annotation set (reserved so that new annotations never reuse them)
+  private transient final Map<String, Integer> deferredMaxIds = new ConcurrentHashMap<>();
+
+  // Immutable snapshots of each (annotation set, annotation type), discarded whenever annotations of their type are
+  // added to or removed from their annotation set.
+  // Snapshots are built under the document lock, which writers hold while adding or removing annotations (see
+  // AnnotationType.create), so no write overlaps a build. Each change replaces this immutable map, so readers
+  // never lock and only ever see complete snapshots.
+  private transient volatile Map<List<Object>, AnnotationIndex<?>> indices = Collections.emptyMap();
+
+  // Annotations of every annotation set by GATE id (which is unique within a document), built on first lookup.
+  // Only built under the document lock, and published once complete.
+  private transient volatile Map<Integer, gate.Annotation> annotationsById = null;
+
+  // Keeps the above indices in sync with each annotation set they were built from; sets are held weakly (and by
+  // identity) and unwatched when they are evicted or cleared
+  private transient final Set<gate.AnnotationSet> watchedSets = Collections.newSetFromMap(
+      CacheBuilder.newBuilder().weakKeys().<gate.AnnotationSet, Boolean>build().asMap());
+  // Called by the writer, so (for writes through scribe) already under the document lock
+  private transient final AnnotationSetListener annotationListener = new AnnotationSetListener() {
+    @Override public void annotationAdded(AnnotationSetEvent e) {
+      invalidate((gate.AnnotationSet) e.getSource(), e.getAnnotation().getType());
+      final Map<Integer, gate.Annotation> byId = annotationsById;
+      if (byId != null) {
+        putId(byId, e.getAnnotation());
+      }
+    }
+
+    @Override public void annotationRemoved(AnnotationSetEvent e) {
+      invalidate((gate.AnnotationSet) e.getSource(), e.getAnnotation().getType());
+      final Map<Integer, gate.Annotation> byId = annotationsById;
+      if (byId != null) {
+        byId.remove(e.getAnnotation().getId(), e.getAnnotation());
+      }
+    }
+  };
+  private transient final DocumentListener annotationSetListener = new DocumentListener() {
+    @Override public void annotationSetAdded(DocumentEvent e) {
+      synchronized (Document.this) {
+        final Map<Integer, gate.Annotation> byId = annotationsById;
+        if (byId != null) {
+          putIds(byId, gateDocument.getAnnotations(e.getAnnotationSetName()));
+        }
+      }
+    }
+
+    @Override public void annotationSetRemoved(DocumentEvent e) {
+      synchronized (Document.this) {
+        discardIndices((key, snapshot) -> Objects.equals(key.get(0), e.getAnnotationSetName()));
+        // The removed set is already detached from the document, so rebuild on the next lookup
+        annotationsById = null;
+      }
+    }
+
+    @Override public void contentEdited(DocumentEvent e) {}
+  };
+  private transient final AtomicBoolean listeningForSets = new AtomicBoolean();
+
    protected Document(String string) {
     this.string = string;
     try {
@@ -132,6 +206,13 @@ public class Document<D extends BaseDocument> extends Text implements
     return this;
   }
 
+  /**
+   * @return true if this document has changes which have not been synced
+   */
+  public boolean isDirty() {
+    return dirty.get();
+  }
+
   public Document<D> setCorpus(final Corpus<D> corpus) {
     this.corpus = Optional.of(corpus);
     return this;
@@ -143,7 +224,7 @@ public class Document<D extends BaseDocument> extends Text implements
    *   (1) originated from a data-store (e.g. Corpus.lazy.fromDataStore), or
    *   (2) already been saved to a data-store (e.g. Corpus.saveToDataStore)
    *
-   * @return this
+   * Deferred annotation sets which were read stay in memory; call {@link #evict()} afterwards to release them.
    */
   public void sync() {
     assert corpus.isPresent() : "No corpus to sync to.";
@@ -151,6 +232,143 @@ public class Document<D extends BaseDocument> extends Text implements
     clearDirty();
   }
 
+  /**
+   * EXPERT: Defers reading the given annotation set until it is first accessed (e.g., through
+   * {@link #get(String, AnnotationType)}), at which point loader is called to read it into this document.
+   * Used by corpora to avoid parsing annotation sets a consumer never looks at.
+   * @param annotationSet name of the annotation set
+   * @param maxId highest annotation or relation id stored in the annotation set (or -1 if it is empty); ids up to
+   *              maxId are reserved so that annotations created before the set is read do not collide with it
+   * @param loader reads the annotation set into the given document
+   */
+  public void defer(final String annotationSet, final int maxId, final Consumer<Document<D>> loader) {
+    reserveAnnotationIds(maxId);
+    deferredMaxIds.put(annotationSet, maxId);
+    annotationSetLoaders.put(annotationSet, loader);
+    deferredSets.add(annotationSet);
+  }
+
+  /**
+   * EXPERT: Ensures GATE never assigns ids up to (and including) maxId to new annotations or relations of this
+   * document, e.g., because they are used by annotation sets which have not been read
+   */
+  public synchronized void reserveAnnotationIds(final int maxId) {
+    if (gateDocument instanceof gate.corpora.DocumentImpl) {
+      final gate.corpora.DocumentImpl impl = (gate.corpora.DocumentImpl) gateDocument;
+      if (impl.peakAtNextAnnotationId() <= maxId) {
+        impl.setNextAnnotationId(maxId + 1);
+      }
+    }
+  }
+
+  /**
+   * @return the highest annotation or relation id in the given annotation set (without reading it if it was
+   * deferred), or -1 if it is empty
+   */
+  public int getMaxAnnotationId(final String annotationSet) {
+    final Integer deferred = deferredMaxIds.get(annotationSet);
+    if (deferred != null && deferredSets.contains(annotationSet)) {
+      return deferred;
+    }
+    if (!gateDocument.getAnnotationSetNames().contains(annotationSet)) {
+      return -1;
+    }
+    return maxId(gateDocument.getAnnotations(annotationSet));
+  }
+
+  private static int maxId(final gate.AnnotationSet set) {
+    int max = -1;
+    for (gate.Annotation annotation : set) {
+      max = Math.max(max, annotation.getId());
+    }
+    for (gate.relations.Relation relation : set.getRelations()) {
+      max = Math.max(max, relation.getId());
+    }
+    return max;
+  }
+
+  /**
+   * @return true if the given annotation set was deferred and has not been read yet
+   */
+  public boolean isDeferred(final String annotationSet) {
+    return deferredSets.contains(annotationSet);
+  }
+
+  /**
+   * Reads the given annotation set if it was deferred and has not been read yet
+   * @param annotationSet name of the annotation set
+   */
+  public synchronized void materialize(final String annotationSet) {
+    if (deferredSets.remove(annotationSet)) {
+      log.trace("Reading deferred {} annotations of {}", annotationSet, getId());
+      // Reading the set from the corpus does not make the document dirty
+      final boolean wasDirty = dirty.get();
+      annotationSetLoaders.get(annotationSet).accept(this);
+      dirty.set(wasDirty);
+      deferredSetsMaterialized.incrementAndGet();
+    }
+  }
+
+  /**
+   * Releases the given deferred annotation set after it was read, so it will be read again from the corpus if it
+   * is accessed again. Must only be called after changes to the annotation set have been synced, and annotations
+   * obtained from it before it was evicted must not be used afterwards.
+   * @param annotationSet name of the annotation set
+   * @return true if the annotation set was evicted
+   */
+  public synchronized boolean evict(final String annotationSet) {
+    if (!annotationSetLoaders.containsKey(annotationSet) || deferredSets.contains(annotationSet)) {
+      return false;
+    }
+    if (dirty.get()) {
+      throw new IllegalStateException("Cannot evict " + annotationSet + " from " + getId() + " before sync()");
+    }
+    final gate.AnnotationSet as = gateDocument.getAnnotations(annotationSet);
+    deferredMaxIds.put(annotationSet, maxId(as));
+    unwatch(as);
+    as.getRelations().clear();
+    as.clear();
+    gateDocument.removeAnnotationSet(annotationSet);
+    deferredSets.add(annotationSet);
+    return true;
+  }
+
+  /**
+   * Releases every deferred annotation set which has been read, e.g. after {@link #sync()} when they will not be
+   * used again
+   * @see #evict(String)
+   */
+  public synchronized void evict() {
+    for (String annotationSet : annotationSetLoaders.keySet()) {
+      evict(annotationSet);
+    }
+  }
+
+  /**
+   * @return number of deferred annotation sets which have been read (across all documents)
+   */
+  public static long getMaterializedAnnotationSetCount() {
+    return deferredSetsMaterialized.get();
+  }
+
+  /**
+   * @return number of deferred annotation sets which were never read before their document was closed (across all
+   * documents)
+   */
+  public static long getUntouchedAnnotationSetCount() {
+    return deferredSetsUntouched.get();
+  }
+
+  /**
+   * EXPERT: Returns the underlying gate.AnnotationSet with the given name, reading it first if it was deferred
+   * @param annotationSet name of the annotation set
+   * @return gate.AnnotationSet with the given name
+   */
+  public gate.AnnotationSet getGateAnnotations(final String annotationSet) {
+    materialize(annotationSet);
+    return gateDocument.getAnnotations(annotationSet);
+  }
+
   /**
    * EXPERT: Returns the underlying gate.Document this Document wraps
    * @return gate.Document corresponding to this Document
@@ -178,7 +396,107 @@ public class Document<D extends BaseDocument> extends Text implements
   }
 
   public <T extends Annotation<T>> gate.AnnotationSet getAnnotationSet(final String name, final AnnotationType<T> type) {
-    return gateDocument.getAnnotations(name).get(type.getName());
+    return getGateAnnotations(name).get(type.getName());
+  }
+
+  private void watch(final gate.AnnotationSet set) {
+    if (listeningForSets.compareAndSet(false, true)) {
+      gateDocument.addDocumentListener(annotationSetListener);
+    }
+    if (watchedSets.add(set)) {
+      set.addAnnotationSetListener(annotationListener);
+    }
+  }
+
+  // Stops keeping indices in sync with a set about to be detached from this document
+  private void unwatch(final gate.AnnotationSet set) {
+    if (watchedSets.remove(set)) {
+      set.removeAnnotationSetListener(annotationListener);
+    }
+  }
+
+  // Discards the snapshot of the given type in the given set; snapshots of its other types are still valid
+  private void invalidate(final gate.AnnotationSet set, final String type) {
+    for (AnnotationIndex<?> index : indices.values()) {
+      if (index.indexes(set, type)) {
+        synchronized (this) {
+          discardIndices((key, snapshot) -> snapshot.indexes(set, type));
+        }
+        return;
+      }
+    }
+  }
+
+  // Publishes a copy of the snapshots without those matching; must hold the document lock
+  private void discardIndices(final BiPredicate<List<Object>, AnnotationIndex<?>> matches) {
+    final Map<List<Object>, AnnotationIndex<?>> updated = new HashMap<>(indices);
+    if (updated.entrySet().removeIf(e -> matches.test(e.getKey(), e.getValue()))) {
+      indices = Collections.unmodifiableMap(updated);
+    }
+  }
+
+  /**
+   * Returns the snapshot of the annotations of the given type in the given annotation set, without locking unless
+   * it has to be built
+   * @param annotationSet name of the annotation set, or null for the default annotation set
+   */
+  private <T extends Annotation<T>> AnnotationIndex<T> index(final String annotationSet, final AnnotationType<T> type) {
+    final AnnotationIndex<?> index = indices.get(Arrays.asList(annotationSet, type));
+    return (index != null) ? Unsafe.cast(index) : buildIndex(annotationSet, type);
+  }
+
+  private synchronized <T extends Annotation<T>> AnnotationIndex<T> buildIndex(final String annotationSet,
+                                                                               final AnnotationType<T> type) {
+    final List<Object> key = Arrays.asList(annotationSet, type);
+    AnnotationIndex<?> index = indices.get(key);
+    if (index == null) {
+      final gate.AnnotationSet set = (annotationSet == null) ? gateDocument.getAnnotations() : getGateAnnotations(annotationSet);
+      watch(set);
+      index = new AnnotationIndex<>(this, set, type);
+      final Map<List<Object>, AnnotationIndex<?>> updated = new HashMap<>(indices);
+      updated.put(key, index);
+      indices = Collections.unmodifiableMap(updated);
+    }
+    return Unsafe.cast(index);
+  }
+
+  /**
+   * Get the annotations of the given type lying within the given offsets, in document order
+   * @param annotationSet Name of the annotation set to search within, or null for the default annotation set
+   * @param type AnnotationType to look for (e.g. Token.TYPE)
+   * @param start Inclusive lower character offset
+   * @param end Exclusive upper character offset
+   * @return List of Annotations of the given type contained by [start, end)
+   */
+  public <T extends Annotation<T>> List<T> getContained(final String annotationSet, final AnnotationType<T> type,
+                                                        final long start, final long end) {
+    return index(annotationSet, type).getContained(start, end);
+  }
+
+  /**
+   * Get the annotations of the given type spanning the given offsets, in document order
+   * @param annotationSet Name of the annotation set to search within, or null for the default annotation set
+   * @param type AnnotationType to look for (e.g. Token.TYPE)
+   * @param start Inclusive lower character offset
+   * @param end Exclusive upper character offset
+   * @return List of Annotations of the given type covering [start, end)
+   */
+  public <T extends Annotation<T>> List<T> getCovering(final String annotationSet, final AnnotationType<T> type,
+                                                       final long start, final long end) {
+    return index(annotationSet, type).getCovering(start, end);
+  }
+
+  /**
+   * Get the annotations of the given type partly or totally overlapping the given offsets, in document order
+   * @param annotationSet Name of the annotation set to search within, or null for the default annotation set
+   * @param type AnnotationType to look for (e.g. Token.TYPE)
+   * @param start Inclusive lower character offset
+   * @param end Exclusive upper character offset
+   * @return List of Annotations of the given type overlapping [start, end)
+   */
+  public <T extends Annotation<T>> List<T> getOverlapping(final String annotationSet, final AnnotationType<T> type,
+                                                          final long start, final long end) {
+    return index(annotationSet, type).getOverlapping(start, end);
   }
 
   public <T extends Annotation<T>> List<T> convertAnnotationSet(final gate.AnnotationSet annotationSet, final AnnotationType<T> type) {
@@ -189,26 +507,75 @@ public class Document<D extends BaseDocument> extends Text implements
     return AnnotationList.create(annotationSet, annotations);
   }
 
-  public <T extends Annotation<T>> Optional<T> getAnnotationById(final int id, final AnnotationType<T> type) {
-    for (String annSet : getAnnotationSets()) {
-      for (T ann : get(annSet, type)) {
-        if (ann.asGate().getId() == id) {
-          return Optional.of(ann);
+  /**
+   * Returns the id index over every annotation set, building it on first use. Afterwards it is maintained
+   * incrementally as annotations and annotation sets are added or removed.
+   */
+  private Map<Integer, gate.Annotation> annotationsById() {
+    Map<Integer, gate.Annotation> byId = annotationsById;
+    if (byId == null) {
+      synchronized (this) {
+        byId = annotationsById;
+        if (byId == null) {
+          // Writers hold the document lock, so none of them adds annotations while the index is built
+          byId = new ConcurrentHashMap<>();
+          putIds(byId, gateDocument.getAnnotations());
+          for (String name : gateDocument.getAnnotationSetNames()) {
+            putIds(byId, gateDocument.getAnnotations(name));
+          }
+          annotationsById = byId;
         }
       }
     }
-    return Optional.empty();
+    return byId;
   }
 
-  public Optional<UnsafeAnnotation> getUnsafeAnnotationById(final int id) {
-    for (String annSet : getAnnotationSets()) {
-      for (UnsafeAnnotation ua : getUnsafeAnnotations(annSet)) {
-        if (ua.getGateId() == id) {
-          return Optional.of(ua);
+  private void putIds(final Map<Integer, gate.Annotation> byId, final gate.AnnotationSet set) {
+    watch(set);
+    for (gate.Annotation annotation : set) {
+      putId(byId, annotation);
+    }
+  }
+
+  // Documents saved before ids were reserved across annotation sets may reuse an id in several sets; as before,
+  // the first annotation found with an id is the one returned for it
+  private void putId(final Map<Integer, gate.Annotation> byId, final gate.Annotation annotation) {
+    final gate.Annotation previous = byId.putIfAbsent(annotation.getId(), annotation);
+    if (previous != null && previous != annotation) {
+      log.warn("Annotations {} and {} of {} have the same GATE id; keeping the first", previous, annotation, getId());
+    }
+  }
+
+  /**
+   * Finds the GATE annotation with the given id in any annotation set (reading deferred annotation sets only if
+   * it is not found among those already loaded, and only those whose ids reach the given id)
+   */
+  private Optional<gate.Annotation> getGateAnnotationById(final int id) {
+    gate.Annotation annotation = annotationsById().get(id);
+    if (annotation == null && !deferredSets.isEmpty()) {
+      final List<String> candidates = deferredSets.stream()
+          .filter(set -> deferredMaxIds.getOrDefault(set, Integer.MAX_VALUE) >= id)
+          .sorted(Comparator.comparingInt(set -> deferredMaxIds.getOrDefault(set, Integer.MAX_VALUE)))
+          .collect(Collectors.toList());
+      for (String annotationSet : candidates) {
+        materialize(annotationSet);
+        annotation = annotationsById().get(id);
+        if (annotation != null) {
+          break;
         }
       }
     }
-    return Optional.empty();
+    return Optional.ofNullable(annotation);
+  }
+
+  public <T extends Annotation<T>> Optional<T> getAnnotationById(final int id, final AnnotationType<T> type) {
+    return getGateAnnotationById(id)
+        .filter(annotation -> annotation.getType().equals(type.getName()))
+        .map(annotation -> type.wrap(this, annotation));
+  }
+
+  public Optional<UnsafeAnnotation> getUnsafeAnnotationById(final int id) {
+    return getGateAnnotationById(id).map(annotation -> new UnsafeAnnotation(this, annotation));
   }
 
   // AnnotationSet stuff
@@ -222,11 +589,13 @@ public class Document<D extends BaseDocument> extends Text implements
    * @see edu.utdallas.hltri.scribe.text.annotation.AnnotationType
    */
   public <T extends Annotation<T>> List<T> get(final AnnotationType<T> type) {
-    return convertAnnotationSet(gateDocument.getAnnotations(), type);
+    final AnnotationIndex<T> index = index(null, type);
+    return AnnotationList.create(index.set(), index.annotations());
   }
 
   /**
-   * Get the annotations corresponding to the given AnnotationType inside the given annotation set
+   * Get the annotations corresponding to the given AnnotationType inside the given annotation set.
+   * Safe to call from many threads at once; only the first call after the annotation set changes takes a lock.
    * @param annotationSet Name of the annotation set to search within
    * @param type AnnotationType to look for (e.g. Token.TYPE)
    * @param <T>  type of Annotation to return (e.g. Token)
@@ -234,8 +603,9 @@ public class Document<D extends BaseDocument> extends Text implements
    * @see edu.utdallas.hltri.scribe.text.annotation.Annotation
    * @see edu.utdallas.hltri.scribe.text.annotation.AnnotationType
    */
-  synchronized public <T extends Annotation<T>> List<T> get(final String annotationSet, final AnnotationType<T> type) {
-    return convertAnnotationSet(gateDocument.getAnnotations(annotationSet), type);
+  public <T extends Annotation<T>> List<T> get(final String annotationSet, final AnnotationType<T> type) {
+    final AnnotationIndex<T> index = index(annotationSet, type);
+    return AnnotationList.create(index.set(), index.annotations());
   }
 
   /**
@@ -255,7 +625,7 @@ public class Document<D extends BaseDocument> extends Text implements
   }
 
   public boolean hasAnnotationSet(final String annotationSet) {
-    return !gateDocument.getAnnotations(annotationSet).isEmpty();
+    return !getGateAnnotations(annotationSet).isEmpty();
   }
 
   /**
@@ -266,7 +636,7 @@ public class Document<D extends BaseDocument> extends Text implements
    */
   public List<UnsafeAnnotation> getUnsafeAnnotations(final String annotationSet) {
     List<UnsafeAnnotation> annotations = Lists.newArrayList();
-    for (final gate.Annotation gateAnnotation : gate.Utils.inDocumentOrder(gateDocument.getAnnotations(annotationSet))) {
+    for (final gate.Annotation gateAnnotation : gate.Utils.inDocumentOrder(getGateAnnotations(annotationSet))) {
       annotations.add(new UnsafeAnnotation(this, gateAnnotation));
     }
     return annotations;
@@ -278,7 +648,7 @@ public class Document<D extends BaseDocument> extends Text implements
    * @return a set of annotation types for the annotation set passed
    */
   public Set<String> getAnnotationTypes(String annotationSet) {
-    return asGate().getAnnotations(annotationSet).getAllTypes();
+    return getGateAnnotations(annotationSet).getAllTypes();
   }
 
   /**
@@ -291,7 +661,7 @@ public class Document<D extends BaseDocument> extends Text implements
    */
   public <R extends Relation<R, G, Dep>, G extends Annotation<G>, Dep extends Annotation<Dep>> Set<R>
   getRelations(final String annSet, final RelationType<R,G,Dep> type) {
-    return gateDocument.getAnnotations(annSet).getRelations().getRelations(type.getName()).stream()
+    return getGateAnnotations(annSet).getRelations().getRelations(type.getName()).stream()
         .map(gr -> type.wrap(this, gr, annSet)).collect(Collectors.toSet());
   }
 
@@ -305,7 +675,7 @@ public class Document<D extends BaseDocument> extends Text implements
   public <R extends Relation<R, G, Dep>, G extends Annotation<G>, Dep extends Annotation<Dep>> Set<R> getRelations(
       final Annotation<?> annotation, final String annSet, final RelationType<R,G,Dep> type) {
     final Set<R> relations = Sets.newHashSet();
-    for (final gate.relations.Relation gateRel : asGate().getAnnotations(annSet).getRelations().getReferencing(annotation.getGateId())) {
+    for (final gate.relations.Relation gateRel : getGateAnnotations(annSet).getRelations().getReferencing(annotation.getGateId())) {
       // if the gate relation is of the correct type
       if (gateRel.getType().equals(type.getName())) {
         // create a new Annotation of the dependant's gate annotation and add it to the set
@@ -319,11 +689,11 @@ public class Document<D extends BaseDocument> extends Text implements
       final G governor, final RelationType<R,G,Dep> type, final String annSet) {
     final Set<Dep> dependants = Sets.newHashSet();
     // for each gate relation involving governor
-    for (final gate.relations.Relation gateRel : gateDocument.getAnnotations(annSet).getRelations().getReferencing(governor.getGateId())) {
+    for (final gate.relations.Relation gateRel : getGateAnnotations(annSet).getRelations().getReferencing(governor.getGateId())) {
       // if the gate relation is of the correct type and has governor as it's governor
       if (gateRel.getType().equals(type.getName()) && (governor.getGateId() == gateRel.getMembers()[0])) {
         // create a new Annotation of the dependant's gate annotation and add it to the set
-        dependants.add(type.dependantType().wrap(this, asGate().getAnnotations(annSet).get(gateRel.getMembers()[1])));
+        dependants.add(type.dependantType().wrap(this, getGateAnnotations(annSet).get(gateRel.getMembers()[1])));
       }
     }
     return dependants;
@@ -333,11 +703,11 @@ public class Document<D extends BaseDocument> extends Text implements
       final Dep dependant,final RelationType<R, G, Dep> type,final String annSet) {
     final Set<G> governors = Sets.newHashSet();
     // for each gate relation involving dependant
-    for (final gate.relations.Relation gateRel : gateDocument.getAnnotations(annSet).getRelations().getReferencing(dependant.getGateId())) {
+    for (final gate.relations.Relation gateRel : getGateAnnotations(annSet).getRelations().getReferencing(dependant.getGateId())) {
       // if the gate relation is of the correct type and has dependant as it's dependant
       if (gateRel.getType().equals(type.getName()) && (dependant.getGateId() == gateRel.getMembers()[1])) {
         // create a new Annotation of the governor's gate annotation and add it to the set
-        governors.add(type.governorType().wrap(this, asGate().getAnnotations(annSet).get(gateRel.getMembers()[0])));
+        governors.add(type.governorType().wrap(this, getGateAnnotations(annSet).get(gateRel.getMembers()[0])));
       }
     }
     return governors;
@@ -350,14 +720,14 @@ public class Document<D extends BaseDocument> extends Text implements
    */
   public Set<UnsafeRelation> getUnsafeRelations(final String annSet) {
     final Set<UnsafeRelation> relations = Sets.newHashSet();
-    for (gate.relations.Relation relation : asGate().getAnnotations(annSet).getRelations()) {
+    for (gate.relations.Relation relation : getGateAnnotations(annSet).getRelations()) {
       relations.add(UnsafeRelation.wrap(this, annSet, relation));
     }
     return relations;
   }
 
   public Set<String> getRelationTypes(final String annSet) {
-    return gateDocument.getAnnotations(annSet).getRelations().stream()
+    return getGateAnnotations(annSet).getRelations().stream()
         .map(gate.relations.Relation::getType)
         .collect(Collectors.toSet());
   }
@@ -370,7 +740,7 @@ public class Document<D extends BaseDocument> extends Text implements
   public <R extends Relation<R, ?, ?>> void removeRelation(
       final String annSet, final R relation) {
     setDirty();
-    final RelationSet relSet = gateDocument.getAnnotations(annSet).getRelations();
+    final RelationSet relSet = getGateAnnotations(annSet).getRelations();
     relSet.remove(relation.asGate());
   }
 
@@ -382,7 +752,7 @@ public class Document<D extends BaseDocument> extends Text implements
   public <R extends Relation<R, G, Dep>, G extends Annotation<G>, Dep extends Annotation<Dep>> void clear(
       final String annSet, final RelationType<R,G,Dep> type) {
     setDirty();
-    final RelationSet relSet = gateDocument.getAnnotations(annSet).getRelations();
+    final RelationSet relSet = getGateAnnotations(annSet).getRelations();
     relSet.removeAll(relSet.getRelations(type.getName()));
   }
 
@@ -398,27 +768,38 @@ public class Document<D extends BaseDocument> extends Text implements
   }
 
   public Set<String> getAnnotationSets() {
-    return gateDocument.getAnnotationSetNames();
+    if (deferredSets.isEmpty()) {
+      return gateDocument.getAnnotationSetNames();
+    }
+    final Set<String> names = Sets.newHashSet(gateDocument.getAnnotationSetNames());
+    names.addAll(deferredSets);
+    return names;
   }
 
   public Set<String> getRelationSets() {
     return getAnnotationSets().stream()
-        .filter(as -> !gateDocument.getAnnotations(as).getRelations().isEmpty())
+        .filter(as -> !getGateAnnotations(as).getRelations().isEmpty())
         .collect(Collectors.toSet());
   }
 
-  public void clear(String annotationSet) {
+  public synchronized void clear(String annotationSet) {
     setDirty();
+    deferredSets.remove(annotationSet);
+    deferredMaxIds.remove(annotationSet);
+    annotationSetLoaders.remove(annotationSet);
+    if (gateDocument.getAnnotationSetNames().contains(annotationSet)) {
+      unwatch(gateDocument.getAnnotations(annotationSet));
+    }
     gateDocument.removeAnnotationSet(annotationSet);
   }
 
-  public <T extends Annotation<T>> void clear(String annotationSet, AnnotationType<T> type) {
+  public synchronized <T extends Annotation<T>> void clear(String annotationSet, AnnotationType<T> type) {
     setDirty();
-    final AnnotationSet set = gateDocument.getAnnotations(annotationSet);
+    final AnnotationSet set = getGateAnnotations(annotationSet);
     set.removeAll(set.get(type.getName()));
   }
 
-  public <T extends Annotation<T>> void clear(AnnotationType<T> type) {
+  public synchronized <T extends Annotation<T>> void clear(AnnotationType<T> type) {
     setDirty();
     final AnnotationSet set = gateDocument.getAnnotations();
     set.removeAll(set.get(type.getName()));
@@ -443,6 +824,11 @@ public class Document<D extends BaseDocument> extends Text implements
     if (dirty.get()) {
       log.warn("Closing document {} with unsynced changes!", getId());
     }
+    if (!deferredSets.isEmpty()) {
+      log.trace("Closing document {} with {} unread annotation sets: {}", getId(), deferredSets.size(), deferredSets);
+      deferredSetsUntouched.addAndGet(deferredSets.size());
+      deferredSets.clear();
+    }
     for (String asName: gateDocument.getAnnotationSetNames()) {
       final gate.AnnotationSet as = gateDocument.getAnnotations(asName);
       as.getRelations().clear();
@@ -465,7 +851,7 @@ public class Document<D extends BaseDocument> extends Text implements
     try {
       final gate.Document result = Factory.newDocument(subString(start, end));
       for (String name : gateDocument.getAnnotationSetNames()) {
-        result.getAnnotations(name).addAll(gateDocument.getAnnotations(name).get(start, end));
+        result.getAnnotations(name).addAll(getGateAnnotations(name).get(start, end));
       }
       return new Document<>(result);
     } catch (ResourceInstantiationException e) {
@@ -70,9 +70,7 @@ public interface Annotation<B extends Annotation<B>> extends AttributeMap<B>, Pr
    * the range of the containing annotation.
    */
   default <T extends Annotation<T>> List<T> getContained(String annotationSet, AnnotationType<T> type) {
-    final Document<?> document = getDocument();
-    final gate.AnnotationSet set = document.getAnnotationSet(annotationSet, type);
-    return document.convertAnnotationSet(gate.Utils.getContainedAnnotations(set, asGate()), type);
+    return getDocument().getContained(annotationSet, type, get(StartOffset), get(EndOffset));
   }
 
   /**
@@ -80,9 +78,7 @@ public interface Annotation<B extends Annotation<B>> extends AttributeMap<B>, Pr
    * the range of the containing annotation.
    */
   default <T extends Annotation<T>> List<T> getContained(AnnotationType<T> type) {
-    final Document<?> document = getDocument();
-    final gate.AnnotationSet set = document.getAnnotationSet(type);
-    return document.convertAnnotationSet(gate.Utils.getContainedAnnotations(set, asGate()), type);
+    return getDocument().getContained(null, type, get(StartOffset), get(EndOffset));
   }
 
   /**
@@ -90,9 +86,7 @@ public interface Annotation<B extends Annotation<B>> extends AttributeMap<B>, Pr
    * the range of the specified annotation.
    */
   default <T extends Annotation<T>> List<T> getCovering(String annotationSet, AnnotationType<T> type) {
-    final Document<?> document = getDocument();
-    final gate.AnnotationSet set = document.getAnnotationSet(annotationSet, type);
-    return document.convertAnnotationSet(gate.Utils.getCoveringAnnotations(set, asGate()), type);
+    return getDocument().getCovering(annotationSet, type, get(StartOffset), get(EndOffset));
   }
 
   /**
@@ -100,9 +94,7 @@ public interface Annotation<B extends Annotation<B>> extends AttributeMap<B>, Pr
    * the range of the specified annotation.
    */
   default <T extends Annotation<T>> List<T> getCovering(AnnotationType<T> type) {
-    final Document<?> document = getDocument();
-    final gate.AnnotationSet set = document.getAnnotationSet(type);
-    return document.convertAnnotationSet(gate.Utils.getCoveringAnnotations(set, asGate()), type);
+    return getDocument().getCovering(null, type, get(StartOffset), get(EndOffset));
   }
 
   /**
@@ -110,9 +102,7 @@ public interface Annotation<B extends Annotation<B>> extends AttributeMap<B>, Pr
    * the range of the specified annotation.
    */
   default <T extends Annotation<T>> List<T> getOverlapping(String annotationSet, AnnotationType<T> type) {
-    final Document<?> document = getDocument();
-    final gate.AnnotationSet set = document.getAnnotationSet(annotationSet, type);
-    return document.convertAnnotationSet(gate.Utils.getOverlappingAnnotations(set, asGate()), type);
+    return getDocument().getOverlapping(annotationSet, type, get(StartOffset), get(EndOffset));
   }
 
   /**
@@ -120,9 +110,7 @@ public interface Annotation<B extends Annotation<B>> extends AttributeMap<B>, Pr
    * the range of the specified annotation.
    */
   default <T extends Annotation<T>> List<T> getOverlapping(AnnotationType<T> type) {
-    final Document<?> document = getDocument();
-    final gate.AnnotationSet set = document.getAnnotationSet(type);
-    return document.convertAnnotationSet(gate.Utils.getOverlappingAnnotations(set, asGate()), type);
+    return getDocument().getOverlapping(null, type, get(StartOffset), get(EndOffset));
   }
 
   /**
@@ -36,17 +36,20 @@ public interface AnnotationType<T extends Annotation<T>> /* extends TypesafeMap.
    * @see edu.utdallas.hltri.scribe.text.annotation.Annotation
    */
   @Deprecated default T create(Document<?> parent, long start, long end) {
-    final AnnotationSet set = parent.asGate().getAnnotations();
-    checkDuplicate(set, start, end);
-    try {
-      parent.setDirty();
-      final Integer id = set.add(start, end, getName(), Factory.newFeatureMap());
-      final T annotation = wrap(parent, set.get(id));
-      log.trace("Creating {}", annotation.toString());
-//        annotation.set(Annotation.id, annotation.getDocument().registerAnnotation(annotation));
-      return annotation;
-    } catch (InvalidOffsetException e) {
-      throw new RuntimeException(e);
+    // writers hold the document lock, so that snapshots of the annotation set are never built during a write
+    synchronized (parent) {
+      final AnnotationSet set = parent.asGate().getAnnotations();
+      checkDuplicate(set, start, end);
+      try {
+        parent.setDirty();
+        final Integer id = set.add(start, end, getName(), Factory.newFeatureMap());
+        final T annotation = wrap(parent, set.get(id));
+        log.trace("Creating {}", annotation.toString());
+//          annotation.set(Annotation.id, annotation.getDocument().registerAnnotation(annotation));
+        return annotation;
+      } catch (InvalidOffsetException e) {
+        throw new RuntimeException(e);
+      }
     }
   }
 
@@ -72,17 +75,20 @@ public interface AnnotationType<T extends Annotation<T>> /* extends TypesafeMap.
    * @see edu.utdallas.hltri.scribe.text.annotation.Annotation
    */
   default T create(Document<?> parent, String annotationSet, long start, long end) {
-    final AnnotationSet set = parent.asGate().getAnnotations(annotationSet);
-    checkDuplicate(set, start, end);
-    try {
-      parent.setDirty();
-      final Integer id = set.add(start, end, getName(), Factory.newFeatureMap());
-      final T annotation = wrap(parent, set.get(id));
-      log.trace("Creating {}:{}", annotationSet, annotation.toString());
-//        annotation.set(Annotation.id, annotation.getDocument().registerAnnotation(annotation));
-      return annotation;
-    } catch (InvalidOffsetException e) {
-      throw new RuntimeException(e);
+    // writers hold the document lock, so that snapshots of the annotation set are never built during a write
+    synchronized (parent) {
+      final AnnotationSet set = parent.getGateAnnotations(annotationSet);
+      checkDuplicate(set, start, end);
+      try {
+        parent.setDirty();
+        final Integer id = set.add(start, end, getName(), Factory.newFeatureMap());
+        final T annotation = wrap(parent, set.get(id));
+        log.trace("Creating {}:{}", annotationSet, annotation.toString());
+//          annotation.set(Annotation.id, annotation.getDocument().registerAnnotation(annotation));
+        return annotation;
+      } catch (InvalidOffsetException e) {
+        throw new RuntimeException(e);
+      }
     }
   }
 
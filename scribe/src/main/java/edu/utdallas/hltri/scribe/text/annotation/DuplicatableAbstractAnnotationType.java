@@ -27,28 +27,32 @@ public abstract class DuplicatableAbstractAnnotationType<T extends Annotation<T>
   }
 
   @Override public T create(Document<?> parent, long start, long end) {
-    final AnnotationSet set = parent.asGate().getAnnotations();
-    final AnnotationSet old = set.get(getName(), start, end);
-    try {
-      final Integer id = set.add(start, end, getName(), Factory.newFeatureMap());
-      final T annotation = wrap(parent, set.get(id));
-      log.trace("Creating {}", annotation.toString());
-      return annotation;
-    } catch (InvalidOffsetException e) {
-      throw new RuntimeException(e);
+    synchronized (parent) {
+      final AnnotationSet set = parent.asGate().getAnnotations();
+      final AnnotationSet old = set.get(getName(), start, end);
+      try {
+        final Integer id = set.add(start, end, getName(), Factory.newFeatureMap());
+        final T annotation = wrap(parent, set.get(id));
+        log.trace("Creating {}", annotation.toString());
+        return annotation;
+      } catch (InvalidOffsetException e) {
+        throw new RuntimeException(e);
+      }
     }
   }
 
   @Override public T create(Document<?> parent, String annotationSet, long start, long end) {
-    final AnnotationSet set = parent.asGate().getAnnotations(annotationSet);
-    final AnnotationSet old = set.get(getName(), start, end);
-    try {
-      final Integer id = set.add(start, end, getName(), Factory.newFeatureMap());
-      final T annotation = wrap(parent, set.get(id));
-      log.trace("Creating {}:{}", annotationSet, annotation.toString());
-      return annotation;
-    } catch (InvalidOffsetException e) {
-      throw new RuntimeException(e);
+    synchronized (parent) {
+      final AnnotationSet set = parent.getGateAnnotations(annotationSet);
+      final AnnotationSet old = set.get(getName(), start, end);
+      try {
+        final Integer id = set.add(start, end, getName(), Factory.newFeatureMap());
+        final T annotation = wrap(parent, set.get(id));
+        log.trace("Creating {}:{}", annotationSet, annotation.toString());
+        return annotation;
+      } catch (InvalidOffsetException e) {
+        throw new RuntimeException(e);
+      }
     }
   }
 
@@ -98,8 +98,10 @@ public class UnsafeAnnotation extends AbstractAnnotation<UnsafeAnnotation> imple
 
   public static UnsafeAnnotation at(Document<?> doc, String annotationSet, String annotationType, long start, long end, int id) {
     try {
-      final AnnotationSet annSet = doc.asGate().getAnnotations(annotationSet);
-      annSet.add(id, start, end, annotationType, gate.Factory.newFeatureMap());
+      final AnnotationSet annSet = doc.getGateAnnotations(annotationSet);
+      synchronized (doc) {
+        annSet.add(id, start, end, annotationType, gate.Factory.newFeatureMap());
+      }
       final UnsafeAnnotation ua = new UnsafeAnnotation(doc, annSet.get(id));
       return ua;
     } catch (InvalidOffsetException e) {
@@ -35,7 +35,7 @@ public interface RelationType<R extends Relation<R,G,D>, G extends Annotation<G>
     assert governor.getDocument() == dependant.getDocument() :
       String.format("Governor and Dependant do not have matching documents. Gov doc: %s, Dep doc: %s",
           governor.getDocument(), dependant.getDocument());
-    final RelationSet set = governor.getDocument().asGate().getAnnotations(annotationSet).getRelations();
+    final RelationSet set = governor.getDocument().getGateAnnotations(annotationSet).getRelations();
     log.trace("Creating relation from ann {} -> ann {} of type {} in annset {}", governor.getGateId(), dependant.getGateId(),
         getName(), annotationSet);
     final gate.relations.Relation gateRelation = set.addRelation(getName(), governor.getGateId(), dependant.getGateId());
@@ -71,7 +71,7 @@ public class UnsafeRelation extends AbstractRelation<UnsafeRelation, UnsafeAnnot
 
   public static UnsafeRelation create(final Document<?> document, final String type, final int govId, final int depId,
                                       final String annotationSet) {
-    final RelationSet set = document.asGate().getAnnotations(annotationSet).getRelations();
+    final RelationSet set = document.getGateAnnotations(annotationSet).getRelations();
     final gate.relations.Relation gateRelation = set.addRelation(type, govId, depId);
     return new UnsafeRelation(document, annotationSet, gateRelation);
   }
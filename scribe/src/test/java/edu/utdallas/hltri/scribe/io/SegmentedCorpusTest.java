@@ -0,0 +1,230 @@
+package edu.utdallas.hltri.scribe.io;
+
+import edu.utdallas.hltri.scribe.text.BaseDocument;
+import edu.utdallas.hltri.scribe.text.Document;
+import edu.utdallas.hltri.scribe.text.annotation.Sentence;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SegmentedCorpusTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Path dir;
+
+  @Before
+  public void setUp() {
+    dir = folder.getRoot().toPath();
+  }
+
+  private SegmentedCorpus<BaseDocument> open() {
+    return SegmentedCorpus.<BaseDocument>at(dir).build();
+  }
+
+  private Path segment(int segment) {
+    return dir.resolve(String.format("%06d.seg", segment));
+  }
+
+  private static Document<BaseDocument> document(String id, String text) {
+    final Document<BaseDocument> document = Document.fromString(text);
+    document.set(BaseDocument.id, id);
+    Sentence.TYPE.create(document, "genia", 0, text.length());
+    return document;
+  }
+
+  /**
+   * A record as laid out in a segment
+   */
+  private static final class Record {
+    final byte kind;
+    final String id;
+    final String name;
+    final byte[] payload;
+
+    Record(byte kind, String id, String name, byte[] payload) {
+      this.kind = kind;
+      this.id = id;
+      this.name = name;
+      this.payload = payload;
+    }
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    final byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static List<Record> records(Path segment) throws IOException {
+    final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(segment));
+    final List<Record> records = new ArrayList<>();
+    while (buffer.hasRemaining()) {
+      final byte kind = buffer.get();
+      final String id = readString(buffer);
+      final String name = readString(buffer);
+      final byte[] payload = new byte[buffer.getInt()];
+      buffer.get(payload);
+      records.add(new Record(kind, id, name, payload));
+    }
+    return records;
+  }
+
+  private static void append(Path segment, byte[] bytes) throws IOException {
+    Files.write(segment, bytes, StandardOpenOption.APPEND);
+  }
+
+  @Test
+  public void testRecordFormat() throws IOException {
+    try (SegmentedCorpus<BaseDocument> corpus = open()) {
+      corpus.save(document("doc1", "Hello world."));
+    }
+
+    final List<Record> records = records(segment(0));
+    assertEquals(3, records.size());
+    assertEquals(0, records.get(0).kind);
+    assertEquals("doc1", records.get(0).id);
+    assertEquals("", records.get(0).name);
+    assertArrayEquals("Hello world.".getBytes(StandardCharsets.UTF_8), records.get(0).payload);
+    assertEquals(1, records.get(1).kind);
+    assertEquals("", records.get(1).name);
+    assertEquals(2, records.get(2).kind);
+    assertEquals("doc1", records.get(2).id);
+    assertEquals("genia", records.get(2).name);
+
+    try (SegmentedCorpus<BaseDocument> corpus = open()) {
+      final Document<BaseDocument> document = corpus.load("doc1");
+      assertEquals("Hello world.", document.asString());
+      assertEquals(1, document.get("genia", Sentence.TYPE).size());
+    }
+  }
+
+  @Test
+  public void testUnchangedPartsAreNotAppended() throws IOException {
+    try (SegmentedCorpus<BaseDocument> corpus = open()) {
+      corpus.save(document("doc1", "Hello world."));
+    }
+    final long size = Files.size(segment(0));
+
+    try (SegmentedCorpus<BaseDocument> corpus = open()) {
+      corpus.save(corpus.load("doc1"));
+    }
+    assertEquals(size, Files.size(segment(0)));
+
+    // changing the features alone must not rewrite the annotation set
+    try (SegmentedCorpus<BaseDocument> corpus = open()) {
+      final Document<BaseDocument> document = corpus.load("doc1");
+      document.set(BaseDocument.corpusName, "test");
+      corpus.save(document);
+    }
+    final List<Record> records = records(segment(0));
+    assertEquals(4, records.size());
+    assertEquals(1, records.get(3).kind);
+  }
+
+  @Test
+  public void testRecoveryWithoutIndex() throws IOException {
+    try (SegmentedCorpus<BaseDocument> corpus = open()) {
+      corpus.save(document("doc1", "First document."));
+      corpus.save(document("doc2", "Second document."));
+    }
+    Files.delete(dir.resolve("index.bin"));
+
+    try (SegmentedCorpus<BaseDocument> corpus = open()) {
+      assertTrue(corpus.canLoad("doc1"));
+      assertTrue(corpus.canLoad("genia", "doc2"));
+      assertEquals("Second document.", corpus.load("doc2").asString());
+    }
+  }
+
+  @Test
+  public void testTruncatedHeaderIsDiscarded() throws IOException {
+    try (SegmentedCorpus<BaseDocument> corpus = open()) {
+      corpus.save(document("doc1", "First document."));
+    }
+    final long size = Files.size(segment(0));
+    // kind, id length and half of the id of a record whose write was interrupted
+    append(segment(0), new byte[]{0, 0, 4, 'd', 'o'});
+
+    try (SegmentedCorpus<BaseDocument> corpus = open()) {
+      assertEquals(size, Files.size(segment(0)));
+      assertEquals("First document.", corpus.load("doc1").asString());
+      corpus.save(document("doc2", "Second document."));
+    }
+
+    try (SegmentedCorpus<BaseDocument> corpus = open()) {
+      assertEquals("Second document.", corpus.load("doc2").asString());
+    }
+  }
+
+  @Test
+  public void testTruncatedPayloadIsDiscarded() throws IOException {
+    try (SegmentedCorpus<BaseDocument> corpus = open()) {
+      corpus.save(document("doc1", "First document."));
+    }
+    final long size = Files.size(segment(0));
+    Files.delete(dir.resolve("index.bin"));
+    // a text record for doc2 claiming 100 bytes of payload, only 3 of which were written
+    append(segment(0), new byte[]{0, 0, 4, 'd', 'o', 'c', '2', 0, 0, 0, 0, 0, 100, 'S', 'e', 'c'});
+
+    try (SegmentedCorpus<BaseDocument> corpus = open()) {
+      assertEquals(size, Files.size(segment(0)));
+      assertTrue(corpus.canLoad("doc1"));
+      assertFalse(corpus.canLoad("doc2"));
+    }
+  }
+
+  @Test
+  public void testUnreadAnnotationSetIdsAreReserved() throws IOException {
+    try (SegmentedCorpus<BaseDocument> corpus = open()) {
+      final Document<BaseDocument> document = document("doc1", "Hello world.");
+      Sentence.TYPE.create(document, "opennlp", 0, 5);
+      corpus.save(document);
+    }
+
+    try (SegmentedCorpus<BaseDocument> corpus = SegmentedCorpus.<BaseDocument>at(dir).annotationSets("genia").build()) {
+      final Document<BaseDocument> document = corpus.load("doc1");
+      final Sentence created = Sentence.TYPE.create(document, "genia", 6, 12);
+      assertTrue(corpus.loadAnnotationSet(document, "opennlp"));
+      final Sentence stored = document.get("opennlp", Sentence.TYPE).get(0);
+      assertFalse(created.asGate().getId().equals(stored.asGate().getId()));
+      assertEquals(2, document.get("genia", Sentence.TYPE).size());
+    }
+  }
+
+  @Test
+  public void testCompactionKeepsOldSegmentsUntilClosed() throws IOException {
+    try (SegmentedCorpus<BaseDocument> corpus = open()) {
+      corpus.save(document("doc1", "First document."));
+      final Document<BaseDocument> document = corpus.load("doc1");
+      document.set(BaseDocument.corpusName, "test");
+      corpus.save(document);
+
+      corpus.compact();
+      assertTrue(Files.exists(segment(0)));
+      assertEquals("test", corpus.load("doc1").get(BaseDocument.corpusName));
+    }
+    assertFalse(Files.exists(segment(0)));
+
+    try (SegmentedCorpus<BaseDocument> corpus = open()) {
+      final Document<BaseDocument> document = corpus.load("doc1");
+      assertEquals("test", document.get(BaseDocument.corpusName));
+      assertEquals(1, document.get("genia", Sentence.TYPE).size());
+    }
+  }
+}
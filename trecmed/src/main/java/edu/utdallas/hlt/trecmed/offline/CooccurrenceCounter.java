@@ -6,7 +6,6 @@ import gnu.trove.map.hash.TObjectIntHashMap;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.StringReader;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -20,8 +19,17 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.GZIPInputStream;
 
+import edu.utdallas.hltri.framework.ProgressLogger;
 import edu.utdallas.hltri.io.ExternalCountWriter;
 import edu.utdallas.hltri.logging.Logger;
 
@@ -34,6 +42,7 @@ public class CooccurrenceCounter {
   private static final Logger log = Logger.get(CooccurrenceCounter.class);
 
   private static final int DEFAULT_STOPWORDS = 50;
+  private static final int BATCH_SIZE = 256;
   private static final long serialVersionUID = 5L;
   private final TrieNode root;
   private final Set<String> keywords;
@@ -67,24 +76,28 @@ public class CooccurrenceCounter {
     }
   }
 
-  public List<String> tokenize(String line) throws IOException {
-    final StringBuilder sb = new StringBuilder();
-    List<String> tokens = new ArrayList<>(128);
-    try (BufferedReader sr = new BufferedReader(new StringReader(line))) {
-      tokens.clear();
-      int current;
-      while ((current = sr.read()) != -1) {
-        if (Character.isWhitespace(current)) {
-          tokens.add(sb.toString());
-          sb.setLength(0);
-        } else {
-          sb.append(Character.toLowerCase((char) current));
-        }
+  /**
+   * Splits the given line on every whitespace character (so consecutive whitespace yields empty tokens) and
+   * lower-cases each token
+   */
+  public List<String> tokenize(String line) {
+    final List<String> tokens = new ArrayList<>(128);
+    tokenize(line, tokens, new char[line.length()]);
+    return tokens;
+  }
+
+  private static void tokenize(final String line, final List<String> tokens, final char[] buffer) {
+    int start = 0;
+    for (int i = 0; i < line.length(); i++) {
+      final char c = line.charAt(i);
+      if (Character.isWhitespace(c)) {
+        tokens.add(new String(buffer, start, i - start));
+        start = i + 1;
+      } else {
+        buffer[i] = Character.toLowerCase(c);
       }
-      tokens.add(sb.toString());
     }
-
-    return tokens;
+    tokens.add(new String(buffer, start, line.length() - start));
   }
 
   public Set<String> generateStopWords() throws IOException {
@@ -144,86 +157,171 @@ public class CooccurrenceCounter {
   }
 
   public void generate(int gramSize, final Path output) throws IOException {
+    generate(gramSize, output, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Counts the n-grams and keyword/n-gram co-occurrences of each line of the corpus. Lines are decompressed on
+   * the calling thread and handed in batches to the given number of workers, which share the keyword trie and
+   * stopwords (read-only) and add their counts to a shared ExternalCountWriter.
+   */
+  public void generate(int gramSize, final Path output, int numThreads) throws IOException {
     final ExternalCountWriter writer = new ExternalCountWriter(output.toFile(), true);
+    final BlockingQueue<List<String>> batches = new ArrayBlockingQueue<>(numThreads * 4);
+    final AtomicInteger processed = new AtomicInteger();
+
+    final ExecutorService workers = Executors.newFixedThreadPool(numThreads);
+    final List<Future<?>> results = new ArrayList<>(numThreads);
+    for (int i = 0; i < numThreads; i++) {
+      results.add(workers.submit(() -> {
+        final Counter counter = new Counter(gramSize, writer);
+        for (List<String> batch; !(batch = batches.take()).isEmpty(); ) {
+          for (String line : batch) {
+            counter.count(line);
+          }
+          processed.addAndGet(batch.size());
+        }
+        return null;
+      }));
+    }
 
-    Set<String> foundWords = new HashSet<>();
-    Set<String> foundKeywords = new HashSet<>();
-    List<String> tokens;
+    int lines = 0;
     try (BufferedReader reader = new BufferedReader(
             new InputStreamReader(
             new GZIPInputStream(
-            Files.newInputStream(corpus))))) {
+            Files.newInputStream(corpus), 1 << 16)), 1 << 16);
+         ProgressLogger plog = ProgressLogger.indeterminateSize("co-occurrences", 30, TimeUnit.SECONDS)) {
+      List<String> batch = new ArrayList<>(BATCH_SIZE);
       for (String line; (line = reader.readLine()) != null;) {
-        // Manually tokenize each line
-        tokens = tokenize(line);
-        foundWords.clear();
-        foundKeywords.clear();
-
-        // Iterate over each token
-        StringBuilder token = new StringBuilder();
-        String tokenString;
-        TrieNode node;
-        for (int i = 0; i < tokens.size(); i++) {
-          token.setLength(0);
-          for (int t = i; t < gramSize + i && t < tokens.size(); t++) {
-            // Add a space between tokens
-            if (t > i) {
-              token.append(" ");
-            }
-            boolean isStopword = stopwords.contains(tokens.get(t));
-
-            // End if the gram begins with a stopword
-            if (isStopword && t == i) {
-              break;
-            }
-
-            // Add this token to the n-gram
-            token.append(tokens.get(t));
-
-            // Do not remember this gram if it ends in a stopword
-            if (isStopword) {
-              continue;
-            }
-
-            // Store the gram & count its contexts
-            tokenString = token.toString();
-            if (foundWords.add(tokenString)) {
-              writer.addCount(tokenString, 1);
-            }
-          }
+        batch.add(line);
+        lines++;
+        if (batch.size() == BATCH_SIZE) {
+          put(batches, batch, results);
+          batch = new ArrayList<>(BATCH_SIZE);
+          plog.update(processed.get(), "read {} documents", lines);
+        }
+      }
+      if (!batch.isEmpty()) {
+        put(batches, batch, results);
+      }
+      // An empty batch tells each worker to stop
+      for (int i = 0; i < numThreads; i++) {
+        put(batches, Collections.emptyList(), results);
+      }
+      for (Future<?> result : results) {
+        result.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    } finally {
+      workers.shutdownNow();
+    }
+    numDocs = lines;
+    log.info("Processed {} documents.", numDocs);
+    writer.addCount("__FILE_LENGTH", numDocs);
+    writer.close();
+  }
 
-          // Use the trie to find all getKeywords that start with this token
-          node = root;
-          int t = i;
-          do {
-            node = node.getChild(tokens.get(t++));
-            if (node == null) {
-              break;
-            }
-            if (node.isKeyword && foundKeywords.add(node.keyword) && !foundWords.
-                contains(node.keyword)) {
-              writer.addCount(node.keyword, 1);
-            }
-          } while (node.children.size() > 0 && t < tokens.size());
+  /**
+   * Queues the given batch, giving up if a worker has failed (and so may never take it)
+   */
+  private static void put(BlockingQueue<List<String>> batches, List<String> batch, List<Future<?>> workers)
+      throws InterruptedException, ExecutionException {
+    while (!batches.offer(batch, 1, TimeUnit.SECONDS)) {
+      for (Future<?> worker : workers) {
+        if (worker.isDone()) {
+          worker.get();
         }
+      }
+    }
+  }
+
+  /**
+   * Per-worker state for counting the n-grams and co-occurrences of lines
+   */
+  private class Counter {
+    private final int gramSize;
+    private final ExternalCountWriter writer;
+    private final Set<String> foundWords = new HashSet<>();
+    private final Set<String> foundKeywords = new HashSet<>();
+    private final List<String> tokens = new ArrayList<>(128);
+    private final StringBuilder token = new StringBuilder();
+    private char[] buffer = new char[1024];
+
+    Counter(int gramSize, ExternalCountWriter writer) {
+      this.gramSize = gramSize;
+      this.writer = writer;
+    }
+
+    void count(String line) {
+      // Manually tokenize each line
+      if (buffer.length < line.length()) {
+        buffer = new char[Math.max(line.length(), buffer.length * 2)];
+      }
+      tokens.clear();
+      tokenize(line, tokens, buffer);
+      foundWords.clear();
+      foundKeywords.clear();
+
+      // Iterate over each token
+      String tokenString;
+      TrieNode node;
+      for (int i = 0; i < tokens.size(); i++) {
+        token.setLength(0);
+        for (int t = i; t < gramSize + i && t < tokens.size(); t++) {
+          // Add a space between tokens
+          if (t > i) {
+            token.append(" ");
+          }
+          boolean isStopword = stopwords.contains(tokens.get(t));
+
+          // End if the gram begins with a stopword
+          if (isStopword && t == i) {
+            break;
+          }
+
+          // Add this token to the n-gram
+          token.append(tokens.get(t));
+
+          // Do not remember this gram if it ends in a stopword
+          if (isStopword) {
+            continue;
+          }
 
-        // Iterate over all getKeywords <-> word pairs
-        for (String keyword : foundKeywords) {
-          for (String word : foundWords) {
-            writer.addCount(keyword + '\t' + word, 1);
+          // Store the gram & count its contexts
+          tokenString = token.toString();
+          if (foundWords.add(tokenString)) {
+            writer.addCount(tokenString, 1);
           }
         }
 
-        numDocs++;
-        if (numDocs % 10 == 0) {
-          System.out.printf("\r * Processed document %,d", numDocs);
+        // Use the trie to find all getKeywords that start with this token
+        node = root;
+        int t = i;
+        do {
+          node = node.getChild(tokens.get(t++));
+          if (node == null) {
+            break;
+          }
+          if (node.isKeyword && foundKeywords.add(node.keyword) && !foundWords.
+              contains(node.keyword)) {
+            writer.addCount(node.keyword, 1);
+          }
+        } while (node.children.size() > 0 && t < tokens.size());
+      }
+
+      // Iterate over all getKeywords <-> word pairs
+      for (String keyword : foundKeywords) {
+        for (String word : foundWords) {
+          token.setLength(0);
+          token.append(keyword).append('\t').append(word);
+          writer.addCount(token, 1);
         }
       }
-      System.out.printf("\r * Processed %,d documents.%n", numDocs);
     }
-    writer.addCount("__FILE_LENGTH", numDocs);
-    writer.close();
-
   }
 
   public long getNumDocs() {
@@ -273,9 +371,10 @@ public class CooccurrenceCounter {
         List<String> keywords = Files.readAllLines(Paths.get(args[3]), Charset.defaultCharset());
         int gram = Integer.parseInt(args[4]);
         Path output = Paths.get(args[5]);
+        int threads = (args.length > 6) ? Integer.parseInt(args[6]) : Runtime.getRuntime().availableProcessors();
         gen.setKeywords(keywords);
         gen.loadStopWords(stopwords);
-        gen.generate(gram, output);
+        gen.generate(gram, output, threads);
         break;
       }
     }
@@ -5,6 +5,8 @@ import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import edu.utdallas.hlt.medbase.ICD9Resolver;
+import edu.utdallas.hltri.inquire.lucene.LuceneSearchEngine;
+import edu.utdallas.hltri.inquire.lucene.LuceneUtils;
 import java.io.BufferedReader;
 import java.io.Closeable;
 import java.io.File;
@@ -47,6 +49,7 @@ import org.jdom2.input.SAXBuilder;
  */
 public class LuceneEMRIndexer implements Closeable {
   private final SAXBuilder builder = new SAXBuilder();
+  private final LuceneEMRAnalyzer analyzer = new LuceneEMRAnalyzer();
   private final IndexWriter              visits;
   private final IndexWriter              reports;
   private final Multimap<String, String> mappingV2R;
@@ -165,6 +168,11 @@ public class LuceneEMRIndexer implements Closeable {
         for (Field field : fields) {
           report.add(field);
           visit.add(field);
+          // Store term vector sizes as doc values so searchers can read field lengths in O(1)
+          if (field.fieldType() == vectorizedTextField) {
+            report.add(LuceneSearchEngine.newFieldLengthField(field.name(),
+                LuceneUtils.countUniqueTokens(field.stringValue(), field.name(), analyzer)));
+          }
         }
         reports.addDocument(report);
         mappingV2R.remove(visit_id, checksum);
@@ -185,6 +193,7 @@ public class LuceneEMRIndexer implements Closeable {
       visits.close();
       reports.commit();
       reports.close();
+      analyzer.close();
     } catch (IOException ex) {
       throw new RuntimeException(ex);
     }